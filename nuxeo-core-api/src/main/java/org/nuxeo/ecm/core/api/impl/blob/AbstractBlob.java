@@ -57,6 +57,25 @@ public abstract class AbstractBlob implements Blob {
         }
     }
 
+    /**
+     * Gets a stream on a range of the blob.
+     * <p>
+     * The default implementation skips the beginning of the whole stream,
+     * subclasses with random access only read the requested bytes.
+     *
+     * @param offset the offset of the first byte
+     * @param length the maximum number of bytes, or {@code -1} for the rest
+     *            of the blob
+     * @since 5.7
+     */
+    public InputStream getStream(long offset, long length) throws IOException {
+        InputStream in = getStream();
+        if (in == null) {
+            return null;
+        }
+        return RangeInputStream.open(in, offset, length);
+    }
+
     @Override
     public void transferTo(Writer writer) throws IOException {
         Reader reader = getReader();
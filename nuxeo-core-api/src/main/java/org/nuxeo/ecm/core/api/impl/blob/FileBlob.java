@@ -24,6 +24,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.ecm.core.api.Blob;
@@ -96,6 +98,37 @@ public class FileBlob extends DefaultStreamBlob implements Serializable {
         return new BufferedInputStream(new FileInputStream(file));
     }
 
+    @Override
+    public InputStream getStream(long offset, long length) throws IOException {
+        return RangeInputStream.open(file, offset, length);
+    }
+
+    /**
+     * Opens a read-only channel on the file, for random access.
+     *
+     * @since 5.7
+     */
+    public FileChannel getChannel() throws IOException {
+        return new FileInputStream(file).getChannel();
+    }
+
+    /**
+     * Maps a range of the file in memory, read-only.
+     *
+     * @param offset the offset of the range
+     * @param length the length of the range
+     * @since 5.7
+     */
+    public MappedByteBuffer map(long offset, long length) throws IOException {
+        FileChannel channel = getChannel();
+        try {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally {
+            channel.close();
+        }
+    }
+
     @Override
     public Blob persist() {
         return this;
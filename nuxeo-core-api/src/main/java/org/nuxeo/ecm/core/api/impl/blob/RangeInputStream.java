@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.api.impl.blob;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream reading at most a given number of bytes from an underlying
+ * stream, used to read a range of a blob.
+ * <p>
+ * Closing it closes the underlying stream.
+ *
+ * @since 5.7
+ */
+public class RangeInputStream extends FilterInputStream {
+
+    protected long remaining;
+
+    protected long mark = -1;
+
+    /**
+     * Creates a stream reading at most {@code length} bytes from {@code in}.
+     *
+     * @param in the underlying stream, already positioned
+     * @param length the maximum number of bytes to read, or {@code -1} to
+     *            read up to the end of the underlying stream
+     */
+    public RangeInputStream(InputStream in, long length) {
+        super(in);
+        remaining = length < 0 ? Long.MAX_VALUE : length;
+    }
+
+    /**
+     * Opens a stream on a range of a stream, skipping its first bytes.
+     *
+     * @param in the stream
+     * @param offset the offset of the range
+     * @param length the length of the range, or {@code -1} for the rest of
+     *            the stream
+     */
+    public static InputStream open(InputStream in, long offset, long length)
+            throws IOException {
+        if (offset < 0) {
+            in.close();
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        try {
+            skipFully(in, offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new RangeInputStream(in, length);
+    }
+
+    /**
+     * Opens a stream on a range of a file. Only the bytes of the range are
+     * read from disk.
+     */
+    public static InputStream open(File file, long offset, long length)
+            throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new RangeInputStream(in, length);
+    }
+
+    /**
+     * Skips exactly {@code n} bytes of a stream, which for file streams is a
+     * seek. Skipping beyond the end of the stream is an error.
+     */
+    public static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                // skip may return 0 before the end, check with a read
+                if (in.read() == -1) {
+                    throw new EOFException("Cannot skip beyond the end");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int b = in.read();
+        if (b != -1) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (n > 0) {
+            remaining -= n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(Math.min(n, remaining));
+        if (skipped > 0) {
+            remaining -= skipped;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        in.mark(readlimit);
+        mark = remaining;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (mark == -1) {
+            throw new IOException("Mark not set");
+        }
+        in.reset();
+        remaining = mark;
+    }
+
+}
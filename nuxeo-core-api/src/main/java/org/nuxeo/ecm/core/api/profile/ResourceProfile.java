@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.api.profile;
+
+/**
+ * Resources consumed by a unit of work, usually a transaction, bound to the
+ * thread executing it.
+ * <p>
+ * The components doing the work (SQL storage, row cache, event service,
+ * binary manager) add to the {@link #current} profile, if any. Profiles are
+ * only bound when profiling is {@link #setEnabled enabled}, otherwise
+ * recording costs a single volatile read.
+ * <p>
+ * The counters are only updated by the bound thread, but may be read from
+ * any thread.
+ *
+ * @since 5.7
+ */
+public class ResourceProfile {
+
+    protected static volatile boolean enabled;
+
+    protected static final ThreadLocal<ResourceProfile> profiles = new ThreadLocal<ResourceProfile>();
+
+    protected volatile long sqlExecutions;
+
+    /** In microseconds. */
+    protected volatile long sqlTime;
+
+    protected volatile long rowsRead;
+
+    protected volatile long rowsWritten;
+
+    protected volatile long cacheHits;
+
+    protected volatile long cacheMisses;
+
+    protected volatile long events;
+
+    /** In milliseconds. */
+    protected volatile long listenerTime;
+
+    protected volatile long binaryBytesWritten;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ResourceProfile.enabled = enabled;
+        if (!enabled) {
+            profiles.remove();
+        }
+    }
+
+    /**
+     * Binds a new profile to the current thread, if profiling is enabled.
+     *
+     * @return the new profile, or {@code null} if profiling is disabled
+     */
+    public static ResourceProfile begin() {
+        if (!enabled) {
+            return null;
+        }
+        ResourceProfile profile = new ResourceProfile();
+        profiles.set(profile);
+        return profile;
+    }
+
+    /**
+     * Unbinds the profile of the current thread.
+     *
+     * @return the unbound profile, or {@code null} if none was bound
+     */
+    public static ResourceProfile end() {
+        ResourceProfile profile = profiles.get();
+        if (profile != null) {
+            profiles.remove();
+        }
+        return profile;
+    }
+
+    /**
+     * Gets the profile bound to the current thread, or {@code null}.
+     */
+    public static ResourceProfile current() {
+        if (!enabled) {
+            return null;
+        }
+        return profiles.get();
+    }
+
+    public void addSqlExecution(long micros) {
+        sqlExecutions++;
+        sqlTime += micros;
+    }
+
+    public void addRowsRead(long n) {
+        rowsRead += n;
+    }
+
+    public void addRowsWritten(long n) {
+        rowsWritten += n;
+    }
+
+    public void addCacheAccess(boolean hit) {
+        if (hit) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+        }
+    }
+
+    public void addEvent() {
+        events++;
+    }
+
+    public void addListenerTime(long millis) {
+        listenerTime += millis;
+    }
+
+    public void addBinaryBytesWritten(long n) {
+        binaryBytesWritten += n;
+    }
+
+    public long getSqlExecutions() {
+        return sqlExecutions;
+    }
+
+    /**
+     * Gets the time spent executing SQL statements, in microseconds.
+     */
+    public long getSqlTime() {
+        return sqlTime;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Gets the ratio of row cache accesses that were hits, or {@code -1} if
+     * the cache wasn't accessed.
+     */
+    public double getCacheHitRatio() {
+        long hits = cacheHits;
+        long accesses = hits + cacheMisses;
+        return accesses == 0 ? -1 : (double) hits / accesses;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * Gets the time spent in synchronous listeners, in milliseconds.
+     */
+    public long getListenerTime() {
+        return listenerTime;
+    }
+
+    public long getBinaryBytesWritten() {
+        return binaryBytesWritten;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "sql=%d/%dus rows=%d/%d cache=%d/%d events=%d/%dms binaries=%dB",
+                sqlExecutions, sqlTime, rowsRead, rowsWritten, cacheHits,
+                cacheHits + cacheMisses, events, listenerTime,
+                binaryBytesWritten);
+    }
+
+}
@@ -13,10 +13,14 @@ package org.nuxeo.ecm.core.utils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,6 +40,11 @@ import org.nuxeo.runtime.api.Framework;
 
 /**
  * Extractor for all the blobs of a document.
+ * <p>
+ * The paths of the blob fields of a document type are found once from the
+ * schemas, then compiled into {@link BlobPath}s kept in a cache shared by all
+ * the extractors. The cache is thread-safe, and a document type is compiled
+ * again when the {@link SchemaManager} publishes a new instance of it.
  *
  * @author Florent Guillaume
  * @author Benjamin Jalon
@@ -44,11 +53,105 @@ public class BlobsExtractor {
 
     protected static final Log log = LogFactory.getLog(BlobsExtractor.class);
 
+    /**
+     * A compiled path to the blob fields of a schema.
+     *
+     * @since 5.7
+     */
+    public static class BlobPath {
+
+        /** The schema name. */
+        public final String schema;
+
+        /** The schema prefix, or an empty string. */
+        public final String prefix;
+
+        /** The path in the schema, like {@code /files/*}{@code /file}. */
+        public final String path;
+
+        /**
+         * The prefixed names of the fields along the path, with {@code *}
+         * for the items of a list.
+         */
+        public final List<String> names;
+
+        /** The xpath of the first property of the path in the document. */
+        protected final String xpath;
+
+        /** The rest of the path, one element per list traversed. */
+        protected final List<String> subPath;
+
+        public BlobPath(Schema schema, String path) {
+            this.schema = schema.getName();
+            prefix = schema.getNamespace().prefix;
+            this.path = path;
+            List<String> pathSplitted = Arrays.asList(path.split("/[*]/"));
+            if (pathSplitted.size() == 0) {
+                throw new IllegalStateException(
+                        "Path detected not wellformed: " + path);
+            }
+            xpath = this.schema + ":" + pathSplitted.get(0);
+            subPath = pathSplitted.subList(1, pathSplitted.size());
+            List<String> list = new ArrayList<String>();
+            ComplexType ct = schema;
+            for (String name : path.substring(1).split("/")) {
+                if ("*".equals(name)) {
+                    list.add(name);
+                    continue;
+                }
+                Field field = ct.getField(name);
+                if (field == null) {
+                    throw new IllegalStateException("No field " + name
+                            + " for path: " + path);
+                }
+                list.add(field.getName().getPrefixedName());
+                Type type = field.getType();
+                if (type.isListType()) {
+                    type = ((ListType) type).getFieldType();
+                }
+                if (type.isComplexType()) {
+                    ct = (ComplexType) type;
+                }
+            }
+            names = Collections.unmodifiableList(list);
+        }
+
+        @Override
+        public String toString() {
+            return schema + ':' + path;
+        }
+    }
+
+    /**
+     * The blob paths of a document type.
+     */
+    protected static class DocumentTypeBlobPaths {
+
+        protected final DocumentType docType;
+
+        /** Paths by schema, as returned by the API. */
+        protected final Map<String, List<String>> paths;
+
+        protected final List<BlobPath> blobPaths;
+
+        protected DocumentTypeBlobPaths(DocumentType docType,
+                Map<String, List<String>> paths, List<BlobPath> blobPaths) {
+            this.docType = docType;
+            this.paths = paths;
+            this.blobPaths = blobPaths;
+        }
+    }
+
+    /** Compiled blob paths by document type name, shared by all extractors. */
+    protected static final ConcurrentMap<String, DocumentTypeBlobPaths> compiledBlobPaths = new ConcurrentHashMap<String, DocumentTypeBlobPaths>();
+
+    /**
+     * The paths found while compiling a document type, guarded by
+     * synchronization on itself.
+     */
     protected final Map<String, Map<String, List<String>>> blobFieldPaths
             = new HashMap<String, Map<String, List<String>>>();
 
-    protected List<String> docTypeCached = new ArrayList<String>();
-
     protected SchemaManager schemaManager;
 
     private Set<String> pathProperties;
@@ -74,28 +177,33 @@ public class BlobsExtractor {
             throws Exception {
 
         List<Property> result = new ArrayList<Property>();
-        for (String schema : getBlobFieldPathForDocumentType(doc.getType()).keySet()) {
-            List<String> pathsList = getBlobFieldPathForDocumentType(
-                    doc.getType()).get(schema);
-            for (String path : pathsList) {
-                if (!isInterestingBlobProperty(path, schemaManager.getSchema(schema).getNamespace().prefix)) {
-                    continue;
-                }
-                List<String> pathSplitted = Arrays.asList(path.split("/[*]/"));
-                if (pathSplitted.size() == 0) {
-                    throw new IllegalStateException("Path detected not wellformed: "
-                            + pathsList);
-                }
-                Property prop = doc.getProperty(schema + ":" + pathSplitted.get(0));
+        for (BlobPath blobPath : getInterestingBlobPaths(doc.getType())) {
+            Property prop = doc.getProperty(blobPath.xpath);
+            getBlobValue(prop, blobPath.subPath, blobPath.path, result);
+        }
+        return result;
+    }
 
-                if (pathSplitted.size() >= 1) {
-                    List<String> subPath = pathSplitted.subList(1,
-                            pathSplitted.size());
-                    getBlobValue(prop, subPath, path, result);
-                }
+    /**
+     * Gets the compiled paths of the blob fields of a document type that
+     * match the configuration of this extractor.
+     *
+     * @param documentType the document type name
+     * @return the blob paths
+     * @since 5.7
+     */
+    public List<BlobPath> getInterestingBlobPaths(String documentType)
+            throws Exception {
+        List<BlobPath> blobPaths = getDocumentTypeBlobPaths(documentType).blobPaths;
+        if (isDefaultConfiguration) {
+            return blobPaths;
+        }
+        List<BlobPath> result = new ArrayList<BlobPath>(blobPaths.size());
+        for (BlobPath blobPath : blobPaths) {
+            if (isInterestingBlobProperty(blobPath.path, blobPath.prefix)) {
+                result.add(blobPath);
             }
         }
-
         return result;
     }
 
@@ -109,38 +217,58 @@ public class BlobsExtractor {
      */
     public Map<String, List<String>> getBlobFieldPathForDocumentType(
             String documentType) throws Exception {
-        DocumentType docType = getSchemaManager().getDocumentType(documentType);
-
-        if (!docTypeCached.contains(documentType)) {
-            Map<String, List<String>> paths = new HashMap<String, List<String>>();
-            blobFieldPaths.put(docType.getName(), paths);
+        return getDocumentTypeBlobPaths(documentType).paths;
+    }
 
-            createCacheForDocumentType(docType);
+    protected DocumentTypeBlobPaths getDocumentTypeBlobPaths(
+            String documentType) throws Exception {
+        DocumentType docType = getSchemaManager().getDocumentType(documentType);
+        if (docType == null) {
+            throw new IllegalArgumentException("Unknown document type: "
+                    + documentType);
         }
-
-        return blobFieldPaths.get(documentType);
+        DocumentTypeBlobPaths compiled = compiledBlobPaths.get(documentType);
+        if (compiled == null || compiled.docType != docType) {
+            // not compiled yet, or schemas redeployed
+            compiled = createCacheForDocumentType(docType);
+            compiledBlobPaths.put(documentType, compiled);
+        }
+        return compiled;
     }
 
     public void invalidateDocumentTypeCache(String docType) {
-        if (docTypeCached.contains(docType)) {
-            docTypeCached.remove(docType);
-        }
+        compiledBlobPaths.remove(docType);
     }
 
     public void invalidateCache() {
-        docTypeCached = new ArrayList<String>();
+        compiledBlobPaths.clear();
     }
 
-    protected void createCacheForDocumentType(DocumentType docType)
-            throws Exception {
-
-        for (Schema schema : docType.getSchemas()) {
-            findInteresting(docType, schema, "", schema);
+    protected DocumentTypeBlobPaths createCacheForDocumentType(
+            DocumentType docType) throws Exception {
+        Map<String, List<String>> paths;
+        synchronized (blobFieldPaths) {
+            blobFieldPaths.put(docType.getName(),
+                    new LinkedHashMap<String, List<String>>());
+            try {
+                for (Schema schema : docType.getSchemas()) {
+                    findInteresting(docType, schema, "", schema);
+                }
+            } finally {
+                paths = blobFieldPaths.remove(docType.getName());
+            }
         }
-
-        if (!docTypeCached.contains(docType.getName())) {
-            docTypeCached.add(docType.getName());
+        List<BlobPath> blobPaths = new ArrayList<BlobPath>();
+        for (Map.Entry<String, List<String>> es : paths.entrySet()) {
+            Schema schema = docType.getSchema(es.getKey());
+            for (String path : es.getValue()) {
+                blobPaths.add(new BlobPath(schema, path));
+            }
+            es.setValue(Collections.unmodifiableList(es.getValue()));
         }
+        return new DocumentTypeBlobPaths(docType,
+                Collections.unmodifiableMap(paths),
+                Collections.unmodifiableList(blobPaths));
     }
 
     /**
@@ -218,7 +346,6 @@ public class BlobsExtractor {
         if (pathsList == null) {
             pathsList = new ArrayList<String>();
             blobPathsForDocType.put(schema.getName(), pathsList);
-            blobFieldPaths.put(docType.getName(), blobPathsForDocType);
         }
         pathsList.add(path);
     }
@@ -261,7 +388,8 @@ public class BlobsExtractor {
     /**
      * Finds all the blobs of the document.
      * <p>
-     * This method is not thread-safe.
+     * This method is thread-safe as long as the extractor properties are not
+     * changed concurrently.
      *
      * @param doc the document
      * @return the list of blobs in the document
@@ -290,7 +418,7 @@ public class BlobsExtractor {
     }
 
 
-    private boolean isInterestingBlobProperty(String path, String prefix) {
+    protected boolean isInterestingBlobProperty(String path, String prefix) {
         if (isDefaultConfiguration) {
             return true;
         } else if (pathProperties != null && matchProperty(prefix, path, pathProperties)) {
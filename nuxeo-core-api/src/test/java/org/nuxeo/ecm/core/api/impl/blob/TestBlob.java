@@ -285,4 +285,33 @@ public class TestBlob extends NXRuntimeTestCase {
         assertTrue(Arrays.equals(blobContent, blobContent2));
     }
 
+    @Test
+    public void testRanges() throws Exception {
+        File file = new File(url.toURI());
+        byte[] expected = Arrays.copyOfRange(blobContent, 10, 30);
+        FileBlob fileBlob = new FileBlob(file);
+        assertTrue(Arrays.equals(expected,
+                readAll(fileBlob.getStream(10, 20))));
+        byte[] mapped = new byte[20];
+        fileBlob.map(10, 20).get(mapped);
+        assertTrue(Arrays.equals(expected, mapped));
+
+        // default implementation, skipping the stream
+        Blob blob = new ByteArrayBlob(blobContent);
+        assertTrue(Arrays.equals(expected,
+                readAll(((AbstractBlob) blob).getStream(10, 20))));
+        assertEquals(length - 10,
+                readAll(((AbstractBlob) blob).getStream(10, -1)).length);
+    }
+
+    protected static byte[] readAll(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AbstractBlob.copy(in, out);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
 }
@@ -14,6 +14,7 @@ package org.nuxeo.ecm.core.utils;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -28,6 +29,7 @@ import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
 import org.nuxeo.ecm.core.api.impl.blob.ByteArrayBlob;
+import org.nuxeo.ecm.core.utils.BlobsExtractor.BlobPath;
 import org.nuxeo.runtime.test.NXRuntimeTestCase;
 
 /**
@@ -189,4 +191,36 @@ public class TestBlobsExtractor extends NXRuntimeTestCase {
 
     }
 
+    @Test
+    public void testBlobPaths() throws Exception {
+        BlobsExtractor extractor = new BlobsExtractor();
+        List<BlobPath> blobPaths = extractor.getInterestingBlobPaths("ComplexDoc");
+        assertEquals(2, blobPaths.size());
+        Map<String, BlobPath> bySchema = new HashMap<String, BlobPath>();
+        for (BlobPath blobPath : blobPaths) {
+            bySchema.put(blobPath.schema, blobPath);
+        }
+        BlobPath blobPath = bySchema.get("file");
+        assertEquals("", blobPath.prefix);
+        assertEquals(Collections.singletonList("content"), blobPath.names);
+        blobPath = bySchema.get("complexschema");
+        assertEquals("cmpf", blobPath.prefix);
+        assertEquals("/attachedFile/vignettes/*/content", blobPath.path);
+        assertEquals(4, blobPath.names.size());
+        assertEquals("cmpf:attachedFile", blobPath.names.get(0));
+        assertEquals("*", blobPath.names.get(2));
+
+        // compiled once, shared by the extractors
+        assertSame(blobPaths,
+                new BlobsExtractor().getInterestingBlobPaths("ComplexDoc"));
+
+        // filtered by the configuration
+        Set<String> pathProps = new HashSet<String>();
+        pathProps.add("content/data");
+        extractor.setExtractorProperties(pathProps, null, false);
+        blobPaths = extractor.getInterestingBlobPaths("ComplexDoc");
+        assertEquals(1, blobPaths.size());
+        assertEquals("file", blobPaths.get(0).schema);
+    }
+
 }
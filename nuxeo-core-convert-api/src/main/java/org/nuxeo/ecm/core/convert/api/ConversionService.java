@@ -15,6 +15,7 @@ package org.nuxeo.ecm.core.convert.api;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 
@@ -41,6 +42,29 @@ public interface ConversionService {
     BlobHolder convert(String converterName, BlobHolder blobHolder,
             Map<String, Serializable> parameters) throws ConversionException;
 
+    /**
+     * Converts a Blob given a converter name, asynchronously.
+     * <p>
+     * The conversion is queued on the bounded executor of the converter. The
+     * returned future can be used to wait for the result or to cancel the
+     * conversion.
+     *
+     * @throws ConversionException if the converter is not available or if
+     *             its queue is full
+     * @since 5.7
+     */
+    Future<BlobHolder> convertAsync(String converterName,
+            BlobHolder blobHolder, Map<String, Serializable> parameters)
+            throws ConversionException;
+
+    /**
+     * Gets the status of the asynchronous queue of a converter, or
+     * {@code null} if no asynchronous conversion was ever requested for it.
+     *
+     * @since 5.7
+     */
+    ConverterQueueStatus getQueueStatus(String converterName);
+
     /**
      * Converts a Blob given a target destination MimeType.
      */
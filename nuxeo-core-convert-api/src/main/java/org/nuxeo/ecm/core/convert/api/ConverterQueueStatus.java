@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.api;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the asynchronous execution queue of a converter.
+ * <p>
+ * Latencies are expressed in milliseconds. Percentiles are approximate (they
+ * are the upper bound of the histogram bucket holding the percentile).
+ *
+ * @since 5.7
+ */
+public class ConverterQueueStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final String converterName;
+
+    protected final int maxThreads;
+
+    protected final int queueCapacity;
+
+    protected final int queued;
+
+    protected final int running;
+
+    protected final long completed;
+
+    protected final long failed;
+
+    protected final long cancelled;
+
+    protected final long rejected;
+
+    protected final long[] waitPercentiles;
+
+    protected final long[] runPercentiles;
+
+    /**
+     * Percentiles are given as arrays of p50, p95, p99 and max.
+     */
+    public ConverterQueueStatus(String converterName, int maxThreads,
+            int queueCapacity, int queued, int running, long completed,
+            long failed, long cancelled, long rejected,
+            long[] waitPercentiles, long[] runPercentiles) {
+        this.converterName = converterName;
+        this.maxThreads = maxThreads;
+        this.queueCapacity = queueCapacity;
+        this.queued = queued;
+        this.running = running;
+        this.completed = completed;
+        this.failed = failed;
+        this.cancelled = cancelled;
+        this.rejected = rejected;
+        this.waitPercentiles = waitPercentiles;
+        this.runPercentiles = runPercentiles;
+    }
+
+    public String getConverterName() {
+        return converterName;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Number of conversions waiting for a thread.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Number of conversions being executed.
+     */
+    public int getRunning() {
+        return running;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Number of conversions refused because the queue was full.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Time spent in queue: p50, p95, p99, max.
+     */
+    public long[] getWaitPercentiles() {
+        return waitPercentiles;
+    }
+
+    /**
+     * Time spent converting: p50, p95, p99, max.
+     */
+    public long[] getRunPercentiles() {
+        return runPercentiles;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + converterName + ",queued="
+                + queued + ",running=" + running + ",completed=" + completed
+                + ",failed=" + failed + ",cancelled=" + cancelled
+                + ",rejected=" + rejected + ')';
+    }
+
+}
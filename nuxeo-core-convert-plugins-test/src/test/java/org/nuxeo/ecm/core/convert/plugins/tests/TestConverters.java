@@ -22,10 +22,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.plugins.text.extractors.AbstractStreamingTextConverter;
 import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -131,6 +136,19 @@ public class TestConverters extends SimpleConverterTest {
         assertTrue(textContent.contains("d\u00e9j\u00e0"));
     }
 
+    @Test
+    public void testPDFConverterMaxTextLength() throws Exception {
+        BlobHolder holder = getBlobFromPath("test-docs/hello.pdf");
+        Map<String, Serializable> parameters = new HashMap<String, Serializable>();
+        parameters.put(AbstractStreamingTextConverter.MAX_TEXT_LENGTH,
+                Integer.valueOf(20));
+        BlobHolder result = cs.convert("pdf2text", holder, parameters);
+        assertNotNull(result);
+        String text = result.getBlob().getString();
+        assertEquals(20, text.length());
+        checkTextConversion(text);
+    }
+
     @Test
     public void testPDFArabicConverter() throws Exception {
         doTestArabicTextConverter("application/pdf", "pdf2text",
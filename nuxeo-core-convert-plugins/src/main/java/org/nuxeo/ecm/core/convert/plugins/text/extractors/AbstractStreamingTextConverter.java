@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.plugins.text.extractors;
+
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
+import org.nuxeo.ecm.core.convert.extension.Converter;
+import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
+import org.nuxeo.ecm.core.convert.plugins.text.extractors.BoundedTextWriter.TextLimitReachedException;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Base class for text extractors that stream the extracted text to a
+ * {@link Writer} instead of building it in memory.
+ * <p>
+ * The text is written to a temporary file. The maximum number of characters
+ * extracted can be set with the {@value #MAX_TEXT_LENGTH} conversion or
+ * converter parameter, or globally with the {@value #MAX_TEXT_LENGTH_PROPERTY}
+ * framework property. Extraction stops as soon as it is reached.
+ *
+ * @since 5.7
+ */
+public abstract class AbstractStreamingTextConverter implements Converter {
+
+    private static final Log log = LogFactory.getLog(AbstractStreamingTextConverter.class);
+
+    public static final String MAX_TEXT_LENGTH = "maxTextLength";
+
+    public static final String MAX_TEXT_LENGTH_PROPERTY = "org.nuxeo.ecm.core.convert.text.maxLength";
+
+    protected ConverterDescriptor descriptor;
+
+    @Override
+    public void init(ConverterDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * Writes the text extracted from the blob holder to the writer.
+     * <p>
+     * Implementations must let the {@link TextLimitReachedException} thrown
+     * by the writer propagate.
+     */
+    protected abstract void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws Exception;
+
+    @Override
+    public BlobHolder convert(BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException {
+        BoundedTextWriter writer = null;
+        try {
+            writer = new BoundedTextWriter(getMaxTextLength(parameters));
+            try {
+                extractText(blobHolder, parameters, writer);
+            } catch (TextLimitReachedException e) {
+                log.debug(e.getMessage());
+            }
+            BlobHolder result = new SimpleCachableBlobHolder(
+                    writer.getBlob());
+            writer = null;
+            return result;
+        } catch (Exception e) {
+            throw new ConversionException("Error during "
+                    + getClass().getSimpleName() + " conversion", e);
+        } finally {
+            if (writer != null) {
+                writer.dispose();
+            }
+        }
+    }
+
+    /**
+     * Gets the maximum number of characters to extract, or -1 if unlimited.
+     */
+    protected long getMaxTextLength(Map<String, Serializable> parameters) {
+        Object value = null;
+        if (parameters != null) {
+            value = parameters.get(MAX_TEXT_LENGTH);
+        }
+        if (value == null && descriptor != null) {
+            value = descriptor.getParameters().get(MAX_TEXT_LENGTH);
+        }
+        if (value == null) {
+            value = Framework.getProperty(MAX_TEXT_LENGTH_PROPERTY);
+        }
+        if (value == null) {
+            return -1;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            log.error("Invalid " + MAX_TEXT_LENGTH + ": " + value);
+            return -1;
+        }
+    }
+
+}
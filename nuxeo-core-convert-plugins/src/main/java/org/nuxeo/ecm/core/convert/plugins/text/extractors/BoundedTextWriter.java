@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.plugins.text.extractors;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Writer of extracted text, backed by a temporary file, that stops accepting
+ * text after a maximum number of characters.
+ * <p>
+ * When the maximum is reached the text written so far is kept and a
+ * {@link TextLimitReachedException} is thrown so that the extractor can stop
+ * parsing early.
+ *
+ * @since 5.7
+ */
+public class BoundedTextWriter extends Writer {
+
+    /**
+     * Thrown when the maximum number of characters has been written.
+     */
+    public static class TextLimitReachedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public TextLimitReachedException(long maxLength) {
+            super("Extracted text truncated to " + maxLength + " characters");
+        }
+    }
+
+    protected final long maxLength;
+
+    protected final File file;
+
+    protected final Writer out;
+
+    protected long length;
+
+    protected boolean truncated;
+
+    protected boolean closed;
+
+    /**
+     * @param maxLength the maximum number of characters, or a negative value
+     *            for no limit
+     */
+    public BoundedTextWriter(long maxLength) throws IOException {
+        this.maxLength = maxLength;
+        file = File.createTempFile("nxtext-", ".txt");
+        out = new OutputStreamWriter(new BufferedOutputStream(
+                new FileOutputStream(file)), "UTF-8");
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (truncated) {
+            throw new TextLimitReachedException(maxLength);
+        }
+        if (maxLength < 0 || length + len <= maxLength) {
+            out.write(cbuf, off, len);
+            length += len;
+            return;
+        }
+        int remaining = (int) (maxLength - length);
+        if (remaining > 0
+                && Character.isHighSurrogate(cbuf[off + remaining - 1])) {
+            // don't cut a surrogate pair
+            remaining--;
+        }
+        out.write(cbuf, off, remaining);
+        length += remaining;
+        truncated = true;
+        throw new TextLimitReachedException(maxLength);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Number of characters written.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Whether the text was truncated because the maximum was reached.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Closes the writer and returns the written text as a UTF-8 blob. The
+     * underlying temporary file is deleted when the blob is garbage collected.
+     */
+    public Blob getBlob() throws IOException {
+        close();
+        Blob blob = new FileBlob(file, "text/plain", "UTF-8");
+        file.deleteOnExit();
+        Framework.trackFile(file, blob);
+        return blob;
+    }
+
+    /**
+     * Closes the writer and deletes the written text.
+     */
+    public void dispose() {
+        try {
+            close();
+        } catch (IOException e) {
+            // ignore, file is deleted anyway
+        }
+        file.delete();
+    }
+
+}
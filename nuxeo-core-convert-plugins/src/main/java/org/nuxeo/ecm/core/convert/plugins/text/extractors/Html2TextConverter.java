@@ -20,6 +20,7 @@ package org.nuxeo.ecm.core.convert.plugins.text.extractors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.Map;
 
 import net.htmlparser.jericho.Renderer;
@@ -30,11 +31,6 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.api.impl.blob.StreamingBlob;
-import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
-import org.nuxeo.ecm.core.convert.api.ConversionException;
-import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
-import org.nuxeo.ecm.core.convert.extension.Converter;
-import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 import org.nuxeo.runtime.services.streaming.StreamSource;
 import org.nuxeo.runtime.services.streaming.StringSource;
 
@@ -45,47 +41,32 @@ import org.nuxeo.runtime.services.streaming.StringSource;
  * @author <a href="mailto:troger@nuxeo.com">Thomas Roger</a>
  * @author <a href="mailto:ogrisel@nuxeo.com">Olivier Grisel</a>
  */
-public class Html2TextConverter implements Converter {
+public class Html2TextConverter extends AbstractStreamingTextConverter {
 
     private static final Log log = LogFactory.getLog(Html2TextConverter.class);
 
     @Override
-    public BlobHolder convert(BlobHolder blobHolder,
-            Map<String, Serializable> parameters) throws ConversionException {
+    protected void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws Exception {
+        Blob blob = blobHolder.getBlob();
+        Source source = null;
 
-        InputStream stream = null;
-        try {
-            Blob blob = blobHolder.getBlob();
-            Source source = null;
-
-            // if the underlying source is unambiguously decoded, access the
-            // decoded string directly
-            if (blob instanceof StreamingBlob) {
-                StreamingBlob sblob = (StreamingBlob) blob;
-                StreamSource streamSource = sblob.getStreamSource();
-                if (streamSource instanceof StringSource) {
-                    source = new Source(
-                            ((StringSource) streamSource).getString());
-                }
+        // if the underlying source is unambiguously decoded, access the
+        // decoded string directly
+        if (blob instanceof StreamingBlob) {
+            StreamingBlob sblob = (StreamingBlob) blob;
+            StreamSource streamSource = sblob.getStreamSource();
+            if (streamSource instanceof StringSource) {
+                source = new Source(((StringSource) streamSource).getString());
             }
-            if (source == null) {
-                // use the parser charset heuristic to decode properly
-                source = new Source(blob.getStream());
-            }
-            Renderer renderer = source.getRenderer();
-            renderer.setIncludeHyperlinkURLs(false);
-            renderer.setDecorateFontStyles(false);
-            String text = renderer.toString();
-            text = text.replaceAll("\r\n", "\n"); // unix end of line
-            text = text.replaceAll(" *\n", "\n"); // clean trailing spaces
-            text = text.replaceAll("\\n\\n+", "\n\n"); // clean multiple lines
-            text = text.trim();
-            return new SimpleCachableBlobHolder(new StringBlob(text,
-                    "text/plain"));
-        } catch (Exception e) {
-            throw new ConversionException("Error during Html2Text conversion", e);
-        } finally {
-            if (stream != null) {
+        }
+        if (source == null) {
+            // use the parser charset heuristic to decode properly
+            InputStream stream = blob.getStream();
+            try {
+                source = new Source(stream);
+            } finally {
                 try {
                     stream.close();
                 } catch (IOException e) {
@@ -93,10 +74,15 @@ public class Html2TextConverter implements Converter {
                 }
             }
         }
-    }
-
-    @Override
-    public void init(ConverterDescriptor descriptor) {
+        Renderer renderer = source.getRenderer();
+        renderer.setIncludeHyperlinkURLs(false);
+        renderer.setDecorateFontStyles(false);
+        String text = renderer.toString();
+        text = text.replaceAll("\r\n", "\n"); // unix end of line
+        text = text.replaceAll(" *\n", "\n"); // clean trailing spaces
+        text = text.replaceAll("\\n\\n+", "\n\n"); // clean multiple lines
+        text = text.trim();
+        writer.write(text);
     }
 
 }
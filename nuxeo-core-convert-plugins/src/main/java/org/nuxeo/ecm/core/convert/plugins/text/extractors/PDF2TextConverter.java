@@ -17,12 +17,9 @@
  */
 package org.nuxeo.ecm.core.convert.plugins.text.extractors;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.List;
@@ -39,14 +36,9 @@ import org.apache.pdfbox.util.PDFStreamEngine;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.apache.pdfbox.util.operator.OperatorProcessor;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
-import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
-import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
-import org.nuxeo.ecm.core.convert.api.ConversionException;
-import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
-import org.nuxeo.ecm.core.convert.extension.Converter;
-import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
+import org.nuxeo.ecm.core.convert.plugins.text.extractors.BoundedTextWriter.TextLimitReachedException;
 
-public class PDF2TextConverter implements Converter {
+public class PDF2TextConverter extends AbstractStreamingTextConverter {
 
     public static class PatchedPDFTextStripper extends PDFTextStripper {
 
@@ -97,6 +89,8 @@ public class PDF2TextConverter implements Converter {
                         unsupportedOperators().add(operation);
                     }
                 }
+            } catch (TextLimitReachedException e) {
+                throw e;
             } catch (Exception e) {
                 StackTraceElement root = e.getStackTrace()[0];
                 synchronized (loggedStacks) {
@@ -116,12 +110,10 @@ public class PDF2TextConverter implements Converter {
     private static final Log log = LogFactory.getLog(PDF2TextConverter.class);
 
     @Override
-    public BlobHolder convert(BlobHolder blobHolder,
-            Map<String, Serializable> parameters) throws ConversionException {
-
+    protected void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws Exception {
         PDDocument document = null;
-        File f = null;
-        OutputStream fas = null;
         try {
             document = PDDocument.load(blobHolder.getBlob().getStream());
             // NXP-1556: if document is protected an IOException will be raised
@@ -139,20 +131,10 @@ public class PDF2TextConverter implements Converter {
                 // right-to-left languages.
                 textStripper.setSortByPosition(true);
 
-                String text = textStripper.getText(document);
-                // replace non breaking space by regular spaces (why?)
-                // text = text.replace("\u00a0", " ");
-                f = File.createTempFile("pdfboplugin", ".txt");
-                fas = new FileOutputStream(f);
-                fas.write(text.getBytes("UTF-8"));
-                return new SimpleCachableBlobHolder(new FileBlob(
-                        new FileInputStream(f), "text/plain", "UTF-8"));
-            } else {
-                return new SimpleCachableBlobHolder(new StringBlob(""));
+                // text is written page by page, extraction stops when the
+                // writer is full
+                textStripper.writeText(document, writer);
             }
-        } catch (Exception e) {
-            throw new ConversionException(
-                    "Error during text extraction with PDFBox", e);
         } finally {
             if (document != null) {
                 try {
@@ -161,21 +143,7 @@ public class PDF2TextConverter implements Converter {
                     log.error("Error while closing PDFBox document", e);
                 }
             }
-            if (fas != null) {
-                try {
-                    fas.close();
-                } catch (IOException e) {
-                    log.error(e);
-                }
-            }
-            if (f != null) {
-                f.delete();
-            }
         }
     }
 
-    @Override
-    public void init(ConverterDescriptor descriptor) {
-    }
-
 }
@@ -20,6 +20,7 @@ package org.nuxeo.ecm.core.convert.plugins.text.extractors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -32,13 +33,8 @@ import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.ss.usermodel.Row;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
-import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
-import org.nuxeo.ecm.core.convert.api.ConversionException;
-import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
-import org.nuxeo.ecm.core.convert.extension.Converter;
-import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 
-public class XL2TextConverter implements Converter {
+public class XL2TextConverter extends AbstractStreamingTextConverter {
 
     private static final Log log = LogFactory.getLog(XL2TextConverter.class);
 
@@ -47,11 +43,10 @@ public class XL2TextConverter implements Converter {
     private static final String ROW_SEP = "\n\n";
 
     @Override
-    public BlobHolder convert(BlobHolder blobHolder,
-            Map<String, Serializable> parameters) throws ConversionException {
-
+    protected void extractText(BlobHolder blobHolder,
+            Map<String, Serializable> parameters, Writer writer)
+            throws Exception {
         InputStream stream = null;
-        StringBuffer sb = new StringBuffer();
         try {
             stream = blobHolder.getBlob().getStream();
             POIFSFileSystem fs = new POIFSFileSystem(stream);
@@ -64,15 +59,12 @@ public class XL2TextConverter implements Converter {
                     Iterator<?> cells = row.cellIterator();
                     while (cells.hasNext()) {
                         HSSFCell cell = (HSSFCell) cells.next();
-                        appendTextFromCell(cell, sb);
-                        sb.append(CELL_SEP);
+                        appendTextFromCell(cell, writer);
+                        writer.write(CELL_SEP);
                     }
-                    sb.append(ROW_SEP);
+                    writer.write(ROW_SEP);
                 }
             }
-            return new SimpleCachableBlobHolder(new StringBlob(sb.toString()));
-        } catch (Exception e) {
-            throw new ConversionException("Error during XL2Text conversion", e);
         } finally {
             if (stream != null) {
                 try {
@@ -84,7 +76,8 @@ public class XL2TextConverter implements Converter {
         }
     }
 
-    protected void appendTextFromCell(HSSFCell cell, StringBuffer sb) {
+    protected void appendTextFromCell(HSSFCell cell, Writer writer)
+            throws IOException {
         String cellValue = null;
         switch (cell.getCellType()) {
         case HSSFCell.CELL_TYPE_NUMERIC:
@@ -96,12 +89,8 @@ public class XL2TextConverter implements Converter {
         }
 
         if (cellValue != null && cellValue.length() > 0) {
-            sb.append(cellValue);
+            writer.write(cellValue);
         }
     }
 
-    @Override
-    public void init(ConverterDescriptor descriptor) {
-    }
-
 }
@@ -64,6 +64,24 @@ public class ConverterDescriptor implements Serializable {
     @XNodeList(value = "conversionSteps/subconverter", type = ArrayList.class, componentType = String.class)
     protected List<String> subConverters = new ArrayList<String>();
 
+    /**
+     * Max number of threads for asynchronous conversions, 0 for the global
+     * default.
+     *
+     * @since 5.7
+     */
+    @XNode("async/maxThreads")
+    protected int asyncMaxThreads;
+
+    /**
+     * Max number of asynchronous conversions waiting for a thread, 0 for the
+     * global default.
+     *
+     * @since 5.7
+     */
+    @XNode("async/queueSize")
+    protected int asyncQueueSize;
+
     public String getConverterName() {
         return converterName;
     }
@@ -150,6 +168,12 @@ public class ConverterDescriptor implements Serializable {
         if (other.steps != null && !other.steps.isEmpty()) {
             steps = other.steps;
         }
+        if (other.asyncMaxThreads != 0) {
+            asyncMaxThreads = other.asyncMaxThreads;
+        }
+        if (other.asyncQueueSize != 0) {
+            asyncQueueSize = other.asyncQueueSize;
+        }
 
         return this;
     }
@@ -158,4 +182,18 @@ public class ConverterDescriptor implements Serializable {
         return converterType;
     }
 
+    /**
+     * @since 5.7
+     */
+    public int getAsyncMaxThreads() {
+        return asyncMaxThreads;
+    }
+
+    /**
+     * @since 5.7
+     */
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
 }
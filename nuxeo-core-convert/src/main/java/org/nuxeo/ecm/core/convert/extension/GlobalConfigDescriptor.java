@@ -33,6 +33,10 @@ public class GlobalConfigDescriptor implements Serializable {
 
     public static final int DEFAULT_DISK_CACHE_IN_KB = 10 * 1024;
 
+    public static final int DEFAULT_ASYNC_MAX_THREADS = 2;
+
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+
     private static final String CACHING_DIRECTORY = "convertcache";
 
     private static final long serialVersionUID = 1L;
@@ -51,6 +55,12 @@ public class GlobalConfigDescriptor implements Serializable {
     @XNode("cachingDirectory")
     protected String cachingDirectory;
 
+    @XNode("asyncMaxThreads")
+    protected int asyncMaxThreads;
+
+    @XNode("asyncQueueSize")
+    protected int asyncQueueSize;
+
     public long getGCInterval() {
         if (GCInterval == 0) {
             return DEFAULT_GC_INTERVAL_IN_MIN;
@@ -69,6 +79,20 @@ public class GlobalConfigDescriptor implements Serializable {
         return enableCache;
     }
 
+    public int getAsyncMaxThreads() {
+        if (asyncMaxThreads == 0) {
+            return DEFAULT_ASYNC_MAX_THREADS;
+        }
+        return asyncMaxThreads;
+    }
+
+    public int getAsyncQueueSize() {
+        if (asyncQueueSize == 0) {
+            return DEFAULT_ASYNC_QUEUE_SIZE;
+        }
+        return asyncQueueSize;
+    }
+
     public void update(GlobalConfigDescriptor other) {
         if (other.GCInterval != 0) {
             GCInterval = other.GCInterval;
@@ -80,6 +104,12 @@ public class GlobalConfigDescriptor implements Serializable {
         if (other.cachingDirectory != null) {
             cachingDirectory = other.cachingDirectory;
         }
+        if (other.asyncMaxThreads != 0) {
+            asyncMaxThreads = other.asyncMaxThreads;
+        }
+        if (other.asyncQueueSize != 0) {
+            asyncQueueSize = other.asyncQueueSize;
+        }
 
         enableCache = other.enableCache;
     }
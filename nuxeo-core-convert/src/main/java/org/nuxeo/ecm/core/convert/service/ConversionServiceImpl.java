@@ -17,6 +17,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,12 +31,14 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.api.ConverterCheckResult;
 import org.nuxeo.ecm.core.convert.api.ConverterNotAvailable;
 import org.nuxeo.ecm.core.convert.api.ConverterNotRegistered;
+import org.nuxeo.ecm.core.convert.api.ConverterQueueStatus;
 import org.nuxeo.ecm.core.convert.cache.CacheKeyGenerator;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
 import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 import org.nuxeo.ecm.core.convert.extension.ExternalConverter;
 import org.nuxeo.ecm.core.convert.extension.GlobalConfigDescriptor;
+import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 
@@ -55,6 +61,20 @@ public class ConversionServiceImpl extends DefaultComponent implements
 
     protected static final GlobalConfigDescriptor config = new GlobalConfigDescriptor();
 
+    /**
+     * Executors for asynchronous conversions, created on first use.
+     */
+    protected final ConcurrentMap<String, ConverterExecutor> executors
+            = new ConcurrentHashMap<String, ConverterExecutor>();
+
+    @Override
+    public void deactivate(ComponentContext context) throws Exception {
+        for (ConverterExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+        executors.clear();
+    }
+
     /**
      * Component implementation.
      */
@@ -174,6 +194,55 @@ public class ConversionServiceImpl extends DefaultComponent implements
         }
     }
 
+    @Override
+    public Future<BlobHolder> convertAsync(final String converterName,
+            final BlobHolder blobHolder,
+            final Map<String, Serializable> parameters)
+            throws ConversionException {
+        // fail early if not registered or not available
+        ConverterCheckResult check = isConverterAvailable(converterName);
+        if (!check.isAvailable()) {
+            throw new ConverterNotAvailable(converterName);
+        }
+        ConverterDescriptor desc = converterDescriptors.get(converterName);
+        return getExecutor(desc).submit(new Callable<BlobHolder>() {
+            @Override
+            public BlobHolder call() throws ConversionException {
+                return convert(converterName, blobHolder, parameters);
+            }
+        });
+    }
+
+    protected ConverterExecutor getExecutor(ConverterDescriptor desc) {
+        String converterName = desc.getConverterName();
+        ConverterExecutor executor = executors.get(converterName);
+        if (executor == null) {
+            int maxThreads = desc.getAsyncMaxThreads();
+            if (maxThreads <= 0) {
+                maxThreads = config.getAsyncMaxThreads();
+            }
+            int queueSize = desc.getAsyncQueueSize();
+            if (queueSize <= 0) {
+                queueSize = config.getAsyncQueueSize();
+            }
+            executor = new ConverterExecutor(converterName, maxThreads,
+                    queueSize);
+            ConverterExecutor previous = executors.putIfAbsent(converterName,
+                    executor);
+            if (previous != null) {
+                executor.shutdown();
+                executor = previous;
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public ConverterQueueStatus getQueueStatus(String converterName) {
+        ConverterExecutor executor = executors.get(converterName);
+        return executor == null ? null : executor.getStatus();
+    }
+
     @Override
     public BlobHolder convertToMimeType(String destinationMimeType,
             BlobHolder blobHolder, Map<String, Serializable> parameters)
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.api.ConverterQueueStatus;
+
+/**
+ * Bounded executor running the asynchronous conversions of one converter.
+ * <p>
+ * When all threads are busy conversions wait in a bounded queue; when the
+ * queue is full new conversions are refused instead of being run on the
+ * caller's thread.
+ *
+ * @since 5.7
+ */
+public class ConverterExecutor {
+
+    protected final String converterName;
+
+    protected final int maxThreads;
+
+    protected final int queueCapacity;
+
+    protected final ThreadPoolExecutor executor;
+
+    protected final AtomicInteger running = new AtomicInteger();
+
+    protected final AtomicLong completed = new AtomicLong();
+
+    protected final AtomicLong failed = new AtomicLong();
+
+    protected final AtomicLong cancelled = new AtomicLong();
+
+    protected final AtomicLong rejected = new AtomicLong();
+
+    protected final LatencyHistogram waitHistogram = new LatencyHistogram();
+
+    protected final LatencyHistogram runHistogram = new LatencyHistogram();
+
+    public ConverterExecutor(String converterName, int maxThreads,
+            int queueCapacity) {
+        this.converterName = converterName;
+        this.maxThreads = maxThreads;
+        this.queueCapacity = queueCapacity;
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+                        queueCapacity), new NamedThreadFactory(
+                        "Nuxeo-Conversion-" + converterName + "-"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public Future<BlobHolder> submit(Callable<BlobHolder> callable)
+            throws ConversionException {
+        ConversionTask task = new ConversionTask(callable);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new ConversionException("Conversion queue for converter "
+                    + converterName + " is full (" + queueCapacity + ")", e);
+        }
+        return task;
+    }
+
+    public ConverterQueueStatus getStatus() {
+        return new ConverterQueueStatus(converterName, maxThreads,
+                queueCapacity, executor.getQueue().size(), running.get(),
+                completed.get(), failed.get(), cancelled.get(),
+                rejected.get(), waitHistogram.getPercentiles(),
+                runHistogram.getPercentiles());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Future keeping track of queue and execution times.
+     */
+    protected class ConversionTask extends FutureTask<BlobHolder> {
+
+        protected final long submitted = System.currentTimeMillis();
+
+        protected long started;
+
+        public ConversionTask(Callable<BlobHolder> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+            started = System.currentTimeMillis();
+            waitHistogram.record(started - submitted);
+            running.incrementAndGet();
+            try {
+                super.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        /*
+         * Results are counted in set/setException, before the waiters of
+         * get() are released, so that a caller seeing the result also sees
+         * it counted. done() runs only after the waiters are released.
+         */
+
+        @Override
+        protected void set(BlobHolder result) {
+            if (!isDone()) {
+                runHistogram.record(System.currentTimeMillis() - started);
+                completed.incrementAndGet();
+            }
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            if (!isDone()) {
+                runHistogram.record(System.currentTimeMillis() - started);
+                failed.incrementAndGet();
+            }
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                cancelled.incrementAndGet();
+            }
+        }
+    }
+
+    protected static class NamedThreadFactory implements ThreadFactory {
+
+        protected final AtomicInteger threadNumber = new AtomicInteger();
+
+        protected final String prefix;
+
+        public NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix
+                    + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
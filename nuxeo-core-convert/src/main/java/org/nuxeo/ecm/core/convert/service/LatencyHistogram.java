@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two millisecond buckets.
+ * <p>
+ * Bucket {@code i} counts the values in {@code [2^(i-1), 2^i[} ms, bucket 0
+ * counts values under 1 ms.
+ *
+ * @since 5.7
+ */
+public class LatencyHistogram {
+
+    protected static final int BUCKETS = 32;
+
+    protected final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    protected final AtomicLong max = new AtomicLong();
+
+    public void record(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(millis);
+        if (bucket >= BUCKETS) {
+            bucket = BUCKETS - 1;
+        }
+        counts.incrementAndGet(bucket);
+        long m;
+        while (millis > (m = max.get())) {
+            if (max.compareAndSet(m, millis)) {
+                break;
+            }
+        }
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the approximate value under which the given fraction (0 to 1) of
+     * the recorded values fall.
+     */
+    public long getPercentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return Math.min(1L << i, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns p50, p95, p99 and max.
+     */
+    public long[] getPercentiles() {
+        return new long[] { getPercentile(0.5), getPercentile(0.95),
+                getPercentile(0.99), getMax() };
+    }
+
+}
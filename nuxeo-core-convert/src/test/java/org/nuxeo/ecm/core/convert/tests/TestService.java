@@ -13,17 +13,21 @@
 package org.nuxeo.ecm.core.convert.tests;
 
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
 import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.api.ConverterCheckResult;
 import org.nuxeo.ecm.core.convert.api.ConverterNotAvailable;
 import org.nuxeo.ecm.core.convert.api.ConverterNotRegistered;
+import org.nuxeo.ecm.core.convert.api.ConverterQueueStatus;
 import org.nuxeo.ecm.core.convert.extension.ChainedConverter;
 import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
@@ -214,4 +218,33 @@ public class TestService extends NXRuntimeTestCase {
         assertFalse(ConversionServiceImpl.isCacheEnabled());
     }
 
+    @Test
+    public void testAsyncConversion() throws Exception {
+        deployContrib("org.nuxeo.ecm.core.convert.tests",
+                "OSGI-INF/converters-test-contrib5.xml");
+        ConversionService cs = Framework.getLocalService(ConversionService.class);
+
+        assertNull(cs.getQueueStatus("identityAsync"));
+        Future<BlobHolder> future = cs.convertAsync("identityAsync",
+                new SimpleBlobHolder(new StringBlob("hello")), null);
+        BlobHolder result = future.get(10, TimeUnit.SECONDS);
+        assertEquals("hello", result.getBlob().getString());
+
+        ConverterQueueStatus status = cs.getQueueStatus("identityAsync");
+        assertNotNull(status);
+        assertEquals(1, status.getMaxThreads());
+        assertEquals(5, status.getQueueCapacity());
+        assertEquals(1, status.getCompleted());
+        assertEquals(0, status.getFailed());
+
+        boolean notRegistred = false;
+        try {
+            cs.convertAsync("toto", new SimpleBlobHolder(new StringBlob("")),
+                    null);
+        } catch (ConverterNotRegistered e) {
+            notRegistred = true;
+        }
+        assertTrue(notRegistred);
+    }
+
 }
@@ -27,6 +27,7 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.collections.ListenerList;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.RecoverableClientException;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventBundle;
 import org.nuxeo.ecm.core.event.EventContext;
@@ -205,14 +206,22 @@ public class EventServiceImpl implements EventService, EventServiceAdmin {
 
         String ename = event.getName();
         EventStats stats = getEventStats();
+        ResourceProfile profile = ResourceProfile.current();
+        if (profile != null) {
+            profile.addEvent();
+        }
         for (EventListenerDescriptor desc : listenerDescriptors.getEnabledInlineListenersDescriptors()) {
             if (desc.acceptEvent(ename)) {
                 Throwable rollbackException = null;
                 try {
                     long t0 = System.currentTimeMillis();
                     desc.asEventListener().handleEvent(event);
+                    long delta = System.currentTimeMillis() - t0;
                     if (stats != null) {
-                        stats.logSyncExec(desc, System.currentTimeMillis() - t0);
+                        stats.logSyncExec(desc, delta);
+                    }
+                    if (profile != null) {
+                        profile.addListenerTime(delta);
                     }
                 } catch (Throwable t) {
                     String message;
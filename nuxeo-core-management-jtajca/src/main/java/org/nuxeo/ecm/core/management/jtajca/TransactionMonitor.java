@@ -43,4 +43,29 @@ public interface TransactionMonitor {
     
     TransactionStatistics getLastRollbackedStatistics();
 
+    /**
+     * Gets the longest transactions ended in the last minutes, longest first.
+     *
+     * @since 5.7
+     */
+    List<TransactionStatistics> getMostExpensiveStatistics();
+
+    /**
+     * Checks whether the SQL, cache, event and binary resources used by each
+     * transaction are recorded in its statistics.
+     *
+     * @since 5.7
+     */
+    boolean isResourceProfilingEnabled();
+
+    /**
+     * Enables or disables the recording of the resources used by each
+     * transaction. Disabled by default, unless the
+     * {@code org.nuxeo.ecm.core.management.jtajca.profiling} property is
+     * {@code true}.
+     *
+     * @since 5.7
+     */
+    void setResourceProfilingEnabled(boolean enabled);
+
 }
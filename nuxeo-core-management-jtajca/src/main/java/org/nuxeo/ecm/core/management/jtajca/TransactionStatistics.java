@@ -83,4 +83,45 @@ public interface TransactionStatistics {
 
      boolean isEnded();
 
+    /*
+     * Resource profile, zero when resource profiling is disabled.
+     */
+
+    /** @since 5.7 */
+    long getSqlExecutions();
+
+    /**
+     * Time spent executing SQL statements, in microseconds.
+     *
+     * @since 5.7
+     */
+    long getSqlTime();
+
+    /** @since 5.7 */
+    long getRowsRead();
+
+    /** @since 5.7 */
+    long getRowsWritten();
+
+    /**
+     * Ratio of the row cache accesses that were hits, {@code -1} if the cache
+     * wasn't accessed.
+     *
+     * @since 5.7
+     */
+    double getCacheHitRatio();
+
+    /** @since 5.7 */
+    long getEvents();
+
+    /**
+     * Time spent in synchronous event listeners, in milliseconds.
+     *
+     * @since 5.7
+     */
+    long getListenerTime();
+
+    /** @since 5.7 */
+    long getBinaryBytesWritten();
+
 }
\ No newline at end of file
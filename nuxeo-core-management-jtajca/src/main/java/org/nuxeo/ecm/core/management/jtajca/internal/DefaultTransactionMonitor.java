@@ -21,9 +21,9 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanRegistrationException;
@@ -45,8 +45,10 @@ import org.apache.geronimo.transaction.manager.XidImpl;
 import org.apache.log4j.MDC;
 import org.javasimon.SimonManager;
 import org.javasimon.Stopwatch;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
 import org.nuxeo.ecm.core.management.jtajca.TransactionMonitor;
 import org.nuxeo.ecm.core.management.jtajca.TransactionStatistics;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.jtajca.NuxeoContainer;
 
 /**
@@ -58,6 +60,13 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
 
     protected static final Log log = LogFactory.getLog(DefaultTransactionMonitor.class);
 
+    /**
+     * Property enabling resource profiling at startup.
+     *
+     * @since 5.7
+     */
+    public static final String PROFILING_PROPERTY = "org.nuxeo.ecm.core.management.jtajca.profiling";
+
     protected TransactionManagerImpl tm;
 
     protected MBeanServer mbs;
@@ -65,6 +74,10 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
     public void install() {
         tm = lookup();
         tm.addTransactionAssociationListener(this);
+        if (Boolean.parseBoolean(Framework.getProperty(PROFILING_PROPERTY,
+                "false"))) {
+            ResourceProfile.setEnabled(true);
+        }
         bindManagementInterface();
     }
 
@@ -120,7 +133,10 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
 
     protected TransactionStatistics lastRollbackedStatistics;
 
-    protected final Map<Object, DefaultTransactionStatistics> activeStatistics = new HashMap<Object, DefaultTransactionStatistics>();
+    protected final Map<Object, DefaultTransactionStatistics> activeStatistics = new ConcurrentHashMap<Object, DefaultTransactionStatistics>();
+
+    /** @since 5.7 */
+    protected final ExpensiveTransactions expensiveStatistics = new ExpensiveTransactions();
 
     public static String id(Object key) {
         if (key instanceof XidImpl) {
@@ -153,9 +169,8 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
 
         info.startTimestamp = now;
         info.startCapturedContext = new Throwable("** start invoke context **");
-        synchronized (this) {
-            activeStatistics.put(key, info);
-        }
+        info.profile = ResourceProfile.begin();
+        activeStatistics.put(key, info);
         tm.registerInterposedSynchronization(this); // register end status
         if (log.isTraceEnabled()) {
             log.trace(info.toString());
@@ -165,11 +180,9 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
     @Override
     public void threadUnassociated(Transaction tx) {
         try {
+            ResourceProfile.end();
             Object key = ((TransactionImpl) tx).getTransactionKey();
-            DefaultTransactionStatistics stats;
-            synchronized (DefaultTransactionMonitor.class) {
-                stats = activeStatistics.remove(key);
-            }
+            DefaultTransactionStatistics stats = activeStatistics.remove(key);
             if (stats == null) {
                 log.debug(key + " not found in active statistics map");
                 return;
@@ -184,6 +197,9 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
             } else if (TransactionStatistics.Status.ROLLEDBACK.equals(stats.status)) {
                 lastRollbackedStatistics = stats;
             }
+            if (stats.isEnded()) {
+                expensiveStatistics.record(stats);
+            }
         } finally {
             MDC.remove("tx");
         }
@@ -229,12 +245,24 @@ public class DefaultTransactionMonitor implements TransactionManagerMonitor,
         return lastRollbackedStatistics;
     }
 
+    @Override
+    public List<TransactionStatistics> getMostExpensiveStatistics() {
+        return expensiveStatistics.get();
+    }
+
+    @Override
+    public boolean isResourceProfilingEnabled() {
+        return ResourceProfile.isEnabled();
+    }
+
+    @Override
+    public void setResourceProfilingEnabled(boolean enabled) {
+        ResourceProfile.setEnabled(enabled);
+    }
+
     protected DefaultTransactionStatistics thisStatistics() {
         Object key = tm.getTransactionKey();
-        DefaultTransactionStatistics stats;
-        synchronized (this) {
-            stats = (DefaultTransactionStatistics) activeStatistics.get(key);
-        }
+        DefaultTransactionStatistics stats = activeStatistics.get(key);
         if (stats == null) {
             log.debug(key + " not found in active statistics map");
         }
@@ -22,6 +22,7 @@ import java.text.DateFormat;
 import java.util.Date;
 
 import org.javasimon.Split;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
 import org.nuxeo.ecm.core.management.jtajca.TransactionStatistics;
 
 /**
@@ -46,6 +47,9 @@ public class DefaultTransactionStatistics implements TransactionStatistics {
 
     protected Split split;
 
+    /** @since 5.7 */
+    protected ResourceProfile profile;
+
     protected DefaultTransactionStatistics(Object key) {
         this.id = DefaultTransactionMonitor.id(key);
     }
@@ -105,6 +109,46 @@ public class DefaultTransactionStatistics implements TransactionStatistics {
         return endTimestamp != 0;
     }
 
+    @Override
+    public long getSqlExecutions() {
+        return profile == null ? 0 : profile.getSqlExecutions();
+    }
+
+    @Override
+    public long getSqlTime() {
+        return profile == null ? 0 : profile.getSqlTime();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return profile == null ? 0 : profile.getRowsRead();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return profile == null ? 0 : profile.getRowsWritten();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        return profile == null ? -1 : profile.getCacheHitRatio();
+    }
+
+    @Override
+    public long getEvents() {
+        return profile == null ? 0 : profile.getEvents();
+    }
+
+    @Override
+    public long getListenerTime() {
+        return profile == null ? 0 : profile.getListenerTime();
+    }
+
+    @Override
+    public long getBinaryBytesWritten() {
+        return profile == null ? 0 : profile.getBinaryBytesWritten();
+    }
+
     protected static String printCapturedContext(Throwable e) {
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw, false);
@@ -119,8 +163,9 @@ public class DefaultTransactionStatistics implements TransactionStatistics {
         final long duration = getDuration();
         if (duration > 0) {
             writer.write(String.format(
-                    "Transaction has started at %s with a duration of %d ms and was in status %s\n%s",
-                    date, duration, status, getEndCapturedContextMessage()));
+                    "Transaction has started at %s with a duration of %d ms and was in status %s%s\n%s",
+                    date, duration, status, printProfile(),
+                    getEndCapturedContextMessage()));
         } else {
             writer.write(String.format(
                     "Transaction has started at %s and was in state %s\n%s",
@@ -129,6 +174,10 @@ public class DefaultTransactionStatistics implements TransactionStatistics {
         writer.flush();
     }
 
+    protected String printProfile() {
+        return profile == null ? "" : " (" + profile + ")";
+    }
+
     @Override
     public String toString() {
         StringWriter sw = new StringWriter();
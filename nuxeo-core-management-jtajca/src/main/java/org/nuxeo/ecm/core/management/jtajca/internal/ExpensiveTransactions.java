@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.management.jtajca.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.nuxeo.ecm.core.management.jtajca.TransactionStatistics;
+
+/**
+ * Keeps the longest transactions that ended recently, longest first.
+ * <p>
+ * Transactions shorter than all the kept ones are rejected without locking.
+ *
+ * @since 5.7
+ */
+public class ExpensiveTransactions {
+
+    public static final int DEFAULT_SIZE = 20;
+
+    public static final long DEFAULT_WINDOW = 10 * 60 * 1000; // 10 min
+
+    protected final int size;
+
+    protected final long window;
+
+    protected final List<DefaultTransactionStatistics> top;
+
+    /** Duration under which a transaction is not kept, when full. */
+    protected volatile long threshold;
+
+    /** Time at which the oldest kept transaction expires. */
+    protected volatile long expiry;
+
+    public ExpensiveTransactions() {
+        this(DEFAULT_SIZE, DEFAULT_WINDOW);
+    }
+
+    public ExpensiveTransactions(int size, long window) {
+        this.size = size;
+        this.window = window;
+        top = new ArrayList<DefaultTransactionStatistics>(size + 1);
+    }
+
+    /**
+     * Records an ended transaction.
+     */
+    public void record(DefaultTransactionStatistics stats) {
+        long duration = stats.getDuration();
+        if (duration < threshold && stats.endTimestamp < expiry) {
+            return;
+        }
+        synchronized (this) {
+            expire(stats.endTimestamp);
+            int i = 0;
+            while (i < top.size() && top.get(i).getDuration() >= duration) {
+                i++;
+            }
+            if (i >= size) {
+                return;
+            }
+            top.add(i, stats);
+            if (top.size() > size) {
+                top.remove(size);
+            }
+            update();
+        }
+    }
+
+    /**
+     * Gets the longest recent transactions, longest first.
+     */
+    public synchronized List<TransactionStatistics> get() {
+        expire(System.currentTimeMillis());
+        return new ArrayList<TransactionStatistics>(top);
+    }
+
+    public synchronized void clear() {
+        top.clear();
+        update();
+    }
+
+    protected void expire(long now) {
+        if (now < expiry) {
+            return;
+        }
+        for (Iterator<DefaultTransactionStatistics> it = top.iterator(); it.hasNext();) {
+            if (it.next().endTimestamp + window <= now) {
+                it.remove();
+            }
+        }
+        update();
+    }
+
+    protected void update() {
+        threshold = top.size() < size ? 0 : top.get(size - 1).getDuration();
+        long oldest = Long.MAX_VALUE;
+        for (DefaultTransactionStatistics stats : top) {
+            oldest = Math.min(oldest, stats.endTimestamp);
+        }
+        expiry = oldest == Long.MAX_VALUE ? Long.MAX_VALUE : oldest + window;
+    }
+
+}
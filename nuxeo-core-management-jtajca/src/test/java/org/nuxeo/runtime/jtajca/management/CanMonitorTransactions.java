@@ -2,6 +2,7 @@ package org.nuxeo.runtime.jtajca.management;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import java.lang.management.ManagementFactory;
@@ -27,6 +28,7 @@ import org.apache.log4j.spi.LoggingEvent;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
 import org.nuxeo.ecm.core.management.jtajca.TransactionMonitor;
 import org.nuxeo.ecm.core.management.jtajca.TransactionStatistics;
 import org.nuxeo.ecm.core.test.TransactionalFeature;
@@ -196,6 +198,90 @@ public class CanMonitorTransactions {
         assertThat(task.get(), is(true));
     }
 
+    protected class TestMostExpensiveStatistics implements Callable<Boolean> {
+
+        @Override
+        public Boolean call() throws Exception {
+            begin();
+            Thread.sleep(10);
+            commit();
+            List<TransactionStatistics> stats = monitor.getMostExpensiveStatistics();
+            assertThat(stats.isEmpty(), is(false));
+            long previous = Long.MAX_VALUE;
+            for (TransactionStatistics s : stats) {
+                assertThat(s.getDuration() <= previous, is(true));
+                previous = s.getDuration();
+            }
+            return Boolean.TRUE;
+        }
+
+    }
+
+    @Test
+    public void isMostExpensiveStatisticsRecorded()
+            throws InterruptedException, ExecutionException {
+        FutureTask<Boolean> task = new FutureTask<Boolean>(
+                new TestMostExpensiveStatistics());
+        executor.execute(task);
+        assertThat(task.get(), is(true));
+    }
+
+    protected class TestResourceProfile implements Callable<Boolean> {
+
+        @Override
+        public Boolean call() throws Exception {
+            begin();
+            // not recorded, profiling is disabled by default
+            assertThat(ResourceProfile.current(), nullValue());
+            commit();
+            assertThat(monitor.getLastCommittedStatistics().getSqlExecutions(),
+                    is(0L));
+
+            monitor.setResourceProfilingEnabled(true);
+            try {
+                begin();
+                ResourceProfile profile = ResourceProfile.current();
+                assertThat(profile, notNullValue());
+                profile.addSqlExecution(100);
+                profile.addSqlExecution(50);
+                profile.addRowsRead(10);
+                profile.addRowsWritten(3);
+                profile.addCacheAccess(true);
+                profile.addCacheAccess(true);
+                profile.addCacheAccess(true);
+                profile.addCacheAccess(false);
+                profile.addEvent();
+                profile.addEvent();
+                profile.addListenerTime(5);
+                profile.addBinaryBytesWritten(1024);
+                commit();
+            } finally {
+                monitor.setResourceProfilingEnabled(false);
+            }
+            TransactionStatistics stats = monitor.getLastCommittedStatistics();
+            assertThat(stats.getSqlExecutions(), is(2L));
+            assertThat(stats.getSqlTime(), is(150L));
+            assertThat(stats.getRowsRead(), is(10L));
+            assertThat(stats.getRowsWritten(), is(3L));
+            assertThat(stats.getCacheHitRatio(), is(0.75));
+            assertThat(stats.getEvents(), is(2L));
+            assertThat(stats.getListenerTime(), is(5L));
+            assertThat(stats.getBinaryBytesWritten(), is(1024L));
+            return Boolean.TRUE;
+        }
+
+    }
+
+    @Test
+    public void isResourceProfileRecorded() throws InterruptedException,
+            ExecutionException {
+        assertThat(monitor.isResourceProfilingEnabled(), is(false));
+        FutureTask<Boolean> task = new FutureTask<Boolean>(
+                new TestResourceProfile());
+        executor.execute(task);
+        assertThat(task.get(), is(true));
+    }
+
     @Inject
     LogCaptureFeature.Result logCaptureResults;
 
@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2012 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.runtime.jtajca.management;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
+import org.nuxeo.ecm.core.management.jtajca.TransactionMonitor;
+import org.nuxeo.ecm.core.management.jtajca.TransactionStatistics;
+import org.nuxeo.ecm.core.management.jtajca.internal.DefaultTransactionMonitor;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.SimpleFeature;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.google.inject.Inject;
+
+/**
+ * Checks that the resources used by real repository work show up in the
+ * transaction statistics.
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ CanProfileTransactions.ProfilingFeature.class,
+        TransactionalFeature.class, CoreFeature.class })
+@Deploy("org.nuxeo.ecm.core.management.jtajca")
+public class CanProfileTransactions {
+
+    /**
+     * Enables resource profiling at startup, so that the repository
+     * connections are opened with profiling.
+     */
+    public static class ProfilingFeature extends SimpleFeature {
+
+        protected String profilingValue;
+
+        @Override
+        public void start(FeaturesRunner runner) throws Exception {
+            profilingValue = System.getProperty(DefaultTransactionMonitor.PROFILING_PROPERTY);
+            System.setProperty(DefaultTransactionMonitor.PROFILING_PROPERTY,
+                    "true");
+        }
+
+        @Override
+        public void stop(FeaturesRunner runner) throws Exception {
+            Properties props = System.getProperties();
+            if (profilingValue != null) {
+                props.put(DefaultTransactionMonitor.PROFILING_PROPERTY,
+                        profilingValue);
+            } else {
+                props.remove(DefaultTransactionMonitor.PROFILING_PROPERTY);
+            }
+            ResourceProfile.setEnabled(false);
+        }
+    }
+
+    protected TransactionMonitor monitor;
+
+    @Before
+    public void lookupMonitor() throws JMException {
+        MBeanServer srv = ManagementFactory.getPlatformMBeanServer();
+        monitor = JMX.newMXBeanProxy(srv, new ObjectName(
+                TransactionMonitor.NAME), TransactionMonitor.class);
+    }
+
+    @Inject
+    CoreSession session;
+
+    @Test
+    public void isRepositoryWorkProfiled() throws Exception {
+        assertThat(monitor.isResourceProfilingEnabled(), is(true));
+        // profile a transaction holding only the work below
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        DocumentModel doc = session.createDocumentModel("/", "file", "File");
+        doc.setPropertyValue("file:content", new StringBlob("some content"));
+        doc = session.createDocument(doc);
+        session.save();
+        // the copy is read back through the row cache
+        session.copy(doc.getRef(), session.getRootDocument().getRef(), "copy");
+        session.save();
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionStatistics stats = monitor.getLastCommittedStatistics();
+        TransactionHelper.startTransaction();
+
+        assertThat(stats.getSqlExecutions(), greaterThan(0L));
+        assertThat(stats.getRowsWritten(), greaterThan(0L));
+        assertThat(stats.getCacheHitRatio(), greaterThanOrEqualTo(0.0));
+        assertThat(stats.getEvents(), greaterThan(0L));
+        assertThat(stats.getBinaryBytesWritten(), greaterThan(0L));
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.management.events;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestCallStat {
+
+    @Test
+    public void testPercentiles() throws Exception {
+        CallStat stat = new CallStat("test");
+        long now = 1000 * CallStat.WINDOW;
+        for (int i = 0; i < 98; i++) {
+            stat.update(3, now);
+        }
+        stat.update(100, now);
+        stat.update(1000, now);
+        assertEquals(100, stat.getCallCount());
+        assertEquals(98 * 3 + 100 + 1000, stat.getAccumulatedTime());
+        assertEquals(1000, stat.getMaxTime());
+        assertEquals(4, stat.getPercentile(0.5, now)); // bucket [2, 4[
+        assertEquals(4, stat.getPercentile(0.95, now));
+        assertEquals(128, stat.getPercentile(0.99, now)); // bucket [64, 128[
+        assertEquals(1000, stat.getPercentile(1, now));
+
+        // old windows are not counted
+        long later = now + CallStat.WINDOWS * CallStat.WINDOW;
+        assertEquals(0, stat.getPercentile(0.5, later));
+        stat.update(10, later);
+        assertEquals(16, stat.getPercentile(0.5, later)); // bucket [8, 16[
+        assertEquals(101, stat.getCallCount());
+        assertEquals(1000, stat.getMaxTime());
+    }
+
+}
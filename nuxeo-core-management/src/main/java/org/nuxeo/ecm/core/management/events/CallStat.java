@@ -13,16 +13,49 @@
  */
 package org.nuxeo.ecm.core.management.events;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Simple class to store Listeners call statistics.
+ * <p>
+ * Updates are lock-free. Besides the totals, the latencies of the recent
+ * calls are kept in power-of-two millisecond histograms, one per minute over
+ * the last {@value #WINDOWS} minutes, to compute approximate percentiles.
  *
  * @author Thierry Delprat
  */
 public class CallStat {
 
-    long accumulatedTime = 0;
+    /**
+     * Duration of a histogram window, in milliseconds.
+     *
+     * @since 5.7
+     */
+    public static final long WINDOW = 60 * 1000;
+
+    /**
+     * Number of windows over which percentiles are computed.
+     *
+     * @since 5.7
+     */
+    public static final int WINDOWS = 5;
+
+    /** Bucket {@code i} counts calls in {@code [2^(i-1), 2^i[} ms. */
+    protected static final int BUCKETS = 32;
+
+    protected final AtomicLong accumulatedTime = new AtomicLong();
 
-    int callCount = 0;
+    protected final AtomicLong callCount = new AtomicLong();
+
+    protected final AtomicLong maxTime = new AtomicLong();
+
+    /** Window number (time / WINDOW) of each histogram slot. */
+    protected final AtomicLongArray windows = new AtomicLongArray(WINDOWS);
+
+    /** Histogram slots, each of BUCKETS buckets. */
+    protected final AtomicLongArray histograms = new AtomicLongArray(WINDOWS
+            * BUCKETS);
 
     final String label;
 
@@ -31,20 +64,94 @@ public class CallStat {
     }
 
     void update(long delta) {
-        callCount++;
-        accumulatedTime += delta;
+        update(delta, System.currentTimeMillis());
+    }
+
+    void update(long delta, long now) {
+        if (delta < 0) {
+            delta = 0;
+        }
+        callCount.incrementAndGet();
+        accumulatedTime.addAndGet(delta);
+        long m;
+        while (delta > (m = maxTime.get())) {
+            if (maxTime.compareAndSet(m, delta)) {
+                break;
+            }
+        }
+        long window = now / WINDOW;
+        int slot = (int) (window % WINDOWS);
+        long w = windows.get(slot);
+        if (w != window && windows.compareAndSet(slot, w, window)) {
+            // recycle the slot of an old window
+            // (a concurrent update may be lost, this is approximate)
+            for (int i = 0; i < BUCKETS; i++) {
+                histograms.set(slot * BUCKETS + i, 0);
+            }
+        }
+        int bucket = Long.SIZE - Long.numberOfLeadingZeros(delta);
+        histograms.incrementAndGet(slot * BUCKETS
+                + Math.min(bucket, BUCKETS - 1));
     }
 
     public long getAccumulatedTime() {
-        return accumulatedTime;
+        return accumulatedTime.get();
     }
 
     public int getCallCount() {
-        return callCount;
+        return (int) callCount.get();
     }
 
     public String getLabel() {
         return label;
     }
 
+    /**
+     * Gets the longest call time, in milliseconds.
+     *
+     * @since 5.7
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * Gets the approximate time under which the given fraction (0 to 1) of
+     * the recent calls fall, in milliseconds.
+     *
+     * @since 5.7
+     */
+    public long getPercentile(double fraction) {
+        return getPercentile(fraction, System.currentTimeMillis());
+    }
+
+    protected long getPercentile(double fraction, long now) {
+        long current = now / WINDOW;
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int slot = 0; slot < WINDOWS; slot++) {
+            long w = windows.get(slot);
+            if (w <= current - WINDOWS || w > current) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = histograms.get(slot * BUCKETS + i);
+                counts[i] += n;
+                total += n;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold) {
+                return Math.min(1L << i, getMaxTime());
+            }
+        }
+        return getMaxTime();
+    }
+
 }
@@ -13,26 +13,32 @@
  */
 package org.nuxeo.ecm.core.management.events;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.nuxeo.ecm.core.event.impl.EventListenerDescriptor;
 
 /**
  * Helper class to store statistics about listeners calls.
+ * <p>
+ * Recording doesn't lock, and costs a volatile read when disabled.
  *
  * @author Thierry Delprat
  */
 public class EventStatsHolder {
 
-    protected static boolean collectAsyncHandlersExecTime = false;
+    protected static volatile boolean collectAsyncHandlersExecTime = false;
 
-    protected static boolean collectSyncHandlersExecTime = false;
+    protected static volatile boolean collectSyncHandlersExecTime = false;
 
-    protected static Map<String, CallStat> syncStats = new HashMap<String, CallStat>();
+    protected static final ConcurrentMap<String, CallStat> syncStats = new ConcurrentHashMap<String, CallStat>();
 
-    protected static Map<String, CallStat> aSyncStats = new HashMap<String, CallStat>();
+    protected static final ConcurrentMap<String, CallStat> aSyncStats = new ConcurrentHashMap<String, CallStat>();
 
     private EventStatsHolder() {
     }
@@ -60,9 +66,7 @@ public class EventStatsHolder {
      * @since 5.6
      */
     public static void clearStats() {
-        synchronized(aSyncStats) {
-            EventStatsHolder.aSyncStats.clear();
-        }
+        aSyncStats.clear();
     }
 
     public static void logAsyncExec(EventListenerDescriptor desc, long delta) {
@@ -70,21 +74,18 @@ public class EventStatsHolder {
             return;
         }
         String name = desc.getName();
-        synchronized (aSyncStats) {
-            CallStat stat = aSyncStats.get(name);
-            if (stat == null) {
-                String label = desc.asPostCommitListener().getClass()
-                        .getSimpleName();
-                if (desc.getIsAsync()) {
-                    label += "(async)";
-                } else {
-                    label += "(sync)";
-                }
-                stat = new CallStat(label);
-                aSyncStats.put(name, stat);
+        CallStat stat = aSyncStats.get(name);
+        if (stat == null) {
+            String label = desc.asPostCommitListener().getClass()
+                    .getSimpleName();
+            if (desc.getIsAsync()) {
+                label += "(async)";
+            } else {
+                label += "(sync)";
             }
-            stat.update(delta);
+            stat = getOrCreate(aSyncStats, name, label);
         }
+        stat.update(delta);
     }
 
     public static void logSyncExec(EventListenerDescriptor desc, long delta) {
@@ -92,16 +93,20 @@ public class EventStatsHolder {
             return;
         }
         String name = desc.getName();
-        synchronized (syncStats) {
-            CallStat stat = syncStats.get(name);
-            if (stat == null) {
-                String label = desc.asEventListener().getClass()
-                        .getSimpleName();
-                stat = new CallStat(label);
-                syncStats.put(name, stat);
-            }
-            stat.update(delta);
+        CallStat stat = syncStats.get(name);
+        if (stat == null) {
+            String label = desc.asEventListener().getClass()
+                    .getSimpleName();
+            stat = getOrCreate(syncStats, name, label);
         }
+        stat.update(delta);
+    }
+
+    protected static CallStat getOrCreate(ConcurrentMap<String, CallStat> stats,
+            String name, String label) {
+        CallStat stat = new CallStat(label);
+        CallStat previous = stats.putIfAbsent(name, stat);
+        return previous == null ? stat : previous;
     }
 
     public static String getAsyncHandlersExecTime() {
@@ -128,38 +133,42 @@ public class EventStatsHolder {
 
     protected static String getStringSummary(Map<String, CallStat> stats) {
         StringBuffer sb = new StringBuffer();
-        synchronized (stats) {
+        List<Entry<String, CallStat>> entries = new ArrayList<Entry<String, CallStat>>(
+                stats.entrySet());
 
-            long totalTime = 0;
-            for (String name : stats.keySet()) {
-                totalTime += stats.get(name).getAccumulatedTime();
-            }
+        long totalTime = 0;
+        for (Entry<String, CallStat> es : entries) {
+            totalTime += es.getValue().getAccumulatedTime();
+        }
 
-            for (String name : stats.keySet()) {
-                CallStat stat = stats.get(name);
-                sb.append(name);
-                sb.append(" - ");
-                sb.append(stat.getLabel());
-                sb.append(" - ");
-                sb.append(stat.getCallCount());
-                sb.append(" calls - ");
-                sb.append(stat.getAccumulatedTime());
-                sb.append("ms - ");
-                String pcent = String.format("%.2f", 100.0 * stat.getAccumulatedTime() / totalTime);
-                sb.append(pcent);
-                sb.append("%\n");
-            }
+        for (Entry<String, CallStat> es : entries) {
+            CallStat stat = es.getValue();
+            sb.append(es.getKey());
+            sb.append(" - ");
+            sb.append(stat.getLabel());
+            sb.append(" - ");
+            sb.append(stat.getCallCount());
+            sb.append(" calls - ");
+            sb.append(stat.getAccumulatedTime());
+            sb.append("ms - ");
+            String pcent = String.format("%.2f", 100.0 * stat.getAccumulatedTime() / totalTime);
+            sb.append(pcent);
+            sb.append("% - p50/p95/p99/max ");
+            sb.append(stat.getPercentile(0.5));
+            sb.append('/');
+            sb.append(stat.getPercentile(0.95));
+            sb.append('/');
+            sb.append(stat.getPercentile(0.99));
+            sb.append('/');
+            sb.append(stat.getMaxTime());
+            sb.append("ms\n");
         }
         return sb.toString();
     }
 
     public static void resetHandlersExecTime() {
-        synchronized (syncStats) {
-            syncStats = new HashMap<String, CallStat>();
-        }
-        synchronized (aSyncStats) {
-            aSyncStats = new HashMap<String, CallStat>();
-        }
+        syncStats.clear();
+        aSyncStats.clear();
     }
 
 }
@@ -28,7 +28,15 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,11 +52,17 @@ import org.nuxeo.ecm.core.schema.types.TypeException;
 import org.nuxeo.runtime.api.Framework;
 import org.xml.sax.SAXException;
 
+import com.sun.xml.xsom.XSSchemaSet;
+
 /**
  * Schema Manager implementation.
  * <p>
  * Holds basic types (String, Integer, etc.), schemas, document types and
  * facets.
+ * <p>
+ * The effective schemas, facets and document types are recomputed under a
+ * lock when registrations change, then published as an immutable
+ * {@link Registry} snapshot, so readers don't lock.
  */
 public class SchemaManagerImpl implements SchemaManager {
 
@@ -58,7 +72,15 @@ public class SchemaManagerImpl implements SchemaManager {
      * Whether there have been changes to the registered schemas, facets or
      * document types that require recomputation of the effective ones.
      */
-    protected boolean dirty = true;
+    protected volatile boolean dirty = true;
+
+    /**
+     * The effective registries, replaced as a whole after each
+     * recomputation.
+     *
+     * @since 5.7
+     */
+    protected volatile Registry registry;
 
     /** Basic type registry. */
     protected Map<String, Type> types = new HashMap<String, Type>();
@@ -75,15 +97,20 @@ public class SchemaManagerImpl implements SchemaManager {
     /** All the registered document types. */
     protected List<DocumentTypeDescriptor> allDocumentTypes = new ArrayList<DocumentTypeDescriptor>();
 
+    /*
+     * Effective registries being recomputed. Only accessed under the lock,
+     * readers use the published registry.
+     */
+
     /** Effective prefetch info. */
     protected PrefetchInfo prefetchInfo;
 
     /** Effective schemas. */
     protected Map<String, Schema> schemas = new HashMap<String, Schema>();
 
-    protected final Map<String, Schema> uriToSchema = new HashMap<String, Schema>();
+    protected Map<String, Schema> uriToSchema = new HashMap<String, Schema>();
 
-    protected final Map<String, Schema> prefixToSchema = new HashMap<String, Schema>();
+    protected Map<String, Schema> prefixToSchema = new HashMap<String, Schema>();
 
     /** Effective facets. */
     protected Map<String, CompositeType> facets = new HashMap<String, CompositeType>();
@@ -95,11 +122,49 @@ public class SchemaManagerImpl implements SchemaManager {
 
     protected Map<String, Set<String>> documentTypesForFacet = new HashMap<String, Set<String>>();
 
-    /** Fields computed lazily. */
-    private Map<String, Field> fields = new ConcurrentHashMap<String, Field>();
-
     private File schemaDir;
 
+    /**
+     * Immutable snapshot of the effective registries.
+     *
+     * @since 5.7
+     */
+    protected static class Registry {
+
+        protected final Map<String, Schema> schemas;
+
+        protected final Map<String, Schema> uriToSchema;
+
+        protected final Map<String, Schema> prefixToSchema;
+
+        protected final Map<String, CompositeType> facets;
+
+        protected final Map<String, DocumentTypeImpl> documentTypes;
+
+        protected final Map<String, Set<String>> documentTypesExtending;
+
+        protected final Map<String, Set<String>> documentTypesForFacet;
+
+        /** Fields computed lazily. */
+        protected final Map<String, Field> fields = new ConcurrentHashMap<String, Field>();
+
+        protected Registry(Map<String, Schema> schemas,
+                Map<String, Schema> uriToSchema,
+                Map<String, Schema> prefixToSchema,
+                Map<String, CompositeType> facets,
+                Map<String, DocumentTypeImpl> documentTypes,
+                Map<String, Set<String>> documentTypesExtending,
+                Map<String, Set<String>> documentTypesForFacet) {
+            this.schemas = schemas;
+            this.uriToSchema = uriToSchema;
+            this.prefixToSchema = prefixToSchema;
+            this.facets = facets;
+            this.documentTypes = documentTypes;
+            this.documentTypesExtending = documentTypesExtending;
+            this.documentTypesForFacet = documentTypesForFacet;
+        }
+    }
+
     public SchemaManagerImpl() {
         schemaDir = new File(Framework.getRuntime().getHome(), "schemas");
         if (!schemaDir.isDirectory()) {
@@ -213,6 +278,21 @@ public class SchemaManagerImpl implements SchemaManager {
         dirty = false;
     }
 
+    /**
+     * Gets the current effective registries, recomputing them first if a
+     * dynamic register/unregister happened.
+     * <p>
+     * Doesn't lock unless a recomputation is needed.
+     *
+     * @since 5.7
+     */
+    protected Registry getRegistry() {
+        if (dirty) {
+            checkDirty();
+        }
+        return registry;
+    }
+
     /**
      * Recomputes effective registries for schemas, facets and document types.
      */
@@ -221,7 +301,9 @@ public class SchemaManagerImpl implements SchemaManager {
         recomputeSchemas();
         recomputeFacets(); // depend on schemas
         recomputeDocumentTypes(); // depend on schemas and facets
-        fields.clear(); // re-filled lazily
+        // fields are re-filled lazily
+        registry = new Registry(schemas, uriToSchema, prefixToSchema, facets,
+                documentTypes, documentTypesExtending, documentTypesForFacet);
     }
 
     /*
@@ -242,27 +324,91 @@ public class SchemaManagerImpl implements SchemaManager {
      */
 
     protected void recomputeSchemas() {
-        schemas.clear();
-        uriToSchema.clear();
-        prefixToSchema.clear();
+        // new maps, the previous ones belong to the published registry
+        schemas = new HashMap<String, Schema>();
+        uriToSchema = new HashMap<String, Schema>();
+        prefixToSchema = new HashMap<String, Schema>();
+        // schemas with the same name are copied to the same file, so they
+        // are loaded in successive batches
+        List<SchemaBindingDescriptor> batch = new ArrayList<SchemaBindingDescriptor>();
+        Set<String> batchNames = new HashSet<String>();
         for (SchemaBindingDescriptor sd : allSchemas) {
+            if (!batchNames.add(sd.name)) {
+                recomputeSchemas(batch);
+                batch.clear();
+                batchNames.clear();
+                batchNames.add(sd.name);
+            }
+            batch.add(sd);
+        }
+        recomputeSchemas(batch);
+    }
+
+    /**
+     * Loads schemas having distinct names: the XSD files are parsed in
+     * parallel, then the Nuxeo schemas are built and registered in order.
+     *
+     * @since 5.7
+     */
+    protected void recomputeSchemas(List<SchemaBindingDescriptor> sds) {
+        if (sds.isEmpty()) {
+            return;
+        }
+        // copy all files first, as they may include one another
+        List<URL> urls = new ArrayList<URL>(sds.size());
+        List<File> files = new ArrayList<File>(sds.size());
+        for (SchemaBindingDescriptor sd : sds) {
+            URL url = null;
+            File file = null;
             try {
-                recomputeSchema(sd);
-            } catch (Exception e) {
-                if (e instanceof InterruptedException) {
-                    // restore interrupted status
-                    Thread.currentThread().interrupt();
+                url = getSchemaURL(sd);
+                if (url != null) {
+                    file = copySchemaFile(sd, url);
                 }
+            } catch (IOException e) {
                 log.error(e);
             }
+            urls.add(url);
+            files.add(file);
+        }
+        int nThreads = Math.min(sds.size(),
+                Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = nThreads > 1 ? newParserExecutor(nThreads)
+                : null;
+        try {
+            List<Future<XSSchemaSet>> futures = new ArrayList<Future<XSSchemaSet>>(
+                    sds.size());
+            for (File file : files) {
+                futures.add(file == null ? null : submitParse(executor, file));
+            }
+            for (int i = 0; i < sds.size(); i++) {
+                Future<XSSchemaSet> future = futures.get(i);
+                if (future == null) {
+                    continue;
+                }
+                try {
+                    recomputeSchema(sds.get(i), urls.get(i), future.get());
+                } catch (ExecutionException e) {
+                    log.error(e.getCause());
+                } catch (Exception e) {
+                    if (e instanceof InterruptedException) {
+                        // restore interrupted status
+                        Thread.currentThread().interrupt();
+                    }
+                    log.error(e);
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
     }
 
-    protected void recomputeSchema(SchemaBindingDescriptor sd)
-            throws IOException, SAXException, TypeException {
+    protected URL getSchemaURL(SchemaBindingDescriptor sd) {
         if (sd.src == null || sd.src.length() == 0) {
             // log.error("INLINE Schemas ARE NOT YET IMPLEMENTED!");
-            return;
+            return null;
         }
         URL url = sd.context.getLocalResource(sd.src);
         if (url == null) {
@@ -271,27 +417,73 @@ public class SchemaManagerImpl implements SchemaManager {
         }
         if (url == null) {
             log.error("XSD Schema not found: " + sd.src);
-            return;
         }
+        return url;
+    }
+
+    protected File copySchemaFile(SchemaBindingDescriptor sd, URL url)
+            throws IOException {
         InputStream in = url.openStream();
         try {
             File file = new File(schemaDir, sd.name + ".xsd");
             FileUtils.copyToFile(in, file); // may overwrite
-            Schema oldschema = schemas.get(sd.name);
-            // loadSchema calls this.registerSchema
-            XSDLoader schemaLoader = new XSDLoader(this);
-            schemaLoader.loadSchema(sd.name, sd.prefix, file, sd.override);
-            if (oldschema == null) {
-                log.info("Registered schema: " + sd.name + " from "
-                        + url.toString());
-            } else {
-                log.info("Reregistered schema: " + sd.name);
-            }
+            return file;
         } finally {
             in.close();
         }
     }
 
+    /**
+     * Parses a XSD file in the executor, or in the current thread if there is
+     * no executor.
+     */
+    protected Future<XSSchemaSet> submitParse(ExecutorService executor,
+            final File file) {
+        Callable<XSSchemaSet> callable = new Callable<XSSchemaSet>() {
+            @Override
+            public XSSchemaSet call() throws Exception {
+                return new XSDLoader(SchemaManagerImpl.this).parseSchema(file);
+            }
+        };
+        if (executor != null) {
+            return executor.submit(callable);
+        }
+        FutureTask<XSSchemaSet> task = new FutureTask<XSSchemaSet>(callable);
+        task.run();
+        return task;
+    }
+
+    protected ExecutorService newParserExecutor(int nThreads) {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Nuxeo-Schema-Parser-"
+                        + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                // XML parser factories are looked up through it
+                thread.setContextClassLoader(classLoader);
+                return thread;
+            }
+        });
+    }
+
+    protected void recomputeSchema(SchemaBindingDescriptor sd, URL url,
+            XSSchemaSet xsSchemas) throws SAXException, TypeException {
+        Schema oldschema = schemas.get(sd.name);
+        // loadSchema calls this.registerSchema
+        XSDLoader schemaLoader = new XSDLoader(this);
+        schemaLoader.loadSchema(sd.name, sd.prefix, xsSchemas, sd.override);
+        if (oldschema == null) {
+            log.info("Registered schema: " + sd.name + " from "
+                    + url.toString());
+        } else {
+            log.info("Reregistered schema: " + sd.name);
+        }
+    }
+
     // called from XSDLoader, does not do the checkDirty call
     protected Schema getSchemaInternal(String name) {
         return schemas.get(name);
@@ -307,26 +499,23 @@ public class SchemaManagerImpl implements SchemaManager {
 
     @Override
     public Schema[] getSchemas() {
-        checkDirty();
-        return new ArrayList<Schema>(schemas.values()).toArray(new Schema[0]);
+        Registry reg = getRegistry();
+        return new ArrayList<Schema>(reg.schemas.values()).toArray(new Schema[0]);
     }
 
     @Override
     public Schema getSchema(String name) {
-        checkDirty();
-        return schemas.get(name);
+        return getRegistry().schemas.get(name);
     }
 
     @Override
     public Schema getSchemaFromPrefix(String schemaPrefix) {
-        checkDirty();
-        return prefixToSchema.get(schemaPrefix);
+        return getRegistry().prefixToSchema.get(schemaPrefix);
     }
 
     @Override
     public Schema getSchemaFromURI(String schemaURI) {
-        checkDirty();
-        return uriToSchema.get(schemaURI);
+        return getRegistry().uriToSchema.get(schemaURI);
     }
 
     /*
@@ -334,7 +523,7 @@ public class SchemaManagerImpl implements SchemaManager {
      */
 
     protected void recomputeFacets() {
-        facets.clear();
+        facets = new HashMap<String, CompositeType>();
         for (FacetDescriptor fd : allFacets) {
             recomputeFacet(fd);
         }
@@ -364,14 +553,13 @@ public class SchemaManagerImpl implements SchemaManager {
 
     @Override
     public CompositeType[] getFacets() {
-        checkDirty();
-        return new ArrayList<CompositeType>(facets.values()).toArray(new CompositeType[facets.size()]);
+        Registry reg = getRegistry();
+        return new ArrayList<CompositeType>(reg.facets.values()).toArray(new CompositeType[reg.facets.size()]);
     }
 
     @Override
     public CompositeType getFacet(String name) {
-        checkDirty();
-        return facets.get(name);
+        return getRegistry().facets.get(name);
     }
 
     /*
@@ -391,8 +579,8 @@ public class SchemaManagerImpl implements SchemaManager {
             dtds.put(name, newDtd);
         }
         // recompute all types, parents first
-        documentTypes.clear();
-        documentTypesExtending.clear();
+        documentTypes = new HashMap<String, DocumentTypeImpl>();
+        documentTypesExtending = new HashMap<String, Set<String>>();
         registerDocumentType(new DocumentTypeImpl(TypeConstants.DOCUMENT)); // Document
         for (String name : dtds.keySet()) {
             LinkedHashSet<String> stack = new LinkedHashSet<String>();
@@ -400,7 +588,7 @@ public class SchemaManagerImpl implements SchemaManager {
         }
 
         // document types having a given facet
-        documentTypesForFacet.clear();
+        documentTypesForFacet = new HashMap<String, Set<String>>();
         for (DocumentType docType : documentTypes.values()) {
             for (String facet : docType.getFacets()) {
                 Set<String> set = documentTypesForFacet.get(facet);
@@ -517,32 +705,28 @@ public class SchemaManagerImpl implements SchemaManager {
 
     @Override
     public DocumentType getDocumentType(String name) {
-        checkDirty();
-        return documentTypes.get(name);
+        return getRegistry().documentTypes.get(name);
     }
 
     @Override
     public Set<String> getDocumentTypeNamesForFacet(String facet) {
-        checkDirty();
-        return documentTypesForFacet.get(facet);
+        return getRegistry().documentTypesForFacet.get(facet);
     }
 
     @Override
     public Set<String> getDocumentTypeNamesExtending(String docTypeName) {
-        checkDirty();
-        return documentTypesExtending.get(docTypeName);
+        return getRegistry().documentTypesExtending.get(docTypeName);
     }
 
     @Override
     public DocumentType[] getDocumentTypes() {
-        checkDirty();
-        return new ArrayList<DocumentType>(documentTypes.values()).toArray(new DocumentType[0]);
+        Registry reg = getRegistry();
+        return new ArrayList<DocumentType>(reg.documentTypes.values()).toArray(new DocumentType[0]);
     }
 
     @Override
     public int getDocumentTypesCount() {
-        checkDirty();
-        return documentTypes.size();
+        return getRegistry().documentTypes.size();
     }
 
     /*
@@ -551,21 +735,21 @@ public class SchemaManagerImpl implements SchemaManager {
 
     @Override
     public Field getField(String prefixedName) {
-        checkDirty();
-        Field field = fields.get(prefixedName);
+        Registry reg = getRegistry();
+        Field field = reg.fields.get(prefixedName);
         if (field == null) {
             QName qname = QName.valueOf(prefixedName);
             String prefix = qname.getPrefix();
-            Schema schema = getSchemaFromPrefix(prefix);
+            Schema schema = reg.prefixToSchema.get(prefix);
             if (schema == null) {
                 // try using the name
-                schema = getSchema(prefix);
+                schema = reg.schemas.get(prefix);
             }
             if (schema != null) {
                 field = schema.getField(qname.getLocalName());
                 if (field != null) {
                     // map is concurrent so parallelism is ok
-                    fields.put(prefixedName, field);
+                    reg.fields.put(prefixedName, field);
                 }
             }
         }
@@ -127,6 +127,17 @@ public class XSDLoader {
     // called by SchemaManagerImpl
     public Schema loadSchema(String name, String prefix, File file,
             boolean override) throws SAXException, IOException, TypeException {
+        XSSchemaSet xsSchemas = parseSchema(file);
+        return loadSchema(name, prefix, xsSchemas, override);
+    }
+
+    /**
+     * Parses a XSD file. Parsing doesn't depend on the registered schemas and
+     * can be done concurrently.
+     *
+     * @since 5.7
+     */
+    public XSSchemaSet parseSchema(File file) throws SAXException, IOException {
         XSOMParser parser = getParser();
         String systemId = file.toURI().toURL().toExternalForm();
         if (file.getPath().startsWith("\\\\")) { // Windows UNC share
@@ -143,7 +154,7 @@ public class XSDLoader {
         if (collectReferencedXSD) {
             collectReferencedXSD(xsSchemas);
         }
-        return loadSchema(name, prefix, xsSchemas, override);
+        return xsSchemas;
     }
 
     protected void collectReferencedXSD(XSSchemaSet xsSchemas) {
@@ -312,4 +312,25 @@ public class TestSchemaManager extends NXRuntimeTestCase {
                 t.getFacets());
     }
 
+    @Test
+    public void testRegistrySnapshot() throws Exception {
+        deployContrib("org.nuxeo.ecm.core.schema.tests",
+                "OSGI-INF/CoreTestExtensions.xml");
+        // schemas parsed concurrently are all registered
+        for (String name : Arrays.asList("schema-lib", "schema1", "schema2",
+                "common")) {
+            assertNotNull(name, schemaManager.getSchema(name));
+        }
+        assertNotNull(schemaManager.getField("common:icon"));
+        SchemaManagerImpl.Registry registry = schemaManager.getRegistry();
+        assertTrue(registry == schemaManager.getRegistry());
+
+        // a registration publishes a new snapshot, the old one is unchanged
+        schemaManager.registerFacet(new FacetDescriptor("newfacet", null));
+        assertNotNull(schemaManager.getFacet("newfacet"));
+        assertTrue(registry != schemaManager.getRegistry());
+        assertNull(registry.facets.get("newfacet"));
+        assertNotNull(registry.schemas.get("common"));
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Base state of the low-level benchmarks: a repository holding a wide tree
+ * and a deep tree from {@link BenchmarkDataset}, and a session on it.
+ * <p>
+ * Sessions are not thread-safe, so the concrete states are per thread.
+ *
+ * @since 5.7
+ */
+public abstract class BackendBenchmark {
+
+    protected static final int WIDTH = 1000;
+
+    protected static final int DEPTH = 20;
+
+    protected BackendFixture fixture;
+
+    protected SessionImpl session;
+
+    protected List<Node> wide;
+
+    protected List<Node> deep;
+
+    /** Invocation counter, to vary the inputs. */
+    protected int n;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new BackendFixture();
+        fixture.setUp();
+        session = fixture.session;
+        Node root = session.getRootNode();
+        BenchmarkDataset dataset = new BenchmarkDataset();
+        Node folder = session.addChildNode(root, "wide", null, "TestDoc",
+                false);
+        wide = dataset.createWideTree(session, folder, WIDTH);
+        deep = dataset.createDeepTree(session, root, DEPTH);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.tearDown();
+    }
+
+    protected int next() {
+        return n++ & Integer.MAX_VALUE;
+    }
+
+    protected static List<Serializable> getIds(List<Node> nodes) {
+        List<Serializable> ids = new ArrayList<Serializable>(nodes.size());
+        for (Node node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    protected static List<RowId> getRowIds(List<Node> nodes, String tableName) {
+        List<RowId> rowIds = new ArrayList<RowId>(nodes.size());
+        for (Node node : nodes) {
+            rowIds.add(new RowId(tableName, node.getId()));
+        }
+        return rowIds;
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+/**
+ * The runtime, database and low-level repository of the backend benchmarks,
+ * set up like the SQL backend tests against the database chosen by
+ * {@link DatabaseHelper}.
+ *
+ * @since 5.7
+ */
+public class BackendFixture extends NXRuntimeTestCase {
+
+    public RepositoryImpl repository;
+
+    public SessionImpl session;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.ecm.core");
+        deployBundle("org.nuxeo.ecm.core.schema");
+        deployBundle("org.nuxeo.ecm.core.event");
+        deployBundle("org.nuxeo.ecm.core.storage.sql");
+        deployContrib("org.nuxeo.ecm.core.storage.sql.bench",
+                "OSGI-INF/bench-core-types-contrib.xml");
+        DatabaseHelper.DATABASE.setUp();
+        RepositoryDescriptor descriptor = DatabaseHelper.DATABASE.getRepositoryDescriptor();
+        descriptor.name = DatabaseHelper.DATABASE.repositoryName;
+        descriptor.binaryStorePath = "benchbinaries";
+        repository = new RepositoryImpl(descriptor);
+        RepositoryResolver.registerTestRepository(repository);
+        session = (SessionImpl) repository.getConnection();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        session.close();
+        Framework.getLocalService(EventService.class).waitForAsyncCompletion();
+        repository.close();
+        DatabaseHelper.DATABASE.tearDown();
+        super.tearDown();
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowBatch;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowUpdate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of batched row updates, one batch per invocation.
+ *
+ * @since 5.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RowMapperWriteBenchmark extends BackendBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int batchSize;
+
+    /** TestDoc nodes, which have a testschema row. */
+    protected List<Serializable> ids;
+
+    protected Mapper mapper;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ids = new ArrayList<Serializable>();
+        for (Node node : wide) {
+            if ("TestDoc".equals(node.getPrimaryType())) {
+                ids.add(node.getId());
+            }
+        }
+        mapper = session.getMapper();
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        int i = next();
+        RowBatch batch = new RowBatch();
+        for (int j = 0; j < batchSize; j++) {
+            Serializable id = ids.get((i * batchSize + j) % ids.size());
+            Row row = new Row("testschema", id);
+            row.putNew("title", "title" + i);
+            batch.updates.add(new RowUpdate(row,
+                    Collections.singleton("title")));
+        }
+        mapper.write(batch);
+    }
+
+}
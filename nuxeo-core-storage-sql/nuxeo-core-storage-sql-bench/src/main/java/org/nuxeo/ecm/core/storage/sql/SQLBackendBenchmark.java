@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryMaker;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMakerDescriptor;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMakerService;
+import org.nuxeo.runtime.api.Framework;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the low-level session, mapper and query paths.
+ *
+ * @since 5.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SQLBackendBenchmark extends BackendBenchmark {
+
+    protected static final int READ_BATCH_SIZE = 50;
+
+    protected static final String[] QUERIES = {
+            "SELECT * FROM TestDoc WHERE tst:title LIKE 'alpha%' ORDER BY tst:count",
+            "SELECT * FROM Document WHERE ecm:path STARTSWITH '/wide' AND tst:subjects = 'bravo'",
+            "SELECT ecm:uuid, tst:title FROM TestDoc WHERE tst:count > 10 AND ecm:isProxy = 0",
+            "SELECT * FROM Document WHERE ecm:primaryType IN ('TestDoc', 'TestDoc2') AND ecm:isCheckedInVersion = 0", };
+
+    protected List<Serializable> ids;
+
+    protected List<String> paths;
+
+    protected List<RowId> rowIds;
+
+    protected Mapper mapper;
+
+    protected CapturingQueryMaker.Captured captured;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ids = getIds(wide);
+        paths = new ArrayList<String>(deep.size());
+        for (Node node : deep) {
+            paths.add(node.getPath());
+        }
+        rowIds = getRowIds(wide, Model.HIER_TABLE_NAME);
+        mapper = session.getMapper();
+        captured = captureQueryMaker();
+    }
+
+    /**
+     * Captures the SQLInfo and model that NXQLQueryMaker is given.
+     */
+    protected CapturingQueryMaker.Captured captureQueryMaker()
+            throws Exception {
+        QueryMakerDescriptor desc = new QueryMakerDescriptor();
+        desc.name = CapturingQueryMaker.TYPE;
+        desc.queryMaker = CapturingQueryMaker.class;
+        QueryMakerService queryMakerService = Framework.getService(QueryMakerService.class);
+        queryMakerService.registerQueryMaker(desc);
+        try {
+            CapturingQueryMaker.Captured captured = new CapturingQueryMaker.Captured();
+            IterableQueryResult res = session.queryAndFetch("",
+                    CapturingQueryMaker.TYPE, QueryFilter.EMPTY, captured);
+            res.close();
+            return captured;
+        } finally {
+            queryMakerService.unregisterQueryMaker(desc);
+        }
+    }
+
+    @Benchmark
+    public Node getNodeById() throws Exception {
+        return session.getNodeById(ids.get(next() % ids.size()));
+    }
+
+    @Benchmark
+    public Node getNodeByPath() throws Exception {
+        return session.getNodeByPath(paths.get(next() % paths.size()), null);
+    }
+
+    @Benchmark
+    public List<Fragment> persistenceContextGetMulti() throws Exception {
+        int start = (next() * READ_BATCH_SIZE) % rowIds.size();
+        return session.context.getMulti(
+                rowIds.subList(start, start + READ_BATCH_SIZE), true);
+    }
+
+    @Benchmark
+    public List<? extends RowId> cachingMapperRead() throws Exception {
+        int start = (next() * READ_BATCH_SIZE) % rowIds.size();
+        return mapper.read(rowIds.subList(start, start + READ_BATCH_SIZE),
+                false);
+    }
+
+    @Benchmark
+    public SQLQuery queryParser() {
+        return SQLQueryParser.parse(QUERIES[next() % QUERIES.length]);
+    }
+
+    @Benchmark
+    public Query queryMaker() throws Exception {
+        return new NXQLQueryMaker().buildQuery(captured.sqlInfo,
+                captured.model, captured.pathResolver,
+                QUERIES[next() % QUERIES.length], QueryFilter.EMPTY);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.AbstractSession;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelFactory;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.model.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of the document model materialization, on a repository set up
+ * like the {@link SQLRepositoryTestCase} tests.
+ *
+ * @since 5.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SQLRepositoryBenchmark {
+
+    protected static final int WIDTH = 100;
+
+    protected SQLRepositoryTestCase fixture;
+
+    protected CoreSession session;
+
+    protected DocumentRef folderRef;
+
+    protected List<Document> docs;
+
+    protected int n;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new SQLRepositoryTestCase() {
+        };
+        fixture.setUp();
+        fixture.openSession();
+        session = fixture.session;
+        DocumentModel folder = session.createDocumentModel("/", "wide",
+                "Folder");
+        folder = session.createDocument(folder);
+        folderRef = folder.getRef();
+        List<DocumentModel> wide = new BenchmarkDataset().createWideTree(
+                session, folder, WIDTH);
+        docs = new ArrayList<Document>(wide.size());
+        for (DocumentModel doc : wide) {
+            docs.add(((AbstractSession) session).getSession().getDocumentByUUID(
+                    doc.getId()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.closeSession();
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public DocumentModel documentModelFactory() throws Exception {
+        return DocumentModelFactory.createDocumentModel(docs.get((n++ & Integer.MAX_VALUE)
+                % docs.size()));
+    }
+
+    @Benchmark
+    public DocumentModelList getChildren() throws Exception {
+        return session.getChildren(folderRef);
+    }
+
+}
@@ -65,6 +65,23 @@ public class H2Functions extends EmbeddedFunctions {
         return isAccessAllowed(conn, id, split(principals), split(permissions));
     }
 
+    /**
+     * Checks if an array column contains a given value.
+     *
+     * @since 5.7
+     */
+    public static boolean arrayContains(Object[] array, String value) {
+        if (array == null || value == null) {
+            return false;
+        }
+        for (Object element : array) {
+            if (value.equals(element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Adds an invalidation from this cluster node to the invalidations list.
      */
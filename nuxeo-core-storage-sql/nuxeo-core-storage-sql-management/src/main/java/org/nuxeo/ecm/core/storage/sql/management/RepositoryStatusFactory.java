@@ -25,6 +25,9 @@ public class RepositoryStatusFactory extends AbstractResourceFactory {
         service.registerResource("SQLRepositoryStatus",
                 ObjectNameFactory.formatQualifiedName("SQLStorage"),
                 RepositoryStatusMBean.class, instance);
+        service.registerResource("SQLStatistics",
+                ObjectNameFactory.formatQualifiedName("SQLStatistics"),
+                SQLStatisticsMBean.class, new SQLStatisticsStatus());
     }
 
 }
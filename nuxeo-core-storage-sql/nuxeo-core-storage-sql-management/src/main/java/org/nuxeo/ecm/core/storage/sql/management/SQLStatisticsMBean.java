@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.management;
+
+/**
+ * Statistics about the SQL statements executed by the repositories.
+ *
+ * @since 5.7
+ */
+public interface SQLStatisticsMBean {
+
+    /**
+     * Is recording enabled for all the repositories?
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables recording for all the repositories. Only the
+     * connections opened while enabled are instrumented.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * The duration in milliseconds above which an execution is kept as a
+     * slow query.
+     */
+    long getSlowQueryThreshold();
+
+    void setSlowQueryThreshold(long millis);
+
+    /**
+     * Lists the statements with the highest total execution time.
+     *
+     * @param max the maximum number of statements listed per repository
+     */
+    String listTopStatements(int max);
+
+    /**
+     * Lists the recent slow queries, with a summary of their parameters.
+     */
+    String listSlowQueries();
+
+    /**
+     * Clears the recorded statistics.
+     */
+    void reset();
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.management;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLStatistics;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLStatistics.SlowQuery;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLStatistics.StatementStatistics;
+
+/**
+ * @since 5.7
+ */
+public class SQLStatisticsStatus implements SQLStatisticsMBean {
+
+    protected Collection<SQLStatistics> getStatistics() {
+        return SQLStatistics.getInstances();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        Collection<SQLStatistics> all = getStatistics();
+        for (SQLStatistics statistics : all) {
+            if (!statistics.isEnabled()) {
+                return false;
+            }
+        }
+        return !all.isEmpty();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        for (SQLStatistics statistics : getStatistics()) {
+            statistics.setEnabled(enabled);
+        }
+    }
+
+    @Override
+    public long getSlowQueryThreshold() {
+        long threshold = SQLStatistics.DEFAULT_SLOW_QUERY_THRESHOLD;
+        for (SQLStatistics statistics : getStatistics()) {
+            threshold = statistics.getSlowQueryThreshold();
+        }
+        return threshold;
+    }
+
+    @Override
+    public void setSlowQueryThreshold(long millis) {
+        for (SQLStatistics statistics : getStatistics()) {
+            statistics.setSlowQueryThreshold(millis);
+        }
+    }
+
+    @Override
+    public String listTopStatements(int max) {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Top SQL statements by total time (us):<br />");
+        for (SQLStatistics statistics : getStatistics()) {
+            buf.append("<b>").append(statistics.getRepositoryName()).append(
+                    "</b>:<br />");
+            buf.append("<ul>");
+            for (StatementStatistics stats : statistics.getTopStatements(max)) {
+                buf.append("<li>");
+                buf.append("count=").append(stats.getCount());
+                buf.append(" total=").append(stats.getTotalTime());
+                buf.append(" p50=").append(stats.getPercentile(0.5));
+                buf.append(" p95=").append(stats.getPercentile(0.95));
+                buf.append(" p99=").append(stats.getPercentile(0.99));
+                buf.append(" max=").append(stats.getMaxTime());
+                buf.append(" read=").append(stats.getRowsRead());
+                buf.append(" written=").append(stats.getRowsWritten());
+                buf.append(" ").append(stats.getSql());
+                buf.append("</li>");
+            }
+            buf.append("</ul>");
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public String listSlowQueries() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("Recent slow SQL queries (us):<br />");
+        for (SQLStatistics statistics : getStatistics()) {
+            buf.append("<b>").append(statistics.getRepositoryName()).append(
+                    "</b>:<br />");
+            buf.append("<ul>");
+            for (SlowQuery slowQuery : statistics.getSlowQueries()) {
+                buf.append("<li>");
+                buf.append(new Date(slowQuery.timestamp));
+                buf.append(" time=").append(slowQuery.time);
+                buf.append(" ").append(slowQuery.sql);
+                buf.append(" [").append(slowQuery.parameters).append("]");
+                buf.append("</li>");
+            }
+            buf.append("</ul>");
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (SQLStatistics statistics : getStatistics()) {
+            statistics.reset();
+        }
+    }
+
+}
@@ -14,7 +14,9 @@ package org.nuxeo.ecm.core.storage.sql.ra;
 
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.resource.ResourceException;
 import javax.resource.cci.ConnectionFactory;
@@ -302,6 +304,12 @@ public class ConnectionImpl implements Session {
         return getSession().getVersions(versionSeriesId);
     }
 
+    @Override
+    public List<Node> getVersions(Serializable versionSeriesId, int offset,
+            int limit) throws StorageException {
+        return getSession().getVersions(versionSeriesId, offset, limit);
+    }
+
     @Override
     public Node getLastVersion(Serializable versionSeriesId)
             throws StorageException {
@@ -359,6 +367,12 @@ public class ConnectionImpl implements Session {
         return getSession().getLock(id);
     }
 
+    @Override
+    public Map<Serializable, Lock> getLocks(Collection<Serializable> ids)
+            throws StorageException {
+        return getSession().getLocks(ids);
+    }
+
     @Override
     public Lock setLock(Serializable id, Lock lock)
             throws StorageException {
@@ -388,4 +402,9 @@ public class ConnectionImpl implements Session {
         getSession().rebuildReadAcls();
     }
 
+    @Override
+    public long getSecurityGeneration() throws StorageException {
+        return getSession().getSecurityGeneration();
+    }
+
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.storage.StorageException;
+
+/**
+ * Generates reproducible datasets for the benchmarks: wide trees (many
+ * children under one parent) and deep trees (a chain of nested documents),
+ * whose documents use several schemas and get pseudo-random values from a
+ * fixed seed.
+ * <p>
+ * Low-level {@link Session}s use the types of
+ * {@code test-backend-core-types-contrib.xml} (or of the benchmark module's
+ * {@code bench-core-types-contrib.xml}), {@link CoreSession}s the default
+ * core types.
+ *
+ * @since 5.7
+ */
+public class BenchmarkDataset {
+
+    public static final long DEFAULT_SEED = 1234;
+
+    /** Low-level types, each with different schemas. */
+    protected static final String[] NODE_TYPES = { "TestDoc", "TestDoc2",
+            "DocWithAge" };
+
+    /** Core types for leaf documents, each with different schemas. */
+    protected static final String[] DOC_TYPES = { "File", "Note" };
+
+    protected static final String[] WORDS = { "alpha", "bravo", "charlie",
+            "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet" };
+
+    protected final Random random;
+
+    public BenchmarkDataset() {
+        this(DEFAULT_SEED);
+    }
+
+    public BenchmarkDataset(long seed) {
+        random = new Random(seed);
+    }
+
+    protected String randomWord() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    protected String randomText(int words) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                buf.append(' ');
+            }
+            buf.append(randomWord());
+        }
+        return buf.toString();
+    }
+
+    protected String[] randomWords(int max) {
+        String[] words = new String[random.nextInt(max + 1)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = randomWord();
+        }
+        return words;
+    }
+
+    /*
+     * ----- low-level sessions -----
+     */
+
+    /**
+     * Creates {@code width} children under a parent, and saves.
+     */
+    public List<Node> createWideTree(Session session, Node parent, int width)
+            throws StorageException {
+        List<Node> nodes = new ArrayList<Node>(width);
+        for (int i = 0; i < width; i++) {
+            nodes.add(createNode(session, parent, "doc" + i, i));
+        }
+        session.save();
+        return nodes;
+    }
+
+    /**
+     * Creates a chain of {@code depth} nested documents under a parent, and
+     * saves.
+     *
+     * @return the created nodes, the deepest last
+     */
+    public List<Node> createDeepTree(Session session, Node parent, int depth)
+            throws StorageException {
+        List<Node> nodes = new ArrayList<Node>(depth);
+        Node node = parent;
+        for (int i = 0; i < depth; i++) {
+            node = createNode(session, node, "level" + i, i);
+            nodes.add(node);
+        }
+        session.save();
+        return nodes;
+    }
+
+    protected Node createNode(Session session, Node parent, String name, int i)
+            throws StorageException {
+        String type = NODE_TYPES[i % NODE_TYPES.length];
+        Node node = session.addChildNode(parent, name, null, type, false);
+        if ("TestDoc".equals(type)) {
+            node.setSimpleProperty("tst:title", randomText(3));
+            node.setSimpleProperty("tst:count",
+                    Long.valueOf(random.nextInt(1000)));
+            node.setCollectionProperty("tst:subjects", randomWords(4));
+        } else if ("TestDoc2".equals(type)) {
+            node.setSimpleProperty("tst2:title", randomText(3));
+        } else {
+            node.setSimpleProperty("age:title", randomText(3));
+            node.setSimpleProperty("age:age",
+                    String.valueOf(random.nextInt(100)));
+            node.setCollectionProperty("age:nicknames", randomWords(3));
+        }
+        return node;
+    }
+
+    /*
+     * ----- core sessions -----
+     */
+
+    /**
+     * Creates {@code width} children under a parent, and saves.
+     */
+    public List<DocumentModel> createWideTree(CoreSession session,
+            DocumentModel parent, int width) throws ClientException {
+        List<DocumentModel> docs = new ArrayList<DocumentModel>(width);
+        for (int i = 0; i < width; i++) {
+            docs.add(createDocument(session, parent, "doc" + i,
+                    DOC_TYPES[i % DOC_TYPES.length]));
+        }
+        session.save();
+        return docs;
+    }
+
+    /**
+     * Creates a chain of {@code depth} nested folders under a parent, and
+     * saves.
+     *
+     * @return the created documents, the deepest last
+     */
+    public List<DocumentModel> createDeepTree(CoreSession session,
+            DocumentModel parent, int depth) throws ClientException {
+        List<DocumentModel> docs = new ArrayList<DocumentModel>(depth);
+        DocumentModel doc = parent;
+        for (int i = 0; i < depth; i++) {
+            doc = createDocument(session, doc, "level" + i, "Folder");
+            docs.add(doc);
+        }
+        session.save();
+        return docs;
+    }
+
+    protected DocumentModel createDocument(CoreSession session,
+            DocumentModel parent, String name, String type)
+            throws ClientException {
+        DocumentModel doc = session.createDocumentModel(
+                parent.getPathAsString(), name, type);
+        doc.setPropertyValue("dc:title", randomText(3));
+        doc.setPropertyValue("dc:description", randomText(10));
+        doc.setPropertyValue("dc:subjects", randomWords(4));
+        if ("Note".equals(type)) {
+            doc.setPropertyValue("note:note", randomText(50));
+        }
+        return session.createDocument(doc);
+    }
+
+}
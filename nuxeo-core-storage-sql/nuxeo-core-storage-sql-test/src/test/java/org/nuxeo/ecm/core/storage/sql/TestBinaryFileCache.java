@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBinaryFileCache {
+
+    protected File dir;
+
+    /**
+     * A cache whose fetches of "slow" keys wait until two of them are in
+     * progress at the same time.
+     */
+    protected static class DummyBinaryFileCache extends BinaryFileCache {
+
+        protected final AtomicInteger fetchCount = new AtomicInteger();
+
+        protected final CountDownLatch parallel = new CountDownLatch(2);
+
+        protected volatile boolean wasParallel;
+
+        public DummyBinaryFileCache(File dir) {
+            super(dir, 1024 * 1024);
+        }
+
+        @Override
+        public boolean fetchFile(String key, File tmp) {
+            fetchCount.incrementAndGet();
+            if (key.startsWith("missing")) {
+                return false;
+            }
+            if (key.startsWith("slow")) {
+                parallel.countDown();
+                try {
+                    wasParallel = parallel.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            try {
+                OutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(key.getBytes("UTF-8"));
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+
+        @Override
+        public Long fetchLength(String key) {
+            return null;
+        }
+    }
+
+    /**
+     * A cache whose storage can read ranges.
+     */
+    protected static class RangeBinaryFileCache extends DummyBinaryFileCache {
+
+        protected final AtomicInteger fetchRangeCount = new AtomicInteger();
+
+        public RangeBinaryFileCache(File dir) {
+            super(dir);
+        }
+
+        @Override
+        public InputStream fetchRange(String key, long offset, long length)
+                throws IOException {
+            fetchRangeCount.incrementAndGet();
+            byte[] bytes = key.getBytes("UTF-8");
+            int len = length == -1 ? bytes.length - (int) offset : (int) length;
+            return new ByteArrayInputStream(bytes, (int) offset, len);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("nxbinarycache", null);
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    protected List<Thread> getFiles(final BinaryFileCache cache,
+            final String... keys) {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final String key : keys) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    cache.getFile(key);
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    protected static void join(List<Thread> threads) throws Exception {
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+    }
+
+    @Test
+    public void testGetFile() throws Exception {
+        DummyBinaryFileCache cache = new DummyBinaryFileCache(dir);
+        File file = cache.getFile("foo");
+        assertNotNull(file);
+        assertEquals("foo", FileUtils.readFileToString(file, "UTF-8"));
+        // cached
+        assertEquals(file, cache.getFile("foo"));
+        assertEquals(1, cache.fetchCount.get());
+        assertNull(cache.getFile("missing"));
+    }
+
+    @Test
+    public void testParallelFetches() throws Exception {
+        DummyBinaryFileCache cache = new DummyBinaryFileCache(dir);
+        join(getFiles(cache, "slow1", "slow2"));
+        assertTrue(cache.wasParallel);
+        assertEquals(2, cache.fetchCount.get());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        DummyBinaryFileCache cache = new DummyBinaryFileCache(dir);
+        // the first fetch waits until the second slow key is being fetched,
+        // meanwhile the other threads asking for it wait for it
+        List<Thread> threads = getFiles(cache, "slow1", "slow1", "slow1");
+        Thread.sleep(200);
+        threads.addAll(getFiles(cache, "slow2"));
+        join(threads);
+        assertTrue(cache.wasParallel);
+        assertEquals(2, cache.fetchCount.get());
+    }
+
+    @Test
+    public void testLazyBinaryRangeWithFullFetch() throws Exception {
+        DummyBinaryFileCache cache = new DummyBinaryFileCache(dir);
+        Binary binary = new LazyBinary("foobar", cache, null);
+        // ranges not supported by the storage, the whole file is cached
+        assertEquals("oob", IOUtils.toString(binary.getStream(1, 3), "UTF-8"));
+        assertEquals(1, cache.fetchCount.get());
+        assertEquals("bar", IOUtils.toString(binary.getStream(3, -1), "UTF-8"));
+        assertEquals(1, cache.fetchCount.get());
+    }
+
+    @Test
+    public void testLazyBinaryRangeWithFetchRange() throws Exception {
+        RangeBinaryFileCache cache = new RangeBinaryFileCache(dir);
+        Binary binary = new LazyBinary("foobar", cache, null);
+        // only the range is fetched, nothing is cached
+        assertEquals("oob", IOUtils.toString(binary.getStream(1, 3), "UTF-8"));
+        assertEquals(1, cache.fetchRangeCount.get());
+        assertEquals(0, cache.fetchCount.get());
+        assertEquals("bar", IOUtils.toString(binary.getStream(3, -1), "UTF-8"));
+        assertEquals(2, cache.fetchRangeCount.get());
+        assertEquals(0, cache.fetchCount.get());
+        // once the whole file is cached, ranges are read from it
+        assertEquals("foobar", IOUtils.toString(binary.getStream(), "UTF-8"));
+        assertEquals(1, cache.fetchCount.get());
+        assertEquals("ba", IOUtils.toString(binary.getStream(3, 2), "UTF-8"));
+        assertEquals(2, cache.fetchRangeCount.get());
+    }
+
+    @Test
+    public void testInterruptedWait() throws Exception {
+        DummyBinaryFileCache cache = new DummyBinaryFileCache(dir);
+        // the fetch waits for a second slow key
+        List<Thread> threads = getFiles(cache, "slow1");
+        Thread.sleep(200);
+        final BinaryFileCache c = cache;
+        final Throwable[] error = new Throwable[1];
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    c.getFile("slow1");
+                } catch (RuntimeException e) {
+                    error[0] = e.getCause();
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(200);
+        waiter.interrupt();
+        waiter.join(10000);
+        assertTrue(error[0] instanceof InterruptedException);
+        // release the first fetch
+        threads.addAll(getFiles(cache, "slow2"));
+        join(threads);
+        assertNotNull(cache.getFile("slow1"));
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.ChunkedBinaryManager.ChunkedBinaryGarbageCollector;
+import org.nuxeo.runtime.services.streaming.FileSource;
+import org.nuxeo.runtime.services.streaming.StreamSource;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestChunkedBinaryManager extends NXRuntimeTestCase {
+
+    protected File base;
+
+    protected ChunkedBinaryManager binaryManager;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        base = File.createTempFile("nxchunked", null);
+        base.delete();
+        base.mkdirs();
+        RepositoryDescriptor descriptor = new RepositoryDescriptor();
+        descriptor.binaryStorePath = base.getPath();
+        binaryManager = new ChunkedBinaryManager();
+        binaryManager.initialize(descriptor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(base);
+        super.tearDown();
+    }
+
+    protected static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(1234).nextBytes(bytes);
+        return bytes;
+    }
+
+    protected static byte[] insert(byte[] bytes, int pos, byte[] inserted) {
+        byte[] result = new byte[bytes.length + inserted.length];
+        System.arraycopy(bytes, 0, result, 0, pos);
+        System.arraycopy(inserted, 0, result, pos, inserted.length);
+        System.arraycopy(bytes, pos, result, pos + inserted.length,
+                bytes.length - pos);
+        return result;
+    }
+
+    protected int countChunks() {
+        return FileUtils.listFiles(binaryManager.getChunksDir(), null, true).size();
+    }
+
+    protected static byte[] read(Binary binary) throws Exception {
+        InputStream in = binary.getStream();
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testDedup() throws Exception {
+        byte[] v1 = randomBytes(2 * 1024 * 1024);
+        Binary binary1 = binaryManager.getBinary(new ByteArrayInputStream(v1));
+        assertEquals(v1.length, binary1.getLength());
+        int chunks1 = countChunks();
+        assertTrue(chunks1 > 1);
+
+        // same content, nothing new stored
+        Binary binary = binaryManager.getBinary(new ByteArrayInputStream(v1));
+        assertEquals(binary1.getDigest(), binary.getDigest());
+        assertEquals(chunks1, countChunks());
+
+        // a few bytes inserted in the middle only add the chunks around them
+        byte[] v2 = insert(v1, 1000000, "inserted".getBytes("UTF-8"));
+        Binary binary2 = binaryManager.getBinary(new ByteArrayInputStream(v2));
+        assertFalse(binary1.getDigest().equals(binary2.getDigest()));
+        int chunks2 = countChunks();
+        assertTrue(chunks2 > chunks1);
+        assertTrue(chunks2 <= chunks1 + 3);
+
+        // reassembled content
+        binary1 = binaryManager.getBinary(binary1.getDigest());
+        binary2 = binaryManager.getBinary(binary2.getDigest());
+        assertNotNull(binary2);
+        assertEquals(v2.length, binary2.getLength());
+        assertTrue(Arrays.equals(v1, read(binary1)));
+        assertTrue(Arrays.equals(v2, read(binary2)));
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        byte[] bytes = randomBytes(1024 * 1024);
+        Binary binary = binaryManager.getBinary(new ByteArrayInputStream(
+                bytes));
+        binary = binaryManager.getBinary(binary.getDigest());
+        InputStream in = binary.getStream(700000, 300000);
+        try {
+            assertTrue(Arrays.equals(
+                    Arrays.copyOfRange(bytes, 700000, 1000000),
+                    IOUtils.toByteArray(in)));
+        } finally {
+            in.close();
+        }
+        in = binary.getStream(1000000, -1);
+        try {
+            assertEquals(bytes.length - 1000000, IOUtils.toByteArray(in).length);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testNoSingleFile() throws Exception {
+        byte[] bytes = randomBytes(1024 * 1024);
+        Binary binary = binaryManager.getBinary(new ByteArrayInputStream(
+                bytes));
+        binary = binaryManager.getBinary(binary.getDigest());
+        // the stream source is not a file source, whose file would be the
+        // manifest
+        StreamSource source = binary.getStreamSource();
+        assertFalse(source instanceof FileSource);
+        assertEquals(bytes.length, source.getLength());
+        assertTrue(Arrays.equals(bytes, IOUtils.toByteArray(source.getStream())));
+        try {
+            binary.getChannel();
+            fail();
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testGarbageCollector() throws Exception {
+        byte[] v1 = randomBytes(1024 * 1024);
+        byte[] v2 = insert(v1, 500000, "inserted".getBytes("UTF-8"));
+        String digest1 = binaryManager.getBinary(new ByteArrayInputStream(v1)).getDigest();
+        int chunks1 = countChunks();
+        String digest2 = binaryManager.getBinary(new ByteArrayInputStream(v2)).getDigest();
+        int chunks2 = countChunks();
+
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+
+        // v1 used, v2 not used
+        ChunkedBinaryGarbageCollector gc = (ChunkedBinaryGarbageCollector) binaryManager.getGarbageCollector();
+        gc.start();
+        gc.mark(digest1);
+        gc.stop(true);
+        assertEquals(1, gc.getStatus().numBinaries);
+        assertEquals(1, gc.getStatus().numBinariesGC);
+        assertEquals(chunks1, gc.getChunksStatus().numBinaries);
+        assertEquals(chunks2 - chunks1, gc.getChunksStatus().numBinariesGC);
+        assertEquals(chunks1, countChunks());
+
+        assertTrue(Arrays.equals(v1,
+                read(binaryManager.getBinary(digest1))));
+        assertEquals(null, binaryManager.getBinary(digest2));
+    }
+
+}
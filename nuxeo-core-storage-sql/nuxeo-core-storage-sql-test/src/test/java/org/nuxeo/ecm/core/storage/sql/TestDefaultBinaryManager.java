@@ -25,6 +25,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
@@ -120,6 +121,28 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         assertTrue(source.getFile().exists());
     }
 
+    @Test
+    public void testRanges() throws Exception {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize(new RepositoryDescriptor());
+        byte[] bytes = CONTENT.getBytes("UTF-8");
+        Binary binary = binaryManager.getBinary(new ByteArrayInputStream(
+                bytes));
+
+        assertEquals("is a file",
+                IOUtils.toString(binary.getStream(5, 9), "UTF-8"));
+        assertEquals("au caf\u00e9",
+                IOUtils.toString(binary.getStream(15, -1), "UTF-8"));
+        assertEquals("", IOUtils.toString(binary.getStream(bytes.length, 10),
+                "UTF-8"));
+
+        ByteBuffer buf = binary.map(10, 4);
+        assertEquals(4, buf.remaining());
+        byte[] mapped = new byte[4];
+        buf.get(mapped);
+        assertEquals("file", new String(mapped, "UTF-8"));
+    }
+
     protected static int countFiles(File dir) {
         int n = 0;
         for (File f : dir.listFiles()) {
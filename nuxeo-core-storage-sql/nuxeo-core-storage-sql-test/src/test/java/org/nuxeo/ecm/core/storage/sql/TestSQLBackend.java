@@ -58,6 +58,7 @@ import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
 import org.nuxeo.ecm.core.storage.PartialList;
 import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor.FieldDescriptor;
 import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor.FulltextIndexDescriptor;
 import org.nuxeo.ecm.core.storage.sql.jdbc.ClusterNodeHandler;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCBackend;
@@ -65,6 +66,8 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnectionPropagator;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapper;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCRowMapper;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLStatistics;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLStatistics.StatementStatistics;
 
 public class TestSQLBackend extends SQLBackendTestCase {
 
@@ -607,6 +610,123 @@ public class TestSQLBackend extends SQLBackendTestCase {
         assertEquals("test", acls[1].name);
     }
 
+    protected List<String> getSubjectsFromNewSession() throws Exception {
+        Session session = repository.getConnection();
+        try {
+            Node node = session.getNodeByPath("/foo", null);
+            return Arrays.asList(node.getCollectionProperty("tst:subjects").getStrings());
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testCollectionDeltas() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node nodea = session.addChildNode(root, "foo", null, "TestDoc", false);
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "c", "d" });
+        session.save();
+
+        // append
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "c", "d", "e" });
+        session.save();
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"),
+                getSubjectsFromNewSession());
+
+        // change in place, twice before save
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "x",
+                "c", "d", "e" });
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "y",
+                "c", "d", "e" });
+        session.save();
+        assertEquals(Arrays.asList("a", "y", "c", "d", "e"),
+                getSubjectsFromNewSession());
+
+        // reorder
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "y",
+                "c", "e", "d" });
+        session.save();
+        assertEquals(Arrays.asList("a", "y", "c", "e", "d"),
+                getSubjectsFromNewSession());
+
+        // remove the tail and change one
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "z",
+                "c" });
+        session.save();
+        assertEquals(Arrays.asList("a", "z", "c"), getSubjectsFromNewSession());
+
+        // ACLs: append one ACE
+        CollectionProperty prop = nodea.getCollectionProperty(Model.ACL_PROP);
+        ACLRow acl0 = new ACLRow(0, "test", true, "Read", null, "Members");
+        ACLRow acl1 = new ACLRow(1, "test", true, "Write", "steve", null);
+        prop.setValue(new ACLRow[] { acl0 });
+        session.save();
+        prop.setValue(new ACLRow[] { acl0, acl1 });
+        session.save();
+        session.close();
+
+        session = repository.getConnection();
+        nodea = session.getNodeByPath("/foo", null);
+        ACLRow[] acls = (ACLRow[]) nodea.getCollectionProperty(
+                Model.ACL_PROP).getValue();
+        assertEquals(Arrays.asList(acl0, acl1), Arrays.asList(acls));
+        session.close();
+    }
+
+    @Test
+    public void testCollectionDeltaOnChangedRows() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node nodea = session.addChildNode(root, "foo", null, "TestDoc", false);
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "c", "d", "e" });
+        session.save();
+
+        // another session shortens the list, before this one knows it
+        Session session2 = repository.getConnection();
+        Node nodeb = session2.getNodeByPath("/foo", null);
+        nodeb.setCollectionProperty("tst:subjects", new String[] { "a", "b" });
+        session2.save();
+        session2.close();
+
+        // the update in place finds no row, the list is rewritten
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "c", "x", "e" });
+        session.save();
+        assertEquals(Arrays.asList("a", "b", "c", "x", "e"),
+                getSubjectsFromNewSession());
+        session.close();
+    }
+
+    @Test
+    public void testCollectionDeltaOnLengthenedRows() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node nodea = session.addChildNode(root, "foo", null, "TestDoc", false);
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "b" });
+        session.save();
+
+        // another session lengthens the list, before this one knows it
+        Session session2 = repository.getConnection();
+        Node nodeb = session2.getNodeByPath("/foo", null);
+        nodeb.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "y" });
+        session2.save();
+        session2.close();
+
+        // a pure append updates nothing in place, the stored length differs
+        // from the expected one and the list is rewritten
+        nodea.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "c" });
+        session.save();
+        assertEquals(Arrays.asList("a", "b", "c"),
+                getSubjectsFromNewSession());
+        session.close();
+    }
+
     /** ACL bigger than VARCHAR limit for databases. */
     @Test
     public void testBigACLs() throws Exception {
@@ -1520,6 +1640,104 @@ public class TestSQLBackend extends SQLBackendTestCase {
         }
     }
 
+    @Test
+    public void testPathCache() throws Exception {
+        PathCache pathCache = ((RepositoryImpl) repository).getPathCache();
+        assertNotNull(pathCache);
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node nodea = session.addChildNode(root, "a", null, "TestDoc", false);
+        Node nodeb = session.addChildNode(nodea, "b", null, "TestDoc", false);
+        Node nodec = session.addChildNode(nodeb, "c", null, "TestDoc", false);
+        session.save();
+
+        assertEquals(nodec.getId(),
+                session.getNodeByPath("/a/b/c", null).getId());
+        assertEquals(nodec.getId(), pathCache.get("/a/b/c"));
+        // served from the cache
+        assertEquals(nodec.getId(),
+                session.getNodeByPath("/a/b/c", null).getId());
+
+        // rename invalidates the subtree, without waiting for the save
+        session.move(nodeb, nodea, "bb");
+        assertNull(pathCache.get("/a/b/c"));
+        assertNull(session.getNodeByPath("/a/b/c", null));
+        session.save();
+        assertNull(pathCache.get("/a/b/c"));
+        Session session2 = repository.getConnection();
+        assertNull(session2.getNodeByPath("/a/b/c", null));
+        assertEquals(nodec.getId(),
+                session2.getNodeByPath("/a/bb/c", null).getId());
+
+        // removal
+        session.removeNode(nodeb);
+        session.save();
+        assertNull(pathCache.get("/a/bb/c"));
+        session2.save(); // process invalidations
+        assertNull(session2.getNodeByPath("/a/bb/c", null));
+    }
+
+    @Test
+    public void testPathCacheEviction() throws Exception {
+        PathCache pathCache = new PathCache(10);
+        pathCache.put("/a", "a");
+        pathCache.put("/a/b", "b");
+        for (int i = 0; i < 7; i++) {
+            pathCache.put("/x" + i, "x" + i);
+        }
+        // using a deep path keeps its ancestors in the cache
+        assertEquals("b", pathCache.get("/a/b"));
+        pathCache.put("/y", "y");
+        pathCache.put("/z", "z"); // evicts
+        assertTrue(pathCache.size() < 10);
+        assertEquals("a", pathCache.get("/a"));
+        assertEquals("b", pathCache.get("/a/b"));
+        assertNull(pathCache.get("/x0"));
+
+        // a rename of the ancestor still removes the subtree
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId(Model.HIER_TABLE_NAME, "a"));
+        pathCache.invalidate(invalidations);
+        assertNull(pathCache.get("/a/b"));
+    }
+
+    @Test
+    public void testSQLStatistics() throws Exception {
+        assertEquals("SELECT * FROM t WHERE a IN (?...) AND b = ? AND c = ?",
+                SQLStatistics.normalize("SELECT * FROM t WHERE a IN (?, ?, ?)"
+                        + " AND b = 'x''y' AND c = 12"));
+
+        SQLStatistics statistics = SQLStatistics.getInstance(repository.getName());
+        statistics.reset();
+        statistics.setEnabled(true);
+        statistics.setSlowQueryThreshold(0);
+        try {
+            Session session = repository.getConnection();
+            Node root = session.getRootNode();
+            session.addChildNode(root, "foo", null, "TestDoc", false);
+            session.save();
+            session.close();
+
+            List<StatementStatistics> top = statistics.getTopStatements(1000);
+            assertFalse(top.isEmpty());
+            long read = 0;
+            long written = 0;
+            for (StatementStatistics stats : top) {
+                assertTrue(stats.getCount() > 0);
+                assertTrue(stats.getPercentile(0.5) <= stats.getMaxTime());
+                read += stats.getRowsRead();
+                written += stats.getRowsWritten();
+            }
+            assertTrue(read > 0); // root
+            assertTrue(written > 0); // foo
+            assertFalse(statistics.getSlowQueries().isEmpty());
+        } finally {
+            statistics.setEnabled(false);
+            statistics.setSlowQueryThreshold(SQLStatistics.DEFAULT_SLOW_QUERY_THRESHOLD);
+            statistics.reset();
+        }
+    }
+
     @Test
     public void testCopy() throws Exception {
         Session session = repository.getConnection();
@@ -1598,6 +1816,98 @@ public class TestSQLBackend extends SQLBackendTestCase {
         session.save();
     }
 
+    @Test
+    public void testCopyTree() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node foldera = session.addChildNode(root, "folder_a", null, "TestDoc",
+                false);
+        for (int i = 0; i < 5; i++) {
+            Node sub = session.addChildNode(foldera, "sub" + i, null,
+                    "TestDoc", false);
+            for (int j = 0; j < 4; j++) {
+                Node doc = session.addChildNode(sub, "doc" + j, null,
+                        "TestDoc", false);
+                doc.setSimpleProperty("tst:title", "title" + i + j);
+                doc.setCollectionProperty("tst:subjects", new String[] {
+                        "s" + i, "s" + j });
+            }
+        }
+        session.save();
+
+        Node copy = session.copy(foldera, root, "folder_b");
+        session.save();
+        List<Node> subs = session.getChildren(copy, null, false);
+        assertEquals(5, subs.size());
+        Node doc = session.getNodeByPath("/folder_b/sub3/doc2", null);
+        assertNotNull(doc);
+        assertEquals("title32", doc.getSimpleProperty("tst:title").getString());
+        assertEquals(Arrays.asList("s3", "s2"),
+                Arrays.asList(doc.getCollectionProperty("tst:subjects").getStrings()));
+        for (Node sub : subs) {
+            assertEquals(4, session.getChildren(sub, null, false).size());
+        }
+        // original untouched
+        assertEquals(5, session.getChildren(foldera, null, false).size());
+    }
+
+    @Test
+    public void testRemoveLargeTree() throws Exception {
+        repository.close();
+        RepositoryDescriptor descriptor = newDescriptor(-1, false);
+        // removal of more descendants than this is summarized
+        descriptor.invalidationsCompactThreshold = 3;
+        repository = new RepositoryImpl(descriptor);
+
+        Session session1 = repository.getConnection();
+        Node root1 = session1.getRootNode();
+        Node other = session1.addChildNode(root1, "other", null, "TestDoc",
+                false);
+        other.setSimpleProperty("tst:title", "other");
+        Node folder = session1.addChildNode(root1, "folder", null, "TestDoc",
+                false);
+        List<Serializable> ids = new ArrayList<Serializable>();
+        for (int i = 0; i < 5; i++) {
+            Node doc = session1.addChildNode(folder, "doc" + i, null,
+                    "TestDoc", false);
+            doc.setSimpleProperty("tst:title", "title" + i);
+            ids.add(doc.getId());
+        }
+        session1.save();
+        Node ver = session1.checkIn(other, "v1", "comment");
+        Node proxy = session1.addProxy(ver.getId(), other.getId(), folder,
+                "proxy", null);
+        ids.add(proxy.getId());
+        session1.save();
+        assertEquals(1, session1.getProxies(ver, null).size());
+
+        // read everything in session 2 cache
+        Session session2 = repository.getConnection();
+        for (Serializable id : ids) {
+            assertNotNull(session2.getNodeById(id));
+        }
+
+        session1.removeNode(folder);
+        session1.save();
+        assertNull(session1.getNodeByPath("/folder", null));
+        for (Serializable id : ids) {
+            assertNull(session1.getNodeById(id));
+        }
+        // proxies of the version outside the tree updated
+        assertEquals(0, session1.getProxies(ver, null).size());
+        // unrelated node still readable
+        assertEquals("other",
+                session1.getNodeByPath("/other", null).getSimpleProperty(
+                        "tst:title").getString());
+
+        // other session sees the removal
+        session2.save();
+        for (Serializable id : ids) {
+            assertNull(session2.getNodeById(id));
+        }
+        assertEquals(0, session2.getProxies(ver, null).size());
+    }
+
     @Test
     public void testVersioning() throws Exception {
         Session session = repository.getConnection();
@@ -1724,6 +2034,178 @@ public class TestSQLBackend extends SQLBackendTestCase {
         // session.copy(ver1, null, "bar"); not possible right now
     }
 
+    protected static Node checkInVersion(Session session, Node node,
+            long major, long minor) throws Exception {
+        if (Boolean.TRUE.equals(node.getSimpleProperty(
+                Model.MAIN_CHECKED_IN_PROP).getValue())) {
+            session.checkOut(node);
+        }
+        node.setSimpleProperty(Model.MAIN_MAJOR_VERSION_PROP,
+                Long.valueOf(major));
+        node.setSimpleProperty(Model.MAIN_MINOR_VERSION_PROP,
+                Long.valueOf(minor));
+        // distinct creation dates, the database orders versions by them
+        Thread.sleep(10);
+        return session.checkIn(node, null, null);
+    }
+
+    protected static void checkLatestVersions(List<Node> versions,
+            int latestMajor) throws Exception {
+        for (int i = 0; i < versions.size(); i++) {
+            Node ver = versions.get(i);
+            assertEquals(getVersionLabel(ver), i == versions.size() - 1,
+                    isLatestVersion(ver));
+            assertEquals(getVersionLabel(ver), i == latestMajor,
+                    isLatestMajorVersion(ver));
+        }
+    }
+
+    @Test
+    public void testVersionSeriesLatest() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node node = session.addChildNode(root, "node", null, "TestDoc", false);
+        session.save();
+
+        // versions created in the same session
+        Node ver1 = checkInVersion(session, node, 0, 1);
+        checkLatestVersions(Arrays.asList(ver1), -1);
+        Node ver2 = checkInVersion(session, node, 1, 0);
+        checkLatestVersions(Arrays.asList(ver1, ver2), 1);
+        Node ver3 = checkInVersion(session, node, 1, 1);
+        checkLatestVersions(Arrays.asList(ver1, ver2, ver3), 1);
+        session.save();
+        session.close();
+
+        // previous latest versions read from the database
+        session = repository.getConnection();
+        node = session.getNodeById(node.getId());
+        Node ver4 = checkInVersion(session, node, 2, 0);
+        Node ver5 = checkInVersion(session, node, 2, 1);
+        List<Node> versions = session.getVersions(node.getId());
+        assertEquals(5, versions.size());
+        assertEquals(ver4.getId(), versions.get(3).getId());
+        assertEquals(ver5.getId(), versions.get(4).getId());
+        checkLatestVersions(versions, 3);
+        session.save();
+
+        // removing the latest version recomputes the series
+        session.removeNode(ver5);
+        session.save();
+        versions = session.getVersions(node.getId());
+        assertEquals(4, versions.size());
+        checkLatestVersions(versions, 3);
+        Node ver6 = checkInVersion(session, node, 3, 0);
+        versions = session.getVersions(node.getId());
+        assertEquals(ver6.getId(), versions.get(4).getId());
+        checkLatestVersions(versions, 4);
+
+        // paged history
+        versions = session.getVersions(node.getId(), 1, 2);
+        assertEquals(2, versions.size());
+        assertEquals(ver2.getId(), versions.get(0).getId());
+        assertEquals(ver3.getId(), versions.get(1).getId());
+        versions = session.getVersions(node.getId(), 4, 10);
+        assertEquals(1, versions.size());
+        assertEquals(ver6.getId(), versions.get(0).getId());
+        assertEquals(0, session.getVersions(node.getId(), 5, 10).size());
+    }
+
+    protected Set<Serializable> queryVersionsByTitle(Session session,
+            String title) throws Exception {
+        return new HashSet<Serializable>(session.query(
+                "SELECT * FROM TestDoc WHERE ecm:isCheckedInVersion = 1 AND tst:title = '"
+                        + title + "'", QueryFilter.EMPTY, false).list);
+    }
+
+    protected static Set<Serializable> idSet(Node... nodes) {
+        Set<Serializable> ids = new HashSet<Serializable>();
+        for (Node node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+
+    protected String getTitle(Serializable id) throws Exception {
+        Session session = repository.getConnection();
+        try {
+            return session.getNodeById(id).getSimpleProperty("tst:title").getString();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testSharedVersionFragments() throws Exception {
+        repository.close();
+        RepositoryDescriptor descriptor = newDescriptor(-1, false);
+        descriptor.sharedVersionFragments = true;
+        repository = new RepositoryImpl(descriptor);
+
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node node = session.addChildNode(root, "node", null, "TestDoc", false);
+        node.setSimpleProperty("tst:title", "foo");
+        session.save();
+        Node ver1 = session.checkIn(node, "v1", null);
+        session.checkOut(node);
+        // unchanged, shares the row of ver1
+        Node ver2 = session.checkIn(node, "v2", null);
+        session.save();
+        assertEquals("foo", getTitle(ver2.getId()));
+        // queries match the sharing version too
+        assertEquals(idSet(ver1, ver2), queryVersionsByTitle(session, "foo"));
+
+        // writing an owner version hands over its row
+        ver1.setSimpleProperty("tst:title", "qux");
+        session.save();
+        assertEquals("qux", getTitle(ver1.getId()));
+        assertEquals("foo", getTitle(ver2.getId()));
+        assertEquals(idSet(ver1), queryVersionsByTitle(session, "qux"));
+        assertEquals(idSet(ver2), queryVersionsByTitle(session, "foo"));
+
+        // changed, has its own row, then shared by the next ones
+        session.checkOut(node);
+        node.setSimpleProperty("tst:title", "bar");
+        Node ver3 = session.checkIn(node, "v3", null);
+        session.checkOut(node);
+        Node ver4 = session.checkIn(node, "v4", null);
+        session.checkOut(node);
+        Node ver5 = session.checkIn(node, "v5", null);
+        session.save();
+        assertEquals("bar", getTitle(ver5.getId()));
+        assertEquals(idSet(ver3, ver4, ver5),
+                queryVersionsByTitle(session, "bar"));
+
+        // writing a sharing version gives it its own row
+        ver4.setSimpleProperty("tst:title", "baz");
+        session.save();
+        assertEquals("baz", getTitle(ver4.getId()));
+        assertEquals("bar", getTitle(ver3.getId()));
+        assertEquals("bar", getTitle(ver5.getId()));
+        assertEquals(idSet(ver3, ver5), queryVersionsByTitle(session, "bar"));
+        assertEquals(idSet(ver4), queryVersionsByTitle(session, "baz"));
+
+        // removing an owner version hands over its row
+        session.removeNode(ver3);
+        session.save();
+        assertEquals("bar", getTitle(ver5.getId()));
+        assertEquals(idSet(ver5), queryVersionsByTitle(session, "bar"));
+
+        // restoring a sharing version
+        session.checkOut(node);
+        Node ver6 = session.checkIn(node, "v6", null);
+        session.save();
+        assertEquals(idSet(ver5, ver6), queryVersionsByTitle(session, "bar"));
+        session.checkOut(node);
+        node.setSimpleProperty("tst:title", "live");
+        session.save();
+        session.restore(node, ver6);
+        session.save();
+        assertEquals("bar", getTitle(node.getId()));
+        session.close();
+    }
+
     @Test
     public void testVersionCopy() throws Exception {
         Session session = repository.getConnection();
@@ -2997,6 +3479,58 @@ public class TestSQLBackend extends SQLBackendTestCase {
         assertNull(lock);
     }
 
+    @Test
+    public void testGetLocks() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node node1 = session.addChildNode(root, "foo", null, "TestDoc", false);
+        Node node2 = session.addChildNode(root, "bar", null, "TestDoc", false);
+        Node node3 = session.addChildNode(root, "gee", null, "TestDoc", false);
+        session.save();
+        Serializable id1 = node1.getId();
+        Serializable id2 = node2.getId();
+        Serializable id3 = node3.getId();
+        List<Serializable> ids = Arrays.asList(id1, id2, id3);
+
+        Map<Serializable, Lock> locks = session.getLocks(ids);
+        assertTrue(locks.isEmpty());
+
+        assertNull(session.setLock(id1, new Lock("bob", null)));
+        assertNull(session.setLock(id3, new Lock("pete", null)));
+        session.close();
+
+        // new repository, no cache
+        repository.close();
+        repository = newRepository(-1, false);
+        session = repository.getConnection();
+        locks = session.getLocks(ids);
+        assertEquals(2, locks.size());
+        assertEquals("bob", locks.get(id1).getOwner());
+        assertEquals("pete", locks.get(id3).getOwner());
+        assertFalse(locks.containsKey(id2));
+
+        // now from cache, and consistent with updates
+        assertNotNull(session.removeLock(id1, null, false));
+        locks = session.getLocks(ids);
+        assertEquals(1, locks.size());
+        assertEquals("pete", locks.get(id3).getOwner());
+        session.close();
+    }
+
+    @Test
+    public void testLockCacheEvictsLeastRecentlyUsed() throws Exception {
+        Map<String, String> cache = new LockManager.LRUCache<String, String>(2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // a is now more recently used than b
+        cache.get("a");
+        cache.put("c", "C");
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("c"));
+    }
+
     @Test
     public void testLockingParallel() throws Throwable {
         Serializable nodeId = createNode();
@@ -3226,6 +3760,161 @@ public class TestSQLBackend extends SQLBackendTestCase {
         return propagator.connections.size();
     }
 
+    @Test
+    public void testEagerInitializationAndMapperPool() throws Exception {
+        repository.close();
+        RepositoryDescriptor descriptor = newDescriptor(-1, false);
+        descriptor.eagerInitialization = true;
+        descriptor.mapperPoolSize = 2;
+        long opened = JDBCConnection.getOpenedCount();
+        repository = new RepositoryImpl(descriptor);
+        // lock manager, then the pool filled in the background
+        waitForOpenedConnections(opened + 3);
+
+        // the pooled mappers keep their connection for the sessions
+        List<Session> sessions = new ArrayList<Session>();
+        for (int i = 0; i < 2; i++) {
+            Session session = repository.getConnection();
+            sessions.add(session);
+            Node root = session.getRootNode();
+            session.addChildNode(root, "doc" + i, null, "TestDoc", false);
+            session.save();
+        }
+        Session session = sessions.get(0);
+        session.save();
+        assertEquals(2,
+                session.getChildren(session.getRootNode(), null, false).size());
+        for (Session s : sessions) {
+            s.close();
+        }
+        // only the refill of the pool opened new ones
+        waitForOpenedConnections(opened + 5);
+        Thread.sleep(200);
+        assertEquals(opened + 5, JDBCConnection.getOpenedCount());
+    }
+
+    protected static void waitForOpenedConnections(long expected)
+            throws InterruptedException {
+        for (int i = 0; i < 100
+                && JDBCConnection.getOpenedCount() < expected; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(expected, JDBCConnection.getOpenedCount());
+    }
+
+    @Test
+    public void testCompactedInvalidations() throws Exception {
+        repository.close();
+        RepositoryDescriptor descriptor = newDescriptor(-1, false);
+        descriptor.invalidationsCompactThreshold = 2;
+        repository = new RepositoryImpl(descriptor);
+
+        Session session1 = repository.getConnection();
+        Node root1 = session1.getRootNode();
+        Node folder1 = session1.addChildNode(root1, "folder", null, "TestDoc",
+                false);
+        for (int i = 0; i < 5; i++) {
+            Node doc = session1.addChildNode(folder1, "doc" + i, null,
+                    "TestDoc", false);
+            doc.setSimpleProperty("tst:title", "old" + i);
+        }
+        session1.save();
+        // read everything in session 1 cache
+        for (Node doc : session1.getChildren(folder1, null, false)) {
+            doc.getSimpleProperty("tst:title").getString();
+        }
+
+        // modify many rows in session 2
+        Session session2 = repository.getConnection();
+        Node folder2 = session2.getNodeByPath("/folder", null);
+        for (Node doc : session2.getChildren(folder2, null, false)) {
+            doc.setSimpleProperty("tst:title", "new");
+        }
+        session2.addChildNode(folder2, "doc5", null, "TestDoc", false);
+        session2.save();
+
+        // session 1 sees all the changes through the compacted invalidations
+        session1.save();
+        List<Node> children = session1.getChildren(folder1, null, false);
+        assertEquals(6, children.size());
+        for (Node doc : children) {
+            if (!doc.getName().equals("doc5")) {
+                assertEquals("new",
+                        doc.getSimpleProperty("tst:title").getString());
+            }
+        }
+    }
+
+    @Test
+    public void testArrayColumns() throws Exception {
+        if (!(DatabaseHelper.DATABASE instanceof DatabaseH2 //
+        || DatabaseHelper.DATABASE instanceof DatabasePostgreSQL)) {
+            return;
+        }
+        // values first stored in the collection table
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node node = session.addChildNode(root, "foo", null, "TestDoc", false);
+        node.setCollectionProperty("tst:subjects", new String[] { "a", "b",
+                "c" });
+        session.save();
+        session.close();
+        repository.close();
+
+        // switch to an array column, existing values are migrated
+        RepositoryDescriptor descriptor = newDescriptor(-1, false);
+        List<FieldDescriptor> schemaFields = new ArrayList<FieldDescriptor>(
+                descriptor.schemaFields);
+        schemaFields.add(new FieldDescriptor("tst:subjects",
+                Model.FIELD_TYPE_ARRAY));
+        descriptor.schemaFields = schemaFields;
+        repository = new RepositoryImpl(descriptor);
+        session = repository.getConnection();
+        root = session.getRootNode();
+        node = session.getNodeByPath("/foo", null);
+        assertEquals(Arrays.asList("a", "b", "c"),
+                Arrays.asList(node.getCollectionProperty("tst:subjects").getStrings()));
+
+        node.setCollectionProperty("tst:subjects", new String[] { "c", "d" });
+        node = session.addChildNode(root, "bar", null, "TestDoc", false);
+        node.setCollectionProperty("tst:subjects", new String[] { "x" });
+        node = session.addChildNode(root, "gee", null, "TestDoc", false);
+        node.setCollectionProperty("tst:subjects", new String[0]);
+        session.save();
+        session.close();
+
+        session = repository.getConnection();
+        node = session.getNodeByPath("/foo", null);
+        assertEquals(Arrays.asList("c", "d"),
+                Arrays.asList(node.getCollectionProperty("tst:subjects").getStrings()));
+        node = session.getNodeByPath("/gee", null);
+        assertEquals(0,
+                node.getCollectionProperty("tst:subjects").getStrings().length);
+
+        PartialList<Serializable> res;
+        res = session.query(
+                "SELECT * FROM TestDoc WHERE tst:subjects = 'd'",
+                QueryFilter.EMPTY, false);
+        assertEquals(1, res.list.size());
+        res = session.query(
+                "SELECT * FROM TestDoc WHERE tst:subjects IN ('c', 'x')",
+                QueryFilter.EMPTY, false);
+        assertEquals(2, res.list.size());
+        res = session.query(
+                "SELECT * FROM TestDoc WHERE tst:subjects <> 'd'",
+                QueryFilter.EMPTY, false);
+        assertEquals(2, res.list.size());
+        res = session.query(
+                "SELECT * FROM TestDoc WHERE tst:subjects NOT IN ('d', 'x')",
+                QueryFilter.EMPTY, false);
+        assertEquals(1, res.list.size());
+        res = session.query(
+                "SELECT * FROM TestDoc WHERE tst:subjects/* = 'x'",
+                QueryFilter.EMPTY, false);
+        assertEquals(1, res.list.size());
+        session.close();
+    }
+
     @Test
     public void testCacheInvalidationsPropagatorLeak() throws Exception {
         if (this instanceof TestSQLBackendNet
@@ -38,6 +38,7 @@ import org.nuxeo.common.collections.ScopeType;
 import org.nuxeo.common.collections.ScopedMap;
 import org.nuxeo.common.utils.FileUtils;
 import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.api.AbstractSession;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.ClientRuntimeException;
@@ -80,8 +81,11 @@ import org.nuxeo.ecm.core.schema.SchemaManagerImpl;
 import org.nuxeo.ecm.core.schema.types.Schema;
 import org.nuxeo.ecm.core.storage.EventConstants;
 import org.nuxeo.ecm.core.storage.sql.coremodel.BinaryTextListener;
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLDocument;
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLSession;
 import org.nuxeo.ecm.core.storage.sql.listeners.DummyBeforeModificationListener;
 import org.nuxeo.ecm.core.storage.sql.listeners.DummyTestListener;
+import org.nuxeo.ecm.core.utils.BlobsExtractor;
 import org.nuxeo.ecm.core.versioning.VersioningService;
 import org.nuxeo.runtime.api.Framework;
 
@@ -346,6 +350,98 @@ public class TestSQLRepositoryAPI extends SQLRepositoryTestCase {
         assertEquals(0, results.size());
     }
 
+    protected static Blob makeBlob(String content, String filename) {
+        Blob blob = new StringBlob(content, "text/plain");
+        blob.setFilename(filename);
+        return blob;
+    }
+
+    protected static List<String> getBlobsInfo(List<Blob> blobs)
+            throws Exception {
+        List<String> infos = new ArrayList<String>();
+        for (Blob blob : blobs) {
+            infos.add(blob.getFilename() + '/' + blob.getMimeType() + '/'
+                    + blob.getString());
+        }
+        return infos;
+    }
+
+    protected void checkStorageBlobs(DocumentModel doc, List<String> expected)
+            throws Exception {
+        BlobsExtractor extractor = new BlobsExtractor();
+        List<String> fromDocument = getBlobsInfo(extractor.getBlobs(doc));
+        assertEquals(expected, fromDocument);
+        SQLDocument sqlDoc = (SQLDocument) ((AbstractSession) session).getSession().getDocumentByUUID(
+                doc.getId());
+        List<Blob> blobs = ((SQLSession) sqlDoc.getSession()).getBlobs(
+                sqlDoc.getNode(),
+                extractor.getInterestingBlobPaths(doc.getType()));
+        assertEquals(fromDocument, getBlobsInfo(blobs));
+    }
+
+    @Test
+    public void testGetBlobsFromStorage() throws Exception {
+        // single blob, empty list
+        DocumentModel file = new DocumentModelImpl("/", "file", "File");
+        file.setPropertyValue("file:content",
+                (Serializable) makeBlob("main", "main.txt"));
+        file = session.createDocument(file);
+        session.save();
+        checkStorageBlobs(file, Arrays.asList("main.txt/text/plain/main"));
+
+        // single blob, list of blobs
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("file", makeBlob("item" + i, "item" + i + ".txt"));
+            item.put("filename", "item" + i + ".txt");
+            items.add(item);
+        }
+        file.setPropertyValue("files:files", (Serializable) items);
+        file = session.saveDocument(file);
+        session.save();
+        checkStorageBlobs(file, Arrays.asList("main.txt/text/plain/main",
+                "item0.txt/text/plain/item0", "item1.txt/text/plain/item1"));
+
+        // complex property holding an empty list
+        DocumentModel doc = new DocumentModelImpl("/", "complex-doc",
+                "ComplexDoc");
+        Map<String, Object> attachedFile = new HashMap<String, Object>();
+        List<Map<String, Object>> vignettes = new ArrayList<Map<String, Object>>();
+        attachedFile.put("name", "somename");
+        attachedFile.put("vignettes", vignettes);
+        doc.setPropertyValue("cmpf:attachedFile", (Serializable) attachedFile);
+        doc = session.createDocument(doc);
+        session.save();
+        checkStorageBlobs(doc, Collections.<String> emptyList());
+
+        // complex property holding a list of complex holding blobs, one of
+        // them without blob
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> vignette = new HashMap<String, Object>();
+            vignette.put("width", Long.valueOf(i));
+            vignette.put("height", Long.valueOf(i));
+            if (i != 1) {
+                vignette.put("content", makeBlob("vignette" + i, "vignette"
+                        + i + ".txt"));
+            }
+            vignettes.add(vignette);
+        }
+        doc.setPropertyValue("cmpf:attachedFile", (Serializable) attachedFile);
+        doc = session.saveDocument(doc);
+        session.save();
+        checkStorageBlobs(doc, Arrays.asList(
+                "vignette0.txt/text/plain/vignette0",
+                "vignette2.txt/text/plain/vignette2"));
+
+        // reread from a new session
+        closeSession();
+        openSession();
+        checkStorageBlobs(session.getDocument(doc.getRef()), Arrays.asList(
+                "vignette0.txt/text/plain/vignette0",
+                "vignette2.txt/text/plain/vignette2"));
+    }
+
     @Test
     public void testComplexTypeOrdering() throws Exception {
         if (database instanceof DatabaseOracle) {
@@ -27,6 +27,7 @@ import static org.nuxeo.ecm.core.api.security.SecurityConstants.WRITE;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.WRITE_PROPERTIES;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.WRITE_SECURITY;
 
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -46,6 +47,7 @@ import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.core.api.DocumentSecurityException;
 import org.nuxeo.ecm.core.api.PathRef;
 import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
 import org.nuxeo.ecm.core.api.security.ACE;
 import org.nuxeo.ecm.core.api.security.ACL;
 import org.nuxeo.ecm.core.api.security.ACP;
@@ -618,4 +620,54 @@ public class TestSQLRepositorySecurity extends SQLRepositoryTestCase {
 
 
     }
+
+    protected static ACP grantingACP(String username, String permission) {
+        ACP acp = new ACPImpl();
+        ACL acl = new ACLImpl();
+        acl.add(new ACE(username, permission, true));
+        acp.addACL(acl);
+        return acp;
+    }
+
+    @Test
+    public void testPermissionCacheInvalidation() throws Exception {
+        DocumentModel folder1 = new DocumentModelImpl("/", "folder1", "Folder");
+        folder1 = session.createDocument(folder1);
+        DocumentModel folder2 = new DocumentModelImpl("/", "folder2", "Folder");
+        folder2 = session.createDocument(folder2);
+        DocumentModel doc = new DocumentModelImpl("/folder1", "doc", "File");
+        doc = session.createDocument(doc);
+        folder1.setACP(grantingACP("joe", WRITE), true);
+        session.save();
+        DocumentRef ref = doc.getRef();
+        Principal joe = new UserPrincipal("joe", new ArrayList<String>(),
+                false, false);
+        assertTrue(session.hasPermission(joe, ref, WRITE));
+
+        // moves in the same session
+        session.move(ref, folder2.getRef(), null);
+        assertFalse(session.hasPermission(joe, ref, WRITE));
+        session.move(ref, folder1.getRef(), null);
+        assertTrue(session.hasPermission(joe, ref, WRITE));
+
+        // ACL change in the same session, not saved
+        folder1.setACP(new ACPImpl(), true);
+        assertFalse(session.hasPermission(joe, ref, WRITE));
+        folder1.setACP(grantingACP("joe", WRITE), true);
+        assertTrue(session.hasPermission(joe, ref, WRITE));
+        session.save();
+
+        // ACL change in another session
+        CoreSession joeSession = openSessionAs("joe");
+        try {
+            assertTrue(joeSession.hasPermission(ref, WRITE));
+            folder1.setACP(grantingACP("bob", WRITE), true);
+            session.save();
+            joeSession.save(); // process invalidations
+            assertFalse(joeSession.hasPermission(ref, WRITE));
+        } finally {
+            closeSession(joeSession);
+        }
+    }
+
 }
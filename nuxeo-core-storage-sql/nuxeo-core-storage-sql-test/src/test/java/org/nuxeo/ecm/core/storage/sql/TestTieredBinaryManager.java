@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.runtime.services.streaming.FileSource;
+import org.nuxeo.runtime.services.streaming.StreamSource;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestTieredBinaryManager extends NXRuntimeTestCase {
+
+    protected File base;
+
+    protected RepositoryDescriptor descriptor;
+
+    protected TieredBinaryManager binaryManager;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        base = File.createTempFile("nxtiered", null);
+        base.delete();
+        base.mkdirs();
+        descriptor = new RepositoryDescriptor();
+        descriptor.binaryStorePath = new File(base, "hot").getPath();
+        descriptor.binaryStoreColdPath = new File(base, "cold").getPath();
+        binaryManager = new TieredBinaryManager();
+        binaryManager.initialize(descriptor);
+        binaryManager.minIdleTime = 0;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        binaryManager.close();
+        FileUtils.deleteDirectory(base);
+        super.tearDown();
+    }
+
+    protected Binary store(String content) throws Exception {
+        return binaryManager.getBinary(new ByteArrayInputStream(
+                content.getBytes("UTF-8")));
+    }
+
+    protected boolean isHot(String digest) {
+        return binaryManager.getFileForDigest(digest, false).exists();
+    }
+
+    protected boolean isCold(String digest) {
+        return binaryManager.getColdBinaryManager().getFileForDigest(digest,
+                false).exists();
+    }
+
+    @Test
+    public void testMigrationAndPromotion() throws Exception {
+        String d1 = store("first binary").getDigest();
+        String d2 = store("second binary").getDigest();
+        String d3 = store("third binary").getDigest();
+        assertTrue(isHot(d1));
+        assertFalse(isCold(d1));
+
+        // d1 then d3 are the least recently accessed
+        binaryManager.accessTimes.put(d1, Long.valueOf(1000));
+        binaryManager.accessTimes.put(d3, Long.valueOf(2000));
+        binaryManager.hotMaxSize = 20;
+        binaryManager.migrate();
+        assertFalse(isHot(d1));
+        assertTrue(isCold(d1));
+        assertFalse(isHot(d3));
+        assertTrue(isCold(d3));
+        assertTrue(isHot(d2));
+        assertFalse(isCold(d2));
+
+        // reading a cold binary promotes it
+        binaryManager.hotMaxSize = 0;
+        Binary binary = binaryManager.getBinary(d1);
+        assertNotNull(binary);
+        assertFalse(isHot(d1));
+        assertEquals("first binary",
+                IOUtils.toString(binary.getStream(), "UTF-8"));
+        assertTrue(isHot(d1));
+        // the cold tier keeps it
+        assertTrue(isCold(d1));
+    }
+
+    @Test
+    public void testReadAfterMigration() throws Exception {
+        Binary binary = store("first binary");
+        String d1 = binary.getDigest();
+        Binary gotten = binaryManager.getBinary(d1);
+        String d2 = store("second binary").getDigest();
+        binaryManager.accessTimes.put(d1, Long.valueOf(1000));
+        binaryManager.hotMaxSize = 15;
+        binaryManager.migrate();
+        assertFalse(isHot(d1));
+        assertTrue(isCold(d1));
+        assertTrue(isHot(d2));
+
+        // the binaries gotten before the migration are still readable, and
+        // promoted when read
+        binaryManager.hotMaxSize = 0;
+        assertEquals("first binary",
+                IOUtils.toString(binary.getStream(), "UTF-8"));
+        assertTrue(isHot(d1));
+        assertEquals("first binary",
+                IOUtils.toString(gotten.getStream(), "UTF-8"));
+    }
+
+    @Test
+    public void testAccessTimes() throws Exception {
+        String d1 = store("first binary").getDigest();
+        binaryManager.accessTimes.put(d1, Long.valueOf(1000));
+        // getting a binary is not an access, reading it is
+        Binary binary = binaryManager.getBinary(d1);
+        assertEquals(Long.valueOf(1000), binaryManager.accessTimes.get(d1));
+        IOUtils.toString(binary.getStream(), "UTF-8");
+        long time = binaryManager.accessTimes.get(d1).longValue();
+        assertTrue(time > 1000);
+
+        // saved and reloaded
+        binaryManager.close();
+        TieredBinaryManager other = new TieredBinaryManager();
+        other.initialize(descriptor);
+        assertEquals(Long.valueOf(time), other.accessTimes.get(d1));
+    }
+
+    @Test
+    public void testStreamSourceOfMissingBinary() throws Exception {
+        String d1 = store("first binary").getDigest();
+        Binary binary = binaryManager.getBinary(d1);
+        assertTrue(binary.getStreamSource() instanceof FileSource);
+
+        // removed from both tiers after being gotten
+        binaryManager.getFileForDigest(d1, false).delete();
+        StreamSource source = binary.getStreamSource();
+        assertFalse(source instanceof FileSource);
+        try {
+            source.getStream();
+            fail("Missing binary read");
+        } catch (FileNotFoundException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testGarbageCollector() throws Exception {
+        String d1 = store("first binary").getDigest();
+        String d2 = store("second binary").getDigest();
+        binaryManager.accessTimes.put(d1, Long.valueOf(1000));
+        binaryManager.hotMaxSize = 15;
+        binaryManager.migrate();
+        assertTrue(isCold(d1));
+        assertTrue(isHot(d2));
+
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+
+        // d1 used, d2 not used
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        gc.start();
+        assertTrue(gc.isInProgress());
+        gc.mark(d1);
+        gc.stop(true);
+        assertFalse(gc.isInProgress());
+        assertEquals(1, gc.getStatus().numBinaries);
+        assertEquals(1, gc.getStatus().numBinariesGC);
+        assertTrue(isCold(d1));
+        assertFalse(isHot(d2));
+    }
+
+}
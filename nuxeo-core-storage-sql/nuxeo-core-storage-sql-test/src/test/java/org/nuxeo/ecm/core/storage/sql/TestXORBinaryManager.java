@@ -19,9 +19,11 @@ package org.nuxeo.ecm.core.storage.sql;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
@@ -59,6 +61,29 @@ public class TestXORBinaryManager extends NXRuntimeTestCase {
         assertEquals(CONTENT, IOUtils.toString(binary.getStream(), "UTF-8"));
     }
 
+    @Test
+    public void testRanges() throws Exception {
+        XORBinaryManager binaryManager = new XORBinaryManager();
+        binaryManager.initialize(new RepositoryDescriptor());
+        byte[] bytes = CONTENT.getBytes("UTF-8");
+        Binary binary = binaryManager.getBinary(new ByteArrayInputStream(
+                bytes));
+
+        // unscrambled from the offset
+        assertEquals("is a file",
+                IOUtils.toString(binary.getStream(5, 9), "UTF-8"));
+        assertEquals("au caf\u00e9",
+                IOUtils.toString(binary.getStream(15, -1), "UTF-8"));
+
+        // no channel on the scrambled file
+        try {
+            binary.getChannel();
+            fail();
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
     protected static int countFiles(File dir) {
         int n = 0;
         for (File f : dir.listFiles()) {
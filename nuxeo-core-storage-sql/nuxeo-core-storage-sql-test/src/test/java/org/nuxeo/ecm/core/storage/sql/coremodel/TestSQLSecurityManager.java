@@ -15,6 +15,7 @@ package org.nuxeo.ecm.core.storage.sql.coremodel;
 import org.nuxeo.ecm.core.api.security.ACE;
 import org.nuxeo.ecm.core.api.security.ACL;
 import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
 import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.storage.sql.ACLRow;
@@ -165,4 +166,45 @@ public class TestSQLSecurityManager {
         assertNull(aclrow.group);
     }
 
+    @Test
+    public void testCompiledACL() {
+        SQLSecurityManager securityManager = new SQLSecurityManager();
+        ACLRow[] rows = new ACLRow[] {
+                new ACLRow(0, "local", false, "Write", "bob", null),
+                new ACLRow(1, "local", true, "Everything", null, "members"),
+                new ACLRow(2, "local", true, "Read", "Everyone", null) };
+        CompiledACL acl = securityManager.intern(CompiledACL.Entries.fromRows(rows));
+        ACP acp = SQLSecurityManager.aclRowsToACP(rows);
+        String[][] principalSets = { { "bob" }, { "bob", "members" },
+                { "pete", "members" }, { "pete" }, {} };
+        String[][] permissionSets = { { "Write" }, { "Read" },
+                { "RestrictedRead" }, { "Write", "Everything" } };
+        for (String[] principals : principalSets) {
+            for (String[] permissions : permissionSets) {
+                assertEquals(acp.getAccess(principals, permissions),
+                        acl.getAccess(principals, permissions));
+            }
+        }
+        assertFalse(acl.isBlockingInheritance());
+
+        // interned by content
+        assertSame(acl,
+                securityManager.intern(CompiledACL.Entries.fromRows(rows.clone())));
+
+        // blocking
+        ACLRow[] blockingRows = new ACLRow[] {
+                new ACLRow(0, "local", true, "Read", "bob", null),
+                new ACLRow(1, "local", false, "Everything", "Everyone", null) };
+        CompiledACL blocking = securityManager.intern(CompiledACL.Entries.fromRows(blockingRows));
+        assertTrue(blocking.isBlockingInheritance());
+        assertNotSame(acl, blocking);
+
+        // merged, memoized
+        CompiledACL merged = securityManager.merge(blocking, acl);
+        assertEquals(5, merged.size());
+        assertSame(merged, securityManager.merge(blocking, acl));
+        assertEquals(Access.DENY, merged.getAccess(new String[] { "pete" },
+                new String[] { "Read" }));
+    }
+
 }
@@ -46,6 +46,35 @@ public class ACLRow implements Serializable {
         this.group = group;
     }
 
+    @Override
+    public int hashCode() {
+        int result = 31 + pos;
+        result = 31 * result + (name == null ? 0 : name.hashCode());
+        result = 31 * result + (grant ? 1231 : 1237);
+        result = 31 * result + (permission == null ? 0 : permission.hashCode());
+        result = 31 * result + (user == null ? 0 : user.hashCode());
+        result = 31 * result + (group == null ? 0 : group.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof ACLRow)) {
+            return false;
+        }
+        ACLRow acl = (ACLRow) other;
+        return pos == acl.pos && grant == acl.grant && same(name, acl.name)
+                && same(permission, acl.permission) && same(user, acl.user)
+                && same(group, acl.group);
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + '(' + pos + ',' + name + ','
@@ -17,10 +17,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.nuxeo.common.xmap.XMap;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
 import org.nuxeo.runtime.services.streaming.FileSource;
 import org.nuxeo.runtime.services.streaming.StreamSource;
 
@@ -109,12 +111,18 @@ abstract class AbstractBinaryManager implements BinaryManager {
          */
         BinaryScrambler scrambler = getBinaryScrambler();
         int n;
+        long length = 0;
         while ((n = in.read(buf)) != -1) {
             scrambler.scrambleBuffer(buf, 0, n);
             digest.update(buf, 0, n);
             out.write(buf, 0, n);
+            length += n;
         }
         out.flush();
+        ResourceProfile profile = ResourceProfile.current();
+        if (profile != null) {
+            profile.addBinaryBytesWritten(length);
+        }
 
         return toHexString(digest.digest());
     }
@@ -135,6 +143,15 @@ abstract class AbstractBinaryManager implements BinaryManager {
         return garbageCollector;
     }
 
+    /**
+     * Releases the resources of the binary manager when the repository is
+     * closed.
+     *
+     * @since 5.7
+     */
+    public void close() {
+    }
+
     /**
      * A {@link BinaryScrambler} that does nothing.
      */
@@ -193,6 +210,13 @@ abstract class AbstractBinaryManager implements BinaryManager {
             return new ScrambledStreamSource(file, scrambler);
         }
 
+        @Override
+        public FileChannel getChannel() throws IOException {
+            // the file content is scrambled, only streams unscramble it
+            throw new IOException("Cannot open a channel on scrambled binary: "
+                    + digest);
+        }
+
     }
 
     /**
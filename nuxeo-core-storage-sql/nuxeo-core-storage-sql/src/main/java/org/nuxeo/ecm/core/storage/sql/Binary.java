@@ -14,10 +14,14 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
+import org.nuxeo.ecm.core.api.impl.blob.RangeInputStream;
 import org.nuxeo.runtime.services.streaming.FileSource;
 import org.nuxeo.runtime.services.streaming.StreamSource;
 
@@ -86,6 +90,67 @@ public class Binary implements Serializable {
         return new FileInputStream(file);
     }
 
+    /**
+     * Gets an input stream on a range of the binary.
+     * <p>
+     * Skipping to the offset is a seek, so only the bytes of the range are
+     * read.
+     *
+     * @param offset the offset of the first byte
+     * @param length the maximum number of bytes, or {@code -1} for the rest
+     *            of the binary
+     * @return the input stream
+     * @since 5.7
+     */
+    public InputStream getStream(long offset, long length) throws IOException {
+        InputStream in = getStream();
+        if (in == null) {
+            return null;
+        }
+        return RangeInputStream.open(in, offset, length);
+    }
+
+    /**
+     * Opens a read-only channel on the binary, for random access.
+     *
+     * @return the channel
+     * @since 5.7
+     */
+    public FileChannel getChannel() throws IOException {
+        File f = getFile();
+        if (f == null) {
+            throw new FileNotFoundException("Missing binary: " + digest);
+        }
+        return new FileInputStream(f).getChannel();
+    }
+
+    /**
+     * Maps a range of the binary in memory, read-only.
+     *
+     * @param offset the offset of the range
+     * @param length the length of the range
+     * @return the mapped buffer
+     * @since 5.7
+     */
+    public MappedByteBuffer map(long offset, long length) throws IOException {
+        FileChannel channel = getChannel();
+        try {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gets the local file holding the binary.
+     *
+     * @since 5.7
+     */
+    protected File getFile() {
+        return file;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + '(' + digest + ')';
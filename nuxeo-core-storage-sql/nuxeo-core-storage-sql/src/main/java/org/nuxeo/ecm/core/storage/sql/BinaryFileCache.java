@@ -24,19 +24,37 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.file.LRUFileCache;
+import org.nuxeo.ecm.core.api.impl.blob.RangeInputStream;
 
 /**
+ * A file cache of the binaries of a remote database.
+ * <p>
+ * Files missing from the cache are fetched without holding a lock on the
+ * cache, so that different files are fetched in parallel. Threads asking for
+ * a file being fetched wait for that fetch instead of starting another one.
+ *
  * @author "Stephane Lacoin (aka matic) slacoin@nuxeo.com"
  *
  */
 public abstract class BinaryFileCache extends LRUFileCache {
 
+    private static final Log log = LogFactory.getLog(BinaryFileCache.class);
+
     protected static final String LEN_DIGEST_SUFFIX = "-len";
 
+    /** The fetches in progress, by key. */
+    protected final ConcurrentMap<String, FutureTask<File>> fetches = new ConcurrentHashMap<String, FutureTask<File>>();
+
     public BinaryFileCache(File dir, long maxSize) {
         super(dir, maxSize);
     }
@@ -62,6 +80,58 @@ public abstract class BinaryFileCache extends LRUFileCache {
      */
     public abstract Long fetchLength(String key);
 
+    /**
+     * Fetches a range of the file from the remote database, without putting
+     * it in the cache.
+     * <p>
+     * The default implementation returns {@code null}, meaning that ranges
+     * cannot be fetched and that the whole file must be fetched in the cache
+     * first. Stores with ranged reads should override it.
+     *
+     * @param key identify the file in cache
+     * @param offset the offset of the range
+     * @param length the length of the range, or {@code -1} for the rest of
+     *            the file
+     * @return a stream on the range, or {@code null} if ranges are not
+     *         supported
+     * @throws IOException if the range cannot be fetched
+     * @since 5.7
+     */
+    public InputStream fetchRange(String key, long offset, long length)
+            throws IOException {
+        return null;
+    }
+
+    /**
+     * Gets a stream on a range of a file.
+     * <p>
+     * A file already in the cache is read directly. Otherwise the range is
+     * fetched from the remote database if supported, or the whole file is
+     * fetched in the cache.
+     *
+     * @param key identify the file in cache
+     * @param offset the offset of the range
+     * @param length the length of the range, or {@code -1} for the rest of
+     *            the file
+     * @return a stream on the range, or {@code null} if the file is missing
+     * @since 5.7
+     */
+    public InputStream getStream(String key, long offset, long length)
+            throws IOException {
+        File file = super.getFile(key);
+        if (file == null) {
+            InputStream in = fetchRange(key, offset, length);
+            if (in != null) {
+                return in;
+            }
+            file = getFile(key);
+            if (file == null) {
+                return null;
+            }
+        }
+        return RangeInputStream.open(file, offset, length);
+    }
+
     protected Long lengthFromCache(String key) {
         File f = super.getFile(key);
         if (f == null) {
@@ -129,7 +199,7 @@ public abstract class BinaryFileCache extends LRUFileCache {
     }
 
     @Override
-    public synchronized File getFile(String key) {
+    public File getFile(final String key) {
 
         // get file from cache
         File file = super.getFile(key);
@@ -137,7 +207,50 @@ public abstract class BinaryFileCache extends LRUFileCache {
             return file;
         }
 
-        // fetch file from storage
+        // fetch file from storage, or wait for the fetch in progress
+        FutureTask<File> fetch = new FutureTask<File>(new Callable<File>() {
+            @Override
+            public File call() {
+                return fetchInCache(key);
+            }
+        });
+        FutureTask<File> current = fetches.putIfAbsent(key, fetch);
+        if (current != null) {
+            return waitForFetch(key, current);
+        }
+        try {
+            fetch.run();
+            return waitForFetch(key, fetch);
+        } finally {
+            fetches.remove(key, fetch);
+        }
+    }
+
+    protected File waitForFetch(String key, FutureTask<File> fetch) {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            // not a missing file, let the caller know it was interrupted
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching " + key, e);
+        } catch (ExecutionException e) {
+            log.error("Error while fetching " + key + " on storage",
+                    e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the file from storage and puts it in the cache, unless another
+     * fetch already did.
+     *
+     * @return the file, or {@code null} if it is missing from storage
+     */
+    protected File fetchInCache(String key) {
+        File file = super.getFile(key);
+        if (file != null) {
+            return file;
+        }
         File tmp = null;
         try {
             tmp = getTempFile();
@@ -157,4 +270,5 @@ public abstract class BinaryFileCache extends LRUFileCache {
         return null;
 
     }
+
 }
@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
+import org.nuxeo.runtime.services.streaming.AbstractStreamSource;
+import org.nuxeo.runtime.services.streaming.FileSource;
+import org.nuxeo.runtime.services.streaming.StreamSource;
+
+/**
+ * A filesystem-based binary manager that splits binaries into chunks and
+ * stores each distinct chunk once, so that binaries differing by a few bytes,
+ * like successive versions of a big file, share most of their storage.
+ * <p>
+ * The chunk boundaries are found from the content (content-defined chunking
+ * with a rolling hash), so an insertion or deletion only changes the chunks
+ * around it.
+ * <p>
+ * The format of the <em>binaries</em> directory is the one of
+ * {@link LocalBinaryManager}, except that the files of <em>data/</em> are
+ * manifests listing the chunks of each binary, and that the chunks are stored
+ * in the <em>chunks/</em> hierarchy according to their digest.
+ * <p>
+ * The garbage collector works on chunks: marking a binary marks its manifest
+ * and its chunks, the unmarked manifests and chunks are deleted.
+ *
+ * @since 5.7
+ */
+public class ChunkedBinaryManager extends LocalBinaryManager {
+
+    private static final Log log = LogFactory.getLog(ChunkedBinaryManager.class);
+
+    public static final String CHUNKS = "chunks";
+
+    /** Minimum chunk size, no boundary is looked for before. */
+    public static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+    /** Maximum chunk size, a boundary is forced after. */
+    public static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+    /** Number of bits of the boundary mask, giving 64 kB chunks on average. */
+    protected static final int AVERAGE_CHUNK_BITS = 16;
+
+    /** Random values of the rolling hash for each byte value. */
+    protected static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    protected File chunksDir;
+
+    @Override
+    public void initialize(RepositoryDescriptor repositoryDescriptor)
+            throws IOException {
+        super.initialize(repositoryDescriptor);
+        chunksDir = new File(storageDir.getParentFile(), CHUNKS);
+        chunksDir.mkdirs();
+    }
+
+    public File getChunksDir() {
+        return chunksDir;
+    }
+
+    /**
+     * Gets a file representing the storage for a given chunk digest.
+     */
+    public File getFileForChunk(String digest, boolean createDir) {
+        File file = getFileForDigest(digest, createDir);
+        if (file == null) {
+            return null;
+        }
+        // same layout as the manifests, under the chunks dir
+        String path = file.getPath().substring(
+                storageDir.getPath().length());
+        file = new File(chunksDir, path);
+        if (createDir) {
+            file.getParentFile().mkdirs();
+        }
+        return file;
+    }
+
+    @Override
+    public Binary getBinary(InputStream in) throws IOException {
+        String digest;
+        List<String> chunkDigests = new ArrayList<String>();
+        List<Long> chunkLengths = new ArrayList<Long>();
+        try {
+            digest = storeChunks(in, chunkDigests, chunkLengths);
+        } finally {
+            in.close();
+        }
+        File file = getFileForDigest(digest, true);
+        if (file.exists()) {
+            // update date for the GC
+            touch(file);
+        } else {
+            writeManifest(file, chunkDigests, chunkLengths);
+        }
+        return getBinary(digest);
+    }
+
+    /**
+     * Splits the stream into chunks, stores the new ones, and computes the
+     * digest of the whole stream.
+     */
+    protected String storeChunks(InputStream in, List<String> chunkDigests,
+            List<Long> chunkLengths) throws IOException {
+        MessageDigest digest = getMessageDigest();
+        byte[] chunk = new byte[MAX_CHUNK_SIZE];
+        byte[] buf = new byte[MAX_BUF_SIZE];
+        int chunkLength = 0;
+        long hash = 0;
+        long length = 0;
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            digest.update(buf, 0, n);
+            length += n;
+            for (int i = 0; i < n; i++) {
+                byte b = buf[i];
+                chunk[chunkLength++] = b;
+                hash = (hash << 1) + GEAR[b & 0xFF];
+                if (chunkLength == MAX_CHUNK_SIZE
+                        || (chunkLength >= MIN_CHUNK_SIZE && (hash >>> (64 - AVERAGE_CHUNK_BITS)) == 0)) {
+                    chunkDigests.add(storeChunk(chunk, chunkLength));
+                    chunkLengths.add(Long.valueOf(chunkLength));
+                    chunkLength = 0;
+                    hash = 0;
+                }
+            }
+        }
+        if (chunkLength > 0) {
+            chunkDigests.add(storeChunk(chunk, chunkLength));
+            chunkLengths.add(Long.valueOf(chunkLength));
+        }
+        ResourceProfile profile = ResourceProfile.current();
+        if (profile != null) {
+            profile.addBinaryBytesWritten(length);
+        }
+        return toHexString(digest.digest());
+    }
+
+    protected MessageDigest getMessageDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(descriptor.digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
+
+    /**
+     * Stores a chunk if not already stored.
+     *
+     * @return the chunk digest
+     */
+    protected String storeChunk(byte[] chunk, int length) throws IOException {
+        MessageDigest md = getMessageDigest();
+        md.update(chunk, 0, length);
+        String digest = toHexString(md.digest());
+        File file = getFileForChunk(digest, true);
+        if (file.exists()) {
+            // update date for the GC
+            touch(file);
+            return digest;
+        }
+        File tmp = File.createTempFile("chunk_", ".tmp", tmpDir);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(chunk, 0, length);
+            } finally {
+                out.close();
+            }
+            atomicMove(tmp, file);
+        } finally {
+            tmp.delete();
+        }
+        return digest;
+    }
+
+    protected void writeManifest(File file, List<String> chunkDigests,
+            List<Long> chunkLengths) throws IOException {
+        File tmp = File.createTempFile("manifest_", ".tmp", tmpDir);
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmp),
+                    "UTF-8");
+            try {
+                for (int i = 0; i < chunkDigests.size(); i++) {
+                    writer.write(chunkDigests.get(i));
+                    writer.write(' ');
+                    writer.write(chunkLengths.get(i).toString());
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            atomicMove(tmp, file);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Reads the chunk digests and lengths of a manifest.
+     */
+    protected void readManifest(File file, List<String> chunkDigests,
+            List<Long> chunkLengths) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int i = line.indexOf(' ');
+                if (i < 0) {
+                    throw new IOException("Invalid manifest: " + file);
+                }
+                chunkDigests.add(line.substring(0, i));
+                chunkLengths.add(Long.valueOf(line.substring(i + 1)));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public Binary getBinary(String digest) {
+        File file = getFileForDigest(digest, false);
+        if (file == null) {
+            // invalid digest
+            return null;
+        }
+        if (!file.exists()) {
+            log.warn("cannot fetch content at " + file.getPath()
+                    + " (file does not exist), check your configuration");
+            return null;
+        }
+        List<String> chunkDigests = new ArrayList<String>();
+        List<Long> chunkLengths = new ArrayList<Long>();
+        try {
+            readManifest(file, chunkDigests, chunkLengths);
+        } catch (IOException e) {
+            log.error("Cannot read manifest: " + file, e);
+            return null;
+        }
+        File[] chunks = new File[chunkDigests.size()];
+        long[] lengths = new long[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = getFileForChunk(chunkDigests.get(i), false);
+            lengths[i] = chunkLengths.get(i).longValue();
+        }
+        return new ChunkedBinary(file, digest, repositoryName, chunks,
+                lengths);
+    }
+
+    /**
+     * A binary made of chunks, read one after the other.
+     */
+    public static class ChunkedBinary extends Binary {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final File[] chunks;
+
+        protected final long[] lengths;
+
+        public ChunkedBinary(File manifest, String digest,
+                String repoName, File[] chunks, long[] lengths) {
+            super(manifest, digest, repoName);
+            this.chunks = chunks;
+            this.lengths = lengths;
+            long length = 0;
+            for (long l : lengths) {
+                length += l;
+            }
+            this.length = length;
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            return new ChunksInputStream(chunks, lengths);
+        }
+
+        @Override
+        public StreamSource getStreamSource() {
+            return new ChunksStreamSource(this);
+        }
+
+        @Override
+        public FileChannel getChannel() throws IOException {
+            // no single file holds the content
+            throw new IOException("Cannot open a channel on chunked binary: "
+                    + digest);
+        }
+    }
+
+    /**
+     * A {@link StreamSource} reading the chunks of a binary.
+     * <p>
+     * This is not a {@link FileSource}, as no single file holds the content:
+     * callers using the file of a {@link FileSource} directly read the chunks
+     * through the stream instead.
+     */
+    public static class ChunksStreamSource extends AbstractStreamSource {
+
+        protected final ChunkedBinary binary;
+
+        public ChunksStreamSource(ChunkedBinary binary) {
+            this.binary = binary;
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            return binary.getStream();
+        }
+
+        @Override
+        public boolean canReopen() {
+            return true;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return binary.getLength();
+        }
+    }
+
+    /**
+     * An input stream reading chunk files one after the other through their
+     * channels. Skipping whole chunks does not open them.
+     */
+    public static class ChunksInputStream extends InputStream {
+
+        protected final File[] chunks;
+
+        protected final long[] lengths;
+
+        protected int index = -1;
+
+        protected FileChannel channel;
+
+        protected long remaining;
+
+        protected final byte[] onebyte = new byte[1];
+
+        public ChunksInputStream(File[] chunks, long[] lengths) {
+            this.chunks = chunks;
+            this.lengths = lengths;
+        }
+
+        protected boolean nextChunk() throws IOException {
+            closeChunk();
+            if (index + 1 >= chunks.length) {
+                return false;
+            }
+            index++;
+            channel = new FileInputStream(chunks[index]).getChannel();
+            remaining = lengths[index];
+            return true;
+        }
+
+        protected void closeChunk() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            remaining = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int n;
+            while ((n = read(onebyte, 0, 1)) == 0) {
+                // retry
+            }
+            return n == -1 ? -1 : onebyte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (channel == null || remaining == 0) {
+                if (!nextChunk()) {
+                    return -1;
+                }
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off,
+                    (int) Math.min(len, remaining)));
+            if (n == -1) {
+                throw new IOException("Truncated chunk: " + chunks[index]);
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (n > 0) {
+                if (channel != null && remaining > 0) {
+                    long k = Math.min(n, remaining);
+                    channel.position(channel.position() + k);
+                    remaining -= k;
+                    n -= k;
+                    skipped += k;
+                } else if (index + 1 < chunks.length
+                        && lengths[index + 1] <= n) {
+                    // skip a whole chunk without opening it
+                    closeChunk();
+                    index++;
+                    n -= lengths[index];
+                    skipped += lengths[index];
+                } else if (!nextChunk()) {
+                    break;
+                }
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeChunk();
+            index = chunks.length;
+        }
+    }
+
+    @Override
+    protected void createGarbageCollector() {
+        garbageCollector = new ChunkedBinaryGarbageCollector(this);
+    }
+
+    /**
+     * Garbage collector of the manifests and chunks.
+     */
+    public static class ChunkedBinaryGarbageCollector extends
+            DefaultBinaryGarbageCollector {
+
+        protected BinaryManagerStatus chunksStatus;
+
+        public ChunkedBinaryGarbageCollector(
+                ChunkedBinaryManager binaryManager) {
+            super(binaryManager);
+        }
+
+        protected ChunkedBinaryManager getBinaryManager() {
+            return (ChunkedBinaryManager) binaryManager;
+        }
+
+        /**
+         * Gets the status of the chunks, available after {@link #stop}.
+         */
+        public BinaryManagerStatus getChunksStatus() {
+            return chunksStatus;
+        }
+
+        @Override
+        public void mark(String digest) {
+            ChunkedBinaryManager bm = getBinaryManager();
+            File file = bm.getFileForDigest(digest, false);
+            if (!file.exists()) {
+                log.error("Unknown file digest: " + digest);
+                return;
+            }
+            touch(file);
+            List<String> chunkDigests = new ArrayList<String>();
+            List<Long> chunkLengths = new ArrayList<Long>();
+            try {
+                bm.readManifest(file, chunkDigests, chunkLengths);
+            } catch (IOException e) {
+                log.error("Cannot read manifest: " + file, e);
+                return;
+            }
+            for (String chunkDigest : chunkDigests) {
+                File chunk = bm.getFileForChunk(chunkDigest, false);
+                if (chunk.exists()) {
+                    touch(chunk);
+                } else {
+                    log.error("Missing chunk " + chunkDigest + " for: "
+                            + digest);
+                }
+            }
+        }
+
+        @Override
+        public void stop(boolean delete) {
+            if (startTime == 0) {
+                throw new RuntimeException("Not started");
+            }
+            // sweep the chunks, counted apart
+            BinaryManagerStatus binariesStatus = status;
+            status = new BinaryManagerStatus();
+            deleteOld(getBinaryManager().getChunksDir(), startTime
+                    - TIME_RESOLUTION, 0, delete);
+            chunksStatus = status;
+            status = binariesStatus;
+            super.stop(delete);
+            chunksStatus.gcDuration = status.gcDuration;
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import java.io.Serializable;
 import java.util.Arrays;
 
 import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.CollectionDelta;
 
 /**
  * A type of fragment corresponding to several rows with the same id.
@@ -24,6 +25,12 @@ public class CollectionFragment extends Fragment {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Set when the value was replaced without knowing the database state, so
+     * that no delta can be computed from the old values.
+     */
+    protected boolean rewrite;
+
     /**
      * Constructs a {@link CollectionFragment} from a {@link Row}.
      *
@@ -49,6 +56,8 @@ public class CollectionFragment extends Fragment {
             if (Arrays.equals(row.values, value)) {
                 return;
             }
+        } else {
+            rewrite = true;
         }
         row.values = value.clone();
         markModified();
@@ -73,6 +82,61 @@ public class CollectionFragment extends Fragment {
         return !Arrays.equals(row.values, oldvalues);
     }
 
+    /**
+     * Gets the changes of the array since last clear, as positions changed in
+     * place plus a tail appended or removed.
+     * <p>
+     * Returns {@code null} when the old values are unknown, or when writing
+     * the changes would cost as much as rewriting the whole array.
+     *
+     * @return the delta, or {@code null} to rewrite the whole array
+     * @since 5.7
+     */
+    public CollectionDelta getDelta() {
+        if (rewrite || !isPositional(oldvalues) || !isPositional(row.values)) {
+            return null;
+        }
+        Serializable[] values = row.values;
+        int common = Math.min(values.length, oldvalues.length);
+        int[] updated = new int[common];
+        int n = 0;
+        for (int i = 0; i < common; i++) {
+            if (!same(values[i], oldvalues[i])) {
+                updated[n++] = i;
+            }
+        }
+        int appended = Math.max(0, values.length - oldvalues.length);
+        if (n + appended >= values.length) {
+            // rewriting is not more expensive
+            return null;
+        }
+        return new CollectionDelta(oldvalues.length, Arrays.copyOf(updated, n));
+    }
+
+    /**
+     * Checks that the elements are written at their index in the array, which
+     * is not the case for ACLs built with other positions.
+     */
+    protected static boolean isPositional(Serializable[] values) {
+        for (int i = 0; i < values.length; i++) {
+            Serializable value = values[i];
+            if (value instanceof ACLRow && ((ACLRow) value).pos != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static boolean same(Serializable a, Serializable b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public void clearDirty() {
+        super.clearDirty();
+        rewrite = false;
+    }
+
     @Override
     protected State refetch() throws StorageException {
         row.values = context.mapper.readCollectionRowArray(row);
@@ -18,7 +18,8 @@ import org.nuxeo.ecm.core.storage.StorageException;
 
 /**
  * A {@link CollectionProperty} gives access to a collection value stored in an
- * underlying {@link CollectionFragment}.
+ * underlying {@link CollectionFragment}, or in an array column of a
+ * {@link SimpleFragment}.
  *
  * @author Florent Guillaume
  */
@@ -27,6 +28,12 @@ public class CollectionProperty extends BaseProperty {
     /** The {@link CollectionFragment} holding the information. */
     private final CollectionFragment fragment;
 
+    /** The {@link SimpleFragment} holding the array column, if any. */
+    private final SimpleFragment simpleFragment;
+
+    /** The key of the array column in the simple fragment. */
+    private final String key;
+
     /**
      * Creates a {@link CollectionProperty}.
      */
@@ -34,18 +41,37 @@ public class CollectionProperty extends BaseProperty {
             CollectionFragment fragment) {
         super(name, type, readonly);
         this.fragment = fragment;
+        simpleFragment = null;
+        key = null;
+    }
+
+    /**
+     * Creates a {@link CollectionProperty} stored in an array column.
+     *
+     * @since 5.7
+     */
+    public CollectionProperty(String name, PropertyType type, boolean readonly,
+            SimpleFragment simpleFragment, String key) {
+        super(name, type, readonly);
+        fragment = null;
+        this.simpleFragment = simpleFragment;
+        this.key = key;
     }
 
     // ----- getters -----
 
     public Serializable[] getValue() throws StorageException {
-        return fragment.get();
+        if (simpleFragment == null) {
+            return fragment.get();
+        }
+        Serializable[] value = (Serializable[]) simpleFragment.get(key);
+        return value == null ? type.getEmptyArray() : value.clone();
     }
 
     public String[] getStrings() throws StorageException {
         switch (type) {
         case ARRAY_STRING:
-            Serializable[] res = fragment.get();
+            Serializable[] res = getValue();
             if (res.length == 0) {
                 // special case because we may have an empty Serializable[]
                 res = new String[0];
@@ -61,7 +87,16 @@ public class CollectionProperty extends BaseProperty {
     public void setValue(Object[] value) throws StorageException {
         checkWritable();
         try {
-            fragment.set(type.normalize(value));
+            Serializable[] array = type.normalize(value);
+            if (simpleFragment == null) {
+                fragment.set(array);
+            } else if (array.length == 0) {
+                simpleFragment.put(key, null);
+            } else {
+                String[] strings = new String[array.length];
+                System.arraycopy(array, 0, strings, 0, array.length);
+                simpleFragment.put(key, strings);
+            }
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("item of list property '" +
                     name + "': " + e.getMessage());
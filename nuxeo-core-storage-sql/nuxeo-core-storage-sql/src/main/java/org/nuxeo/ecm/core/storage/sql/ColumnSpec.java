@@ -23,6 +23,7 @@ public enum ColumnSpec {
     DOUBLE(), //
     TIMESTAMP(), //
     BLOBID(), // attached files
+    ARRAY_STRING(), // array of strings, if array columns are supported
 
     // ----- system columns -----
     NODEID, // node id primary generated key
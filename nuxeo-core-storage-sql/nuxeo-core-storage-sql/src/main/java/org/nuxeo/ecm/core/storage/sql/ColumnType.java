@@ -50,6 +50,10 @@ public class ColumnType implements Serializable {
 
     public static final ColumnType BLOBID = new ColumnType(ColumnSpec.BLOBID);
 
+    /** @since 5.7 */
+    public static final ColumnType ARRAY_STRING = new ColumnType(
+            ColumnSpec.ARRAY_STRING);
+
     public static final ColumnType NODEID = new ColumnType(ColumnSpec.NODEID);
 
     public static final ColumnType NODEIDFK = new ColumnType(
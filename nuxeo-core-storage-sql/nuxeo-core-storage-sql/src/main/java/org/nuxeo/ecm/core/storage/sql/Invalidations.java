@@ -12,6 +12,8 @@
 package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -20,6 +22,10 @@ import java.util.Set;
  * <p>
  * Records both modified and deleted fragments, as well as "parents modified"
  * fragments.
+ * <p>
+ * When too many rows are invalidated, the invalidations can be compacted into
+ * coarse invalidations of all the rows of the tables involved, see
+ * {@link #compact}.
  */
 public class Invalidations implements Serializable {
 
@@ -38,6 +44,21 @@ public class Invalidations implements Serializable {
 
     public static final int DELETED = 2;
 
+    /**
+     * Kind used for invalidations of all the rows of a table.
+     *
+     * @since 5.7
+     */
+    public static final int TABLES = 3;
+
+    /**
+     * Default number of invalidated rows above which invalidations sent to
+     * other sessions are compacted.
+     *
+     * @since 5.7
+     */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 10000;
+
     /** used locally when invalidating everything */
     public boolean all;
 
@@ -47,6 +68,14 @@ public class Invalidations implements Serializable {
     /** null when empty */
     public Set<RowId> deleted;
 
+    /**
+     * Tables (or pseudo-tables) all the rows of which are invalidated, null
+     * when empty.
+     *
+     * @since 5.7
+     */
+    public Set<String> tables;
+
     public Invalidations() {
     }
 
@@ -55,13 +84,33 @@ public class Invalidations implements Serializable {
     }
 
     public boolean isEmpty() {
-        return modified == null && deleted == null && !all;
+        return modified == null && deleted == null && tables == null && !all;
     }
 
     public void clear() {
         all = false;
         modified = null;
         deleted = null;
+        tables = null;
+    }
+
+    /**
+     * Gets the number of individual rows invalidated.
+     *
+     * @since 5.7
+     */
+    public int size() {
+        return (modified == null ? 0 : modified.size())
+                + (deleted == null ? 0 : deleted.size());
+    }
+
+    /**
+     * Checks if all the rows of a table are invalidated.
+     *
+     * @since 5.7
+     */
+    public boolean isTableInvalidated(String tableName) {
+        return all || (tables != null && tables.contains(tableName));
     }
 
     /** only call this if it's to add at least one element in the set */
@@ -92,6 +141,7 @@ public class Invalidations implements Serializable {
             all = true;
             modified = null;
             deleted = null;
+            tables = null;
             return;
         }
         if (other.modified != null) {
@@ -100,6 +150,9 @@ public class Invalidations implements Serializable {
         if (other.deleted != null) {
             addDeleted(other.deleted);
         }
+        if (other.tables != null) {
+            addTables(other.tables);
+        }
     }
 
     public void addModified(RowId rowId) {
@@ -136,16 +189,77 @@ public class Invalidations implements Serializable {
         deleted.addAll(rowIds);
     }
 
+    /**
+     * Invalidates all the rows of a table.
+     *
+     * @since 5.7
+     */
+    public void addTable(String tableName) {
+        if (all) {
+            return;
+        }
+        if (tables == null) {
+            tables = new HashSet<String>();
+        }
+        tables.add(tableName);
+    }
+
+    protected void addTables(Collection<String> tableNames) {
+        if (tables == null) {
+            tables = new HashSet<String>();
+        }
+        tables.addAll(tableNames);
+    }
+
     public void add(Serializable id, String[] tableNames, int kind) {
         if (tableNames.length == 0) {
             return;
         }
+        if (kind == TABLES) {
+            if (!all) {
+                addTables(Arrays.asList(tableNames));
+            }
+            return;
+        }
         Set<RowId> set = getKindSet(kind);
         for (String tableName : tableNames) {
             set.add(new RowId(tableName, id));
         }
     }
 
+    /**
+     * Returns compacted invalidations if more than {@code threshold} rows are
+     * invalidated, otherwise returns this object unchanged.
+     * <p>
+     * The compacted invalidations invalidate all the rows of every table (or
+     * pseudo-table) that had an individual row invalidated, so they stay
+     * small whatever the size of the operation that caused them.
+     *
+     * @param threshold the number of rows above which to compact, or 0 to
+     *            never compact
+     * @since 5.7
+     */
+    public Invalidations compact(int threshold) {
+        if (threshold <= 0 || all || size() <= threshold) {
+            return this;
+        }
+        Invalidations compacted = new Invalidations();
+        if (tables != null) {
+            compacted.addTables(tables);
+        }
+        if (modified != null) {
+            for (RowId rowId : modified) {
+                compacted.addTable(rowId.tableName);
+            }
+        }
+        if (deleted != null) {
+            for (RowId rowId : deleted) {
+                compacted.addTable(rowId.tableName);
+            }
+        }
+        return compacted;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(
@@ -164,6 +278,13 @@ public class Invalidations implements Serializable {
             sb.append("deleted=");
             sb.append(deleted);
         }
+        if (tables != null) {
+            if (modified != null || deleted != null) {
+                sb.append(',');
+            }
+            sb.append("tables=");
+            sb.append(tables);
+        }
         sb.append(')');
         return sb.toString();
     }
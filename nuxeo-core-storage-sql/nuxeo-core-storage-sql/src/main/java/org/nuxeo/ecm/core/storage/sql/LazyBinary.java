@@ -11,6 +11,7 @@
  */
 package org.nuxeo.ecm.core.storage.sql;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -55,7 +56,7 @@ public class LazyBinary extends Binary {
     }
 
     @Override
-    public InputStream getStream() throws IOException {
+    protected File getFile() {
         if (file == null) {
             file = cache().getFile(digest);
             if (file != null) {
@@ -63,19 +64,33 @@ public class LazyBinary extends Binary {
                 hasLength = true;
             }
         }
-        return file == null ? null : new FileInputStream(file);
+        return file;
     }
 
     @Override
-    public StreamSource getStreamSource() {
-        if (file == null) {
-            file = cache().getFile(digest);
-            if (file != null) {
-                length = file.length();
-                hasLength = true;
-            }
+    public InputStream getStream() throws IOException {
+        File f = getFile();
+        return f == null ? null : new FileInputStream(f);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If the file is not cached yet, only the range is fetched when the cache
+     * supports it.
+     */
+    @Override
+    public InputStream getStream(long offset, long length) throws IOException {
+        if (file != null) {
+            return super.getStream(offset, length);
         }
-        return file == null ? null : new FileSource(file);
+        return cache().getStream(digest, offset, length);
+    }
+
+    @Override
+    public StreamSource getStreamSource() {
+        File f = getFile();
+        return f == null ? null : new FileSource(f);
     }
 
 
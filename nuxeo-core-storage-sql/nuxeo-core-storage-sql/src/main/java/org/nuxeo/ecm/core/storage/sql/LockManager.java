@@ -14,26 +14,46 @@ package org.nuxeo.ecm.core.storage.sql;
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.Lock;
 import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.jdbc.ClusterNodeHandler;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapper;
 
 /**
- * Manager of locks that serializes access to them.
+ * Manager of locks, with a per-document serialization of lock updates.
  * <p>
  * The public methods called by the session are {@link #setLock},
- * {@link #removeLock} and {@link #getLock}. Method {@link #shutdown} must be
- * called when done with the lock manager.
+ * {@link #removeLock}, {@link #getLock} and {@link #getLocks}. Method
+ * {@link #shutdown} must be called when done with the lock manager.
+ * <p>
+ * Lock reads are served from a bounded LRU cache without taking the mapper
+ * lock. Lock updates are serialized per document using a set of striped locks,
+ * and only the actual database access is serialized on the single connection
+ * of the lock manager. Each stripe has a version, incremented whenever a lock
+ * of the stripe is written or evicted, so that a lock read from the database
+ * is only cached if no update happened on its stripe in the meantime.
  * <p>
  * In cluster mode, changes are executed in a begin/commit so that tests/updates
- * can be atomic.
+ * can be atomic, they are never decided from the cache, and they are sent to
+ * other cluster nodes as invalidations of the lock table. Invalidations received
+ * from other cluster nodes evict the corresponding cache entries. As these
+ * invalidations are only received every {@code clusteringDelay}, a lock read
+ * on one node may be stale for up to that delay after it was changed on
+ * another node. Set {@code lockManager@cacheSize} to 0 to always read locks
+ * from the database.
  * <p>
  * Transaction management can be done by hand because we're dealing with a
  * low-level {@link Mapper} and not something wrapped by a JCA pool.
@@ -58,39 +78,45 @@ public class LockManager {
     protected final boolean clusteringEnabled;
 
     /**
-     * Lock serializing access to the mapper.
+     * Lock serializing access to the mapper and its connection.
+     * <p>
+     * Always acquired after the document stripe lock, if any.
+     */
+    protected final ReentrantLock mapperLock;
+
+    /**
+     * Striped locks serializing updates to the lock of a given document.
+     */
+    protected final ReentrantLock[] stripes;
+
+    /**
+     * Versions of the stripes, incremented under the stripe lock.
      */
-    protected final ReentrantLock serializationLock;
+    protected final AtomicLongArray stripeVersions;
+
+    protected static final int STRIPES = 64;
 
     protected static final Lock NULL_LOCK = new Lock(null, null);
 
     protected final boolean caching;
 
     /**
-     * A cache of locks, used only in non-cluster mode, when this lock manager
-     * is the only one dealing with locks.
+     * A cache of locks, {@link #NULL_LOCK} meaning no lock, evicting the
+     * least recently used entries.
      * <p>
-     * Used under {@link #serializationLock}.
+     * In cluster mode it's only used for reads, and entries are invalidated
+     * when other cluster nodes change locks.
      */
-    protected final LRUCache<Serializable, Lock> lockCache;
-
-    protected static final int CACHE_SIZE = 100;
-
-    protected static class LRUCache<K, V> extends LinkedHashMap<K, V> {
-        private static final long serialVersionUID = 1L;
+    protected final Map<Serializable, Lock> lockCache;
 
-        private final int max;
+    protected final int cacheSize;
 
-        public LRUCache(int max) {
-            super(max, 1.0f, true);
-            this.max = max;
-        }
+    public static final int DEFAULT_CACHE_SIZE = 10000;
 
-        @Override
-        protected boolean removeEldestEntry(Entry<K, V> eldest) {
-            return size() > max;
-        }
-    }
+    /**
+     * Cluster node handler to send lock invalidations to, in cluster mode.
+     */
+    protected volatile ClusterNodeHandler clusterNodeHandler;
 
     /**
      * Creates a lock manager using the given mapper.
@@ -101,13 +127,31 @@ public class LockManager {
      */
     public LockManager(Mapper mapper, boolean clusteringEnabled)
             throws StorageException {
+        this(mapper, clusteringEnabled, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a lock manager using the given mapper and cache size.
+     *
+     * @param cacheSize the maximum number of cached locks, or 0 to disable
+     *            caching
+     * @since 5.7
+     */
+    public LockManager(Mapper mapper, boolean clusteringEnabled, int cacheSize)
+            throws StorageException {
         this.mapper = mapper;
         this.connection = ((JDBCMapper) mapper).connection;
         this.clusteringEnabled = clusteringEnabled;
-        serializationLock = new ReentrantLock(true); // fair
-        caching = !clusteringEnabled;
-        lockCache = caching ? new LRUCache<Serializable, Lock>(CACHE_SIZE)
-                : null;
+        mapperLock = new ReentrantLock(true); // fair
+        stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        stripeVersions = new AtomicLongArray(STRIPES);
+        this.cacheSize = cacheSize;
+        caching = cacheSize > 0;
+        lockCache = caching ? Collections.synchronizedMap(new LRUCache<Serializable, Lock>(
+                cacheSize)) : null;
         try {
             connection.setAutoCommit(true);
         } catch (SQLException e) {
@@ -115,15 +159,100 @@ public class LockManager {
         }
     }
 
+    /**
+     * Sets the cluster node handler to which lock changes are sent as
+     * invalidations.
+     *
+     * @since 5.7
+     */
+    public void setClusterNodeHandler(ClusterNodeHandler clusterNodeHandler) {
+        this.clusterNodeHandler = clusterNodeHandler;
+    }
+
     /**
      * Shuts down the lock manager.
      */
     public void shutdown() throws StorageException {
-        serializationLock.lock();
+        mapperLock.lock();
         try {
             mapper.close();
         } finally {
-            serializationLock.unlock();
+            mapperLock.unlock();
+        }
+    }
+
+    protected static int getStripeIndex(Serializable id) {
+        int h = id.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & (STRIPES - 1);
+    }
+
+    protected ReentrantLock getStripe(Serializable id) {
+        return stripes[getStripeIndex(id)];
+    }
+
+    /**
+     * Gets the version of the stripe of a document, to be read before reading
+     * its lock from the database.
+     */
+    protected long getStripeVersion(Serializable id) {
+        return stripeVersions.get(getStripeIndex(id));
+    }
+
+    protected Lock getCached(Serializable id) {
+        return caching ? lockCache.get(id) : null;
+    }
+
+    /**
+     * Caches the lock read from the database, unless its stripe changed since
+     * the given version was read, in which case the lock read may be stale.
+     */
+    protected void cacheRead(Serializable id, Lock lock, long version) {
+        if (!caching) {
+            return;
+        }
+        int index = getStripeIndex(id);
+        ReentrantLock stripe = stripes[index];
+        stripe.lock();
+        try {
+            if (stripeVersions.get(index) == version) {
+                lockCache.put(id, lock == null ? NULL_LOCK : lock);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Caches the lock written to the database. Called under the document
+     * stripe lock.
+     */
+    protected void cacheWrite(Serializable id, Lock lock) {
+        if (caching) {
+            stripeVersions.incrementAndGet(getStripeIndex(id));
+            lockCache.put(id, lock == null ? NULL_LOCK : lock);
+        }
+    }
+
+    /**
+     * An access-ordered map evicting its least recently used entry when over
+     * its maximum size.
+     */
+    protected static class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int maxSize;
+
+        public LRUCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
         }
     }
 
@@ -131,21 +260,62 @@ public class LockManager {
      * Gets the lock on a document.
      */
     public Lock getLock(final Serializable id) throws StorageException {
-        serializationLock.lock();
+        Lock lock = getCached(id);
+        if (lock != null) {
+            return lock == NULL_LOCK ? null : lock;
+        }
+        long version = getStripeVersion(id);
+        mapperLock.lock();
         try {
-            Lock lock;
-            if (caching && (lock = lockCache.get(id)) != null) {
-                return lock == NULL_LOCK ? null : lock;
-            }
             // no transaction needed, single operation
             lock = mapper.getLock(id);
-            if (caching) {
-                lockCache.put(id, lock == null ? NULL_LOCK : lock);
+        } finally {
+            mapperLock.unlock();
+        }
+        cacheRead(id, lock, version);
+        return lock;
+    }
+
+    /**
+     * Gets the locks on several documents.
+     * <p>
+     * The locks not in the cache are read in one batch.
+     *
+     * @return a map of document id to lock, containing only the locked
+     *         documents
+     * @since 5.7
+     */
+    public Map<Serializable, Lock> getLocks(Collection<Serializable> ids)
+            throws StorageException {
+        Map<Serializable, Lock> locks = new HashMap<Serializable, Lock>();
+        Map<Serializable, Long> versions = new HashMap<Serializable, Long>();
+        for (Serializable id : ids) {
+            Lock lock = getCached(id);
+            if (lock == null) {
+                versions.put(id, Long.valueOf(getStripeVersion(id)));
+            } else if (lock != NULL_LOCK) {
+                locks.put(id, lock);
             }
-            return lock;
+        }
+        if (versions.isEmpty()) {
+            return locks;
+        }
+        Map<Serializable, Lock> readLocks;
+        mapperLock.lock();
+        try {
+            readLocks = ((JDBCMapper) mapper).getLocks(versions.keySet());
         } finally {
-            serializationLock.unlock();
+            mapperLock.unlock();
         }
+        for (Entry<Serializable, Long> en : versions.entrySet()) {
+            Serializable id = en.getKey();
+            Lock lock = readLocks.get(id);
+            if (lock != null) {
+                locks.put(id, lock);
+            }
+            cacheRead(id, lock, en.getValue().longValue());
+        }
+        return locks;
     }
 
     /**
@@ -211,10 +381,11 @@ public class LockManager {
 
     protected Lock setLockInternal(final Serializable id, final Lock lock)
             throws StorageException {
-        serializationLock.lock();
+        ReentrantLock stripe = getStripe(id);
+        stripe.lock();
         try {
             Lock oldLock;
-            if (caching && (oldLock = lockCache.get(id)) != null
+            if (!clusteringEnabled && (oldLock = getCached(id)) != null
                     && oldLock != NULL_LOCK) {
                 return oldLock;
             }
@@ -224,12 +395,15 @@ public class LockManager {
                     return mapper.setLock(id, lock);
                 }
             });
-            if (caching && oldLock == null) {
-                lockCache.put(id, lock == null ? NULL_LOCK : lock);
+            if (oldLock == null) {
+                cacheWrite(id, lock);
+                sendInvalidation(id);
+            } else {
+                cacheWrite(id, oldLock);
             }
             return oldLock;
         } finally {
-            serializationLock.unlock();
+            stripe.unlock();
         }
     }
 
@@ -238,10 +412,12 @@ public class LockManager {
      */
     public Lock removeLock(final Serializable id, final String owner)
             throws StorageException {
-        serializationLock.lock();
+        ReentrantLock stripe = getStripe(id);
+        stripe.lock();
         try {
             Lock oldLock = null;
-            if (caching && (oldLock = lockCache.get(id)) == NULL_LOCK) {
+            if (!clusteringEnabled
+                    && (oldLock = getCached(id)) == NULL_LOCK) {
                 return null;
             }
             if (oldLock != null && !canLockBeRemoved(oldLock, owner)) {
@@ -258,30 +434,109 @@ public class LockManager {
                 } else {
                     // we know the previous lock, we can force
                     // no transaction needed, single operation
-                    mapper.removeLock(id, owner, true);
+                    mapperLock.lock();
+                    try {
+                        mapper.removeLock(id, owner, true);
+                    } finally {
+                        mapperLock.unlock();
+                    }
                 }
             }
-            if (caching) {
-                if (oldLock != null && oldLock.getFailed()) {
-                    // failed, but we now know the existing lock
-                    lockCache.put(id, new Lock(oldLock, false));
-                } else {
-                    lockCache.put(id, NULL_LOCK);
+            if (oldLock != null && oldLock.getFailed()) {
+                // failed, but we now know the existing lock
+                cacheWrite(id, new Lock(oldLock, false));
+            } else {
+                cacheWrite(id, null);
+                if (oldLock != null) {
+                    sendInvalidation(id);
                 }
             }
             return oldLock;
         } finally {
-            serializationLock.unlock();
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Sends the lock change to other cluster nodes.
+     */
+    protected void sendInvalidation(Serializable id) throws StorageException {
+        ClusterNodeHandler handler = clusterNodeHandler;
+        if (handler == null) {
+            return;
+        }
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId(Model.LOCK_TABLE_NAME, id));
+        handler.sendClusterInvalidations(invalidations);
+    }
+
+    /**
+     * Processes invalidations received from other cluster nodes.
+     *
+     * @since 5.7
+     */
+    public void processClusterInvalidations(Invalidations invalidations) {
+        if (!caching || invalidations == null) {
+            return;
+        }
+        if (invalidations.isTableInvalidated(Model.LOCK_TABLE_NAME)) {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i].lock();
+            }
+            try {
+                for (int i = 0; i < STRIPES; i++) {
+                    stripeVersions.incrementAndGet(i);
+                }
+                lockCache.clear();
+            } finally {
+                for (int i = 0; i < STRIPES; i++) {
+                    stripes[i].unlock();
+                }
+            }
+            return;
+        }
+        evict(invalidations.modified);
+        evict(invalidations.deleted);
+    }
+
+    protected void evict(Set<RowId> rowIds) {
+        if (rowIds == null) {
+            return;
+        }
+        for (RowId rowId : rowIds) {
+            if (!Model.LOCK_TABLE_NAME.equals(rowId.tableName)) {
+                continue;
+            }
+            int index = getStripeIndex(rowId.id);
+            ReentrantLock stripe = stripes[index];
+            stripe.lock();
+            try {
+                // a concurrent read must not cache the pre-change lock
+                stripeVersions.incrementAndGet(index);
+                lockCache.remove(rowId.id);
+            } finally {
+                stripe.unlock();
+            }
         }
     }
 
     /**
      * Calls the callable, inside a transaction if in cluster mode.
      * <p>
-     * Called under {@link #serializationLock}.
+     * Called under the document stripe lock.
      */
     protected Lock callInTransaction(Callable<Lock> callable)
             throws StorageException {
+        mapperLock.lock();
+        try {
+            return callInTransactionInternal(callable);
+        } finally {
+            mapperLock.unlock();
+        }
+    }
+
+    protected Lock callInTransactionInternal(Callable<Lock> callable)
+            throws StorageException {
         boolean tx = clusteringEnabled;
         boolean ok = false;
         try {
@@ -331,13 +586,8 @@ public class LockManager {
     }
 
     public void clearCaches() {
-        serializationLock.lock();
-        try {
-            if (caching) {
-                lockCache.clear();
-            }
-        } finally {
-            serializationLock.unlock();
+        if (caching) {
+            lockCache.clear();
         }
     }
 
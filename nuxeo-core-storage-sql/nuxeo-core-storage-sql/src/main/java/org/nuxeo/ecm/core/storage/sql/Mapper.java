@@ -14,6 +14,7 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import javax.transaction.xa.XAResource;
@@ -166,6 +167,19 @@ public interface Mapper extends RowMapper, XAResource {
     Set<Serializable> getAncestorsIds(Collection<Serializable> ids)
             throws StorageException;
 
+    /**
+     * Gets a page of the ids of the versions of a version series, ordered by
+     * creation date.
+     *
+     * @param versionSeriesId the version series id
+     * @param offset the index of the first version to return
+     * @param limit the maximum number of versions to return
+     * @return the version ids
+     * @since 5.7
+     */
+    List<Serializable> getVersionIds(Serializable versionSeriesId,
+            int offset, int limit) throws StorageException;
+
     /*
      * ----- ACLs -----
      */
@@ -240,6 +240,31 @@ public class Model {
 
     public static final String FULLTEXT_BINARYTEXT_KEY = "binarytext";
 
+    /**
+     * Table referencing, for each version, the versions owning the fragments
+     * it shares instead of having its own copy.
+     *
+     * @since 5.7
+     */
+    public static final String VERSION_SHARES_TABLE_NAME = "versionshares";
+
+    /**
+     * Work table mapping the ids of a copied tree to the ids of the copy, so
+     * that the rows of each table can be copied with a single statement.
+     *
+     * @since 5.7
+     */
+    public static final String COPY_IDS_TABLE_NAME = "copyids";
+
+    /** @since 5.7 */
+    public static final String COPY_IDS_COPY_KEY = "copyid";
+
+    /** @since 5.7 */
+    public static final String COPY_IDS_NEW_ID_KEY = "newid";
+
+    /** @since 5.7 */
+    public static final String COPY_IDS_DEPTH_KEY = "depth";
+
     public static final String HIER_READ_ACL_TABLE_NAME = "hierarchy_read_acl";
 
     public static final String HIER_READ_ACL_ID = "id";
@@ -249,6 +274,13 @@ public class Model {
     /** Specified in ext. point to use CLOBs. */
     public static final String FIELD_TYPE_LARGETEXT = "largetext";
 
+    /**
+     * Specified in ext. point to store a list of strings in an array column.
+     *
+     * @since 5.7
+     */
+    public static final String FIELD_TYPE_ARRAY = "array";
+
     /**
      * Special (non-schema-based) simple fragments present in all types.
      * {@link #FULLTEXT_TABLE_NAME} is added to it if not disabled.
@@ -318,6 +350,12 @@ public class Model {
     /** Column ordering for collections. */
     private final Map<String, String> collectionOrderBy;
 
+    /**
+     * Array columns of simple fragments, fragment name -> key -> collection
+     * table that would otherwise hold the values.
+     */
+    private final Map<String, Map<String, String>> arrayColumns;
+
     /**
      * The fragment for each schema, or {@code null} if the schema doesn't have
      * a fragment.
@@ -348,13 +386,19 @@ public class Model {
     /** Map of field name to fragments holding them */
     protected final Map<String, Set<String>> fieldFragments;
 
+    /** Simple fragments that versions can share. */
+    protected final Set<String> sharedVersionFragments;
+
     public final ModelFulltext fulltextInfo;
 
     private final boolean materializeFulltextSyntheticColumn;
 
+    private final boolean supportsArrayColumns;
+
     public Model(ModelSetup modelSetup) throws StorageException {
         repositoryDescriptor = modelSetup.repositoryDescriptor;
         materializeFulltextSyntheticColumn = modelSetup.materializeFulltextSyntheticColumn;
+        supportsArrayColumns = modelSetup.supportsArrayColumns;
 
         documentTypesSchemas = new HashMap<String, Set<String>>();
         mixinsDocumentTypes = new HashMap<String, Set<String>>();
@@ -374,6 +418,7 @@ public class Model {
 
         collectionTables = new HashMap<String, PropertyType>();
         collectionOrderBy = new HashMap<String, String>();
+        arrayColumns = new HashMap<String, Map<String, String>>();
 
         schemaFragment = new HashMap<String, String>();
         typeFragments = new HashMap<String, Set<String>>();
@@ -381,6 +426,7 @@ public class Model {
         typeCollectionFragments = new HashMap<String, Set<String>>();
         typePrefetchedFragments = new HashMap<String, Set<String>>();
         fieldFragments = new HashMap<String, Set<String>>();
+        sharedVersionFragments = new LinkedHashSet<String>();
 
         documentTypesFacets = new HashMap<String, Set<String>>();
         documentSuperTypes = new HashMap<String, String>();
@@ -395,6 +441,9 @@ public class Model {
         initAclModel();
         initMiscModel();
         initModels(modelSetup.schemaManager);
+        if (repositoryDescriptor.sharedVersionFragments) {
+            initVersionSharesModel();
+        }
         if (!repositoryDescriptor.fulltextDisabled) {
             initFullTextModel();
         }
@@ -884,6 +933,10 @@ public class Model {
             if (info != null && info.fulltext) {
                 return info.propertyType;
             }
+            if (info != null && info.propertyType == PropertyType.ARRAY_STRING) {
+                // array column
+                return PropertyType.STRING;
+            }
             return null;
         }
     }
@@ -930,6 +983,35 @@ public class Model {
         return binaryPropertyInfos;
     }
 
+    /**
+     * Gets the array columns of a simple fragment, with for each the name of
+     * the collection table that would otherwise hold its values (used to
+     * migrate them).
+     *
+     * @return a map of key to collection table name, or {@code null}
+     * @since 5.7
+     */
+    public Map<String, String> getArrayColumns(String fragmentName) {
+        return arrayColumns.get(fragmentName);
+    }
+
+    /**
+     * Checks if a list of scalars is stored in an array column of the type's
+     * table instead of a collection table.
+     */
+    protected boolean useArrayColumn(String propertyName, ColumnType type) {
+        if (!supportsArrayColumns || type.spec != ColumnSpec.STRING
+                || type.isClob()) {
+            return false;
+        }
+        for (FieldDescriptor fd : repositoryDescriptor.schemaFields) {
+            if (propertyName.equals(fd.field)) {
+                return FIELD_TYPE_ARRAY.equals(fd.type);
+            }
+        }
+        return repositoryDescriptor.arrayColumns;
+    }
+
     protected void addTypeCollectionFragment(String typeName,
             String fragmentName) {
         Set<String> fragments = typeCollectionFragments.get(typeName);
@@ -1372,6 +1454,60 @@ public class Model {
         return indexName.equals(FULLTEXT_DEFAULT_INDEX) ? "" : '_' + indexName;
     }
 
+    /**
+     * Creates the table holding the fragments shared by versions, with one
+     * column per shareable fragment whose value is the id of the version
+     * owning the row.
+     * <p>
+     * Only schema simple fragments are shared. Collection fragments are
+     * cheap to compare but not to resolve, and the special fragments (misc,
+     * locks, fulltext) change independently of the version content.
+     */
+    private void initVersionSharesModel() {
+        for (String typeName : getDocumentTypes()) {
+            addSharedVersionFragments(getTypeFragments(typeName));
+        }
+        for (Set<String> fragmentNames : mixinFragments.values()) {
+            addSharedVersionFragments(fragmentNames);
+        }
+        Map<String, ColumnType> keysType = new LinkedHashMap<String, ColumnType>();
+        for (String fragmentName : sharedVersionFragments) {
+            keysType.put(fragmentName, ColumnType.NODEVAL);
+        }
+        fragmentsKeys.put(VERSION_SHARES_TABLE_NAME, keysType);
+    }
+
+    private void addSharedVersionFragments(Set<String> fragmentNames) {
+        if (fragmentNames == null) {
+            return;
+        }
+        for (String fragmentName : fragmentNames) {
+            if (isCollectionFragment(fragmentName)
+                    || fragmentName.equals(HIER_TABLE_NAME)
+                    || fragmentName.equals(PROXY_TABLE_NAME)
+                    || fragmentName.equals(LOCK_TABLE_NAME)
+                    || fragmentName.equals(FULLTEXT_TABLE_NAME)
+                    || COMMON_SIMPLE_FRAGMENTS.contains(fragmentName)) {
+                continue;
+            }
+            sharedVersionFragments.add(fragmentName);
+        }
+    }
+
+    /**
+     * Gets the simple fragments that versions share with their predecessor
+     * when unchanged, if this is enabled.
+     *
+     * @since 5.7
+     */
+    public Set<String> getSharedVersionFragments() {
+        return sharedVersionFragments;
+    }
+
+    public boolean isSharedVersionFragment(String fragmentName) {
+        return sharedVersionFragments.contains(fragmentName);
+    }
+
     /**
      * Special collection-like model for the ACL table.
      */
@@ -1440,6 +1576,35 @@ public class Model {
                             log.debug("  String array field '" + propertyName
                                     + "' using column type " + type);
                         }
+                        if (useArrayColumn(propertyName, type)) {
+                            /*
+                             * Array column in the type's table.
+                             */
+                            String typeFragmentName = typeFragmentName(complexType);
+                            String fragmentKey = field.getName().getLocalName();
+                            if (MAIN_KEY.equalsIgnoreCase(fragmentKey)) {
+                                String msg = "A property cannot be named '"
+                                        + fragmentKey
+                                        + "' because this is a reserved name, in type: "
+                                        + typeName;
+                                throw new StorageException(msg);
+                            }
+                            log.debug("  String array field '" + propertyName
+                                    + "' using an array column");
+                            addPropertyInfo(typeName, propertyName,
+                                    propertyType, typeFragmentName,
+                                    fragmentKey, false, null,
+                                    ColumnType.ARRAY_STRING);
+                            Map<String, String> columns = arrayColumns.get(typeFragmentName);
+                            if (columns == null) {
+                                arrayColumns.put(typeFragmentName,
+                                        columns = new HashMap<String, String>());
+                            }
+                            columns.put(fragmentKey, fragmentName);
+                            thisFragmentName = typeFragmentName;
+                            addFieldFragment(field, typeFragmentName);
+                            continue;
+                        }
                         addPropertyInfo(typeName, propertyName, propertyType,
                                 fragmentName, COLL_TABLE_VALUE_KEY, false,
                                 null, type);
@@ -25,4 +25,7 @@ public class ModelSetup {
 
     public boolean materializeFulltextSyntheticColumn;
 
+    /** @since 5.7 */
+    public boolean supportsArrayColumns;
+
 }
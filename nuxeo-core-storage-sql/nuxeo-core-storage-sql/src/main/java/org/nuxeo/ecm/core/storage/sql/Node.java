@@ -327,6 +327,17 @@ public class Node {
     protected CollectionProperty makeCollectionProperty(String name,
             ModelProperty propertyInfo) throws StorageException {
         String fragmentName = propertyInfo.fragmentName;
+        if (!model.isCollectionFragment(fragmentName)) {
+            // array column
+            Fragment fragment = fragments.get(fragmentName);
+            if (fragment == null) {
+                RowId rowId = new RowId(fragmentName, getId());
+                fragment = context.get(rowId, true);
+                fragments.put(fragmentName, fragment);
+            }
+            return new CollectionProperty(name, propertyInfo.propertyType,
+                    false, (SimpleFragment) fragment, propertyInfo.fragmentKey);
+        }
         RowId rowId = new RowId(fragmentName, getId());
         Fragment fragment = context.get(rowId, true);
         CollectionProperty property = new CollectionProperty(name,
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Repository-wide bounded cache of absolute document paths to ids, used to
+ * resolve a path without walking the hierarchy one level at a time.
+ * <p>
+ * The cache is only a hint: entries are kept up to date using the
+ * invalidations of the hierarchy table, but a session must check that the
+ * document found is at the requested path in its own view before using it.
+ * <p>
+ * Eviction is least recently used, where a path counts as used when any path
+ * under it is used. A path is therefore never evicted before the paths under
+ * it, which is what allows a rename or move to find and remove them.
+ *
+ * @since 5.7
+ */
+public class PathCache {
+
+    public static final int DEFAULT_SIZE = 10000;
+
+    /** Path to id, sorted so that a whole subtree can be removed at once. */
+    protected final ConcurrentNavigableMap<String, CachedId> paths;
+
+    /** Id to path, to find the paths to remove on invalidation. */
+    protected final ConcurrentMap<Serializable, String> ids;
+
+    protected final int maxSize;
+
+    /**
+     * A cached id, with its last access time.
+     */
+    protected static class CachedId {
+
+        public final Serializable id;
+
+        public volatile long accessed;
+
+        public CachedId(Serializable id) {
+            this.id = id;
+            accessed = System.nanoTime();
+        }
+    }
+
+    public PathCache(int maxSize) {
+        this.maxSize = maxSize;
+        paths = new ConcurrentSkipListMap<String, CachedId>();
+        ids = new ConcurrentHashMap<Serializable, String>();
+    }
+
+    /**
+     * Gets the id cached for an absolute path, or {@code null}.
+     */
+    public Serializable get(String path) {
+        CachedId cached = paths.get(path);
+        if (cached == null) {
+            return null;
+        }
+        cached.accessed = System.nanoTime();
+        return cached.id;
+    }
+
+    public void put(String path, Serializable id) {
+        if (paths.size() >= maxSize) {
+            evict();
+        }
+        String oldPath = ids.put(id, path);
+        if (oldPath != null && !oldPath.equals(path)) {
+            removeEntry(oldPath, id);
+        }
+        paths.put(path, new CachedId(id));
+    }
+
+    /**
+     * Removes a path if it still maps to the given id.
+     */
+    protected void removeEntry(String path, Serializable id) {
+        CachedId cached = paths.get(path);
+        if (cached != null && cached.id.equals(id)) {
+            paths.remove(path, cached);
+        }
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public void clear() {
+        paths.clear();
+        ids.clear();
+    }
+
+    /**
+     * Removes the paths affected by the given invalidations: those of the
+     * documents whose hierarchy row was modified (renamed, moved) or deleted,
+     * and the paths under them.
+     */
+    public void invalidate(Invalidations invalidations) {
+        if (invalidations == null) {
+            return;
+        }
+        if (invalidations.isTableInvalidated(Model.HIER_TABLE_NAME)) {
+            clear();
+            return;
+        }
+        invalidate(invalidations.modified);
+        invalidate(invalidations.deleted);
+    }
+
+    protected void invalidate(Set<RowId> rowIds) {
+        if (rowIds == null || ids.isEmpty()) {
+            return;
+        }
+        for (RowId rowId : rowIds) {
+            if (Model.HIER_TABLE_NAME.equals(rowId.tableName)) {
+                invalidate(rowId.id);
+            }
+        }
+    }
+
+    /**
+     * Removes the path of a document, and all the paths under it.
+     */
+    public void invalidate(Serializable id) {
+        String path = ids.get(id);
+        if (path != null) {
+            remove(path);
+        }
+    }
+
+    /**
+     * Removes a path, and all the paths under it.
+     */
+    public void remove(String path) {
+        CachedId cached = paths.remove(path);
+        if (cached != null) {
+            ids.remove(cached.id, path);
+        }
+        // '0' is the character following '/'
+        ConcurrentNavigableMap<String, CachedId> subtree = paths.subMap(
+                path + '/', path + '0');
+        for (Iterator<Entry<String, CachedId>> it = subtree.entrySet().iterator(); it.hasNext();) {
+            Entry<String, CachedId> en = it.next();
+            it.remove();
+            ids.remove(en.getValue().id, en.getKey());
+        }
+    }
+
+    /**
+     * Evicts the least recently used tenth of the entries, together with the
+     * paths under them.
+     */
+    protected synchronized void evict() {
+        if (paths.size() < maxSize) {
+            // already done by another thread
+            return;
+        }
+        // last access of each path or of any path under it; going through
+        // the paths in reverse order sees children before their parent
+        Map<String, Long> used = new HashMap<String, Long>();
+        for (Entry<String, CachedId> en : paths.descendingMap().entrySet()) {
+            String path = en.getKey();
+            long accessed = en.getValue().accessed;
+            Long sub = used.get(path);
+            if (sub != null && sub.longValue() > accessed) {
+                accessed = sub.longValue();
+            }
+            used.put(path, Long.valueOf(accessed));
+            int slash = path.lastIndexOf('/');
+            if (slash > 0) {
+                String parent = path.substring(0, slash);
+                Long p = used.get(parent);
+                if (p == null || p.longValue() < accessed) {
+                    used.put(parent, Long.valueOf(accessed));
+                }
+            }
+        }
+        List<Entry<String, Long>> entries = new ArrayList<Entry<String, Long>>(
+                used.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, Long>>() {
+            @Override
+            public int compare(Entry<String, Long> a, Entry<String, Long> b) {
+                return a.getValue().compareTo(b.getValue());
+            }
+        });
+        int n = maxSize / 10 + 1;
+        for (Entry<String, Long> en : entries) {
+            if (n <= 0) {
+                break;
+            }
+            String path = en.getKey();
+            if (paths.containsKey(path)) {
+                int size = paths.size();
+                remove(path);
+                n -= size - paths.size();
+            }
+        }
+    }
+
+}
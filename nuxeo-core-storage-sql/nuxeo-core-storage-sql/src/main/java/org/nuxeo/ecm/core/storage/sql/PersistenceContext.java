@@ -18,6 +18,8 @@ import java.util.Collections;
 import java.util.Deque;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,6 +38,7 @@ import org.nuxeo.ecm.core.storage.sql.Invalidations.InvalidationsPair;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.CopyResult;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.IdWithTypes;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.NodeInfo;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RemoveResult;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.RowBatch;
 import org.nuxeo.ecm.core.storage.sql.RowMapper.RowUpdate;
 import org.nuxeo.ecm.core.storage.sql.SimpleFragment.FieldComparator;
@@ -85,6 +88,9 @@ public class PersistenceContext {
     // selection context for versions by series
     private final SelectionContext seriesVersions;
 
+    // selection context for versions by series, to find the latest major
+    private final SelectionContext seriesLatestMajor;
+
     // selection context for proxies by series
     private final SelectionContext seriesProxies;
 
@@ -138,12 +144,15 @@ public class PersistenceContext {
                 Boolean.FALSE, mapper, this);
         seriesVersions = new SelectionContext(SelectionType.SERIES_VERSIONS,
                 null, mapper, this);
+        seriesLatestMajor = new SelectionContext(
+                SelectionType.SERIES_LATEST_MAJOR, null, mapper, this);
         seriesProxies = new SelectionContext(SelectionType.SERIES_PROXIES,
                 null, mapper, this);
         targetProxies = new SelectionContext(SelectionType.TARGET_PROXIES,
                 null, mapper, this);
         selections = new SelectionContext[] { hierComplex, hierNonComplex,
-                seriesVersions, seriesProxies, targetProxies };
+                seriesVersions, seriesLatestMajor, seriesProxies,
+                targetProxies };
 
         // use a weak reference for the values, we don't hold them longer than
         // they need to be referenced, as the underlying mapper also has its own
@@ -227,8 +236,10 @@ public class PersistenceContext {
                 break;
             case MODIFIED:
                 if (fragment.row.isCollection()) {
-                    if (((CollectionFragment) fragment).isDirty()) {
-                        batch.updates.add(new RowUpdate(fragment.row, null));
+                    CollectionFragment cfragment = (CollectionFragment) fragment;
+                    if (cfragment.isDirty()) {
+                        batch.updates.add(new RowUpdate(fragment.row, null,
+                                cfragment.getDelta()));
                         fragment.clearDirty();
                     }
                 } else {
@@ -442,6 +453,25 @@ public class PersistenceContext {
                 }
             }
         }
+        if (invalidations.tables != null) {
+            invalidateTables(invalidations.tables);
+        }
+    }
+
+    /**
+     * Invalidates all the rows of some tables, in one pass over the cache.
+     */
+    protected void invalidateTables(Set<String> tables) {
+        for (Iterator<Fragment> it = pristine.values().iterator(); it.hasNext();) {
+            Fragment fragment = it.next();
+            if (tables.contains(fragment.row.tableName)) {
+                it.remove();
+                fragment.setInvalidatedModified();
+            }
+        }
+        for (SelectionContext sel : selections) {
+            sel.processReceivedTableInvalidations(tables);
+        }
     }
 
     public void checkInvalidationsConflict() {
@@ -727,6 +757,7 @@ public class PersistenceContext {
             throws StorageException {
         SimpleFragment fragment = createSimpleFragment(row);
         seriesVersions.recordCreated(fragment);
+        seriesLatestMajor.recordCreated(fragment);
         // no proxies for this new version
         targetProxies.newSelection(fragment.getId());
         return fragment;
@@ -831,10 +862,10 @@ public class PersistenceContext {
                 proxyFragment);
 
         // remove with descendants, and generate cache invalidations
-        List<NodeInfo> infos = mapper.remove(rootInfo);
+        RemoveResult result = mapper.remove(rootInfo);
 
         // remove from context and selections
-        for (NodeInfo info : infos) {
+        for (NodeInfo info : result.nodeInfos) {
             Serializable id = info.id;
             for (String fragmentName : model.getTypeFragments(new IdWithTypes(
                     id, info.primaryType, null))) {
@@ -843,6 +874,14 @@ public class PersistenceContext {
             }
             removeFromSelections(info);
         }
+        if (result.tables != null) {
+            // summarized removal of a large tree, the removed fragments are
+            // not known: refetch those of the tables involved on next access
+            Set<String> tables = new HashSet<String>(result.tables);
+            // children selections of the removed nodes
+            tables.add(Invalidations.PARENT);
+            invalidateTables(tables);
+        }
 
         // recompute version series if needed
         // only done for root of deletion as versions are not fileable
@@ -865,6 +904,7 @@ public class PersistenceContext {
         if (info.versionSeriesId != null && info.targetId == null) {
             // version
             seriesVersions.recordRemoved(id, info.versionSeriesId);
+            seriesLatestMajor.recordRemoved(id, info.versionSeriesId);
         }
 
         hierComplex.recordRemoved(info.id, info.parentId);
@@ -882,6 +922,7 @@ public class PersistenceContext {
             // no more a version series
             seriesProxies.recordRemovedSelection(id);
             seriesVersions.recordRemovedSelection(id);
+            seriesLatestMajor.recordRemovedSelection(id);
             // no more a target
             targetProxies.recordRemovedSelection(id);
         }
@@ -979,6 +1020,21 @@ public class PersistenceContext {
         }
     }
 
+    /**
+     * Clears a latest flag on the version of a series which holds it.
+     * <p>
+     * The version is found through a selection filtered on the flag, which
+     * doesn't need to read the other versions of the series.
+     */
+    protected void clearLatestFlag(SelectionContext sel, String key,
+            Serializable versionSeriesId) throws StorageException {
+        SimpleFragment vsf = sel.getSelectionFragment(versionSeriesId,
+                Boolean.TRUE);
+        if (vsf != null && Boolean.TRUE.equals(vsf.get(key))) {
+            vsf.put(key, Boolean.FALSE);
+        }
+    }
+
     /**
      * Gets the version ids for a version series, ordered by creation time.
      */
@@ -1415,6 +1471,14 @@ public class PersistenceContext {
         boolean isMajor = Long.valueOf(0).equals(
                 verHier.get(model.MAIN_MINOR_VERSION_KEY));
 
+        // the new version is the latest one, only the previous latest (major)
+        // versions need updating, not the whole series
+        clearLatestFlag(seriesVersions, model.VERSION_IS_LATEST_KEY, id);
+        if (isMajor) {
+            clearLatestFlag(seriesLatestMajor,
+                    model.VERSION_IS_LATEST_MAJOR_KEY, id);
+        }
+
         // create a "version" row for our new version
         Row row = new Row(model.VERSION_TABLE_NAME, newId);
         row.putNew(model.VERSION_VERSIONABLE_KEY, id);
@@ -1429,8 +1493,6 @@ public class PersistenceContext {
         node.hierFragment.put(model.MAIN_CHECKED_IN_KEY, Boolean.TRUE);
         node.hierFragment.put(model.MAIN_BASE_VERSION_KEY, newId);
 
-        recomputeVersionSeries(id);
-
         return newId;
     }
 
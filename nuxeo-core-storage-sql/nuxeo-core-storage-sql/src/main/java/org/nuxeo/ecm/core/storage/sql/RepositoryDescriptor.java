@@ -145,6 +145,10 @@ public class RepositoryDescriptor {
     @XNodeList(value = "schema/field", type = ArrayList.class, componentType = FieldDescriptor.class)
     public List<FieldDescriptor> schemaFields = Collections.emptyList();
 
+    /* @since 5.7 */
+    @XNode("schema@arrayColumns")
+    public boolean arrayColumns;
+
     @XNode("indexing/fulltext@disabled")
     public boolean fulltextDisabled;
 
@@ -185,6 +189,38 @@ public class RepositoryDescriptor {
     @XNode("aclOptimizations@readAclMaxSize")
     public int readAclMaxSize = 4096;
 
+    /* @since 5.7 */
+    @XNode("lockManager@cacheSize")
+    public int lockManagerCacheSize = LockManager.DEFAULT_CACHE_SIZE;
+
+    /* @since 5.7 */
+    @XNode("invalidations@compactThreshold")
+    public int invalidationsCompactThreshold = Invalidations.DEFAULT_COMPACT_THRESHOLD;
+
+    /* @since 5.7 */
+    @XNode("pathCache@size")
+    public int pathCacheSize = PathCache.DEFAULT_SIZE;
+
+    /* @since 5.7 */
+    @XNode("initialization@eager")
+    public boolean eagerInitialization = false;
+
+    /* @since 5.7 */
+    @XNode("mapperPool@size")
+    public int mapperPoolSize = 0;
+
+    /* @since 5.7 */
+    @XNode("sqlStatistics@enabled")
+    public boolean sqlStatisticsEnabled = false;
+
+    /* @since 5.7 */
+    @XNode("sqlStatistics@slowQueryThreshold")
+    public long sqlStatisticsSlowQueryThreshold = 100; // ms
+
+    /* @since 5.7 */
+    @XNode("versionFragments@shared")
+    public boolean sharedVersionFragments = false;
+
     @XNode("binaryManager@class")
     public Class<? extends BinaryManager> binaryManagerClass;
 
@@ -200,6 +236,14 @@ public class RepositoryDescriptor {
     @XNode("binaryStore@path")
     public String binaryStorePath;
 
+    /* @since 5.7 */
+    @XNode("binaryStore@coldPath")
+    public String binaryStoreColdPath;
+
+    /* @since 5.7 */
+    @XNode("binaryStore@hotMaxSizeMB")
+    public long binaryStoreHotMaxSizeMB = 0; // unlimited
+
     @XNode("@sendInvalidationEvents")
     public boolean sendInvalidationEvents;
 
@@ -214,6 +258,7 @@ public class RepositoryDescriptor {
         clusteringDelay = other.clusteringDelay;
         noDDL = other.noDDL;
         schemaFields = other.schemaFields;
+        arrayColumns = other.arrayColumns;
         fulltextDisabled = other.fulltextDisabled;
         fulltextAnalyzer = other.fulltextAnalyzer;
         fulltextCatalog = other.fulltextCatalog;
@@ -221,7 +266,17 @@ public class RepositoryDescriptor {
         pathOptimizationsEnabled = other.pathOptimizationsEnabled;
         aclOptimizationsEnabled = other.aclOptimizationsEnabled;
         readAclMaxSize = other.readAclMaxSize;
+        lockManagerCacheSize = other.lockManagerCacheSize;
+        invalidationsCompactThreshold = other.invalidationsCompactThreshold;
+        pathCacheSize = other.pathCacheSize;
+        eagerInitialization = other.eagerInitialization;
+        mapperPoolSize = other.mapperPoolSize;
+        sqlStatisticsEnabled = other.sqlStatisticsEnabled;
+        sqlStatisticsSlowQueryThreshold = other.sqlStatisticsSlowQueryThreshold;
+        sharedVersionFragments = other.sharedVersionFragments;
         binaryStorePath = other.binaryStorePath;
+        binaryStoreColdPath = other.binaryStoreColdPath;
+        binaryStoreHotMaxSizeMB = other.binaryStoreHotMaxSizeMB;
         binaryManagerClass = other.binaryManagerClass;
         binaryManagerKey = other.binaryManagerKey;
         binaryManagerListen = other.binaryManagerListen;
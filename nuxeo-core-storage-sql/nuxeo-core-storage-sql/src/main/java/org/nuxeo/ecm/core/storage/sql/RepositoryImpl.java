@@ -16,7 +16,17 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.naming.Reference;
 import javax.resource.ResourceException;
@@ -38,6 +48,7 @@ import org.nuxeo.ecm.core.storage.sql.RepositoryBackend.MapperKind;
 import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor.ServerDescriptor;
 import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCBackend;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
 import org.nuxeo.ecm.core.storage.sql.net.BinaryManagerClient;
 import org.nuxeo.ecm.core.storage.sql.net.BinaryManagerServlet;
 import org.nuxeo.ecm.core.storage.sql.net.MapperClientInfo;
@@ -82,7 +93,10 @@ public class RepositoryImpl implements Repository {
 
     private final Collection<SessionImpl> sessions;
 
-    private LockManager lockManager;
+    private volatile LockManager lockManager;
+
+    /** Cache of paths to ids, or {@code null} if disabled. */
+    private final PathCache pathCache;
 
     /** Propagator of invalidations to all local mappers' caches. */
     private final InvalidationsPropagator cachePropagator;
@@ -96,7 +110,25 @@ public class RepositoryImpl implements Repository {
     /** Single event queue global to the repository. */
     private final InvalidationsQueue repositoryEventQueue;
 
-    private Model model;
+    /** Set last during initialization, non-null when initialized. */
+    private volatile Model model;
+
+    /**
+     * Mappers created in advance for new sessions, or {@code null} if
+     * disabled.
+     */
+    private final BlockingQueue<PooledMapper> mapperPool;
+
+    /** Background creation of repository model and pooled mappers. */
+    private final ExecutorService initExecutor;
+
+    private final AtomicBoolean mapperPoolFillScheduled = new AtomicBoolean();
+
+    /**
+     * Shared by session creations, exclusive for {@link #close}, so that no
+     * session or pooled mapper is added while the repository is closed.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
 
     private boolean serverStarted;
 
@@ -111,7 +143,9 @@ public class RepositoryImpl implements Repository {
     public RepositoryImpl(RepositoryDescriptor repositoryDescriptor)
             throws StorageException {
         this.repositoryDescriptor = repositoryDescriptor;
-        sessions = new CopyOnWriteArrayList<SessionImpl>();
+        sessions = Collections.newSetFromMap(new ConcurrentHashMap<SessionImpl, Boolean>());
+        pathCache = repositoryDescriptor.pathCacheSize > 0 ? new PathCache(
+                repositoryDescriptor.pathCacheSize) : null;
         cachePropagator = new InvalidationsPropagator("cache-" + this);
         eventPropagator = new InvalidationsPropagator("event-" + this);
         repositoryEventQueue = new InvalidationsQueue("repo-"
@@ -153,6 +187,39 @@ public class RepositoryImpl implements Repository {
         binaryManager = createBinaryManager();
         backend = createBackend();
         createServer();
+
+        if (repositoryDescriptor.mapperPoolSize > 0) {
+            mapperPool = new LinkedBlockingQueue<PooledMapper>(
+                    repositoryDescriptor.mapperPoolSize);
+        } else {
+            mapperPool = null;
+        }
+        if (mapperPool != null || repositoryDescriptor.eagerInitialization) {
+            initExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Nuxeo-VCS-Init-"
+                            + RepositoryImpl.this.repositoryDescriptor.name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            initExecutor = null;
+        }
+        if (repositoryDescriptor.eagerInitialization) {
+            initExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        initialize();
+                    } catch (StorageException e) {
+                        log.error("Cannot initialize repository: "
+                                + getName(), e);
+                    }
+                }
+            });
+        }
     }
 
     public HttpClient getHttpClient() {
@@ -344,6 +411,16 @@ public class RepositoryImpl implements Repository {
         return lockManager;
     }
 
+    /**
+     * Gets the repository-wide cache of paths to ids, or {@code null} if
+     * disabled.
+     *
+     * @since 5.7
+     */
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
     /*
      * ----- javax.resource.cci.ConnectionFactory -----
      */
@@ -369,7 +446,7 @@ public class RepositoryImpl implements Repository {
      * @throws StorageException
      */
     @Override
-    public synchronized SessionImpl getConnection(ConnectionSpec connectionSpec)
+    public SessionImpl getConnection(ConnectionSpec connectionSpec)
             throws StorageException {
         assert connectionSpec == null
                 || connectionSpec instanceof ConnectionSpecImpl;
@@ -377,39 +454,183 @@ public class RepositoryImpl implements Repository {
         Credentials credentials = connectionSpec == null ? null
                 : ((ConnectionSpecImpl) connectionSpec).getCredentials();
 
-        boolean create = model == null;
-        if (create) {
-            log.debug("Initializing");
-            ModelSetup modelSetup = new ModelSetup();
-            modelSetup.repositoryDescriptor = repositoryDescriptor;
-            modelSetup.schemaManager = schemaManager;
-            backend.initializeModelSetup(modelSetup);
-            model = new Model(modelSetup);
-            backend.initializeModel(model);
-
-            // create the lock manager, which creates its own mapper
-            // creating this first, before the cluster node handler,
-            // as we don't want invalidations in the lock manager's mapper
-            Mapper lockManagerMapper = backend.newMapper(model, null,
-                    MapperKind.LOCK_MANAGER);
-            lockManager = new LockManager(lockManagerMapper,
-                    repositoryDescriptor.clusteringEnabled);
-
-            // create the mapper for the cluster node handler
-            if (repositoryDescriptor.clusteringEnabled) {
-                backend.newMapper(model, null, MapperKind.CLUSTER_NODE_HANDLER);
-                log.info("Clustering enabled with "
-                        + repositoryDescriptor.clusteringDelay
-                        + " ms delay for repository: " + getName());
+        closeLock.readLock().lock();
+        try {
+            Model model = this.model;
+            if (model == null) {
+                model = initialize();
+            }
+
+            PooledMapper pooled = mapperPool == null ? null
+                    : mapperPool.poll();
+            SessionPathResolver pathResolver;
+            Mapper mapper;
+            if (pooled != null) {
+                pathResolver = pooled.pathResolver;
+                mapper = pooled.mapper;
+                try {
+                    pooled.validate();
+                } catch (StorageException e) {
+                    mapper.close();
+                    throw e;
+                }
+            } else {
+                pathResolver = new SessionPathResolver();
+                mapper = backend.newMapper(model, pathResolver, null);
             }
+            SessionImpl session = newSession(model, mapper, credentials);
+            pathResolver.setSession(session);
+            sessions.add(session);
+            fillMapperPool();
+            return session;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Initializes the model, the lock manager and the cluster node handler,
+     * if not already done.
+     * <p>
+     * Called by the first {@link #getConnection}, or in the background at
+     * construction time if eager initialization is configured.
+     *
+     * @return the model
+     * @since 5.7
+     */
+    public synchronized Model initialize() throws StorageException {
+        if (model != null) {
+            return model;
+        }
+        log.debug("Initializing");
+        ModelSetup modelSetup = new ModelSetup();
+        modelSetup.repositoryDescriptor = repositoryDescriptor;
+        modelSetup.schemaManager = schemaManager;
+        backend.initializeModelSetup(modelSetup);
+        Model model = new Model(modelSetup);
+        backend.initializeModel(model);
+
+        // create the lock manager, which creates its own mapper
+        // creating this first, before the cluster node handler,
+        // as we don't want invalidations in the lock manager's mapper
+        Mapper lockManagerMapper = backend.newMapper(model, null,
+                MapperKind.LOCK_MANAGER);
+        lockManager = new LockManager(lockManagerMapper,
+                repositoryDescriptor.clusteringEnabled,
+                repositoryDescriptor.lockManagerCacheSize);
+
+        // create the mapper for the cluster node handler
+        if (repositoryDescriptor.clusteringEnabled) {
+            backend.newMapper(model, null, MapperKind.CLUSTER_NODE_HANDLER);
+            log.info("Clustering enabled with "
+                    + repositoryDescriptor.clusteringDelay
+                    + " ms delay for repository: " + getName());
         }
 
-        SessionPathResolver pathResolver = new SessionPathResolver();
-        Mapper mapper = backend.newMapper(model, pathResolver, null);
-        SessionImpl session = newSession(model, mapper, credentials);
-        pathResolver.setSession(session);
-        sessions.add(session);
-        return session;
+        // publish
+        this.model = model;
+        fillMapperPool();
+        return model;
+    }
+
+    /**
+     * A mapper created in advance, with its path resolver waiting for a
+     * session. The session and its caching mapper are set up when it is
+     * handed out, as for a mapper created on demand.
+     * <p>
+     * Its JDBC connection, if any, stays open while it waits in the pool, and
+     * is validated when it is handed to a session.
+     */
+    protected static class PooledMapper {
+
+        protected final SessionPathResolver pathResolver;
+
+        protected final Mapper mapper;
+
+        protected PooledMapper(SessionPathResolver pathResolver, Mapper mapper) {
+            this.pathResolver = pathResolver;
+            this.mapper = mapper;
+        }
+
+        protected void validate() throws StorageException {
+            if (mapper instanceof JDBCConnection) {
+                ((JDBCConnection) mapper).validateConnection();
+            }
+        }
+    }
+
+    /**
+     * Schedules the background creation of mappers until the pool is full.
+     */
+    protected void fillMapperPool() {
+        if (mapperPool == null || mapperPool.remainingCapacity() == 0) {
+            return;
+        }
+        if (!mapperPoolFillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            initExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mapperPoolFillScheduled.set(false);
+                    try {
+                        fillMapperPoolNow();
+                    } catch (StorageException e) {
+                        log.error("Cannot create pooled mapper for repository: "
+                                + getName(), e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            mapperPoolFillScheduled.set(false);
+        }
+    }
+
+    protected void fillMapperPoolNow() throws StorageException {
+        while (mapperPool.remainingCapacity() > 0) {
+            // don't wait for a close in progress, it waits for us
+            if (!closeLock.readLock().tryLock()) {
+                return;
+            }
+            try {
+                Model model = this.model;
+                if (model == null || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                SessionPathResolver pathResolver = new SessionPathResolver();
+                Mapper mapper = backend.newMapper(model, pathResolver, null);
+                if (!mapperPool.offer(new PooledMapper(pathResolver, mapper))) {
+                    mapper.close();
+                    return;
+                }
+            } finally {
+                closeLock.readLock().unlock();
+            }
+        }
+    }
+
+    protected void closeMapperPool() {
+        if (initExecutor != null) {
+            initExecutor.shutdownNow();
+            try {
+                initExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mapperPool == null) {
+            return;
+        }
+        PooledMapper pooled;
+        while ((pooled = mapperPool.poll()) != null) {
+            try {
+                pooled.mapper.close();
+            } catch (StorageException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
     }
 
     protected SessionImpl newSession(Model model, Mapper mapper,
@@ -468,16 +689,28 @@ public class RepositoryImpl implements Repository {
      */
 
     @Override
-    public synchronized void close() throws StorageException {
-        closeAllSessions();
+    public void close() throws StorageException {
+        // lock order: closeLock then monitor, as in getConnection
+        closeLock.writeLock().lock();
+        try {
+            closeMapperPool();
+            synchronized (this) {
+                closeAllSessions();
 
-        model = null;
+                model = null;
 
-        deactivateServletMapper();
-        deactivateBinaryManagerServlet();
+                deactivateServletMapper();
+                deactivateBinaryManagerServlet();
+                if (binaryManager instanceof AbstractBinaryManager) {
+                    ((AbstractBinaryManager) binaryManager).close();
+                }
 
-        backend.shutdown();
-        connectionManager.shutdown();
+                backend.shutdown();
+                connectionManager.shutdown();
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
     }
 
     protected synchronized void closeAllSessions() throws StorageException {
@@ -516,6 +749,9 @@ public class RepositoryImpl implements Repository {
         if (lockManager != null) {
             lockManager.clearCaches();
         }
+        if (pathCache != null) {
+            pathCache.clear();
+        }
         return n;
     }
 
@@ -58,6 +58,9 @@ public interface RowMapper {
 
     /**
      * A {@link Row} and a list of its keys that have to be updated.
+     * <p>
+     * For a collection row, the keys are {@code null} and the optional delta
+     * describes which positions changed.
      */
     public static final class RowUpdate implements Serializable {
         private static final long serialVersionUID = 1L;
@@ -66,9 +69,26 @@ public interface RowMapper {
 
         public final Collection<String> keys;
 
+        /**
+         * The changes of a collection row, or {@code null} if the whole
+         * collection has to be rewritten.
+         *
+         * @since 5.7
+         */
+        public final CollectionDelta delta;
+
         public RowUpdate(Row row, Collection<String> keys) {
+            this(row, keys, null);
+        }
+
+        /**
+         * @since 5.7
+         */
+        public RowUpdate(Row row, Collection<String> keys,
+                CollectionDelta delta) {
             this.row = row;
             this.keys = keys;
+            this.delta = delta;
         }
 
         @Override
@@ -91,7 +111,34 @@ public interface RowMapper {
         @Override
         public String toString() {
             return getClass().getSimpleName() + '(' + row + ", keys=" + keys
-                    + ')';
+                    + (delta == null ? "" : ", delta=" + delta) + ')';
+        }
+    }
+
+    /**
+     * The changes of a collection since it was read or last written, relative
+     * to its positions: the positions whose value changed in place, then the
+     * values appended after the old length, or the positions removed from the
+     * new length.
+     *
+     * @since 5.7
+     */
+    public static final class CollectionDelta implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final int oldLength;
+
+        public final int[] updated;
+
+        public CollectionDelta(int oldLength, int[] updated) {
+            this.oldLength = oldLength;
+            this.updated = updated;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(oldLength=" + oldLength
+                    + ", updated=" + Arrays.toString(updated) + ')';
         }
     }
 
@@ -332,6 +379,35 @@ public interface RowMapper {
         }
     }
 
+    /**
+     * The result of a remove.
+     * <p>
+     * When more descendants are removed than the invalidations compact
+     * threshold, they are not listed individually: only the root and the
+     * proxies (whose removal impacts selections outside of the tree) are
+     * listed, and the removal is summarized by the tables holding the rows of
+     * the descendants.
+     *
+     * @since 5.7
+     */
+    public static final class RemoveResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** Info about the nodes removed (including the root). */
+        public final List<NodeInfo> nodeInfos;
+
+        /**
+         * The tables in which rows of the descendants were removed, if the
+         * removal is summarized, otherwise {@code null}.
+         */
+        public final Set<String> tables;
+
+        public RemoveResult(List<NodeInfo> nodeInfos, Set<String> tables) {
+            this.nodeInfos = nodeInfos;
+            this.tables = tables;
+        }
+    }
+
     /**
      * Deletes a hierarchy and returns information to generate invalidations.
      *
@@ -339,7 +415,7 @@ public interface RowMapper {
      *            id, and the rest is for invalidations)
      * @return info about the descendants removed (including the root)
      */
-    List<NodeInfo> remove(NodeInfo rootInfo) throws StorageException;
+    RemoveResult remove(NodeInfo rootInfo) throws StorageException;
 
     /**
      * Processes and returns the invalidations queued for processing by the
@@ -183,8 +183,8 @@ public class SelectionContext {
      * @param filter the value to filter on
      * @return the fragment, or {@code null} if not found
      */
-    public SimpleFragment getSelectionFragment(Serializable selId, String filter)
-            throws StorageException {
+    public SimpleFragment getSelectionFragment(Serializable selId,
+            Serializable filter) throws StorageException {
         SimpleFragment fragment = getSelection(selId).getFragmentByValue(filter);
         if (fragment == SimpleFragment.UNKNOWN) {
             // read it through the mapper
@@ -290,6 +290,23 @@ public class SelectionContext {
         }
     }
 
+    /**
+     * Processes coarse invalidations received from other sessions, for which
+     * all the rows of some tables are invalidated.
+     *
+     * @since 5.7
+     */
+    public void processReceivedTableInvalidations(Set<String> tableNames) {
+        if (!tableNames.contains(selType.invalidationTableName)) {
+            return;
+        }
+        softMap.clear();
+        // selections holding local changes are kept but must be re-read
+        for (Selection selection : hardMap.values()) {
+            selection.setIncomplete();
+        }
+    }
+
     private void updateCacheStat(Selection selection) {
         if (selection != null) {
             hitsCount++;
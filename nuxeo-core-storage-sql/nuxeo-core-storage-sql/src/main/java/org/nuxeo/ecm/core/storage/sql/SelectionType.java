@@ -26,9 +26,23 @@ public enum SelectionType {
 
     /**
      * Selection for the versions of a given version series.
+     * <p>
+     * Filtering is done on the latest version flag.
      */
     SERIES_VERSIONS(Model.VERSION_TABLE_NAME, Model.VERSION_VERSIONABLE_KEY,
-            null, null, "__SERIES_VERSIONS__"),
+            Model.VERSION_IS_LATEST_KEY, null, "__SERIES_VERSIONS__"),
+
+    /**
+     * Selection for the versions of a given version series, filtering on the
+     * latest major version flag.
+     * <p>
+     * Shares its invalidations with {@link #SERIES_VERSIONS}.
+     *
+     * @since 5.7
+     */
+    SERIES_LATEST_MAJOR(Model.VERSION_TABLE_NAME,
+            Model.VERSION_VERSIONABLE_KEY, Model.VERSION_IS_LATEST_MAJOR_KEY,
+            null, "__SERIES_VERSIONS__"),
 
     /**
      * Selection for the proxies of a given version series.
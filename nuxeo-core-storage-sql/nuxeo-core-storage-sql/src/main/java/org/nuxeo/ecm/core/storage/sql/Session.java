@@ -14,7 +14,9 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.resource.cci.Connection;
 
@@ -376,6 +378,24 @@ public interface Session extends Connection {
     List<Node> getVersions(Serializable versionSeriesId)
             throws StorageException;
 
+    /**
+     * Gets a page of the versions for a given version series id, ordered by
+     * creation time.
+     * <p>
+     * Only the versions of the page are fetched.
+     * <p>
+     * A {@link #save} is automatically done first.
+     *
+     * @param versionSeriesId the version series id
+     * @param offset the number of versions to skip
+     * @param limit the maximum number of versions to return
+     * @return the list of versions
+     * @throws StorageException
+     * @since 5.7
+     */
+    List<Node> getVersions(Serializable versionSeriesId, int offset, int limit)
+            throws StorageException;
+
     /**
      * Gets the last version for a given version series id.
      * <p>
@@ -494,6 +514,17 @@ public interface Session extends Connection {
      */
     Lock getLock(Serializable id) throws StorageException;
 
+    /**
+     * Gets the lock state of several documents, in one batch.
+     *
+     * @param ids the document ids
+     * @return a map of document id to lock, containing only the locked
+     *         documents
+     * @since 5.7
+     */
+    Map<Serializable, Lock> getLocks(Collection<Serializable> ids)
+            throws StorageException;
+
     /**
      * Sets a lock on a document.
      * <p>
@@ -552,4 +583,13 @@ public interface Session extends Connection {
      */
     void rebuildReadAcls() throws StorageException;
 
+    /**
+     * Gets a counter that changes each time this session processes
+     * invalidations of ACLs or of the hierarchy, after which the merged ACLs
+     * of documents may have changed.
+     *
+     * @since 5.7
+     */
+    long getSecurityGeneration() throws StorageException;
+
 }
@@ -108,6 +108,9 @@ public class SessionImpl implements Session, XAResource {
 
     private boolean readAclsChanged;
 
+    /** Changes when invalidations of ACLs or of the hierarchy are processed. */
+    private long securityGeneration;
+
     private String threadName;
 
     public SessionImpl(RepositoryImpl repository, Model model, Mapper mapper,
@@ -172,6 +175,8 @@ public class SessionImpl implements Session, XAResource {
 
     protected void rollback() {
         context.clearCaches();
+        // ACLs read from the rolled back state must not be reused
+        securityGeneration++;
     }
 
     protected void checkThread() {
@@ -492,6 +497,35 @@ public class SessionImpl implements Session, XAResource {
         }
     }
 
+    /**
+     * Checks if invalidations may change the merged ACLs of documents: those
+     * of ACLs, or of the hierarchy for moves and removals.
+     */
+    protected static boolean isSecurityInvalidated(Invalidations invalidations) {
+        if (invalidations == null) {
+            return false;
+        }
+        if (invalidations.isTableInvalidated(Model.ACL_TABLE_NAME)
+                || invalidations.isTableInvalidated(Model.HIER_TABLE_NAME)) {
+            return true;
+        }
+        return isSecurityInvalidated(invalidations.modified)
+                || isSecurityInvalidated(invalidations.deleted);
+    }
+
+    protected static boolean isSecurityInvalidated(Set<RowId> rowIds) {
+        if (rowIds == null) {
+            return false;
+        }
+        for (RowId rowId : rowIds) {
+            if (Model.ACL_TABLE_NAME.equals(rowId.tableName)
+                    || Model.HIER_TABLE_NAME.equals(rowId.tableName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Sends a Core Event about the invalidations.
      * <p>
@@ -513,6 +547,13 @@ public class SessionImpl implements Session, XAResource {
      * @param pair
      */
     protected void sendInvalidationEvent(InvalidationsPair pair) {
+        if (isSecurityInvalidated(pair.cacheInvalidations)) {
+            securityGeneration++;
+        }
+        PathCache pathCache = repository.getPathCache();
+        if (pathCache != null) {
+            pathCache.invalidate(pair.cacheInvalidations);
+        }
         if (!repository.repositoryDescriptor.sendInvalidationEvents) {
             return;
         }
@@ -754,19 +795,26 @@ public class SessionImpl implements Session, XAResource {
     /* Does not apply to properties for now (no use case). */
     @Override
     public Node getNodeByPath(String path, Node node) throws StorageException {
-        // TODO optimize this to use a dedicated path-based table
         checkLive();
         if (path == null) {
             throw new IllegalArgumentException("Illegal null path");
         }
         path = Normalizer.normalize(path, Normalizer.Form.NFKC);
         int i;
+        PathCache pathCache = null;
         if (path.startsWith("/")) {
             node = getRootNode();
             if (path.equals("/")) {
                 return node;
             }
             i = 1;
+            pathCache = repository.getPathCache();
+            if (pathCache != null) {
+                Node cached = getNodeByCachedPath(pathCache, path);
+                if (cached != null) {
+                    return cached;
+                }
+            }
         } else {
             if (node == null) {
                 throw new IllegalArgumentException(
@@ -775,6 +823,7 @@ public class SessionImpl implements Session, XAResource {
             i = 0;
         }
         String[] names = path.split("/", -1);
+        int end = 0; // end of the path resolved so far
         for (; i < names.length; i++) {
             String name = names[i];
             if (name.length() == 0) {
@@ -785,6 +834,47 @@ public class SessionImpl implements Session, XAResource {
             if (node == null) {
                 return null;
             }
+            if (pathCache != null) {
+                // cache intermediate paths too, so that they can be
+                // invalidated when an ancestor is renamed or moved
+                end += 1 + name.length();
+                pathCache.put(path.substring(0, end), node.getId());
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Gets the node for an absolute path from the repository path cache, if
+     * it is still at this path as seen from this session.
+     * <p>
+     * Only the name and parent of the node are checked against the cached id
+     * of the parent path: a move or rename of an ancestor invalidates the
+     * cached paths of the whole subtree.
+     */
+    protected Node getNodeByCachedPath(PathCache pathCache, String path)
+            throws StorageException {
+        Serializable id = pathCache.get(path);
+        if (id == null) {
+            return null;
+        }
+        int slash = path.lastIndexOf('/');
+        Serializable parentId = slash == 0 ? getRootNode().getId()
+                : pathCache.get(path.substring(0, slash));
+        if (parentId == null) {
+            return null;
+        }
+        Node node = getNodeById(id);
+        if (node == null) {
+            // deleted, or not yet visible to this session
+            return null;
+        }
+        SimpleFragment hierFragment = node.getHierFragment();
+        if (!path.substring(slash + 1).equals(
+                hierFragment.getString(model.HIER_CHILD_NAME_KEY))
+                || !parentId.equals(hierFragment.get(model.HIER_PARENT_KEY))) {
+            // moved or renamed, maybe not yet visible to this session
+            return null;
         }
         return node;
     }
@@ -934,6 +1024,11 @@ public class SessionImpl implements Session, XAResource {
         }
         context.move(source, parent.getId(), name);
         requireReadAclsUpdate();
+        PathCache pathCache = repository.getPathCache();
+        if (pathCache != null) {
+            // don't wait for the save, cached hits only check the last level
+            pathCache.invalidate(source.getId());
+        }
         return source;
     }
 
@@ -1024,6 +1119,17 @@ public class SessionImpl implements Session, XAResource {
         return nodes;
     }
 
+    @Override
+    public List<Node> getVersions(Serializable versionSeriesId, int offset,
+            int limit) throws StorageException {
+        checkLive();
+        // page in the database, versions being created must be visible
+        flush();
+        List<Serializable> ids = mapper.getVersionIds(versionSeriesId, offset,
+                limit);
+        return getNodesByIds(ids);
+    }
+
     @Override
     public List<Node> getProxies(Node document, Node parent)
             throws StorageException {
@@ -1116,6 +1222,12 @@ public class SessionImpl implements Session, XAResource {
         return repository.getLockManager().getLock(id);
     }
 
+    @Override
+    public Map<Serializable, Lock> getLocks(Collection<Serializable> ids)
+            throws StorageException {
+        return repository.getLockManager().getLocks(ids);
+    }
+
     @Override
     public Lock setLock(Serializable id, Lock lock) throws StorageException {
         if (lock == null) {
@@ -1147,6 +1259,11 @@ public class SessionImpl implements Session, XAResource {
         readAclsChanged = false;
     }
 
+    @Override
+    public long getSecurityGeneration() {
+        return securityGeneration;
+    }
+
     private void computeRootNode() throws StorageException {
         String repositoryId = repository.getName();
         Serializable rootId = mapper.getRootId(repositoryId);
@@ -13,6 +13,7 @@
 package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
@@ -125,6 +126,9 @@ public final class SimpleFragment extends Fragment {
     private static boolean same(Object a, Object b) {
         if (a == null) {
             return b == null;
+        } else if (a instanceof Object[] && b instanceof Object[]) {
+            // array columns
+            return Arrays.equals((Object[]) a, (Object[]) b);
         } else {
             return a.equals(b);
         }
@@ -13,6 +13,7 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -112,6 +113,12 @@ public class SoftRefCachingMapper extends SoftRefCachingRowMapper implements Cac
         return mapper.getAncestorsIds(ids);
     }
 
+    @Override
+    public List<Serializable> getVersionIds(Serializable versionSeriesId,
+            int offset, int limit) throws StorageException {
+        return mapper.getVersionIds(versionSeriesId, offset, limit);
+    }
+
     @Override
     public void updateReadAcls() throws StorageException {
         mapper.updateReadAcls();
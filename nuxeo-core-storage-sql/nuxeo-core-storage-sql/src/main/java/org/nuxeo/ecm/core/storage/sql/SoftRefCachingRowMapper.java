@@ -16,9 +16,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.Xid;
@@ -30,6 +32,7 @@ import org.javasimon.Counter;
 import org.javasimon.SimonManager;
 import org.javasimon.Split;
 import org.javasimon.Stopwatch;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
 import org.nuxeo.ecm.core.storage.StorageException;
 import org.nuxeo.ecm.core.storage.sql.ACLRow.ACLRowPositionComparator;
 import org.nuxeo.ecm.core.storage.sql.Invalidations.InvalidationsPair;
@@ -98,6 +101,12 @@ public class SoftRefCachingRowMapper implements RowMapper {
      */
     private InvalidationsPropagator eventPropagator;
 
+    /**
+     * Number of invalidated rows above which the invalidations sent to other
+     * caches are compacted into table invalidations.
+     */
+    private int invalidationsCompactThreshold;
+
     /**
      * The session, used for event propagation.
      */
@@ -154,6 +163,7 @@ public class SoftRefCachingRowMapper implements RowMapper {
         eventQueue = repositoryEventQueue;
         this.eventPropagator = eventPropagator;
         eventPropagator.addQueue(repositoryEventQueue);
+        invalidationsCompactThreshold = model.getRepositoryDescriptor().invalidationsCompactThreshold;
     }
 
     public void close() throws StorageException {
@@ -232,6 +242,10 @@ public class SoftRefCachingRowMapper implements RowMapper {
         if (row != null) {
             hitsCount++;
         }
+        ResourceProfile profile = ResourceProfile.current();
+        if (profile != null) {
+            profile.addCacheAccess(row != null);
+        }
         if ((++accessCount % 200) == 0) {
             Counter accessCounter = SimonManager.getCounter(CN_ACCESS);
             accessCounter.increase(accessCount);
@@ -269,6 +283,17 @@ public class SoftRefCachingRowMapper implements RowMapper {
         cache.remove(rowId);
     }
 
+    /**
+     * Removes from the cache all the rows of the given tables.
+     */
+    protected void cacheRemoveTables(Set<String> tableNames) {
+        for (Iterator<RowId> it = cache.keySet().iterator(); it.hasNext();) {
+            if (tableNames.contains(it.next().tableName)) {
+                it.remove();
+            }
+        }
+    }
+
     /*
      * ----- Invalidations / Cache Management -----
      */
@@ -304,6 +329,9 @@ public class SoftRefCachingRowMapper implements RowMapper {
                 cachePutAbsent(rowId);
             }
         }
+        if (invalidations.tables != null) {
+            cacheRemoveTables(invalidations.tables);
+        }
 
         if (invalidations.isEmpty() && events.isEmpty()) {
             return null;
@@ -326,11 +354,15 @@ public class SoftRefCachingRowMapper implements RowMapper {
         }
 
         if (invalidations != null && !invalidations.isEmpty()) {
+            // caches don't need precise invalidations for mass operations
+            Invalidations cacheInvalidations = invalidations.compact(invalidationsCompactThreshold);
+
             // send to underlying mapper
-            rowMapper.sendInvalidations(invalidations);
+            rowMapper.sendInvalidations(cacheInvalidations);
 
             // queue to other local mappers' caches
-            cachePropagator.propagateInvalidations(invalidations, cacheQueue);
+            cachePropagator.propagateInvalidations(cacheInvalidations,
+                    cacheQueue);
 
             // queue as events for other repositories
             eventPropagator.propagateInvalidations(invalidations, eventQueue);
@@ -534,9 +566,9 @@ public class SoftRefCachingRowMapper implements RowMapper {
     }
 
     @Override
-    public List<NodeInfo> remove(NodeInfo rootInfo) throws StorageException {
-        List<NodeInfo> infos = rowMapper.remove(rootInfo);
-        for (NodeInfo info : infos) {
+    public RemoveResult remove(NodeInfo rootInfo) throws StorageException {
+        RemoveResult result = rowMapper.remove(rootInfo);
+        for (NodeInfo info : result.nodeInfos) {
             for (String fragmentName : model.getTypeFragments(new IdWithTypes(
                     info.id, info.primaryType, null))) {
                 RowId rowId = new RowId(fragmentName, info.id);
@@ -544,10 +576,17 @@ public class SoftRefCachingRowMapper implements RowMapper {
                 localInvalidations.addDeleted(rowId);
             }
         }
+        if (result.tables != null) {
+            // summarized removal of a large tree
+            cacheRemoveTables(result.tables);
+            for (String tableName : result.tables) {
+                localInvalidations.addTable(tableName);
+            }
+        }
         // we only put as absent the root fragment, to avoid polluting the cache
         // with lots of absent info. the rest is removed entirely
         cachePutAbsent(new RowId(model.HIER_TABLE_NAME, rootInfo.id));
-        return infos;
+        return result;
     }
 
 }
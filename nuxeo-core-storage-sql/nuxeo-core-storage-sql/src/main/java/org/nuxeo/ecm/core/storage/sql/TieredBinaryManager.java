@@ -0,0 +1,645 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.services.streaming.AbstractStreamSource;
+import org.nuxeo.runtime.services.streaming.FileSource;
+import org.nuxeo.runtime.services.streaming.StreamSource;
+
+/**
+ * A binary manager storing the binaries on two tiers: a fast hot tier, for
+ * instance a local SSD, and a capacity cold tier.
+ * <p>
+ * New binaries are stored on the hot tier. When the hot tier grows beyond its
+ * maximum size, the binaries least recently accessed are migrated in the
+ * background to the cold tier. A binary of the cold tier is promoted back to
+ * the hot tier when its stream is read.
+ * <p>
+ * The binaries returned look up their file on each read, so that they stay
+ * readable when migrated or promoted after being gotten. The access times are
+ * recorded when binaries are stored or read, and saved next to the hot tier
+ * on migration and shutdown. The binaries without a recorded access, stored
+ * before this manager was used, fall back to their file modification time.
+ * The cold tier keeps the binaries promoted from it, so that a promoted binary
+ * can later be removed from the hot tier without copy.
+ * <p>
+ * Configuration:
+ *
+ * <pre>
+ * &lt;binaryManager class="org.nuxeo.ecm.core.storage.sql.TieredBinaryManager" /&gt;
+ * &lt;binaryStore path="/ssd/binaries" coldPath="/nas/binaries" hotMaxSizeMB="10240" /&gt;
+ * </pre>
+ *
+ * @since 5.7
+ */
+public class TieredBinaryManager extends DefaultBinaryManager {
+
+    private static final Log log = LogFactory.getLog(TieredBinaryManager.class);
+
+    public static final String DEFAULT_COLD_PATH = "binaries-cold";
+
+    /** File of the hot tier holding the saved access times. */
+    public static final String ACCESS_TIMES_FILE = "accesstimes.properties";
+
+    /**
+     * Binaries accessed more recently than this are not migrated, as they may
+     * be about to be read.
+     */
+    public static final long DEFAULT_MIN_IDLE_TIME = 10 * 60 * 1000; // 10 min
+
+    /** Migration stops when the hot tier is under this ratio of its size. */
+    protected static final double LOW_WATERMARK = 0.9;
+
+    protected LocalBinaryManager coldBinaryManager;
+
+    /** Maximum size of the hot tier, in bytes, or 0 for unlimited. */
+    protected long hotMaxSize;
+
+    protected long minIdleTime = DEFAULT_MIN_IDLE_TIME;
+
+    /** Estimated size of the hot tier. */
+    protected final AtomicLong hotSize = new AtomicLong();
+
+    /** Last access time of the binaries of the hot tier accessed. */
+    protected final ConcurrentMap<String, Long> accessTimes = new ConcurrentHashMap<String, Long>();
+
+    protected final AtomicBoolean migrating = new AtomicBoolean();
+
+    /** Runs the background migrations, shut down on close. */
+    protected ExecutorService migrationExecutor;
+
+    protected File accessTimesFile;
+
+    @Override
+    public void initialize(RepositoryDescriptor repositoryDescriptor)
+            throws IOException {
+        super.initialize(repositoryDescriptor);
+        RepositoryDescriptor coldDescriptor = new RepositoryDescriptor();
+        coldDescriptor.name = repositoryDescriptor.name;
+        String coldPath = repositoryDescriptor.binaryStoreColdPath;
+        if (coldPath == null || coldPath.trim().length() == 0) {
+            coldPath = DEFAULT_COLD_PATH;
+        }
+        coldDescriptor.binaryStorePath = coldPath;
+        coldBinaryManager = new LocalBinaryManager();
+        coldBinaryManager.initialize(coldDescriptor);
+        hotMaxSize = repositoryDescriptor.binaryStoreHotMaxSizeMB * 1024 * 1024;
+        hotSize.set(getSize(storageDir));
+        accessTimesFile = new File(storageDir.getParentFile(),
+                ACCESS_TIMES_FILE);
+        loadAccessTimes();
+        migrationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r,
+                        "Nuxeo-TieredBinaryManager-Migration");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (migrationExecutor != null) {
+            migrationExecutor.shutdownNow();
+            try {
+                migrationExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            saveAccessTimes();
+        } catch (IOException e) {
+            log.error("Cannot save binaries access times", e);
+        }
+    }
+
+    protected void loadAccessTimes() {
+        if (!accessTimesFile.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(accessTimesFile);
+            props.load(in);
+        } catch (IOException e) {
+            log.error("Cannot read binaries access times: " + accessTimesFile,
+                    e);
+            return;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        for (String digest : props.stringPropertyNames()) {
+            try {
+                accessTimes.put(digest,
+                        Long.valueOf(props.getProperty(digest)));
+            } catch (NumberFormatException e) {
+                log.debug("Invalid access time for binary: " + digest);
+            }
+        }
+    }
+
+    /**
+     * Saves the access times of the binaries of the hot tier, so that they
+     * survive a restart.
+     */
+    public void saveAccessTimes() throws IOException {
+        Properties props = new Properties();
+        for (Entry<String, Long> en : accessTimes.entrySet()) {
+            props.setProperty(en.getKey(), en.getValue().toString());
+        }
+        File tmp = File.createTempFile("access_", ".tmp", tmpDir);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, null);
+            } finally {
+                out.close();
+            }
+            // renameTo does not replace an existing file on all platforms
+            accessTimesFile.delete();
+            if (!tmp.renameTo(accessTimesFile)) {
+                copy(tmp, accessTimesFile);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    public LocalBinaryManager getColdBinaryManager() {
+        return coldBinaryManager;
+    }
+
+    @Override
+    public Binary getBinary(InputStream in) throws IOException {
+        return stored(super.getBinary(in));
+    }
+
+    @Override
+    public Binary getBinary(FileSource source) throws IOException {
+        return stored(super.getBinary(source));
+    }
+
+    protected Binary stored(Binary binary) {
+        String digest = binary.getDigest();
+        accessed(digest);
+        // may count an already stored binary, migrate recomputes the size
+        hotSize.addAndGet(binary.getLength());
+        migrateIfNeeded();
+        return new TieredBinary(getFileForDigest(digest, false), digest,
+                repositoryName, this);
+    }
+
+    protected void accessed(String digest) {
+        accessTimes.put(digest, Long.valueOf(System.currentTimeMillis()));
+    }
+
+    @Override
+    public Binary getBinary(String digest) {
+        File file = getFileForDigest(digest, false);
+        if (file == null) {
+            // invalid digest
+            return null;
+        }
+        if (!file.exists()) {
+            File coldFile = coldBinaryManager.getFileForDigest(digest, false);
+            if (coldFile == null || !coldFile.exists()) {
+                log.warn("cannot fetch content at " + file.getPath()
+                        + " (file does not exist), check your configuration");
+                return null;
+            }
+            file = coldFile;
+        }
+        return new TieredBinary(file, digest, repositoryName, this);
+    }
+
+    /**
+     * Gets the file of a binary being read and records the access. A binary
+     * of the cold tier is promoted to the hot tier.
+     *
+     * @return the file, or {@code null} if the binary is on no tier
+     */
+    protected File read(String digest) {
+        File file = getFileForDigest(digest, false);
+        if (file == null) {
+            return null;
+        }
+        if (file.exists()) {
+            accessed(digest);
+            return file;
+        }
+        File coldFile = coldBinaryManager.getFileForDigest(digest, false);
+        if (coldFile == null || !coldFile.exists()) {
+            return null;
+        }
+        return promote(digest, coldFile);
+    }
+
+    /**
+     * Copies a binary from the cold tier to the hot tier.
+     *
+     * @return the file of the hot tier, or the file of the cold tier if the
+     *         copy failed
+     */
+    protected File promote(String digest, File coldFile) {
+        File file = getFileForDigest(digest, true);
+        if (!file.exists()) {
+            try {
+                File tmp = File.createTempFile("promote_", ".tmp", tmpDir);
+                try {
+                    copy(coldFile, tmp);
+                    atomicMove(tmp, file);
+                } finally {
+                    tmp.delete();
+                }
+            } catch (IOException e) {
+                log.error("Cannot promote binary: " + digest, e);
+                return coldFile;
+            }
+            hotSize.addAndGet(file.length());
+        }
+        accessed(digest);
+        migrateIfNeeded();
+        return file;
+    }
+
+    protected static void copy(File source, File dest) throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(dest);
+            try {
+                IOUtils.copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Starts a background migration if the hot tier is too big and no
+     * migration is running.
+     */
+    protected void migrateIfNeeded() {
+        if (hotMaxSize <= 0 || hotSize.get() <= hotMaxSize) {
+            return;
+        }
+        if (!migrating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            migrationExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        migrate();
+                    } catch (Exception e) {
+                        log.error("Error during binaries migration", e);
+                    } finally {
+                        migrating.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            migrating.set(false);
+        }
+    }
+
+    /**
+     * Migrates the binaries least recently accessed to the cold tier, until
+     * the hot tier is back under its maximum size.
+     */
+    public void migrate() throws IOException {
+        List<File> files = new ArrayList<File>();
+        listFiles(storageDir, files);
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        hotSize.set(size);
+        if (hotMaxSize <= 0 || size <= hotMaxSize) {
+            return;
+        }
+        // get access times once, as they change while sorting
+        final Map<File, Long> times = new HashMap<File, Long>();
+        for (File file : files) {
+            times.put(file, Long.valueOf(getAccessTime(file)));
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return times.get(f1).compareTo(times.get(f2));
+            }
+        });
+        long minTime = System.currentTimeMillis() - minIdleTime;
+        long target = (long) (hotMaxSize * LOW_WATERMARK);
+        int n = 0;
+        for (File file : files) {
+            if (size <= target) {
+                break;
+            }
+            if (times.get(file).longValue() > minTime) {
+                // all the next ones are recent
+                break;
+            }
+            long length = file.length();
+            if (demote(file, minTime)) {
+                size -= length;
+                n++;
+            }
+        }
+        hotSize.set(size);
+        log.debug("Migrated " + n + " binaries to the cold tier");
+        saveAccessTimes();
+    }
+
+    protected long getAccessTime(File file) {
+        Long time = accessTimes.get(file.getName());
+        return time == null ? file.lastModified() : time.longValue();
+    }
+
+    /**
+     * Moves a binary of the hot tier to the cold tier, unless it was accessed
+     * after {@code minTime} while being copied. A binary read between this
+     * last check and the removal is read again from the cold tier.
+     */
+    protected boolean demote(File file, long minTime) throws IOException {
+        String digest = file.getName();
+        File coldFile = coldBinaryManager.getFileForDigest(digest, true);
+        if (coldFile == null) {
+            return false;
+        }
+        if (!coldFile.exists()) {
+            File tmp = File.createTempFile("demote_", ".tmp",
+                    coldBinaryManager.tmpDir);
+            try {
+                copy(file, tmp);
+                coldBinaryManager.atomicMove(tmp, coldFile);
+            } finally {
+                tmp.delete();
+            }
+        }
+        if (getAccessTime(file) > minTime) {
+            // read since sorted, the cold copy is kept like for a promotion
+            return false;
+        }
+        accessTimes.remove(digest);
+        if (!file.delete()) {
+            log.warn("Cannot remove migrated binary: " + file);
+            return false;
+        }
+        return true;
+    }
+
+    protected static void listFiles(File dir, List<File> files) {
+        File[] list = dir.listFiles();
+        if (list == null) {
+            return;
+        }
+        for (File file : list) {
+            if (file.isDirectory()) {
+                listFiles(file, files);
+            } else {
+                files.add(file);
+            }
+        }
+    }
+
+    protected static long getSize(File dir) {
+        List<File> files = new ArrayList<File>();
+        listFiles(dir, files);
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * A binary of the tiered store, whose file is looked up on each read as
+     * the binary may have been migrated or promoted since it was gotten.
+     * Reading it records an access, and promotes it from the cold tier.
+     */
+    public static class TieredBinary extends Binary {
+
+        private static final long serialVersionUID = 1L;
+
+        protected transient TieredBinaryManager binaryManager;
+
+        public TieredBinary(File file, String digest, String repoName,
+                TieredBinaryManager binaryManager) {
+            super(file, digest, repoName);
+            this.binaryManager = binaryManager;
+        }
+
+        protected TieredBinaryManager getBinaryManager() {
+            if (binaryManager == null && repoName != null) {
+                // deserialized
+                BinaryManager bm = RepositoryResolver.getBinaryManager(repoName);
+                if (bm instanceof TieredBinaryManager) {
+                    binaryManager = (TieredBinaryManager) bm;
+                }
+            }
+            return binaryManager;
+        }
+
+        @Override
+        protected File getFile() {
+            TieredBinaryManager bm = getBinaryManager();
+            if (bm != null) {
+                File f = bm.read(digest);
+                if (f != null) {
+                    file = f;
+                }
+            }
+            return file;
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            File f = getFile();
+            if (f == null) {
+                throw new FileNotFoundException("Missing binary: " + digest);
+            }
+            try {
+                return new FileInputStream(f);
+            } catch (FileNotFoundException e) {
+                // migrated between the lookup and the opening, the previous
+                // file is kept if the binary is now on no tier
+                return new FileInputStream(getFile());
+            }
+        }
+
+        @Override
+        public StreamSource getStreamSource() {
+            File f = getFile();
+            if (f == null || !f.exists()) {
+                // on no tier, reading fails like for the stream
+                return new TieredStreamSource(this);
+            }
+            return new FileSource(f);
+        }
+    }
+
+    /**
+     * A {@link StreamSource} reading a tiered binary through its stream, used
+     * when the binary has no file to give to a {@link FileSource}.
+     */
+    public static class TieredStreamSource extends AbstractStreamSource {
+
+        protected final TieredBinary binary;
+
+        public TieredStreamSource(TieredBinary binary) {
+            this.binary = binary;
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            return binary.getStream();
+        }
+
+        @Override
+        public boolean canReopen() {
+            return true;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return binary.getLength();
+        }
+    }
+
+    @Override
+    protected void createGarbageCollector() {
+        garbageCollector = new TieredBinaryGarbageCollector(this);
+    }
+
+    /**
+     * Garbage collector for the two tiers.
+     */
+    public static class TieredBinaryGarbageCollector implements
+            BinaryGarbageCollector {
+
+        protected final TieredBinaryManager binaryManager;
+
+        protected DefaultBinaryGarbageCollector hot;
+
+        protected DefaultBinaryGarbageCollector cold;
+
+        protected BinaryManagerStatus status;
+
+        public TieredBinaryGarbageCollector(TieredBinaryManager binaryManager) {
+            this.binaryManager = binaryManager;
+        }
+
+        @Override
+        public String getId() {
+            return binaryManager.getStorageDir().toURI().toString();
+        }
+
+        @Override
+        public BinaryManagerStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean isInProgress() {
+            return hot != null && hot.isInProgress();
+        }
+
+        @Override
+        public void start() {
+            if (isInProgress()) {
+                throw new RuntimeException("Alread started");
+            }
+            hot = new DefaultBinaryGarbageCollector(binaryManager);
+            cold = new DefaultBinaryGarbageCollector(
+                    binaryManager.coldBinaryManager);
+            hot.start();
+            cold.start();
+        }
+
+        @Override
+        public void mark(String digest) {
+            File file = binaryManager.getFileForDigest(digest, false);
+            File coldFile = binaryManager.coldBinaryManager.getFileForDigest(
+                    digest, false);
+            boolean found = false;
+            if (file != null && file.exists()) {
+                touch(file);
+                found = true;
+            }
+            if (coldFile != null && coldFile.exists()) {
+                touch(coldFile);
+                found = true;
+            }
+            if (!found) {
+                log.error("Unknown file digest: " + digest);
+            }
+        }
+
+        @Override
+        public void stop(boolean delete) {
+            if (!isInProgress()) {
+                throw new RuntimeException("Not started");
+            }
+            hot.stop(delete);
+            cold.stop(delete);
+            BinaryManagerStatus hotStatus = hot.getStatus();
+            BinaryManagerStatus coldStatus = cold.getStatus();
+            status = new BinaryManagerStatus();
+            status.gcDuration = hotStatus.gcDuration + coldStatus.gcDuration;
+            status.numBinaries = hotStatus.numBinaries
+                    + coldStatus.numBinaries;
+            status.sizeBinaries = hotStatus.sizeBinaries
+                    + coldStatus.sizeBinaries;
+            status.numBinariesGC = hotStatus.numBinariesGC
+                    + coldStatus.numBinariesGC;
+            status.sizeBinariesGC = hotStatus.sizeBinariesGC
+                    + coldStatus.sizeBinariesGC;
+        }
+    }
+
+}
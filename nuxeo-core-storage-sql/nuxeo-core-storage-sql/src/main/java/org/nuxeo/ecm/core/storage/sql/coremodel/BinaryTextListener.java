@@ -22,6 +22,7 @@ import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.utils.StringUtils;
+import org.nuxeo.ecm.core.api.AbstractSession;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.CoreSession;
@@ -38,6 +39,7 @@ import org.nuxeo.ecm.core.event.EventBundle;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.PostCommitEventListener;
 import org.nuxeo.ecm.core.event.ReconnectedEventBundle;
+import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.storage.sql.FulltextParser;
 import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.ModelFulltext;
@@ -123,15 +125,27 @@ public class BinaryTextListener implements PostCommitEventListener {
                 // doc is gone
                 continue;
             }
-            DocumentModel indexedDoc = session.getDocument(docRef);
+            // read the blobs from the storage rows when possible
+            SQLDocument sqlDoc = getSQLDocument(session, (String) id);
+            DocumentModel indexedDoc = null;
+            boolean isProxy;
+            String docType;
+            if (sqlDoc == null) {
+                indexedDoc = session.getDocument(docRef);
+                isProxy = indexedDoc.isProxy();
+                docType = indexedDoc.getType();
+            } else {
+                isProxy = sqlDoc.isProxy();
+                docType = sqlDoc.getType().getName();
+            }
 
-            if (indexedDoc.isProxy()) {
+            if (isProxy) {
                 // proxies don't have any fulltext attached, it's
                 // the target document that carries it
                 continue;
             }
 
-            if (Boolean.FALSE.equals(fulltextInfo.isFulltextIndexable(indexedDoc.getType()))) {
+            if (Boolean.FALSE.equals(fulltextInfo.isFulltextIndexable(docType))) {
                 continue;
             }
 
@@ -146,14 +160,19 @@ public class BinaryTextListener implements PostCommitEventListener {
                         fulltextInfo.propPathsByIndexBinary.get(indexName),
                         fulltextInfo.propPathsExcludedByIndexBinary.get(indexName),
                         fulltextInfo.indexesAllBinary.contains(indexName));
-                List<Blob> blobs = extractor.getBlobs(indexedDoc);
+                List<Blob> blobs;
+                if (sqlDoc == null) {
+                    blobs = extractor.getBlobs(indexedDoc);
+                } else {
+                    blobs = getBlobs(sqlDoc, extractor);
+                }
                 String text = blobsToText(blobs, (String) id);
                 fulltextParser.setStrings(new ArrayList<String>());
                 fulltextParser.parse(text, null);
                 text = StringUtils.join(fulltextParser.getStrings(), " ");
                 String impactedQuery =
                     String.format("SELECT * from Document where ecm:fulltextJobId = '%s'",
-                            indexedDoc.getId());
+                            id);
                 DocumentModelList impactedDocs = session.query(impactedQuery);
                 for (DocumentModel impactedDoc : impactedDocs) {
                     try {
@@ -178,6 +197,49 @@ public class BinaryTextListener implements PostCommitEventListener {
         }
     }
 
+    /**
+     * Gets the storage document for an id, or {@code null} if the session
+     * does not give access to it.
+     *
+     * @since 5.7
+     */
+    protected SQLDocument getSQLDocument(CoreSession session, String id)
+            throws ClientException {
+        if (!(session instanceof AbstractSession)) {
+            return null;
+        }
+        Document doc;
+        try {
+            doc = ((AbstractSession) session).getSession().getDocumentByUUID(
+                    id);
+        } catch (DocumentException e) {
+            throw new ClientException(e);
+        }
+        if (!(doc instanceof SQLDocument)
+                || !(doc.getSession() instanceof SQLSession)) {
+            return null;
+        }
+        return (SQLDocument) doc;
+    }
+
+    /**
+     * Gets the blobs of a document using the compiled paths of the
+     * extractor, reading the content rows directly.
+     *
+     * @since 5.7
+     */
+    protected List<Blob> getBlobs(SQLDocument doc, BlobsExtractor extractor)
+            throws ClientException {
+        try {
+            return ((SQLSession) doc.getSession()).getBlobs(doc.getNode(),
+                    extractor.getInterestingBlobPaths(doc.getType().getName()));
+        } catch (ClientException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ClientException(e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     protected Set<Serializable> getIdsFromEventContext(EventContext eventContext) {
         return (Set<Serializable>) eventContext.getArguments()[0];
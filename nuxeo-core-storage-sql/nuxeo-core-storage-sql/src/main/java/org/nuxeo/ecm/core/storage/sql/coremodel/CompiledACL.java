@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.coremodel;
+
+import java.util.Arrays;
+
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.storage.sql.ACLRow;
+
+/**
+ * An immutable, flattened list of ACEs, evaluated like the ACLs of an
+ * {@link org.nuxeo.ecm.core.api.security.impl.ACPImpl ACPImpl}.
+ * <p>
+ * Instances are interned by content by the {@link SQLSecurityManager}, so
+ * that their id identifies an effective ACL and can key cached decisions.
+ *
+ * @since 5.7
+ */
+public class CompiledACL {
+
+    /**
+     * The content of a compiled ACL.
+     */
+    protected static class Entries {
+
+        protected final String[] principals;
+
+        protected final String[] permissions;
+
+        protected final boolean[] grants;
+
+        private final int hash;
+
+        protected Entries(String[] principals, String[] permissions,
+                boolean[] grants) {
+            this.principals = principals;
+            this.permissions = permissions;
+            this.grants = grants;
+            int h = Arrays.hashCode(principals);
+            h = 31 * h + Arrays.hashCode(permissions);
+            hash = 31 * h + Arrays.hashCode(grants);
+        }
+
+        protected static Entries fromRows(ACLRow[] rows) {
+            int n = rows == null ? 0 : rows.length;
+            String[] principals = new String[n];
+            String[] permissions = new String[n];
+            boolean[] grants = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                ACLRow row = rows[i];
+                // same as SQLSecurityManager.aclRowsToACP
+                principals[i] = row.user == null ? row.group : row.user;
+                permissions[i] = row.permission;
+                grants[i] = row.grant;
+            }
+            return new Entries(principals, permissions, grants);
+        }
+
+        protected static Entries concat(Entries a, Entries b) {
+            int n = a.grants.length;
+            int m = b.grants.length;
+            String[] principals = Arrays.copyOf(a.principals, n + m);
+            String[] permissions = Arrays.copyOf(a.permissions, n + m);
+            boolean[] grants = Arrays.copyOf(a.grants, n + m);
+            System.arraycopy(b.principals, 0, principals, n, m);
+            System.arraycopy(b.permissions, 0, permissions, n, m);
+            System.arraycopy(b.grants, 0, grants, n, m);
+            return new Entries(principals, permissions, grants);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+            if (!(other instanceof Entries)) {
+                return false;
+            }
+            Entries e = (Entries) other;
+            return hash == e.hash && Arrays.equals(grants, e.grants)
+                    && Arrays.equals(principals, e.principals)
+                    && Arrays.equals(permissions, e.permissions);
+        }
+    }
+
+    public final int id;
+
+    protected final Entries entries;
+
+    /** Whether an Everyone/Everything ACE denies the inherited ACLs. */
+    protected final boolean blocking;
+
+    protected CompiledACL(int id, Entries entries) {
+        this.id = id;
+        this.entries = entries;
+        blocking = getAccess(SecurityConstants.EVERYONE,
+                SecurityConstants.EVERYTHING) == Access.DENY;
+    }
+
+    /**
+     * Checks if the ACEs of the parents must not be inherited.
+     */
+    public boolean isBlockingInheritance() {
+        return blocking;
+    }
+
+    public int size() {
+        return entries.grants.length;
+    }
+
+    /**
+     * Gets the access of the first ACE matching the principal and the
+     * permission, as {@code ACPImpl.getAccess(String, String)}.
+     */
+    protected Access getAccess(String principal, String permission) {
+        for (int i = 0; i < entries.grants.length; i++) {
+            if (permissionMatches(entries.permissions[i], permission)
+                    && principalMatches(entries.principals[i], principal)) {
+                return entries.grants[i] ? Access.GRANT : Access.DENY;
+            }
+        }
+        return Access.UNKNOWN;
+    }
+
+    /**
+     * Gets the access of the first ACE matching one of the principals and one
+     * of the permissions, as {@code ACPImpl.getAccess(String[], String[])}.
+     */
+    public Access getAccess(String[] principals, String[] permissions) {
+        for (int i = 0; i < entries.grants.length; i++) {
+            if (matchesAny(entries.principals[i], principals)
+                    && matchesAnyPermission(entries.permissions[i],
+                            permissions)) {
+                return entries.grants[i] ? Access.GRANT : Access.DENY;
+            }
+        }
+        return Access.UNKNOWN;
+    }
+
+    protected static boolean matchesAny(String acePrincipal,
+            String[] principals) {
+        if (SecurityConstants.EVERYONE.equals(acePrincipal)) {
+            return principals.length > 0;
+        }
+        for (String principal : principals) {
+            if (principalMatches(acePrincipal, principal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static boolean matchesAnyPermission(String acePermission,
+            String[] permissions) {
+        for (String permission : permissions) {
+            if (permissionMatches(acePermission, permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static boolean principalMatches(String acePrincipal,
+            String principal) {
+        if (SecurityConstants.EVERYONE.equals(acePrincipal)) {
+            return true;
+        }
+        return acePrincipal == null ? principal == null
+                : acePrincipal.equals(principal);
+    }
+
+    protected static boolean permissionMatches(String acePermission,
+            String permission) {
+        // RESTRICTED_READ needs special handling, is not implied by EVERYTHING
+        if (SecurityConstants.EVERYTHING.equals(acePermission)
+                && !SecurityConstants.RESTRICTED_READ.equals(permission)) {
+            return true;
+        }
+        return acePermission == null ? permission == null
+                : acePermission.equals(permission);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(getClass().getSimpleName());
+        buf.append('(');
+        buf.append(id);
+        for (int i = 0; i < entries.grants.length; i++) {
+            buf.append(i == 0 ? ':' : ',');
+            buf.append(entries.grants[i] ? '+' : '-');
+            buf.append(entries.principals[i]);
+            buf.append('/');
+            buf.append(entries.permissions[i]);
+        }
+        buf.append(')');
+        return buf.toString();
+    }
+
+}
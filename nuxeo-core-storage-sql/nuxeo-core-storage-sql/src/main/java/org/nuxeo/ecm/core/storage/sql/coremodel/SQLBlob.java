@@ -51,6 +51,11 @@ public class SQLBlob extends DefaultStreamBlob implements Serializable {
         return binary.getStream();
     }
 
+    @Override
+    public InputStream getStream(long offset, long length) throws IOException {
+        return binary.getStream(offset, length);
+    }
+
     @Override
     public boolean isPersistent() {
         return true;
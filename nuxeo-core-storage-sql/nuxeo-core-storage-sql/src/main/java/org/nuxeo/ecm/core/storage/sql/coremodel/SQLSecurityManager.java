@@ -12,14 +12,17 @@
 
 package org.nuxeo.ecm.core.storage.sql.coremodel;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.nuxeo.ecm.core.api.DocumentException;
 import org.nuxeo.ecm.core.api.security.ACE;
@@ -31,14 +34,99 @@ import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.model.Property;
+import org.nuxeo.ecm.core.security.CachingSecurityManager;
 import org.nuxeo.ecm.core.security.SecurityException;
-import org.nuxeo.ecm.core.security.SecurityManager;
 import org.nuxeo.ecm.core.storage.sql.ACLRow;
 
 /**
+ * Security manager storing ACLs in the ACL table.
+ * <p>
+ * Permission checks are done on {@link CompiledACL}s: each distinct merged ACL
+ * is interned with an id, and the decisions for a merged ACL, a set of
+ * principals and a set of permissions are cached. The merged ACL of a document
+ * is cached by its session until ACLs or the hierarchy are invalidated.
+ *
  * @author Florent Guillaume
  */
-public class SQLSecurityManager implements SecurityManager {
+public class SQLSecurityManager implements CachingSecurityManager {
+
+    /**
+     * Maximum size of each of the caches, which evict their least recently
+     * used entry when full.
+     */
+    public static final int CACHE_SIZE = 10000;
+
+    protected final AtomicInteger idCounter = new AtomicInteger();
+
+    /** Compiled ACLs, by content. */
+    protected final Map<CompiledACL.Entries, CompiledACL> acls = Collections.synchronizedMap(new LRUCache<CompiledACL.Entries, CompiledACL>(
+            CACHE_SIZE));
+
+    /** Merged ACLs, by ids of the local ACL and of the inherited ACL. */
+    protected final Map<Long, CompiledACL> mergedACLs = Collections.synchronizedMap(new LRUCache<Long, CompiledACL>(
+            CACHE_SIZE));
+
+    /** Ids of the sets of principals or permissions checked. */
+    protected final Map<List<String>, Integer> setIds = Collections.synchronizedMap(new LRUCache<List<String>, Integer>(
+            CACHE_SIZE));
+
+    /** Decisions, by ids of the ACL, principals and permissions. */
+    protected final Map<Decision, Access> decisions = Collections.synchronizedMap(new LRUCache<Decision, Access>(
+            CACHE_SIZE));
+
+    /**
+     * An access-ordered map evicting its least recently used entry when over
+     * its maximum size.
+     */
+    protected static class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int maxSize;
+
+        public LRUCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * Key of a cached decision.
+     */
+    protected static class Decision {
+
+        protected final int aclId;
+
+        protected final int principalsId;
+
+        protected final int permissionsId;
+
+        protected Decision(int aclId, int principalsId, int permissionsId) {
+            this.aclId = aclId;
+            this.principalsId = principalsId;
+            this.permissionsId = permissionsId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * aclId + principalsId) + permissionsId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Decision)) {
+                return false;
+            }
+            Decision d = (Decision) other;
+            return aclId == d.aclId && principalsId == d.principalsId
+                    && permissionsId == d.permissionsId;
+        }
+    }
 
     /*
      * ----- org.nuxeo.ecm.core.security.SecurityManager -----
@@ -69,6 +157,7 @@ public class SQLSecurityManager implements SecurityManager {
                 aclrows = updateAclRows((ACLRow[]) property.getValue(), acp);
             }
             property.setValue(aclrows);
+            ((SQLSession) doc.getSession()).clearMergedACLs();
         } catch (DocumentException e) {
             throw new SecurityException(e.getMessage(), e);
         }
@@ -115,9 +204,119 @@ public class SQLSecurityManager implements SecurityManager {
     @Override
     public Access getAccess(Document doc, String username, String permission)
             throws SecurityException {
-        ACP acp = getMergedACP(doc);
-        return acp == null ? Access.UNKNOWN : acp.getAccess(username,
-                permission);
+        return getMergedAccess(doc, new String[] { username },
+                new String[] { permission });
+    }
+
+    /*
+     * ----- org.nuxeo.ecm.core.security.CachingSecurityManager -----
+     */
+
+    @Override
+    public Access getMergedAccess(Document doc, String[] principals,
+            String[] permissions) throws SecurityException {
+        CompiledACL acl;
+        try {
+            acl = getMergedACL(doc);
+        } catch (DocumentException e) {
+            throw new SecurityException("Failed to get merged acl", e);
+        }
+        if (acl == null) {
+            return Access.UNKNOWN;
+        }
+        Decision key = new Decision(acl.id, getSetId(principals),
+                getSetId(permissions));
+        Access access = decisions.get(key);
+        if (access == null) {
+            access = putBounded(decisions, key,
+                    acl.getAccess(principals, permissions));
+        }
+        return access;
+    }
+
+    /*
+     * ----- compiled ACLs -----
+     */
+
+    /**
+     * Gets the compiled equivalent of {@link #getMergedACP}, or {@code null}
+     * if there is none.
+     */
+    protected CompiledACL getMergedACL(Document doc) throws DocumentException {
+        SQLSession session = (SQLSession) doc.getSession();
+        String id = doc.getUUID();
+        CompiledACL acl = session.getMergedACL(id);
+        if (acl != null) {
+            return acl;
+        }
+        Document base = doc.isVersion() ? doc.getSourceDocument() : doc;
+        if (base == null) {
+            return null;
+        }
+        ACLRow[] aclrows = (ACLRow[]) ((SQLDocument) base).getACLProperty().getValue();
+        acl = intern(CompiledACL.Entries.fromRows(aclrows));
+        if (!acl.isBlockingInheritance()) {
+            Document parent = doc.getParent();
+            if (parent != null) {
+                CompiledACL inherited = getMergedACL(parent);
+                if (inherited != null && inherited.size() > 0) {
+                    acl = merge(acl, inherited);
+                }
+            }
+        }
+        session.putMergedACL(id, acl);
+        return acl;
+    }
+
+    protected CompiledACL intern(CompiledACL.Entries entries) {
+        CompiledACL acl = acls.get(entries);
+        if (acl == null) {
+            acl = putBounded(acls, entries, new CompiledACL(
+                    idCounter.incrementAndGet(), entries));
+        }
+        return acl;
+    }
+
+    /**
+     * Merges a local ACL with the ACL inherited from the parent.
+     */
+    protected CompiledACL merge(CompiledACL local, CompiledACL inherited) {
+        Long key = Long.valueOf(((long) local.id << 32)
+                | (inherited.id & 0xFFFFFFFFL));
+        CompiledACL acl = mergedACLs.get(key);
+        if (acl == null) {
+            acl = putBounded(mergedACLs, key, intern(CompiledACL.Entries.concat(
+                    local.entries, inherited.entries)));
+        }
+        return acl;
+    }
+
+    protected int getSetId(String[] strings) {
+        List<String> list = Arrays.asList(strings);
+        Integer id = setIds.get(list);
+        if (id == null) {
+            id = putBounded(setIds, new ArrayList<String>(list),
+                    Integer.valueOf(idCounter.incrementAndGet()));
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Puts a value in a cache unless another thread put one first. The cache
+     * evicts its least recently used entry when full, so the hot ACLs and
+     * decisions stay cached.
+     *
+     * @return the value in the cache
+     */
+    protected static <K, V> V putBounded(Map<K, V> map, K key, V value) {
+        synchronized (map) {
+            V old = map.get(key);
+            if (old != null) {
+                return old;
+            }
+            map.put(key, value);
+            return value;
+        }
     }
 
     /*
@@ -70,6 +70,7 @@ import org.nuxeo.ecm.core.storage.sql.CollectionProperty;
 import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.Node;
 import org.nuxeo.ecm.core.storage.sql.SimpleProperty;
+import org.nuxeo.ecm.core.utils.BlobsExtractor.BlobPath;
 import org.nuxeo.runtime.services.streaming.FileSource;
 import org.nuxeo.runtime.services.streaming.StreamSource;
 
@@ -91,6 +92,17 @@ public class SQLSession implements Session {
 
     private final String userSessionId;
 
+    /** Maximum number of merged ACLs of documents kept by a session. */
+    protected static final int MERGED_ACLS_SIZE = 1000;
+
+    /**
+     * Merged ACLs of documents computed by the {@link SQLSecurityManager},
+     * valid until ACLs or the hierarchy change.
+     */
+    private final Map<Serializable, CompiledACL> mergedACLs = new HashMap<Serializable, CompiledACL>();
+
+    private long mergedACLsGeneration;
+
     public SQLSession(org.nuxeo.ecm.core.storage.sql.Session session,
             Repository repository, Map<String, Serializable> context)
             throws DocumentException {
@@ -264,6 +276,7 @@ public class SQLSession implements Session {
             }
             Node result = session.move(((SQLDocument) source).getNode(),
                     ((SQLDocument) parent).getNode(), name);
+            clearMergedACLs();
             return newDocument(result);
         } catch (StorageException e) {
             throw new DocumentException(e);
@@ -849,6 +862,7 @@ public class SQLSession implements Session {
     protected void restore(Node node, Node version) throws DocumentException {
         try {
             session.restore(node, version);
+            clearMergedACLs();
         } catch (StorageException e) {
             throw new DocumentException(e);
         }
@@ -928,6 +942,39 @@ public class SQLSession implements Session {
      * ----- property helpers -----
      */
 
+    /**
+     * Gets the cached merged ACL of a document, or {@code null}.
+     */
+    protected CompiledACL getMergedACL(Serializable id)
+            throws DocumentException {
+        long generation;
+        try {
+            generation = session.getSecurityGeneration();
+        } catch (StorageException e) {
+            throw new DocumentException(e);
+        }
+        if (generation != mergedACLsGeneration) {
+            mergedACLs.clear();
+            mergedACLsGeneration = generation;
+        }
+        return mergedACLs.get(id);
+    }
+
+    protected void putMergedACL(Serializable id, CompiledACL acl) {
+        if (mergedACLs.size() >= MERGED_ACLS_SIZE) {
+            mergedACLs.clear();
+        }
+        mergedACLs.put(id, acl);
+    }
+
+    /**
+     * Forgets the merged ACLs, after a change in this session that may affect
+     * them.
+     */
+    protected void clearMergedACLs() {
+        mergedACLs.clear();
+    }
+
     protected Property makeACLProperty(Node node) throws DocumentException {
         CollectionProperty property;
         try {
@@ -1124,4 +1171,52 @@ public class SQLSession implements Session {
         }
     }
 
+    /**
+     * Gets the blobs of a node found at the given compiled paths.
+     * <p>
+     * The content rows are read directly through the children of the node,
+     * without building the document properties.
+     *
+     * @since 5.7
+     */
+    public List<Blob> getBlobs(Node node, List<BlobPath> blobPaths)
+            throws DocumentException {
+        List<Blob> blobs = new ArrayList<Blob>();
+        try {
+            for (BlobPath blobPath : blobPaths) {
+                getBlobs(node, blobPath.names, 0, blobs);
+            }
+        } catch (StorageException e) {
+            throw new DocumentException(e);
+        }
+        return blobs;
+    }
+
+    protected void getBlobs(Node node, List<String> names, int i,
+            List<Blob> blobs) throws StorageException {
+        if (i == names.size()) {
+            Binary binary = (Binary) node.getSimpleProperty(
+                    SQLContentProperty.BINARY).getValue();
+            if (binary != null) {
+                blobs.add(new SQLBlob(binary,
+                        node.getSimpleProperty(SQLContentProperty.FILE_NAME).getString(),
+                        node.getSimpleProperty(SQLContentProperty.MIME_TYPE).getString(),
+                        node.getSimpleProperty(SQLContentProperty.ENCODING).getString(),
+                        node.getSimpleProperty(SQLContentProperty.DIGEST).getString()));
+            }
+            return;
+        }
+        String name = names.get(i);
+        if (i + 1 < names.size() && "*".equals(names.get(i + 1))) {
+            for (Node child : session.getChildren(node, name, true)) {
+                getBlobs(child, names, i + 2, blobs);
+            }
+        } else {
+            Node child = session.getChildNode(node, name, true);
+            if (child != null) {
+                getBlobs(child, names, i + 1, blobs);
+            }
+        }
+    }
+
 }
@@ -84,33 +84,8 @@ public class ACLCollectionIO implements CollectionIO {
             Serializable[] array = row.values;
             for (int i = 0; i < array.length; i++) {
                 ACLRow acl = (ACLRow) array[i];
-                int n = 0;
-                for (Column column : columns) {
-                    n++;
-                    String key = column.getKey();
-                    Serializable v;
-                    if (key.equals(Model.MAIN_KEY)) {
-                        v = id;
-                    } else if (key.equals(Model.ACL_POS_KEY)) {
-                        v = (long) acl.pos;
-                    } else if (key.equals(Model.ACL_NAME_KEY)) {
-                        v = acl.name;
-                    } else if (key.equals(Model.ACL_GRANT_KEY)) {
-                        v = acl.grant;
-                    } else if (key.equals(Model.ACL_PERMISSION_KEY)) {
-                        v = acl.permission;
-                    } else if (key.equals(Model.ACL_USER_KEY)) {
-                        v = acl.user;
-                    } else if (key.equals(Model.ACL_GROUP_KEY)) {
-                        v = acl.group;
-                    } else {
-                        throw new RuntimeException(key);
-                    }
-                    column.setToPreparedStatement(ps, n, v);
-                    if (debugValues != null) {
-                        debugValues.add(v);
-                    }
-                }
+                setToPreparedStatement(ps, columns, id, acl, acl.pos,
+                        debugValues);
                 if (debugValues != null) {
                     connection.logger.logSQL(loggedSql, debugValues);
                     debugValues.clear();
@@ -133,4 +108,38 @@ public class ACLCollectionIO implements CollectionIO {
         }
     }
 
+    @Override
+    public void setToPreparedStatement(PreparedStatement ps,
+            List<Column> columns, Serializable id, Serializable value,
+            int pos, List<Serializable> debugValues) throws SQLException {
+        ACLRow acl = (ACLRow) value;
+        int n = 0;
+        for (Column column : columns) {
+            n++;
+            String key = column.getKey();
+            Serializable v;
+            if (key.equals(Model.MAIN_KEY)) {
+                v = id;
+            } else if (key.equals(Model.ACL_POS_KEY)) {
+                v = (long) pos;
+            } else if (key.equals(Model.ACL_NAME_KEY)) {
+                v = acl.name;
+            } else if (key.equals(Model.ACL_GRANT_KEY)) {
+                v = acl.grant;
+            } else if (key.equals(Model.ACL_PERMISSION_KEY)) {
+                v = acl.permission;
+            } else if (key.equals(Model.ACL_USER_KEY)) {
+                v = acl.user;
+            } else if (key.equals(Model.ACL_GROUP_KEY)) {
+                v = acl.group;
+            } else {
+                throw new RuntimeException(key);
+            }
+            column.setToPreparedStatement(ps, n, v);
+            if (debugValues != null) {
+                debugValues.add(v);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Table;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+
+/**
+ * Helper to copy the values of a list property from the collection table that
+ * used to hold it into the array column that now holds it.
+ * <p>
+ * This is done automatically when the array column is added to an existing
+ * table. The collection table is left untouched and can be dropped once the
+ * migration has been checked.
+ *
+ * @since 5.7
+ */
+public class ArrayColumnUpgrader {
+
+    private static final Log log = LogFactory.getLog(ArrayColumnUpgrader.class);
+
+    private final JDBCMapper mapper;
+
+    public ArrayColumnUpgrader(JDBCMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Migrates the array columns of a table that have just been added, if the
+     * collection table previously holding their values exists.
+     *
+     * @param tableKey the table
+     * @param addedColumns the added columns, or {@code null} if the table was
+     *            created
+     * @param tableNames the existing uppercase table names
+     */
+    public void upgrade(String tableKey, List<Column> addedColumns,
+            Set<String> tableNames) throws SQLException {
+        Map<String, String> arrayColumns = mapper.model.getArrayColumns(tableKey);
+        if (arrayColumns == null) {
+            return;
+        }
+        for (Entry<String, String> en : arrayColumns.entrySet()) {
+            String key = en.getKey();
+            String collectionTableName = en.getValue();
+            if (addedColumns != null && !containsColumn(addedColumns, key)) {
+                continue;
+            }
+            String physicalName = mapper.sqlInfo.dialect.getTableName(collectionTableName);
+            if (!tableNames.contains(physicalName.toUpperCase())) {
+                continue;
+            }
+            migrate(tableKey, key);
+        }
+    }
+
+    protected static boolean containsColumn(List<Column> columns, String key) {
+        for (Column column : columns) {
+            if (column.getKey().equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the values of the collection table previously holding a list
+     * property into its array column.
+     * <p>
+     * Can be called manually if the array column was enabled on a table
+     * already having the column.
+     *
+     * @param tableKey the table holding the array column
+     * @param key the array column key
+     * @return the number of documents migrated
+     */
+    public int migrate(String tableKey, String key) throws SQLException {
+        Model model = mapper.model;
+        Map<String, String> arrayColumns = model.getArrayColumns(tableKey);
+        String collectionTableName = arrayColumns == null ? null
+                : arrayColumns.get(key);
+        if (collectionTableName == null) {
+            throw new IllegalArgumentException("Not an array column: "
+                    + tableKey + '.' + key);
+        }
+        Dialect dialect = mapper.sqlInfo.dialect;
+        Table table = mapper.sqlInfo.getDatabase().getTable(tableKey);
+        Column idColumn = table.getColumn(model.MAIN_KEY);
+        Column column = table.getColumn(key);
+
+        String selectSql = String.format(
+                "SELECT %s, %s FROM %s ORDER BY %s, %s",
+                quoted(dialect, dialect.getColumnName(model.MAIN_KEY)),
+                quoted(dialect,
+                        dialect.getColumnName(model.COLL_TABLE_VALUE_KEY)),
+                quoted(dialect, dialect.getTableName(collectionTableName)),
+                quoted(dialect, dialect.getColumnName(model.MAIN_KEY)),
+                quoted(dialect, dialect.getColumnName(model.COLL_TABLE_POS_KEY)));
+        String updateSql = String.format("UPDATE %s SET %s = ? WHERE %s = ?",
+                table.getQuotedName(), column.getQuotedName(),
+                idColumn.getQuotedName());
+        String insertSql = String.format("INSERT INTO %s (%s, %s) VALUES (?, ?)",
+                table.getQuotedName(), idColumn.getQuotedName(),
+                column.getQuotedName());
+
+        log.info("Migrating collection table " + collectionTableName
+                + " into array column " + column.getFullQuotedName());
+        int count = 0;
+        PreparedStatement select = null;
+        PreparedStatement update = null;
+        PreparedStatement insert = null;
+        try {
+            select = mapper.connection.prepareStatement(selectSql);
+            update = mapper.connection.prepareStatement(updateSql);
+            insert = mapper.connection.prepareStatement(insertSql);
+            mapper.logger.log(selectSql);
+            ResultSet rs = select.executeQuery();
+            mapper.countExecute();
+            Serializable id = null;
+            List<String> values = new ArrayList<String>();
+            while (rs.next()) {
+                Serializable rowId = idColumn.getFromResultSet(rs, 1);
+                if (id != null && !id.equals(rowId)) {
+                    store(update, insert, idColumn, column, id, values);
+                    values.clear();
+                    count++;
+                }
+                id = rowId;
+                values.add(rs.getString(2));
+            }
+            if (id != null) {
+                store(update, insert, idColumn, column, id, values);
+                count++;
+            }
+        } finally {
+            closeStatement(select);
+            closeStatement(update);
+            closeStatement(insert);
+        }
+        log.info("Migrated " + count + " documents into array column "
+                + column.getFullQuotedName() + ", collection table "
+                + collectionTableName + " can now be dropped");
+        return count;
+    }
+
+    protected void store(PreparedStatement update, PreparedStatement insert,
+            Column idColumn, Column column, Serializable id, List<String> values)
+            throws SQLException {
+        String[] array = values.toArray(new String[values.size()]);
+        if (mapper.logger.isLogEnabled()) {
+            mapper.logger.log(String.format("SET %s = %s WHERE id = %s",
+                    column.getFullQuotedName(), Arrays.asList(array), id));
+        }
+        column.setToPreparedStatement(update, 1, array);
+        idColumn.setToPreparedStatement(update, 2, id);
+        int n = update.executeUpdate();
+        mapper.countExecute();
+        if (n == 0) {
+            // no row yet for this document in the table
+            idColumn.setToPreparedStatement(insert, 1, id);
+            column.setToPreparedStatement(insert, 2, array);
+            insert.executeUpdate();
+            mapper.countExecute();
+        }
+    }
+
+    protected static String quoted(Dialect dialect, String name) {
+        return dialect.openQuote() + name + dialect.closeQuote();
+    }
+
+    protected void closeStatement(PreparedStatement ps) {
+        if (ps == null) {
+            return;
+        }
+        try {
+            mapper.closeStatement(ps);
+        } catch (SQLException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ import org.nuxeo.ecm.core.storage.StorageException;
 import org.nuxeo.ecm.core.storage.sql.Invalidations;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsQueue;
+import org.nuxeo.ecm.core.storage.sql.LockManager;
 import org.nuxeo.ecm.core.storage.sql.Mapper;
 import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
 
@@ -45,13 +46,26 @@ public class ClusterNodeHandler {
     /** Cluster node id, needed at the Java level for some databases. */
     private String nodeId;
 
+    /** Lock manager whose cache must follow lock changes of other nodes. */
+    private final LockManager lockManager;
+
     public ClusterNodeHandler(Mapper clusterNodeMapper,
             RepositoryDescriptor repositoryDescriptor) throws StorageException {
+        this(clusterNodeMapper, repositoryDescriptor, null);
+    }
+
+    public ClusterNodeHandler(Mapper clusterNodeMapper,
+            RepositoryDescriptor repositoryDescriptor, LockManager lockManager)
+            throws StorageException {
         this.clusterNodeMapper = clusterNodeMapper;
         nodeId = clusterNodeMapper.createClusterNode();
         clusteringDelay = repositoryDescriptor.clusteringDelay;
         processClusterInvalidationsNext();
         propagator = new InvalidationsPropagator("cluster-" + this);
+        this.lockManager = lockManager;
+        if (lockManager != null) {
+            lockManager.setClusterNodeHandler(this);
+        }
     }
 
     public JDBCConnection getConnection() {
@@ -78,6 +92,9 @@ public class ClusterNodeHandler {
             // so reset all
             propagator.propagateInvalidations(new Invalidations(true), null);
         }
+        if (lockManager != null) {
+            lockManager.clearCaches();
+        }
     }
 
     // TODO should be called by RepositoryManagement
@@ -113,6 +130,15 @@ public class ClusterNodeHandler {
      */
     public Invalidations receiveClusterInvalidations()
             throws StorageException {
+        Invalidations invalidations = receiveClusterInvalidationsInternal();
+        if (lockManager != null && invalidations != null) {
+            lockManager.processClusterInvalidations(invalidations);
+        }
+        return invalidations;
+    }
+
+    protected Invalidations receiveClusterInvalidationsInternal()
+            throws StorageException {
         synchronized (clusterNodeMapper) {
             if (clusterNodeLastInvalidationTimeMillis + clusteringDelay > System.currentTimeMillis()) {
                 // delay hasn't expired
@@ -43,4 +43,19 @@ public interface CollectionIO {
             List<Column> columns, boolean supportsBatchUpdates, String sql,
             JDBCConnection connection) throws SQLException;
 
+    /**
+     * Sets the columns of one collection element to a SQL prepared statement,
+     * in the order of the given columns.
+     *
+     * @param id the id of the collection
+     * @param value the element, may be {@code null} if no value column is set
+     * @param pos the position of the element
+     * @param debugValues if not {@code null}, the list to which the set values
+     *            are added
+     * @since 5.7
+     */
+    void setToPreparedStatement(PreparedStatement ps, List<Column> columns,
+            Serializable id, Serializable value, int pos,
+            List<Serializable> debugValues) throws SQLException;
+
 }
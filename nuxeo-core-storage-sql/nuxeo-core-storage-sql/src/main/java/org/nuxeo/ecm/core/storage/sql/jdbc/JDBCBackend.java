@@ -64,6 +64,8 @@ public class JDBCBackend implements RepositoryBackend {
         this.repository = repository;
         RepositoryDescriptor repositoryDescriptor = repository.getRepositoryDescriptor();
         pseudoDataSourceName = ConnectionHelper.getPseudoDataSourceNameForRepository(repositoryDescriptor.name);
+        SQLStatistics.getInstance(repositoryDescriptor.name).configure(
+                repositoryDescriptor);
 
         // try single-datasource non-XA mode
         Connection connection = null;
@@ -153,6 +155,7 @@ public class JDBCBackend implements RepositoryBackend {
             throw new StorageException(e);
         }
         modelSetup.materializeFulltextSyntheticColumn = dialect.getMaterializeFulltextSyntheticColumn();
+        modelSetup.supportsArrayColumns = dialect.supportsArrayColumns();
     }
 
     /**
@@ -189,7 +192,7 @@ public class JDBCBackend implements RepositoryBackend {
         }
         if (kind == MapperKind.CLUSTER_NODE_HANDLER) {
             clusterNodeHandler = new ClusterNodeHandler(mapper,
-                    repositoryDescriptor);
+                    repositoryDescriptor, repository.getLockManager());
             connectionPropagator.setClusterNodeHandler(clusterNodeHandler);
         }
         return mapper;
@@ -74,6 +74,9 @@ public class JDBCConnection {
     // for debug
     private static final AtomicLong instanceCounter = new AtomicLong(0);
 
+    // for tests
+    private static final AtomicLong openedCounter = new AtomicLong(0);
+
     // for debug
     private final long instanceNumber = instanceCounter.incrementAndGet();
 
@@ -115,9 +118,20 @@ public class JDBCConnection {
         openConnections();
     }
 
+    /**
+     * Gets the number of underlying connections opened so far by all the
+     * instances, for tests and monitoring.
+     *
+     * @since 5.7
+     */
+    public static long getOpenedCount() {
+        return openedCounter.get();
+    }
+
     private void openConnections() throws StorageException {
         try {
             openBaseConnection();
+            openedCounter.incrementAndGet();
             supportsBatchUpdates = connection.getMetaData().supportsBatchUpdates();
             sqlInfo.dialect.performPostOpenStatements(connection);
         } catch (SQLException e) {
@@ -167,6 +181,8 @@ public class JDBCConnection {
             xaconnection = null;
             xaresource = new XAResourceConnectionAdapter(connection);
         }
+        // record statement statistics if enabled
+        connection = SQLStatistics.getInstance(repositoryName).wrap(connection);
     }
 
     public void close() {
@@ -175,6 +191,17 @@ public class JDBCConnection {
         xaresource = null;
     }
 
+    /**
+     * Checks that the connection is still valid after being kept unused for
+     * a while, and opens a new one if not.
+     *
+     * @since 5.7
+     */
+    public void validateConnection() throws StorageException {
+        checkConnectionValid = true;
+        checkConnectionValid();
+    }
+
     private void closeConnections() {
         if (connection != null) {
             try {
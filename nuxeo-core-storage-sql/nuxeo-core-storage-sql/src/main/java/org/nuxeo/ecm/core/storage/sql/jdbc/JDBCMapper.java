@@ -92,6 +92,8 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
 
     protected TableUpgrader tableUpgrader;
 
+    protected ArrayColumnUpgrader arrayColumnUpgrader;
+
     private final QueryMakerService queryMakerService;
 
     private final PathResolver pathResolver;
@@ -131,6 +133,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                 "upgradeLastContributor", TEST_UPGRADE_LAST_CONTRIBUTOR);
         tableUpgrader.add(model.LOCK_TABLE_NAME, model.LOCK_OWNER_KEY,
                 "upgradeLocks", TEST_UPGRADE_LOCKS);
+        arrayColumnUpgrader = new ArrayColumnUpgrader(this);
 
     }
 
@@ -187,9 +190,15 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             sqlInfo.executeSQLStatements("testUpgrade", this);
         }
 
+        // restrict metadata queries to our own catalog and schema
+        String catalogName = connection.getCatalog();
         String schemaName = sqlInfo.dialect.getConnectionSchema(connection);
         DatabaseMetaData metadata = connection.getMetaData();
-        Set<String> tableNames = findTableNames(metadata, schemaName);
+        Set<String> tableNames = findTableNames(metadata, catalogName,
+                schemaName);
+        // columns of all existing tables, in one catalog query
+        Map<String, TableColumns> existingColumns = findColumns(metadata,
+                catalogName, schemaName, "%");
         Database database = sqlInfo.getDatabase();
         Map<String, List<Column>> added = new HashMap<String, List<Column>>();
 
@@ -198,7 +207,9 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             st = connection.createStatement();
             for (Table table : database.getTables()) {
                 String tableName = getTableName(table.getPhysicalName());
-                if (tableNames.contains(tableName.toUpperCase())) {
+                String upperTableName = tableName.toUpperCase();
+                boolean tableCreated = false;
+                if (tableNames.contains(upperTableName)) {
                     sqlInfo.dialect.existingTableDetected(connection, table,
                             model, sqlInfo.database);
                 } else {
@@ -247,32 +258,27 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                         }
                     }
                     added.put(table.getKey(), null); // null = table created
+                    tableCreated = true;
                 }
 
                 /*
                  * Get existing columns.
                  */
 
-                ResultSet rs = metadata.getColumns(null, schemaName, tableName,
-                        "%");
-                Map<String, Integer> columnTypes = new HashMap<String, Integer>();
-                Map<String, String> columnTypeNames = new HashMap<String, String>();
-                Map<String, Integer> columnTypeSizes = new HashMap<String, Integer>();
-                while (rs.next()) {
-                    String schema = rs.getString("TABLE_SCHEM");
-                    if (schema != null) { // null for MySQL, doh!
-                        if ("INFORMATION_SCHEMA".equals(schema.toUpperCase())) {
-                            // H2 returns some system tables (locks)
-                            continue;
-                        }
-                    }
-                    String columnName = rs.getString("COLUMN_NAME").toUpperCase();
-                    columnTypes.put(columnName,
-                            Integer.valueOf(rs.getInt("DATA_TYPE")));
-                    columnTypeNames.put(columnName, rs.getString("TYPE_NAME"));
-                    columnTypeSizes.put(columnName,
-                            Integer.valueOf(rs.getInt("COLUMN_SIZE")));
+                TableColumns tableColumns;
+                if (tableCreated) {
+                    // read back the actual types of the new table
+                    tableColumns = findColumns(metadata, catalogName,
+                            schemaName, tableName).get(upperTableName);
+                } else {
+                    tableColumns = existingColumns.get(upperTableName);
                 }
+                if (tableColumns == null) {
+                    tableColumns = new TableColumns();
+                }
+                Map<String, Integer> columnTypes = tableColumns.types;
+                Map<String, String> columnTypeNames = tableColumns.typeNames;
+                Map<String, Integer> columnTypeSizes = tableColumns.typeSizes;
 
                 /*
                  * Update types and create missing columns.
@@ -355,6 +361,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             List<Column> addedColumns = en.getValue();
             String tableKey = en.getKey();
             upgradeTable(tableKey, addedColumns);
+            arrayColumnUpgrader.upgrade(tableKey, addedColumns, tableNames);
         }
         sqlInfo.executeSQLStatements("afterTableCreation", this);
         sqlInfo.dialect.performAdditionalStatements(connection);
@@ -365,11 +372,62 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         tableUpgrader.upgrade(tableKey, addedColumns);
     }
 
+    /**
+     * Column information for one table, keyed by uppercase column name.
+     */
+    protected static class TableColumns {
+
+        protected final Map<String, Integer> types = new HashMap<String, Integer>();
+
+        protected final Map<String, String> typeNames = new HashMap<String, String>();
+
+        protected final Map<String, Integer> typeSizes = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Finds the columns of the tables matching a pattern, keyed by uppercase
+     * table name.
+     *
+     * @since 5.7
+     */
+    protected static Map<String, TableColumns> findColumns(
+            DatabaseMetaData metadata, String catalogName, String schemaName,
+            String tableNamePattern) throws SQLException {
+        Map<String, TableColumns> res = new HashMap<String, TableColumns>();
+        ResultSet rs = metadata.getColumns(catalogName, schemaName,
+                tableNamePattern, "%");
+        try {
+            while (rs.next()) {
+                String schema = rs.getString("TABLE_SCHEM");
+                if (schema != null) { // null for MySQL, doh!
+                    if ("INFORMATION_SCHEMA".equals(schema.toUpperCase())) {
+                        // H2 returns some system tables (locks)
+                        continue;
+                    }
+                }
+                String tableName = rs.getString("TABLE_NAME").toUpperCase();
+                TableColumns tableColumns = res.get(tableName);
+                if (tableColumns == null) {
+                    res.put(tableName, tableColumns = new TableColumns());
+                }
+                String columnName = rs.getString("COLUMN_NAME").toUpperCase();
+                tableColumns.types.put(columnName,
+                        Integer.valueOf(rs.getInt("DATA_TYPE")));
+                tableColumns.typeNames.put(columnName, rs.getString("TYPE_NAME"));
+                tableColumns.typeSizes.put(columnName,
+                        Integer.valueOf(rs.getInt("COLUMN_SIZE")));
+            }
+        } finally {
+            rs.close();
+        }
+        return res;
+    }
+
     /** Finds uppercase table names. */
     protected static Set<String> findTableNames(DatabaseMetaData metadata,
-            String schemaName) throws SQLException {
+            String catalogName, String schemaName) throws SQLException {
         Set<String> tableNames = new HashSet<String>();
-        ResultSet rs = metadata.getTables(null, schemaName, "%",
+        ResultSet rs = metadata.getTables(catalogName, schemaName, "%",
                 new String[] { "TABLE" });
         while (rs.next()) {
             String tableName = rs.getString("TABLE_NAME");
@@ -481,6 +539,28 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                     break;
                 }
             }
+            if (invalidations.tables != null) {
+                // coarse invalidations, stored with no id
+                String fragments = join(invalidations.tables, ' ');
+                kind = Invalidations.TABLES;
+                if (logger.isLogEnabled()) {
+                    logger.logSQL(sql, Arrays.<Serializable> asList(null,
+                            fragments, Long.valueOf(kind)));
+                }
+                Serializable frags;
+                if (sqlInfo.dialect.supportsArrays()
+                        && columns.get(1).getJdbcType() == Types.ARRAY) {
+                    frags = fragments.split(" ");
+                } else {
+                    frags = fragments;
+                }
+                columns.get(0).setToPreparedStatement(ps, 1, null);
+                columns.get(1).setToPreparedStatement(ps, 2, frags);
+                columns.get(2).setToPreparedStatement(ps, 3,
+                        Long.valueOf(kind));
+                ps.execute();
+                countExecute();
+            }
         } catch (Exception e) {
             checkConnectionReset(e);
             throw new StorageException("Could not invalidate", e);
@@ -949,6 +1029,58 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         }
     }
 
+    @Override
+    public List<Serializable> getVersionIds(Serializable versionSeriesId,
+            int offset, int limit) throws StorageException {
+        List<Serializable> ids = new ArrayList<Serializable>();
+        if (limit <= 0) {
+            return ids;
+        }
+        offset = Math.max(offset, 0);
+        SQLInfoSelect select = sqlInfo.getSelectVersionIds();
+        String sql = select.sql;
+        boolean paging = sqlInfo.dialect.supportsPaging();
+        if (paging) {
+            sql = sqlInfo.dialect.addPagingClause(sql, limit, offset);
+        }
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(versionSeriesId));
+        }
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(sql);
+            select.whereColumns.get(0).setToPreparedStatement(ps, 1,
+                    versionSeriesId);
+            ResultSet rs = ps.executeQuery();
+            countExecute();
+            // without dialect paging, skip the rows before the page
+            int skip = paging ? 0 : offset;
+            Column what = select.whatColumns.get(0);
+            while (ids.size() < limit && rs.next()) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                ids.add(what.getFromResultSet(rs, 1));
+            }
+            if (logger.isLogEnabled()) {
+                logger.logIds(ids, false, 0);
+            }
+            return ids;
+        } catch (Exception e) {
+            checkConnectionReset(e);
+            throw new StorageException("Failed to get version ids", e);
+        } finally {
+            if (ps != null) {
+                try {
+                    closeStatement(ps);
+                } catch (SQLException e) {
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
     /**
      * Uses iterative parentid selection.
      */
@@ -1089,6 +1221,41 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
                 (Calendar) row.get(Model.LOCK_CREATED_KEY));
     }
 
+    /**
+     * Gets the locks on several documents, in one batch.
+     *
+     * @return a map of document id to lock, containing only the locked
+     *         documents
+     * @since 5.7
+     */
+    public Map<Serializable, Lock> getLocks(Collection<Serializable> ids)
+            throws StorageException {
+        checkConnectionValid();
+        Map<Serializable, Lock> locks = new HashMap<Serializable, Lock>();
+        List<Serializable> idList = new ArrayList<Serializable>(ids);
+        int size = idList.size();
+        int chunkSize = sqlInfo.getMaximumArgsForIn();
+        for (int start = 0; start < size; start += chunkSize) {
+            int end = Math.min(start + chunkSize, size);
+            // needs to be Serializable -> copy
+            List<Serializable> chunkIds = new ArrayList<Serializable>(
+                    idList.subList(start, end));
+            List<Row> rows;
+            try {
+                rows = readSimpleRows(Model.LOCK_TABLE_NAME, chunkIds);
+            } catch (ConnectionResetException e) {
+                // retry once
+                rows = readSimpleRows(Model.LOCK_TABLE_NAME, chunkIds);
+            }
+            for (Row row : rows) {
+                locks.put(row.id, new Lock(
+                        (String) row.get(Model.LOCK_OWNER_KEY),
+                        (Calendar) row.get(Model.LOCK_CREATED_KEY)));
+            }
+        }
+        return locks;
+    }
+
     @Override
     public Lock setLock(Serializable id, Lock lock) throws StorageException {
         Lock oldLock = getLock(id);
@@ -16,12 +16,14 @@ import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -209,6 +211,9 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                 res.add(new RowId(tableName, id));
             }
         }
+        if (isSharingVersionFragments()) {
+            resolveVersionShares(res);
+        }
         return res;
     }
 
@@ -447,6 +452,9 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (!batch.creates.isEmpty()) {
             writeCreates(batch.creates);
         }
+        if (isSharingVersionFragments()) {
+            unshareVersionFragments(batch);
+        }
         if (!batch.updates.isEmpty()) {
             writeUpdates(batch.updates);
         }
@@ -685,12 +693,265 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             throws StorageException {
         Set<Serializable> ids = new HashSet<Serializable>(rowus.size());
         List<Row> rows = new ArrayList<Row>(rowus.size());
+        List<RowUpdate> deltas = new LinkedList<RowUpdate>();
         for (RowUpdate rowu : rowus) {
-            ids.add(rowu.row.id);
-            rows.add(rowu.row);
+            if (rowu.delta == null) {
+                ids.add(rowu.row.id);
+                rows.add(rowu.row);
+            } else {
+                deltas.add(rowu);
+            }
         }
         deleteRows(tableName, ids);
         insertCollectionRows(tableName, rows);
+        updateCollectionDeltas(tableName, deltas);
+    }
+
+    /**
+     * Writes only the changed positions of collection rows, all for the same
+     * table: removed tails are deleted, changed positions are updated in
+     * place, and appended values are inserted.
+     * <p>
+     * Positions are the contiguous ones written by
+     * {@link CollectionIO#executeInserts}. A collection whose stored length
+     * is not the one the delta was computed from, or whose update in place
+     * does not find exactly its row, was changed by another session and is
+     * rewritten entirely instead. With clustering, the collections are always
+     * rewritten entirely, as another node may change them between the check
+     * and the writes.
+     */
+    protected void updateCollectionDeltas(String tableName,
+            List<RowUpdate> rowus) throws StorageException {
+        if (rowus.isEmpty()) {
+            return;
+        }
+        Set<Serializable> mismatched = new HashSet<Serializable>();
+        if (model.getRepositoryDescriptor().clusteringEnabled) {
+            for (RowUpdate rowu : rowus) {
+                mismatched.add(rowu.row.id);
+            }
+        } else {
+            Set<Serializable> ids = new HashSet<Serializable>();
+            for (RowUpdate rowu : rowus) {
+                ids.add(rowu.row.id);
+            }
+            Map<Serializable, Integer> lengths = readCollectionLengths(
+                    tableName, ids);
+            for (RowUpdate rowu : rowus) {
+                Integer length = lengths.get(rowu.row.id);
+                int stored = length == null ? 0 : length.intValue();
+                if (stored != rowu.delta.oldLength) {
+                    mismatched.add(rowu.row.id);
+                }
+            }
+        }
+        List<CollectionElement> removed = new LinkedList<CollectionElement>();
+        List<CollectionElement> updated = new LinkedList<CollectionElement>();
+        List<CollectionElement> appended = new LinkedList<CollectionElement>();
+        for (RowUpdate rowu : rowus) {
+            Serializable id = rowu.row.id;
+            if (mismatched.contains(id)) {
+                continue;
+            }
+            Serializable[] values = rowu.row.values;
+            int oldLength = rowu.delta.oldLength;
+            if (values.length < oldLength) {
+                removed.add(new CollectionElement(id, null, values.length));
+            }
+            for (int pos : rowu.delta.updated) {
+                updated.add(new CollectionElement(id, values[pos], pos));
+            }
+            for (int pos = oldLength; pos < values.length; pos++) {
+                appended.add(new CollectionElement(id, values[pos], pos));
+            }
+        }
+        CollectionIO io = getCollectionIO(tableName);
+        executeCollectionElements(sqlInfo.getDeleteCollectionTail(tableName),
+                io, removed, false);
+        Set<Serializable> missed = executeCollectionElements(
+                sqlInfo.getUpdateCollectionPosition(tableName), io, updated,
+                true);
+        if (!missed.isEmpty()) {
+            for (Iterator<CollectionElement> it = appended.iterator(); it.hasNext();) {
+                if (missed.contains(it.next().id)) {
+                    it.remove();
+                }
+            }
+            mismatched.addAll(missed);
+        }
+        executeCollectionElements(new SQLInfoSelect(
+                sqlInfo.getInsertSql(tableName),
+                sqlInfo.getInsertColumns(tableName), null, null), io,
+                appended, false);
+        if (!mismatched.isEmpty()) {
+            if (logger.isLogEnabled()) {
+                logger.log("Unexpected stored collections, rewriting: "
+                        + mismatched);
+            }
+            List<Row> rows = new LinkedList<Row>();
+            for (RowUpdate rowu : rowus) {
+                if (mismatched.contains(rowu.row.id)) {
+                    rows.add(rowu.row);
+                }
+            }
+            deleteRows(tableName, mismatched);
+            insertCollectionRows(tableName, rows);
+        }
+    }
+
+    /**
+     * Reads the stored lengths of several collections, all for the same
+     * table. A collection whose positions are not contiguous from 0 gets
+     * length -1, so that it matches no expected length.
+     *
+     * @return the lengths by id, without the empty collections
+     */
+    protected Map<Serializable, Integer> readCollectionLengths(
+            String tableName, Set<Serializable> ids) throws StorageException {
+        Map<Serializable, Integer> lengths = new HashMap<Serializable, Integer>();
+        List<Serializable> idList = new ArrayList<Serializable>(ids);
+        int size = idList.size();
+        int chunkSize = sqlInfo.getMaximumArgsForIn();
+        for (int start = 0; start < size; start += chunkSize) {
+            int end = Math.min(start + chunkSize, size);
+            List<Serializable> chunkIds = idList.subList(start, end);
+            SQLInfoSelect select = sqlInfo.getSelectCollectionLengths(
+                    tableName, chunkIds.size());
+            Column mainColumn = select.whatColumns.get(0);
+            try {
+                if (logger.isLogEnabled()) {
+                    logger.logSQL(select.sql, chunkIds);
+                }
+                PreparedStatement ps = connection.prepareStatement(select.sql);
+                try {
+                    int i = 1;
+                    for (Serializable id : chunkIds) {
+                        mainColumn.setToPreparedStatement(ps, i++, id);
+                    }
+                    ResultSet rs = ps.executeQuery();
+                    countExecute();
+                    while (rs.next()) {
+                        Serializable id = mainColumn.getFromResultSet(rs, 1);
+                        int count = rs.getInt(2);
+                        int maxPos = rs.getInt(3);
+                        int length = maxPos == count - 1 ? count : -1;
+                        lengths.put(id, Integer.valueOf(length));
+                    }
+                } finally {
+                    closeStatement(ps);
+                }
+            } catch (Exception e) {
+                checkConnectionReset(e);
+                throw new StorageException("Could not select: " + select.sql,
+                        e);
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * One element of a collection, at a given position.
+     */
+    protected static class CollectionElement {
+
+        public final Serializable id;
+
+        public final Serializable value;
+
+        public final int pos;
+
+        public CollectionElement(Serializable id, Serializable value, int pos) {
+            this.id = id;
+            this.value = value;
+            this.pos = pos;
+        }
+    }
+
+    /**
+     * Executes a statement on collection elements, whose parameters are the
+     * statement's columns. Uses batching if possible.
+     *
+     * @param checkCounts whether each execution must affect exactly one row
+     * @return the ids of the elements whose execution did not affect exactly
+     *         one row, if checked
+     */
+    protected Set<Serializable> executeCollectionElements(
+            SQLInfoSelect statement, CollectionIO io,
+            List<CollectionElement> elements, boolean checkCounts)
+            throws StorageException {
+        Set<Serializable> mismatched = new HashSet<Serializable>();
+        if (elements.isEmpty()) {
+            return mismatched;
+        }
+        String sql = statement.sql;
+        String loggedSql = supportsBatchUpdates && elements.size() > 1 ? sql
+                + " -- BATCHED" : sql;
+        List<Serializable> debugValues = logger.isLogEnabled() ? new ArrayList<Serializable>()
+                : null;
+        try {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            try {
+                List<CollectionElement> batched = new ArrayList<CollectionElement>(
+                        UPDATE_BATCH_SIZE);
+                for (CollectionElement element : elements) {
+                    io.setToPreparedStatement(ps, statement.whatColumns,
+                            element.id, element.value, element.pos,
+                            debugValues);
+                    if (debugValues != null) {
+                        logger.logSQL(loggedSql, debugValues);
+                        debugValues.clear();
+                    }
+                    if (supportsBatchUpdates) {
+                        ps.addBatch();
+                        batched.add(element);
+                        if (batched.size() == UPDATE_BATCH_SIZE) {
+                            int[] counts = ps.executeBatch();
+                            countExecute();
+                            logger.logCounts(counts);
+                            if (checkCounts) {
+                                checkCounts(counts, batched, mismatched);
+                            }
+                            batched.clear();
+                        }
+                    } else {
+                        int count = ps.executeUpdate();
+                        countExecute();
+                        logger.logCount(count);
+                        if (checkCounts && count != 1) {
+                            mismatched.add(element.id);
+                        }
+                    }
+                }
+                if (supportsBatchUpdates && !batched.isEmpty()) {
+                    int[] counts = ps.executeBatch();
+                    countExecute();
+                    logger.logCounts(counts);
+                    if (checkCounts) {
+                        checkCounts(counts, batched, mismatched);
+                    }
+                }
+            } finally {
+                closeStatement(ps);
+            }
+        } catch (Exception e) {
+            checkConnectionReset(e);
+            throw new StorageException("Could not update: " + sql, e);
+        }
+        return mismatched;
+    }
+
+    /**
+     * Collects the ids of the batched elements whose execution did not affect
+     * exactly one row. Drivers may not know the count of each execution.
+     */
+    protected static void checkCounts(int[] counts,
+            List<CollectionElement> batched, Set<Serializable> mismatched) {
+        for (int i = 0; i < counts.length && i < batched.size(); i++) {
+            int count = counts[i];
+            if (count != Statement.SUCCESS_NO_INFO && count != 1) {
+                mismatched.add(batched.get(i).id);
+            }
+        }
     }
 
     /**
@@ -752,6 +1013,15 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                 model.MAIN_KEY, rowId.id);
         List<Row> maps = getSelectRows(rowId.tableName, select, criteriaMap,
                 null, true);
+        if (maps.isEmpty() && isSharingVersionFragments()
+                && model.isSharedVersionFragment(rowId.tableName)) {
+            Serializable ownerId = getVersionShares(rowId.id).get(
+                    rowId.tableName);
+            if (ownerId != null) {
+                Row row = readSimpleRow(new RowId(rowId.tableName, ownerId));
+                return row == null ? null : withId(row, rowId.id);
+            }
+        }
         return maps.isEmpty() ? null : maps.get(0);
     }
 
@@ -838,10 +1108,23 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                 // invalidate
                 invalidations.addModified(new RowId(tableName, overwriteId));
             }
+            // fragments shared by the versions involved
+            Map<String, Serializable> versionShares = null;
+            Map<String, Serializable> sourceShares = null;
+            if (isSharingVersionFragments()) {
+                if (destParentId == null && overwriteRow == null) {
+                    versionShares = getUnchangedVersionFragments(source);
+                } else {
+                    sourceShares = getVersionShares(source.id);
+                }
+            }
             // create the new hierarchy by copy
             boolean resetVersion = destParentId != null;
+            Serializable copyId = model.generateNewId();
             Serializable newRootId = copyHierRecursive(source, destParentId,
-                    destName, overwriteId, resetVersion, idMap, idToTypes);
+                    destName, overwriteId, resetVersion, idMap, idToTypes,
+                    copyId);
+            boolean hasDescendants = idMap.size() > 1;
             // invalidate children
             Serializable invalParentId = overwriteId == null ? destParentId
                     : overwriteId;
@@ -869,8 +1152,30 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                         proxyIds.add(idMap.get(id)); // copied ids
                     }
                 }
-                Boolean invalidation = copyRows(tableName, ids, idMap,
-                        overwriteId);
+                Boolean invalidation = null;
+                boolean hasRoot = ids.contains(source.id);
+                if (hasRoot) {
+                    Serializable ownerId = sourceShares == null ? null
+                            : sourceShares.get(tableName);
+                    if (ownerId != null) {
+                        // the source version shares this row, copy it from
+                        // its owner
+                        invalidation = copyRows(tableName,
+                                Collections.singleton(ownerId),
+                                Collections.singletonMap(ownerId,
+                                        idMap.get(source.id)), overwriteId);
+                    } else if (versionShares == null
+                            || !versionShares.containsKey(tableName)) {
+                        // not unchanged since the base version (shared)
+                        invalidation = copyRows(tableName,
+                                Collections.singleton(source.id), idMap,
+                                overwriteId);
+                    }
+                }
+                if (ids.size() > (hasRoot ? 1 : 0)) {
+                    // all the descendants' rows at once
+                    copyRowsFromIds(tableName, copyId);
+                }
                 if (invalidation != null) {
                     // overwrote something
                     // make sure things are properly invalidated in this and
@@ -884,6 +1189,13 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                     }
                 }
             }
+            if (versionShares != null && !versionShares.isEmpty()) {
+                addVersionShares(newRootId, versionShares);
+            }
+            if (hasDescendants) {
+                // a failed copy leaves its ids to the transaction rollback
+                deleteCopyIds(copyId);
+            }
             return new CopyResult(newRootId, invalidations, proxyIds);
         } catch (Exception e) {
             checkConnectionReset(e);
@@ -940,16 +1252,22 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
      * original and copied ids. {@code idType} is filled with the type of each
      * (source) fragment.
      * <p>
-     * TODO: this should be optimized to use a stored procedure.
+     * The descendants are copied level by level: the children of all the
+     * nodes of a level are fetched together, their new ids are recorded in
+     * the copy ids table, and their hierarchy rows are copied with a single
+     * statement joining it. The number of statements depends on the depth of
+     * the tree and not on its number of nodes.
      *
      * @param overwriteId when not {@code null}, the copy is done onto this
      *            existing node (skipped)
+     * @param copyId the key of this copy in the copy ids table
      * @return the new root id
      */
     protected Serializable copyHierRecursive(IdWithTypes source,
             Serializable parentId, String name, Serializable overwriteId,
             boolean resetVersion, Map<Serializable, Serializable> idMap,
-            Map<Serializable, IdWithTypes> idToTypes) throws SQLException {
+            Map<Serializable, IdWithTypes> idToTypes, Serializable copyId)
+            throws SQLException {
         idToTypes.put(source.id, source);
         Serializable newId;
         if (overwriteId == null) {
@@ -958,10 +1276,36 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             newId = overwriteId;
             idMap.put(source.id, newId);
         }
-        // recurse in children
+        // copy descendants, one level at a time
+        // only complex children are copied directly under a new version
         boolean onlyComplex = parentId == null;
-        for (IdWithTypes child : getChildrenIdsWithTypes(source.id, onlyComplex)) {
-            copyHierRecursive(child, newId, null, null, resetVersion, idMap, idToTypes);
+        List<Serializable> level = Collections.singletonList(source.id);
+        int depth = 0;
+        while (!level.isEmpty()) {
+            Map<Serializable, Serializable> childToParent = new LinkedHashMap<Serializable, Serializable>();
+            for (IdWithTypes child : getChildrenIdsWithTypes(level,
+                    onlyComplex, childToParent)) {
+                idToTypes.put(child.id, child);
+            }
+            if (childToParent.isEmpty()) {
+                break;
+            }
+            if (depth == 0) {
+                // the root is only needed as a parent
+                insertCopyIds(copyId,
+                        Collections.singletonMap(source.id, newId), depth);
+            }
+            depth++;
+            Map<Serializable, Serializable> levelIdMap = new LinkedHashMap<Serializable, Serializable>();
+            for (Serializable id : childToParent.keySet()) {
+                // TODO DB_IDENTITY
+                levelIdMap.put(id, model.generateNewId());
+            }
+            insertCopyIds(copyId, levelIdMap, depth);
+            copyHierFromIds(copyId, depth, resetVersion);
+            idMap.putAll(levelIdMap);
+            level = new ArrayList<Serializable>(childToParent.keySet());
+            onlyComplex = false;
         }
         return newId;
     }
@@ -989,56 +1333,208 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             // TODO DB_IDENTITY
             newId = model.generateNewId();
 
+            List<Serializable> debugValues = setCopyHierParameters(ps, copy,
+                    id, newId, parentId, name);
+            if (debugValues != null) {
+                logger.logSQL(copy.sql, debugValues);
+            }
+            int count = ps.executeUpdate();
+            countExecute();
+            logger.logCount(count);
+
+            // TODO DB_IDENTITY
+            // post insert fetch idrow
+
+            idMap.put(id, newId);
+        } finally {
+            closeStatement(ps);
+        }
+        return newId;
+    }
+
+    /**
+     * Records in the copy ids table the new ids of the nodes of one level of a
+     * copy.
+     *
+     * @param idMap the map of original ids to new ids
+     * @param depth the depth of the level, 0 for the root of the copy
+     * @since 5.7
+     */
+    protected void insertCopyIds(Serializable copyId,
+            Map<Serializable, Serializable> idMap, int depth)
+            throws SQLException {
+        SQLInfoSelect insert = sqlInfo.getInsertCopyIds();
+        String loggedSql = supportsBatchUpdates && idMap.size() > 1 ? insert.sql
+                + " -- BATCHED"
+                : insert.sql;
+        Integer depthValue = Integer.valueOf(depth);
+        PreparedStatement ps = connection.prepareStatement(insert.sql);
+        try {
+            int batch = 0;
+            for (Entry<Serializable, Serializable> en : idMap.entrySet()) {
+                List<Serializable> values = Arrays.asList(copyId, en.getKey(),
+                        en.getValue(), depthValue);
+                if (logger.isLogEnabled()) {
+                    logger.logSQL(loggedSql, values);
+                }
+                int i = 1;
+                for (Column column : insert.whatColumns) {
+                    column.setToPreparedStatement(ps, i, values.get(i - 1));
+                    i++;
+                }
+                batch++;
+                if (supportsBatchUpdates) {
+                    ps.addBatch();
+                    if (batch % UPDATE_BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                        countExecute();
+                    }
+                } else {
+                    ps.executeUpdate();
+                    countExecute();
+                }
+            }
+            if (supportsBatchUpdates && batch % UPDATE_BATCH_SIZE != 0) {
+                ps.executeBatch();
+                countExecute();
+            }
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
+    /**
+     * Copies with a single statement the hierarchy rows of one level of a
+     * copy, keeping their names, under the copies of their parents. Their ids
+     * and those of their parents must already be in the copy ids table.
+     *
+     * @since 5.7
+     */
+    protected void copyHierFromIds(Serializable copyId, int depth,
+            boolean resetVersion) throws SQLException {
+        SQLInfoSelect copy = sqlInfo.getCopyHierFromIds(resetVersion);
+        PreparedStatement ps = connection.prepareStatement(copy.sql);
+        try {
             List<Serializable> debugValues = null;
             if (logger.isLogEnabled()) {
-                debugValues = new ArrayList<Serializable>(4);
+                debugValues = new ArrayList<Serializable>(6);
             }
             int i = 1;
             for (Column column : copy.whatColumns) {
-                String key = column.getKey();
-                Serializable v;
-                if (key.equals(model.HIER_PARENT_KEY)) {
-                    v = parentId;
-                } else if (key.equals(model.HIER_CHILD_NAME_KEY)) {
-                    // present if name explicitely set (first iteration)
-                    v = name;
-                } else if (key.equals(model.MAIN_KEY)) {
-                    // present if APP_UUID generation
-                    v = newId;
-                } else if (key.equals(model.MAIN_BASE_VERSION_KEY)
-                        || key.equals(model.MAIN_CHECKED_IN_KEY)) {
-                    v = null;
-                } else if (key.equals(model.MAIN_MINOR_VERSION_KEY)
-                        || key.equals(model.MAIN_MAJOR_VERSION_KEY)) {
-                    // present if reset version (regular copy, not checkin)
-                    v = null;
-                } else {
-                    throw new RuntimeException(column.toString());
-                }
-                column.setToPreparedStatement(ps, i++, v);
+                // versioning info reset
+                column.setToPreparedStatement(ps, i++, null);
                 if (debugValues != null) {
-                    debugValues.add(v);
+                    debugValues.add(null);
                 }
             }
-            // last parameter is for 'WHERE "id" = ?'
-            Column whereColumn = copy.whereColumns.get(0);
-            whereColumn.setToPreparedStatement(ps, i, id);
+            Integer depthValue = Integer.valueOf(depth);
+            copy.whereColumns.get(0).setToPreparedStatement(ps, i++, copyId);
+            copy.whereColumns.get(1).setToPreparedStatement(ps, i++,
+                    depthValue);
             if (debugValues != null) {
-                debugValues.add(id);
+                debugValues.add(copyId);
+                debugValues.add(depthValue);
                 logger.logSQL(copy.sql, debugValues);
             }
             int count = ps.executeUpdate();
             countExecute();
             logger.logCount(count);
+        } finally {
+            closeStatement(ps);
+        }
+    }
 
-            // TODO DB_IDENTITY
-            // post insert fetch idrow
+    /**
+     * Copies with a single statement the rows of a table for all the nodes of
+     * a copy except its root, using the copy ids table.
+     *
+     * @since 5.7
+     */
+    protected void copyRowsFromIds(String tableName, Serializable copyId)
+            throws SQLException {
+        String sql = sqlInfo.getCopyFromIdsSql(tableName);
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(copyId));
+        }
+        PreparedStatement ps = connection.prepareStatement(sql);
+        try {
+            ps.setObject(1, copyId);
+            int count = ps.executeUpdate();
+            countExecute();
+            logger.logCount(count);
+        } finally {
+            closeStatement(ps);
+        }
+    }
 
-            idMap.put(id, newId);
+    /**
+     * Removes the rows of a copy from the copy ids table.
+     *
+     * @since 5.7
+     */
+    protected void deleteCopyIds(Serializable copyId) throws SQLException {
+        SQLInfoSelect delete = sqlInfo.getDeleteCopyIds();
+        if (logger.isLogEnabled()) {
+            logger.logSQL(delete.sql, Collections.singletonList(copyId));
+        }
+        PreparedStatement ps = connection.prepareStatement(delete.sql);
+        try {
+            delete.whereColumns.get(0).setToPreparedStatement(ps, 1, copyId);
+            int count = ps.executeUpdate();
+            countExecute();
+            logger.logCount(count);
         } finally {
             closeStatement(ps);
         }
-        return newId;
+    }
+
+    /**
+     * Sets the parameters of a hierarchy copy statement.
+     *
+     * @return the values set, for logging, or {@code null} if logging is
+     *         disabled
+     */
+    protected List<Serializable> setCopyHierParameters(PreparedStatement ps,
+            SQLInfoSelect copy, Serializable id, Serializable newId,
+            Serializable parentId, String name) throws SQLException {
+        List<Serializable> debugValues = null;
+        if (logger.isLogEnabled()) {
+            debugValues = new ArrayList<Serializable>(4);
+        }
+        int i = 1;
+        for (Column column : copy.whatColumns) {
+            String key = column.getKey();
+            Serializable v;
+            if (key.equals(model.HIER_PARENT_KEY)) {
+                v = parentId;
+            } else if (key.equals(model.HIER_CHILD_NAME_KEY)) {
+                // present if name explicitely set (first iteration)
+                v = name;
+            } else if (key.equals(model.MAIN_KEY)) {
+                // present if APP_UUID generation
+                v = newId;
+            } else if (key.equals(model.MAIN_BASE_VERSION_KEY)
+                    || key.equals(model.MAIN_CHECKED_IN_KEY)) {
+                v = null;
+            } else if (key.equals(model.MAIN_MINOR_VERSION_KEY)
+                    || key.equals(model.MAIN_MAJOR_VERSION_KEY)) {
+                // present if reset version (regular copy, not checkin)
+                v = null;
+            } else {
+                throw new RuntimeException(column.toString());
+            }
+            column.setToPreparedStatement(ps, i++, v);
+            if (debugValues != null) {
+                debugValues.add(v);
+            }
+        }
+        // last parameter is for 'WHERE "id" = ?'
+        Column whereColumn = copy.whereColumns.get(0);
+        whereColumn.setToPreparedStatement(ps, i, id);
+        if (debugValues != null) {
+            debugValues.add(id);
+        }
+        return debugValues;
     }
 
     /**
@@ -1093,6 +1589,71 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Gets the children ids and types of several nodes, using as few queries
+     * as possible.
+     *
+     * @param childToParent map filled with the parent id of each child
+     * @since 5.7
+     */
+    protected List<IdWithTypes> getChildrenIdsWithTypes(
+            List<Serializable> parentIds, boolean onlyComplex,
+            Map<Serializable, Serializable> childToParent) throws SQLException {
+        List<IdWithTypes> children = new ArrayList<IdWithTypes>();
+        int size = parentIds.size();
+        int chunkSize = sqlInfo.getMaximumArgsForIn();
+        for (int start = 0; start < size; start += chunkSize) {
+            int end = start + chunkSize;
+            if (end > size) {
+                end = size;
+            }
+            List<Serializable> chunkIds = parentIds.subList(start, end);
+            SQLInfoSelect select = sqlInfo.getSelectChildrenIdsAndTypes(
+                    onlyComplex, chunkIds.size());
+            if (logger.isLogEnabled()) {
+                logger.logSQL(select.sql, chunkIds);
+            }
+            PreparedStatement ps = connection.prepareStatement(select.sql);
+            try {
+                int i = 1;
+                for (Serializable id : chunkIds) {
+                    ps.setObject(i++, id); // parent id
+                }
+                ResultSet rs = ps.executeQuery();
+                countExecute();
+                while (rs.next()) {
+                    Serializable parentId = null;
+                    Serializable childId = null;
+                    String childPrimaryType = null;
+                    String[] childMixinTypes = null;
+                    i = 1;
+                    for (Column column : select.whatColumns) {
+                        String key = column.getKey();
+                        Serializable value = column.getFromResultSet(rs, i++);
+                        if (key.equals(model.HIER_PARENT_KEY)) {
+                            parentId = value;
+                        } else if (key.equals(model.MAIN_KEY)) {
+                            childId = value;
+                        } else if (key.equals(model.MAIN_PRIMARY_TYPE_KEY)) {
+                            childPrimaryType = (String) value;
+                        } else if (key.equals(model.MAIN_MIXIN_TYPES_KEY)) {
+                            childMixinTypes = (String[]) value;
+                        }
+                    }
+                    children.add(new IdWithTypes(childId, childPrimaryType,
+                            childMixinTypes));
+                    childToParent.put(childId, parentId);
+                }
+            } finally {
+                closeStatement(ps);
+            }
+        }
+        if (logger.isLogEnabled()) {
+            logger.log("  -> " + children.size() + " children");
+        }
+        return children;
+    }
+
     /**
      * Copy the rows from tableName with given ids into new ones with new ids
      * given by idMap.
@@ -1153,18 +1714,45 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
     }
 
     @Override
-    public List<NodeInfo> remove(NodeInfo rootInfo) throws StorageException {
+    public RemoveResult remove(NodeInfo rootInfo) throws StorageException {
         Serializable rootId = rootInfo.id;
-        List<NodeInfo> info = getDescendantsInfo(rootId);
+        if (isSharingVersionFragments() && rootInfo.versionSeriesId != null
+                && rootInfo.targetId == null) {
+            // a version, keep the rows it owns for the others sharing them
+            for (Entry<String, Serializable> en : getVersionShares(rootId).entrySet()) {
+                if (rootId.equals(en.getValue())) {
+                    handOverVersionShares(en.getKey(), rootId);
+                }
+            }
+        }
+        // large trees are not read into memory, their removal is summarized
+        int limit = model.getRepositoryDescriptor().invalidationsCompactThreshold;
+        Set<String> tables = null;
+        List<NodeInfo> info = getDescendantsInfo(
+                sqlInfo.getSelectDescendantsInfoSql(), rootId, limit);
+        if (info == null) {
+            info = getDescendantsInfo(
+                    sqlInfo.getSelectDescendantsProxiesInfoSql(), rootId, 0);
+            tables = getDescendantsTables(rootId);
+        }
         info.add(rootInfo);
+        // the descendants go with it through cascading foreign keys
         deleteRowsDirect(model.HIER_TABLE_NAME, Collections.singleton(rootId));
-        return info;
+        return new RemoveResult(info, tables);
     }
 
-    protected List<NodeInfo> getDescendantsInfo(Serializable rootId)
-            throws StorageException {
+    /**
+     * Gets info about the descendants of a node.
+     *
+     * @param sql the select of the descendants info
+     * @param limit the maximum number of descendants to read, or 0 for no
+     *            limit
+     * @return the descendants info, or {@code null} if there are more than
+     *         {@code limit}
+     */
+    protected List<NodeInfo> getDescendantsInfo(String sql,
+            Serializable rootId, int limit) throws StorageException {
         List<NodeInfo> descendants = new LinkedList<NodeInfo>();
-        String sql = sqlInfo.getSelectDescendantsInfoSql();
         if (logger.isLogEnabled()) {
             logger.logSQL(sql, Collections.singletonList(rootId));
         }
@@ -1206,6 +1794,12 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                     // no mixins (not useful to caller)
                     // no versions (not fileable)
                 }
+                if (limit > 0 && descendants.size() == limit) {
+                    if (logger.isLogEnabled()) {
+                        logger.log("  -> more than " + limit + " results");
+                    }
+                    return null;
+                }
                 descendants.add(new NodeInfo(id, parentId, primaryType,
                         isProperty, versionableId, targetId));
                 if (debugValues != null) {
@@ -1235,4 +1829,362 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Gets the tables that may hold rows of the descendants of a node, from
+     * their distinct types.
+     */
+    protected Set<String> getDescendantsTables(Serializable rootId)
+            throws StorageException {
+        Set<String> tables = new HashSet<String>();
+        String sql = sqlInfo.getSelectDescendantsTypesSql();
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(rootId));
+        }
+        List<Column> columns = sqlInfo.getSelectDescendantsTypesWhatColumns();
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(sql);
+            ps.setObject(1, rootId);
+            ResultSet rs = ps.executeQuery();
+            countExecute();
+            while (rs.next()) {
+                String primaryType = (String) columns.get(0).getFromResultSet(
+                        rs, 1);
+                String[] mixinTypes = (String[]) columns.get(1).getFromResultSet(
+                        rs, 2);
+                tables.addAll(model.getTypeFragments(new IdWithTypes(null,
+                        primaryType, mixinTypes)));
+            }
+            if (logger.isLogEnabled()) {
+                logger.log("  -> " + tables);
+            }
+            return tables;
+        } catch (Exception e) {
+            checkConnectionReset(e);
+            throw new StorageException("Failed to get descendants types", e);
+        } finally {
+            if (ps != null) {
+                try {
+                    closeStatement(ps);
+                } catch (SQLException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+
+    /*
+     * ----- Shared version fragments -----
+     */
+
+    protected boolean isSharingVersionFragments() {
+        return model.getRepositoryDescriptor().sharedVersionFragments;
+    }
+
+    protected static Row withId(Row row, Serializable id) {
+        Row copy = row.clone();
+        copy.id = id;
+        return copy;
+    }
+
+    /**
+     * Reads the version shares rows of the given ids, for those that have one.
+     */
+    protected Map<Serializable, Row> readVersionShares(
+            Collection<Serializable> ids) throws StorageException {
+        List<RowId> rowIds = new ArrayList<RowId>(ids.size());
+        for (Serializable id : ids) {
+            rowIds.add(new RowId(model.VERSION_SHARES_TABLE_NAME, id));
+        }
+        Map<Serializable, Row> shares = new HashMap<Serializable, Row>();
+        for (RowId rowId : read(rowIds, false)) {
+            if (rowId instanceof Row) {
+                shares.put(rowId.id, (Row) rowId);
+            }
+        }
+        return shares;
+    }
+
+    /**
+     * Gets the owner of each shared fragment of a version. The version itself
+     * is the owner of the rows it shares with others.
+     */
+    protected Map<String, Serializable> getVersionShares(Serializable id)
+            throws StorageException {
+        Map<String, Serializable> owners = new HashMap<String, Serializable>();
+        Row row = readSimpleRow(new RowId(model.VERSION_SHARES_TABLE_NAME, id));
+        if (row != null) {
+            List<String> keys = row.getKeys();
+            List<Serializable> values = row.getValues();
+            for (int i = 0; i < keys.size(); i++) {
+                if (values.get(i) != null) {
+                    owners.put(keys.get(i), values.get(i));
+                }
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Replaces the absent rows of versions sharing a fragment by the row of
+     * its owner.
+     */
+    protected void resolveVersionShares(List<RowId> rows)
+            throws StorageException {
+        Set<Serializable> ids = new HashSet<Serializable>();
+        for (RowId rowId : rows) {
+            if (!(rowId instanceof Row)
+                    && model.isSharedVersionFragment(rowId.tableName)) {
+                ids.add(rowId.id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Serializable, Row> shares = readVersionShares(ids);
+        if (shares.isEmpty()) {
+            return;
+        }
+        // positions of the absent rows to replace, by owner row
+        Map<RowId, List<Integer>> positions = new HashMap<RowId, List<Integer>>();
+        for (int i = 0; i < rows.size(); i++) {
+            RowId rowId = rows.get(i);
+            Row share = rowId instanceof Row ? null : shares.get(rowId.id);
+            if (share == null) {
+                continue;
+            }
+            Serializable ownerId = share.get(rowId.tableName);
+            if (ownerId == null || ownerId.equals(rowId.id)) {
+                continue;
+            }
+            RowId ownerRowId = new RowId(rowId.tableName, ownerId);
+            List<Integer> list = positions.get(ownerRowId);
+            if (list == null) {
+                positions.put(ownerRowId, list = new LinkedList<Integer>());
+            }
+            list.add(Integer.valueOf(i));
+        }
+        if (positions.isEmpty()) {
+            return;
+        }
+        for (RowId owner : read(positions.keySet(), false)) {
+            if (!(owner instanceof Row)) {
+                continue;
+            }
+            List<Integer> list = positions.get(new RowId(owner.tableName,
+                    owner.id));
+            for (Integer i : list) {
+                int pos = i.intValue();
+                rows.set(pos, withId((Row) owner, rows.get(pos).id));
+            }
+        }
+    }
+
+    /**
+     * Finds the fragments of a document that are unchanged since its base
+     * version, and that a new version can share instead of copying them.
+     *
+     * @return the owner of each unchanged fragment
+     */
+    protected Map<String, Serializable> getUnchangedVersionFragments(
+            IdWithTypes source) throws StorageException {
+        Set<String> tableNames = new HashSet<String>(
+                model.getTypeFragments(source));
+        tableNames.retainAll(model.getSharedVersionFragments());
+        if (tableNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Row hierRow = readSimpleRow(new RowId(model.HIER_TABLE_NAME, source.id));
+        Serializable baseId = hierRow == null ? null
+                : hierRow.get(model.MAIN_BASE_VERSION_KEY);
+        if (baseId == null) {
+            return Collections.emptyMap();
+        }
+        List<RowId> rowIds = new ArrayList<RowId>(2 * tableNames.size());
+        for (String tableName : tableNames) {
+            rowIds.add(new RowId(tableName, source.id));
+            rowIds.add(new RowId(tableName, baseId));
+        }
+        Map<String, Row> rows = new HashMap<String, Row>();
+        Map<String, Row> baseRows = new HashMap<String, Row>();
+        // base rows are resolved through their owner
+        for (RowId rowId : read(rowIds, false)) {
+            if (rowId instanceof Row) {
+                (baseId.equals(rowId.id) ? baseRows : rows).put(
+                        rowId.tableName, (Row) rowId);
+            }
+        }
+        Map<String, Serializable> baseShares = getVersionShares(baseId);
+        Map<String, Serializable> owners = new HashMap<String, Serializable>();
+        for (String tableName : tableNames) {
+            Row row = rows.get(tableName);
+            Row baseRow = baseRows.get(tableName);
+            if (row == null || baseRow == null
+                    || !sameValues(tableName, row, baseRow)) {
+                continue;
+            }
+            Serializable ownerId = baseShares.get(tableName);
+            owners.put(tableName, ownerId == null ? baseId : ownerId);
+        }
+        return owners;
+    }
+
+    protected boolean sameValues(String tableName, Row row1, Row row2) {
+        for (String key : model.getFragmentKeysType(tableName).keySet()) {
+            Serializable v1 = row1.get(key);
+            Serializable v2 = row2.get(key);
+            if (v1 instanceof Object[] && v2 instanceof Object[]) {
+                if (!Arrays.equals((Object[]) v1, (Object[]) v2)) {
+                    return false;
+                }
+            } else if (v1 == null ? v2 != null : !v1.equals(v2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the fragments shared by a new version, and marks their owners as
+     * shared so that their rows are handed over before being changed.
+     */
+    protected void addVersionShares(Serializable versionId,
+            Map<String, Serializable> owners) throws StorageException {
+        Map<Serializable, Row> ownerRows = new HashMap<Serializable, Row>();
+        Row row = new Row(model.VERSION_SHARES_TABLE_NAME, versionId);
+        for (Entry<String, Serializable> en : owners.entrySet()) {
+            String tableName = en.getKey();
+            Serializable ownerId = en.getValue();
+            row.putNew(tableName, ownerId);
+            Row ownerRow = ownerRows.get(ownerId);
+            if (ownerRow == null) {
+                ownerRows.put(ownerId, ownerRow = new Row(
+                        model.VERSION_SHARES_TABLE_NAME, ownerId));
+            }
+            ownerRow.putNew(tableName, ownerId);
+        }
+        insertSimpleRows(model.VERSION_SHARES_TABLE_NAME,
+                Collections.singletonList(row));
+        Map<Serializable, Row> existing = readVersionShares(ownerRows.keySet());
+        List<Row> creates = new LinkedList<Row>();
+        for (Row ownerRow : ownerRows.values()) {
+            if (existing.containsKey(ownerRow.id)) {
+                updateSimpleRowWithValues(model.VERSION_SHARES_TABLE_NAME,
+                        ownerRow);
+            } else {
+                creates.add(ownerRow);
+            }
+        }
+        if (!creates.isEmpty()) {
+            insertSimpleRows(model.VERSION_SHARES_TABLE_NAME, creates);
+        }
+    }
+
+    /**
+     * Gives a version its own copy of the shared rows about to be written, and
+     * hands over the rows it owns to the versions sharing them.
+     */
+    protected void unshareVersionFragments(RowBatch batch)
+            throws StorageException {
+        Map<Serializable, Set<String>> written = new HashMap<Serializable, Set<String>>();
+        List<RowId> rowIds = new LinkedList<RowId>(batch.deletes);
+        for (RowUpdate rowu : batch.updates) {
+            rowIds.add(rowu.row);
+        }
+        for (RowId rowId : rowIds) {
+            if (model.isSharedVersionFragment(rowId.tableName)) {
+                Set<String> tableNames = written.get(rowId.id);
+                if (tableNames == null) {
+                    written.put(rowId.id,
+                            tableNames = new HashSet<String>());
+                }
+                tableNames.add(rowId.tableName);
+            }
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+        for (Row share : readVersionShares(written.keySet()).values()) {
+            Serializable id = share.id;
+            Row cleared = new Row(model.VERSION_SHARES_TABLE_NAME, id);
+            for (String tableName : written.get(id)) {
+                Serializable ownerId = share.get(tableName);
+                if (ownerId == null) {
+                    continue;
+                }
+                try {
+                    if (ownerId.equals(id)) {
+                        handOverVersionShares(tableName, id);
+                    } else {
+                        copyRows(tableName, Collections.singleton(ownerId),
+                                Collections.singletonMap(ownerId, id), null);
+                    }
+                } catch (SQLException e) {
+                    checkConnectionReset(e);
+                    throw new StorageException("Could not unshare: " + id, e);
+                }
+                cleared.putNew(tableName, null);
+            }
+            if (!cleared.getKeys().isEmpty()) {
+                updateSimpleRowWithValues(model.VERSION_SHARES_TABLE_NAME,
+                        cleared);
+            }
+        }
+    }
+
+    /**
+     * Moves the row of a fragment owned by a version to one of the versions
+     * sharing it, which becomes the owner for the others.
+     */
+    protected void handOverVersionShares(String tableName, Serializable ownerId)
+            throws StorageException {
+        Table table = sqlInfo.database.getTable(model.VERSION_SHARES_TABLE_NAME);
+        Column idColumn = table.getColumn(model.MAIN_KEY);
+        Column column = table.getColumn(tableName);
+        String selectSql = sqlInfo.getSelectVersionSharesSql(tableName);
+        String moveSql = sqlInfo.getMoveVersionSharesSql(tableName);
+        try {
+            Serializable newOwnerId = null;
+            if (logger.isLogEnabled()) {
+                logger.logSQL(selectSql, Arrays.asList(ownerId, ownerId));
+            }
+            PreparedStatement ps = connection.prepareStatement(selectSql);
+            try {
+                column.setToPreparedStatement(ps, 1, ownerId);
+                idColumn.setToPreparedStatement(ps, 2, ownerId);
+                ResultSet rs = ps.executeQuery();
+                countExecute();
+                if (rs.next()) {
+                    newOwnerId = idColumn.getFromResultSet(rs, 1);
+                }
+            } finally {
+                closeStatement(ps);
+            }
+            if (newOwnerId == null) {
+                return;
+            }
+            copyRows(tableName, Collections.singleton(ownerId),
+                    Collections.singletonMap(ownerId, newOwnerId), null);
+            if (logger.isLogEnabled()) {
+                logger.logSQL(moveSql,
+                        Arrays.asList(newOwnerId, ownerId, ownerId));
+            }
+            ps = connection.prepareStatement(moveSql);
+            try {
+                column.setToPreparedStatement(ps, 1, newOwnerId);
+                column.setToPreparedStatement(ps, 2, ownerId);
+                idColumn.setToPreparedStatement(ps, 3, ownerId);
+                int count = ps.executeUpdate();
+                countExecute();
+                logger.logCount(count);
+            } finally {
+                closeStatement(ps);
+            }
+        } catch (Exception e) {
+            checkConnectionReset(e);
+            throw new StorageException("Could not hand over: " + ownerId, e);
+        }
+    }
+
 }
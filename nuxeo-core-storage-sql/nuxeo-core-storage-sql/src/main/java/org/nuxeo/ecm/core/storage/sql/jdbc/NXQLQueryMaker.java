@@ -149,6 +149,8 @@ public class NXQLQueryMaker implements QueryMaker {
 
     protected static final String TABLE_FRAG_ALIAS = "_F";
 
+    protected static final String TABLE_VERSION_SHARES_ALIAS = "_VS";
+
     protected static final String COL_ALIAS_PREFIX = "_C";
 
     protected static final String UNION_ALIAS = "_T";
@@ -214,6 +216,9 @@ public class NXQLQueryMaker implements QueryMaker {
 
     protected int fragJoinCount = 0;
 
+    // the version shares table, if joined for a shared fragment
+    protected Table versionSharesTable;
+
     @Override
     public String getName() {
         return NXQL.NXQL;
@@ -348,6 +353,7 @@ public class NXQLQueryMaker implements QueryMaker {
             whereParams = new LinkedList<Serializable>();
             propertyFragmentTables = new HashMap<String, Table>();
             fragJoinCount = 0;
+            versionSharesTable = null;
 
             switch (docKind) {
             case DIRECT:
@@ -683,13 +689,40 @@ public class NXQLQueryMaker implements QueryMaker {
             table = new TableAlias(baseTable, alias);
             propertyFragmentTables.put(contextKey, table);
             if (!skipJoin) {
-                addJoin(Join.LEFT, alias, table, model.MAIN_KEY, contextHier,
-                        model.MAIN_KEY, null, index);
+                if (contextHier == dataHierTable
+                        && model.isSharedVersionFragment(fragmentName)) {
+                    addSharedFragmentJoin(alias, table, fragmentName);
+                } else {
+                    addJoin(Join.LEFT, alias, table, model.MAIN_KEY,
+                            contextHier, model.MAIN_KEY, null, index);
+                }
             }
         }
         return table;
     }
 
+    /**
+     * Adds the join for a fragment that versions may share. A version sharing
+     * the row of another version has no row of its own, its row is the one of
+     * the owner recorded in the version shares table.
+     */
+    protected void addSharedFragmentJoin(String alias, Table table,
+            String fragmentName) {
+        if (versionSharesTable == null) {
+            versionSharesTable = new TableAlias(
+                    database.getTable(model.VERSION_SHARES_TABLE_NAME),
+                    TABLE_VERSION_SHARES_ALIAS);
+            addJoin(Join.LEFT, TABLE_VERSION_SHARES_ALIAS, versionSharesTable,
+                    model.MAIN_KEY, dataHierTable, model.MAIN_KEY, null, -1);
+        }
+        String on1 = String.format("COALESCE(%s, %s)",
+                versionSharesTable.getColumn(fragmentName).getFullQuotedName(),
+                dataHierTable.getColumn(model.MAIN_KEY).getFullQuotedName());
+        String on2 = table.getColumn(model.MAIN_KEY).getFullQuotedName();
+        joins.add(new Join(Join.LEFT, table.getRealTable().getQuotedName(),
+                alias, null, on1, on2));
+    }
+
     // overridden by specialized query makers that need to tweak some joins
     protected void fixInitialJoins() {
         // to be overridden
@@ -1181,12 +1214,23 @@ public class NXQLQueryMaker implements QueryMaker {
 
         public final boolean isBoolean;
 
+        /** @since 5.7 */
+        public final boolean isArrayColumn;
+
         public ColumnInfo(Column column, boolean isArrayElement,
                 PropertyType propertyType) {
+            this(column, isArrayElement, propertyType, false);
+        }
+
+        /** @since 5.7 */
+        public ColumnInfo(Column column, boolean isArrayElement,
+                PropertyType propertyType, boolean isArrayColumn) {
             this.column = column;
             this.isArrayElement = isArrayElement;
-            this.needsSubSelect = !isArrayElement && propertyType.isArray();
+            this.needsSubSelect = !isArrayElement && propertyType.isArray()
+                    && !isArrayColumn;
             this.isBoolean = propertyType == PropertyType.BOOLEAN;
+            this.isArrayColumn = isArrayColumn;
         }
     }
 
@@ -1245,7 +1289,8 @@ public class NXQLQueryMaker implements QueryMaker {
                 column = getSpecialColumn(name);
             } else {
                 ColumnInfo info = getColumnInfo(name); // may throw
-                if (info.needsSubSelect && !allowSubSelect) {
+                if ((info.needsSubSelect && !allowSubSelect)
+                        || info.isArrayColumn) {
                     String msg = inOrderBy ? "Cannot use collection %s in ORDER BY clause"
                             : "Can only use collection %s with =, <>, IN or NOT IN clause";
                     throw new QueryMakerException(String.format(msg, name));
@@ -1400,12 +1445,14 @@ public class NXQLQueryMaker implements QueryMaker {
                     // use fragment name, not segment, for table context key
                     contextKey = contextStart + prop.fragmentName
                             + contextSuffix;
+                    boolean isArrayColumn = prop.propertyType.isArray()
+                            && !model.isCollectionFragment(prop.fragmentName);
                     boolean skipJoin = !isArrayElement
-                            && prop.propertyType.isArray();
+                            && prop.propertyType.isArray() && !isArrayColumn;
                     Table table = getFragmentTable(contextHier, contextKey,
                             prop.fragmentName, index, skipJoin);
                     return new ColumnInfo(table.getColumn(prop.fragmentKey),
-                            isArrayElement, prop.propertyType);
+                            isArrayElement, prop.propertyType, isArrayColumn);
                 }
             }
             throw new AssertionError("not reached");
@@ -1468,7 +1515,9 @@ public class NXQLQueryMaker implements QueryMaker {
                     && name != null && !name.startsWith(NXQL.ECM_PREFIX)) {
                 ColumnInfo info = getColumnInfo(name);
                 // node.lvalue must not be accepted from now on
-                if (info.needsSubSelect) {
+                if (info.isArrayColumn) {
+                    visitExpressionArrayColumn(info.column, name, op, rvalue);
+                } else if (info.needsSubSelect) {
                     // use EXISTS with subselect clause
                     boolean direct = op == Operator.EQ || op == Operator.IN
                             || op == Operator.LIKE || op == Operator.ILIKE;
@@ -1616,6 +1665,10 @@ public class NXQLQueryMaker implements QueryMaker {
                 column = getSpecialColumn(name);
             } else {
                 ColumnInfo info = getColumnInfo(name); // may throw
+                if (info.isArrayColumn) {
+                    throw new QueryMakerException(
+                            "Cannot use STARTSWITH on collection " + name);
+                }
                 if (info.needsSubSelect) {
                     // use EXISTS with subselect clause
                     generateExistsStart(buf, info.column.getTable());
@@ -1638,6 +1691,43 @@ public class NXQLQueryMaker implements QueryMaker {
             }
         }
 
+        /**
+         * Matches a list of strings stored in an array column.
+         *
+         * @since 5.7
+         */
+        protected void visitExpressionArrayColumn(Column column, String name,
+                Operator op, Operand rvalue) {
+            boolean positive;
+            Set<String> values;
+            if (op == Operator.EQ || op == Operator.NOTEQ) {
+                positive = op == Operator.EQ;
+                if (!(rvalue instanceof StringLiteral)) {
+                    throw new QueryMakerException(name
+                            + " = requires literal string as right argument");
+                }
+                values = Collections.singleton(((StringLiteral) rvalue).value);
+            } else if (op == Operator.IN || op == Operator.NOTIN) {
+                positive = op == Operator.IN;
+                if (!(rvalue instanceof LiteralList)) {
+                    throw new QueryMakerException(name
+                            + " IN requires string list as right argument");
+                }
+                values = getStringLiterals((LiteralList) rvalue);
+            } else {
+                throw new QueryMakerException(String.format(
+                        "Can only use collection %s with =, <>, IN or NOT IN clause",
+                        name));
+            }
+            if (values.isEmpty()) {
+                buf.append(positive ? "0=1" : "1=1");
+                return;
+            }
+            buf.append(dialect.getArrayColumnMatchSql(column, values.size(),
+                    positive));
+            whereParams.addAll(values);
+        }
+
         protected void visitExpressionEcmPath(Expression node) {
             if (node.operator != Operator.EQ && node.operator != Operator.NOTEQ) {
                 throw new QueryMakerException(NXQL.ECM_PATH
@@ -38,8 +38,10 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Database;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Delete;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Insert;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Join;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Select;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Table;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.TableAlias;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Update;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Table.IndexType;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
@@ -57,6 +59,10 @@ public class SQLInfo {
 
     private static final String ORDER_ASC = "ASC";
 
+    private static final String COPY_IDS_ALIAS = "_M";
+
+    private static final String COPY_IDS_PARENT_ALIAS = "_PM";
+
     public final Database database;
 
     public final Dialect dialect;
@@ -85,10 +91,28 @@ public class SQLInfo {
 
     private List<Column> selectDescendantsInfoWhatColumns;
 
+    private String selectDescendantsProxiesInfoSql;
+
+    private String selectDescendantsTypesSql;
+
+    private List<Column> selectDescendantsTypesWhatColumns;
+
+    private SQLInfoSelect selectVersionIds;
+
     private final Map<String, String> copySqlMap;
 
     private final Map<String, Column> copyIdColumnMap;
 
+    private final Map<String, String> copyFromIdsSqlMap;
+
+    private SQLInfoSelect insertCopyIds;
+
+    private SQLInfoSelect deleteCopyIds;
+
+    private final Map<String, String> selectVersionSharesSqlMap;
+
+    private final Map<String, String> moveVersionSharesSqlMap;
+
     protected final Map<String, SQLInfoSelect> selectFragmentById;
 
     protected List<Column> clusterInvalidationsColumns;
@@ -132,6 +156,10 @@ public class SQLInfo {
 
         copySqlMap = new HashMap<String, String>();
         copyIdColumnMap = new HashMap<String, Column>();
+        copyFromIdsSqlMap = new HashMap<String, String>();
+
+        selectVersionSharesSqlMap = new HashMap<String, String>();
+        moveVersionSharesSqlMap = new HashMap<String, String>();
 
         getBinariesSql = new ArrayList<String>(1);
         getBinariesColumns = new ArrayList<Column>(1);
@@ -182,6 +210,50 @@ public class SQLInfo {
         return selectChildrenIdsAndTypesWhatColumns;
     }
 
+    /**
+     * Returns the select of the children ids and types of several parents at
+     * once. The parent id is returned as first column, followed by the
+     * columns of {@link #getSelectChildrenIdsAndTypesWhatColumns}.
+     *
+     * @param onlyComplex whether to return only complex properties
+     * @param n the number of parent ids
+     * @since 5.7
+     */
+    public SQLInfoSelect getSelectChildrenIdsAndTypes(boolean onlyComplex,
+            int n) {
+        Table table = database.getTable(model.HIER_TABLE_NAME);
+        Column parentColumn = table.getColumn(model.HIER_PARENT_KEY);
+        List<Column> whatColumns = new ArrayList<Column>(4);
+        whatColumns.add(parentColumn);
+        whatColumns.addAll(selectChildrenIdsAndTypesWhatColumns);
+        List<String> whats = new ArrayList<String>(4);
+        for (Column column : whatColumns) {
+            whats.add(column.getQuotedName());
+        }
+        StringBuilder where = new StringBuilder();
+        where.append(parentColumn.getQuotedName());
+        where.append(" IN (");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                where.append(", ");
+            }
+            where.append('?');
+        }
+        where.append(')');
+        if (onlyComplex) {
+            where.append(" AND ");
+            where.append(table.getColumn(model.HIER_CHILD_ISPROPERTY_KEY).getQuotedName());
+            where.append(" = ");
+            where.append(dialect.toBooleanValueString(true));
+        }
+        Select select = new Select(table);
+        select.setWhat(StringUtils.join(whats, ", "));
+        select.setFrom(table.getQuotedName());
+        select.setWhere(where.toString());
+        return new SQLInfoSelect(select.getStatement(), whatColumns,
+                Collections.singletonList(parentColumn), null);
+    }
+
     public String getSelectDescendantsInfoSql() {
         return selectDescendantsInfoSql;
     }
@@ -190,6 +262,31 @@ public class SQLInfo {
         return selectDescendantsInfoWhatColumns;
     }
 
+    /**
+     * Returns the select of the proxies among the descendants of a node. Its
+     * columns are those of {@link #getSelectDescendantsInfoWhatColumns}.
+     *
+     * @since 5.7
+     */
+    public String getSelectDescendantsProxiesInfoSql() {
+        return selectDescendantsProxiesInfoSql;
+    }
+
+    /**
+     * Returns the select of the distinct primary and mixin types of the
+     * descendants of a node.
+     *
+     * @since 5.7
+     */
+    public String getSelectDescendantsTypesSql() {
+        return selectDescendantsTypesSql;
+    }
+
+    /** @since 5.7 */
+    public List<Column> getSelectDescendantsTypesWhatColumns() {
+        return selectDescendantsTypesWhatColumns;
+    }
+
     // ----- cluster -----
 
     public List<Column> getClusterInvalidationsColumns() {
@@ -395,6 +492,87 @@ public class SQLInfo {
         return delete.getStatement();
     }
 
+    // ----- collection deltas -----
+
+    /**
+     * Returns the SQL {@code UPDATE} to set the element at one position of a
+     * collection. The element columns, then the id and position, are free
+     * parameters.
+     *
+     * @param tableName the collection table name
+     * @since 5.7
+     */
+    public SQLInfoSelect getUpdateCollectionPosition(String tableName) {
+        Table table = database.getTable(tableName);
+        Column mainColumn = table.getColumn(model.MAIN_KEY);
+        Column posColumn = table.getColumn(model.getCollectionOrderBy(tableName));
+        List<Column> columns = new LinkedList<Column>();
+        for (Column column : table.getColumns()) {
+            if (column != mainColumn && column != posColumn
+                    && !column.isIdentity()) {
+                columns.add(column);
+            }
+        }
+        Update update = new Update(table);
+        update.setUpdatedColumns(columns);
+        update.setWhere(mainColumn.getQuotedName() + " = ? AND "
+                + posColumn.getQuotedName() + " = ?");
+        columns.add(mainColumn);
+        columns.add(posColumn);
+        return new SQLInfoSelect(update.getStatement(), columns, null, null);
+    }
+
+    /**
+     * Returns the SQL {@code DELETE} to remove the elements of a collection
+     * from a position. The id and position are free parameters.
+     *
+     * @param tableName the collection table name
+     * @since 5.7
+     */
+    public SQLInfoSelect getDeleteCollectionTail(String tableName) {
+        Table table = database.getTable(tableName);
+        Column mainColumn = table.getColumn(model.MAIN_KEY);
+        Column posColumn = table.getColumn(model.getCollectionOrderBy(tableName));
+        Delete delete = new Delete(table);
+        delete.setWhere(mainColumn.getQuotedName() + " = ? AND "
+                + posColumn.getQuotedName() + " >= ?");
+        return new SQLInfoSelect(delete.getStatement(), Arrays.asList(
+                mainColumn, posColumn), null, null);
+    }
+
+    /**
+     * Returns the SQL {@code SELECT} of the number of elements and the
+     * maximum position of several collections, grouped by id. The ids are
+     * free parameters.
+     *
+     * @param tableName the collection table name
+     * @param nids the number of ids
+     * @since 5.7
+     */
+    public SQLInfoSelect getSelectCollectionLengths(String tableName, int nids) {
+        Table table = database.getTable(tableName);
+        Column mainColumn = table.getColumn(model.MAIN_KEY);
+        Column posColumn = table.getColumn(model.getCollectionOrderBy(tableName));
+        StringBuilder wherebuf = new StringBuilder(mainColumn.getQuotedName());
+        wherebuf.append(" IN (");
+        for (int i = 0; i < nids; i++) {
+            if (i != 0) {
+                wherebuf.append(", ");
+            }
+            wherebuf.append('?');
+        }
+        wherebuf.append(')');
+        Select select = new Select(table);
+        select.setWhat(mainColumn.getQuotedName() + ", COUNT(*), MAX("
+                + posColumn.getQuotedName() + ")");
+        select.setFrom(table.getQuotedName());
+        select.setWhere(wherebuf.toString());
+        select.setGroupBy(mainColumn.getQuotedName());
+        return new SQLInfoSelect(select.getStatement(),
+                Collections.singletonList(mainColumn),
+                Collections.singletonList(mainColumn), null);
+    }
+
     // ----- copy -----
 
     public SQLInfoSelect getCopyHier(boolean explicitName, boolean resetVersion) {
@@ -445,6 +623,137 @@ public class SQLInfo {
         return copyIdColumnMap.get(tableName);
     }
 
+    /**
+     * Returns the {@code INSERT} of an id mapping of a copy. The columns are
+     * the copy id, the original id, the new id and the depth.
+     *
+     * @since 5.7
+     */
+    public SQLInfoSelect getInsertCopyIds() {
+        return insertCopyIds;
+    }
+
+    /**
+     * Returns the {@code DELETE} of the id mappings of a copy.
+     *
+     * @since 5.7
+     */
+    public SQLInfoSelect getDeleteCopyIds() {
+        return deleteCopyIds;
+    }
+
+    /**
+     * Returns the statement copying in one go all the rows of a table whose
+     * ids are mapped by a copy, except the one of the root of the copy.
+     * <p>
+     * Example: {@code INSERT INTO foo (id, x, y) SELECT _M.newid, foo.x, foo.y
+     * FROM foo JOIN copyids _M ON foo.id = _M.id WHERE _M.copyid = ? AND
+     * _M.depth > 0}
+     *
+     * @since 5.7
+     */
+    public String getCopyFromIdsSql(String tableName) {
+        return copyFromIdsSqlMap.get(tableName);
+    }
+
+    /**
+     * Returns the statement copying the hierarchy rows of one level of a
+     * copy, whose ids and parent ids are mapped in the copy ids table.
+     * <p>
+     * The free parameters are the columns to reset to {@code NULL}, then the
+     * copy id and the depth of the level.
+     *
+     * @since 5.7
+     */
+    public SQLInfoSelect getCopyHierFromIds(boolean resetVersion) {
+        Table table = database.getTable(model.HIER_TABLE_NAME);
+        Table copyIdsTable = database.getTable(model.COPY_IDS_TABLE_NAME);
+        Table mapAlias = new TableAlias(copyIdsTable, COPY_IDS_ALIAS);
+        Table parentMapAlias = new TableAlias(copyIdsTable,
+                COPY_IDS_PARENT_ALIAS);
+        Collection<Column> columns = table.getColumns();
+        List<String> selectWhats = new ArrayList<String>(columns.size());
+        List<Column> selectWhatColumns = new ArrayList<Column>(4);
+        Insert insert = new Insert(table);
+        for (Column column : columns) {
+            if (column.isIdentity()) {
+                // identity column is never copied
+                continue;
+            }
+            insert.addColumn(column);
+            String key = column.getKey();
+            if (key.equals(model.MAIN_KEY)) {
+                selectWhats.add(mapAlias.getColumn(model.COPY_IDS_NEW_ID_KEY).getFullQuotedName());
+            } else if (key.equals(model.HIER_PARENT_KEY)) {
+                selectWhats.add(parentMapAlias.getColumn(
+                        model.COPY_IDS_NEW_ID_KEY).getFullQuotedName());
+            } else if (key.equals(model.MAIN_BASE_VERSION_KEY) //
+                    || key.equals(model.MAIN_CHECKED_IN_KEY) //
+                    || (key.equals(model.MAIN_MINOR_VERSION_KEY) && resetVersion) //
+                    || (key.equals(model.MAIN_MAJOR_VERSION_KEY) && resetVersion)) {
+                // explicit value set
+                selectWhats.add("?");
+                selectWhatColumns.add(column);
+            } else {
+                // otherwise copy value
+                selectWhats.add(column.getFullQuotedName());
+            }
+        }
+        String from = table.getQuotedName()
+                + new Join(Join.INNER, copyIdsTable.getQuotedName(),
+                        COPY_IDS_ALIAS, null,
+                        table.getColumn(model.MAIN_KEY).getFullQuotedName(),
+                        mapAlias.getColumn(model.MAIN_KEY).getFullQuotedName()).toSql(dialect)
+                + new Join(Join.INNER, copyIdsTable.getQuotedName(),
+                        COPY_IDS_PARENT_ALIAS, null,
+                        table.getColumn(model.HIER_PARENT_KEY).getFullQuotedName(),
+                        parentMapAlias.getColumn(model.MAIN_KEY).getFullQuotedName()).toSql(dialect);
+        Column copyColumn = mapAlias.getColumn(model.COPY_IDS_COPY_KEY);
+        Column depthColumn = mapAlias.getColumn(model.COPY_IDS_DEPTH_KEY);
+        String where = copyColumn.getFullQuotedName() + " = ? AND "
+                + depthColumn.getFullQuotedName() + " = ? AND "
+                + parentMapAlias.getColumn(model.COPY_IDS_COPY_KEY).getFullQuotedName()
+                + " = " + copyColumn.getFullQuotedName();
+        Select select = new Select(null);
+        select.setWhat(StringUtils.join(selectWhats, ", "));
+        select.setFrom(from);
+        select.setWhere(where);
+        insert.setValues(select.getStatement());
+        return new SQLInfoSelect(insert.getStatement(), selectWhatColumns,
+                Arrays.asList(copyColumn, depthColumn), null);
+    }
+
+    /**
+     * Gets the SQL selecting the ids of the versions sharing the row of a
+     * given owner for a fragment. Parameters are the owner id twice.
+     *
+     * @since 5.7
+     */
+    public String getSelectVersionSharesSql(String fragmentName) {
+        return selectVersionSharesSqlMap.get(fragmentName);
+    }
+
+    /**
+     * Gets the SQL moving the versions sharing the row of a given owner for a
+     * fragment to a new owner. Parameters are the new owner id, then the old
+     * owner id twice.
+     *
+     * @since 5.7
+     */
+    public String getMoveVersionSharesSql(String fragmentName) {
+        return moveVersionSharesSqlMap.get(fragmentName);
+    }
+
+    /**
+     * Gets the select of the ids of the versions of a version series, by
+     * creation date. The parameter is the version series id.
+     *
+     * @since 5.7
+     */
+    public SQLInfoSelect getSelectVersionIds() {
+        return selectVersionIds;
+    }
+
     // ----- prepare everything -----
 
     /**
@@ -460,6 +769,8 @@ public class SQLInfo {
             }
             initClusterSQL();
         }
+        // before any fragment, whose copy joins it
+        initCopyIdsSQL();
         initHierarchySQL();
         initRepositorySQL();
         if (dialect.supportsAncestorsTable()) {
@@ -482,6 +793,7 @@ public class SQLInfo {
         hierTable.addIndex(model.MAIN_IS_VERSION_KEY);
         versionTable.addIndex(model.VERSION_VERSIONABLE_KEY);
         // don't index series+label, a simple label scan will suffice
+        initSelectVersionIdsSQL(versionTable);
 
         /*
          * proxies
@@ -493,6 +805,10 @@ public class SQLInfo {
 
         initSelectDescendantsSQL();
 
+        if (model.getRepositoryDescriptor().sharedVersionFragments) {
+            initVersionSharesSQL();
+        }
+
         /*
          * fulltext
          */
@@ -539,6 +855,25 @@ public class SQLInfo {
         }
     }
 
+    protected void initVersionSharesSQL() {
+        Table table = database.getTable(model.VERSION_SHARES_TABLE_NAME);
+        String idName = table.getColumn(model.MAIN_KEY).getQuotedName();
+        for (String fragmentName : model.getSharedVersionFragments()) {
+            table.addIndex(fragmentName);
+            String ownerName = table.getColumn(fragmentName).getQuotedName();
+            String where = ownerName + " = ? AND " + idName + " <> ?";
+            Select select = new Select(table);
+            select.setWhat(idName);
+            select.setFrom(table.getQuotedName());
+            select.setWhere(where);
+            selectVersionSharesSqlMap.put(fragmentName, select.getStatement());
+            Update update = new Update(table);
+            update.setNewValues(ownerName + " = ?");
+            update.setWhere(where);
+            moveVersionSharesSqlMap.put(fragmentName, update.getStatement());
+        }
+    }
+
     protected void initClusterSQL() {
         TableMaker maker = new TableMaker(model.CLUSTER_NODES_TABLE_NAME);
         maker.newColumn(model.CLUSTER_NODES_NODEID_KEY, ColumnType.CLUSTERNODE);
@@ -554,6 +889,34 @@ public class SQLInfo {
         maker.postProcessClusterInvalidations();
     }
 
+    /**
+     * Creates the SQL for the work table mapping the ids of a copied tree to
+     * the ids of the copy.
+     */
+    protected void initCopyIdsSQL() {
+        TableMaker maker = new TableMaker(model.COPY_IDS_TABLE_NAME);
+        Column copyColumn = maker.newColumn(model.COPY_IDS_COPY_KEY,
+                ColumnType.NODEVAL);
+        Column idColumn = maker.newColumn(model.MAIN_KEY, ColumnType.NODEVAL);
+        Column newIdColumn = maker.newColumn(model.COPY_IDS_NEW_ID_KEY,
+                ColumnType.NODEVAL);
+        Column depthColumn = maker.newColumn(model.COPY_IDS_DEPTH_KEY,
+                ColumnType.INTEGER);
+        maker.table.addIndex(model.COPY_IDS_COPY_KEY, model.MAIN_KEY);
+        List<Column> columns = Arrays.asList(copyColumn, idColumn,
+                newIdColumn, depthColumn);
+        Insert insert = new Insert(maker.table);
+        for (Column column : columns) {
+            insert.addColumn(column);
+        }
+        insertCopyIds = new SQLInfoSelect(insert.getStatement(), columns,
+                null, null);
+        Delete delete = new Delete(maker.table);
+        delete.setWhere(copyColumn.getQuotedName() + " = ?");
+        deleteCopyIds = new SQLInfoSelect(delete.getStatement(), null,
+                Collections.singletonList(copyColumn), null);
+    }
+
     /**
      * Creates the SQL for the table holding global repository information. This
      * includes the id of the hierarchy root node.
@@ -617,6 +980,25 @@ public class SQLInfo {
         select.setWhere(where);
         selectDescendantsInfoSql = select.getStatement();
         selectDescendantsInfoWhatColumns = whatCols;
+
+        // same info for proxies only
+        select.setFrom(hierTable.getQuotedName() + " JOIN "
+                + proxyTable.getQuotedName() + " ON "
+                + mainColumn.getFullQuotedName() + " = "
+                + proxyTable.getColumn(model.MAIN_KEY).getFullQuotedName());
+        selectDescendantsProxiesInfoSql = select.getStatement();
+
+        // distinct types, to know which tables hold rows of the descendants
+        List<Column> typeCols = Arrays.asList(
+                hierTable.getColumn(model.MAIN_PRIMARY_TYPE_KEY),
+                hierTable.getColumn(model.MAIN_MIXIN_TYPES_KEY));
+        select = new Select(null);
+        select.setWhat("DISTINCT " + typeCols.get(0).getFullQuotedName()
+                + ", " + typeCols.get(1).getFullQuotedName());
+        select.setFrom(hierTable.getQuotedName());
+        select.setWhere(where);
+        selectDescendantsTypesSql = select.getStatement();
+        selectDescendantsTypesWhatColumns = typeCols;
     }
 
     /**
@@ -631,6 +1013,26 @@ public class SQLInfo {
         maker.newColumn(model.ANCESTORS_ANCESTOR_KEY, ColumnType.NODEARRAY);
     }
 
+    /**
+     * Creates the select of the version ids of a series, ordered by creation
+     * date, for paging through a version history in the database.
+     */
+    protected void initSelectVersionIdsSQL(Table versionTable) {
+        Column idColumn = versionTable.getColumn(model.MAIN_KEY);
+        Column seriesColumn = versionTable.getColumn(model.VERSION_VERSIONABLE_KEY);
+        Column createdColumn = versionTable.getColumn(model.VERSION_CREATED_KEY);
+        Select select = new Select(versionTable);
+        select.setWhat(idColumn.getQuotedName());
+        select.setFrom(versionTable.getQuotedName());
+        select.setWhere(seriesColumn.getQuotedName() + " = ?");
+        // id as tie-breaker for a stable order between pages
+        select.setOrderBy(createdColumn.getQuotedName() + ", "
+                + idColumn.getQuotedName());
+        selectVersionIds = new SQLInfoSelect(select.getStatement(),
+                Collections.singletonList(idColumn),
+                Collections.singletonList(seriesColumn), null);
+    }
+
     /**
      * Creates the SQL for one fragment (simple or collection).
      */
@@ -854,6 +1256,45 @@ public class SQLInfo {
             insert.setValues(select.getStatement());
             copySqlMap.put(tableName, insert.getStatement());
             copyIdColumnMap.put(tableName, copyIdColumn);
+            postProcessCopyFromIds();
+        }
+
+        // copy of the fragments of all the descendants of a copied tree
+        // INSERT INTO foo (id, x, y) SELECT _M.newid, foo.x, foo.y
+        // FROM foo JOIN copyids _M ON foo.id = _M.id
+        // WHERE _M.copyid = ? AND _M.depth > 0
+        protected void postProcessCopyFromIds() {
+            Table copyIdsTable = database.getTable(model.COPY_IDS_TABLE_NAME);
+            Table mapAlias = new TableAlias(copyIdsTable, COPY_IDS_ALIAS);
+            Collection<Column> columns = table.getColumns();
+            List<String> selectWhats = new ArrayList<String>(columns.size());
+            Column copyIdColumn = table.getColumn(model.MAIN_KEY);
+            Insert insert = new Insert(table);
+            for (Column column : columns) {
+                if (column.isIdentity()) {
+                    // identity column is never copied
+                    continue;
+                }
+                insert.addColumn(column);
+                if (column == copyIdColumn) {
+                    selectWhats.add(mapAlias.getColumn(
+                            model.COPY_IDS_NEW_ID_KEY).getFullQuotedName());
+                } else {
+                    selectWhats.add(column.getFullQuotedName());
+                }
+            }
+            Join join = new Join(Join.INNER, copyIdsTable.getQuotedName(),
+                    COPY_IDS_ALIAS, null, copyIdColumn.getFullQuotedName(),
+                    mapAlias.getColumn(model.MAIN_KEY).getFullQuotedName());
+            Select select = new Select(table);
+            select.setWhat(StringUtils.join(selectWhats, ", "));
+            select.setFrom(table.getQuotedName() + join.toSql(dialect));
+            select.setWhere(mapAlias.getColumn(model.COPY_IDS_COPY_KEY).getFullQuotedName()
+                    + " = ? AND "
+                    + mapAlias.getColumn(model.COPY_IDS_DEPTH_KEY).getFullQuotedName()
+                    + " > 0");
+            insert.setValues(select.getStatement());
+            copyFromIdsSqlMap.put(tableName, insert.getStatement());
         }
 
     }
@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+
+/**
+ * Per-repository statistics about the SQL statements executed.
+ * <p>
+ * When enabled, the JDBC connections opened by the repository are wrapped so
+ * that each statement execution records its latency and the number of rows
+ * read or written, aggregated by SQL shape (the SQL with its literals and
+ * {@code IN} lists normalized). Executions slower than a threshold are kept
+ * with a summary of their parameters in a bounded ring buffer.
+ * <p>
+ * The same wrapping also adds the executions, their time and the rows read or
+ * written to the {@link ResourceProfile} of the current thread, so connections
+ * are wrapped as well when resource profiling is enabled. When neither is
+ * enabled, connections are not wrapped and there is no overhead.
+ *
+ * @since 5.7
+ */
+public class SQLStatistics {
+
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD = 100; // ms
+
+    /** Maximum number of distinct SQL shapes tracked. */
+    public static final int MAX_STATEMENTS = 1000;
+
+    public static final int SLOW_QUERIES_SIZE = 100;
+
+    /** Shape under which statements are recorded once the maximum is reached. */
+    public static final String OTHER_STATEMENTS = "(other)";
+
+    protected static final int MAX_PARAMETERS = 10;
+
+    protected static final int MAX_PARAMETER_LENGTH = 50;
+
+    protected static final ConcurrentMap<String, SQLStatistics> instances = new ConcurrentHashMap<String, SQLStatistics>();
+
+    protected static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    protected static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+
+    protected static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+    /**
+     * Gets the statistics for a repository, creating them if needed.
+     */
+    public static SQLStatistics getInstance(String repositoryName) {
+        SQLStatistics statistics = instances.get(repositoryName);
+        if (statistics == null) {
+            statistics = new SQLStatistics(repositoryName);
+            SQLStatistics previous = instances.putIfAbsent(repositoryName,
+                    statistics);
+            if (previous != null) {
+                statistics = previous;
+            }
+        }
+        return statistics;
+    }
+
+    public static Collection<SQLStatistics> getInstances() {
+        return Collections.unmodifiableCollection(instances.values());
+    }
+
+    /**
+     * Gets the actual connection if it was wrapped for statistics.
+     */
+    public static Connection unwrap(Connection connection) {
+        if (Proxy.isProxyClass(connection.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(connection);
+            if (handler instanceof ConnectionHandler) {
+                return ((ConnectionHandler) handler).connection;
+            }
+        }
+        return connection;
+    }
+
+    protected final String repositoryName;
+
+    protected volatile boolean enabled;
+
+    protected volatile long slowQueryThreshold = DEFAULT_SLOW_QUERY_THRESHOLD;
+
+    protected final ConcurrentMap<String, StatementStatistics> statements = new ConcurrentHashMap<String, StatementStatistics>();
+
+    protected final AtomicReferenceArray<SlowQuery> slowQueries = new AtomicReferenceArray<SlowQuery>(
+            SLOW_QUERIES_SIZE);
+
+    protected final AtomicLong slowQueriesCount = new AtomicLong();
+
+    protected SQLStatistics(String repositoryName) {
+        this.repositoryName = repositoryName;
+    }
+
+    public void configure(RepositoryDescriptor repositoryDescriptor) {
+        if (repositoryDescriptor.sqlStatisticsEnabled) {
+            enabled = true;
+        }
+        slowQueryThreshold = repositoryDescriptor.sqlStatisticsSlowQueryThreshold;
+    }
+
+    public String getRepositoryName() {
+        return repositoryName;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables recording. Only the connections opened while
+     * enabled are instrumented.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    public void reset() {
+        statements.clear();
+        for (int i = 0; i < SLOW_QUERIES_SIZE; i++) {
+            slowQueries.set(i, null);
+        }
+        slowQueriesCount.set(0);
+    }
+
+    /**
+     * Wraps a connection so that its statements are recorded, if enabled or if
+     * resource profiling is enabled.
+     */
+    public Connection wrap(Connection connection) {
+        if (connection == null
+                || (!enabled && !ResourceProfile.isEnabled())) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(
+                SQLStatistics.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(
+                        connection));
+    }
+
+    /**
+     * Normalizes SQL so that statements differing only by their literals or
+     * the number of their parameters are aggregated together.
+     */
+    public static String normalize(String sql) {
+        String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+        s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+        return PARAMETER_LIST.matcher(s).replaceAll("?...");
+    }
+
+    protected StatementStatistics getStatementStatistics(String sql) {
+        String shape = normalize(sql);
+        StatementStatistics stats = statements.get(shape);
+        if (stats == null) {
+            if (statements.size() >= MAX_STATEMENTS) {
+                shape = OTHER_STATEMENTS;
+            }
+            stats = new StatementStatistics(shape);
+            StatementStatistics previous = statements.putIfAbsent(shape, stats);
+            if (previous != null) {
+                stats = previous;
+            }
+        }
+        return stats;
+    }
+
+    protected void recordSlowQuery(String sql, long micros, Object[] parameters) {
+        SlowQuery slowQuery = new SlowQuery(System.currentTimeMillis(), sql,
+                micros, summarizeParameters(parameters));
+        long n = slowQueriesCount.getAndIncrement();
+        slowQueries.set((int) (n % SLOW_QUERIES_SIZE), slowQuery);
+    }
+
+    protected static String summarizeParameters(Object[] parameters) {
+        if (parameters == null) {
+            return "";
+        }
+        StringBuilder buf = new StringBuilder();
+        int n = 0;
+        for (Object p : parameters) {
+            if (n++ > 0) {
+                buf.append(", ");
+            }
+            if (n > MAX_PARAMETERS) {
+                buf.append("...");
+                break;
+            }
+            String s = String.valueOf(p);
+            if (s.length() > MAX_PARAMETER_LENGTH) {
+                s = s.substring(0, MAX_PARAMETER_LENGTH) + "...";
+            }
+            if (p instanceof String) {
+                buf.append('\'').append(s).append('\'');
+            } else {
+                buf.append(s);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Gets the statistics of the statements with the highest total time.
+     */
+    public List<StatementStatistics> getTopStatements(int max) {
+        List<StatementStatistics> list = new ArrayList<StatementStatistics>(
+                statements.values());
+        Collections.sort(list, new Comparator<StatementStatistics>() {
+            @Override
+            public int compare(StatementStatistics s1, StatementStatistics s2) {
+                long t1 = s1.getTotalTime();
+                long t2 = s2.getTotalTime();
+                return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+            }
+        });
+        return list.size() > max ? list.subList(0, max) : list;
+    }
+
+    /**
+     * Gets the recent slow queries, most recent first.
+     */
+    public List<SlowQuery> getSlowQueries() {
+        long count = slowQueriesCount.get();
+        List<SlowQuery> list = new ArrayList<SlowQuery>();
+        for (long n = count - 1; n >= 0 && n >= count - SLOW_QUERIES_SIZE; n--) {
+            SlowQuery slowQuery = slowQueries.get((int) (n % SLOW_QUERIES_SIZE));
+            if (slowQuery != null) {
+                list.add(slowQuery);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Statistics for one SQL shape. Latencies are in microseconds.
+     */
+    public static class StatementStatistics {
+
+        /** Bucket {@code i} counts latencies in {@code [2^(i-1), 2^i[} us. */
+        protected static final int BUCKETS = 40;
+
+        protected final String sql;
+
+        protected final AtomicLong count = new AtomicLong();
+
+        protected final AtomicLong totalTime = new AtomicLong();
+
+        protected final AtomicLong maxTime = new AtomicLong();
+
+        protected final AtomicLong rowsRead = new AtomicLong();
+
+        protected final AtomicLong rowsWritten = new AtomicLong();
+
+        protected final AtomicLongArray histogram = new AtomicLongArray(
+                BUCKETS);
+
+        public StatementStatistics(String sql) {
+            this.sql = sql;
+        }
+
+        protected void record(long micros) {
+            if (micros < 0) {
+                micros = 0;
+            }
+            count.incrementAndGet();
+            totalTime.addAndGet(micros);
+            int bucket = Long.SIZE - Long.numberOfLeadingZeros(micros);
+            histogram.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            long m;
+            while (micros > (m = maxTime.get())) {
+                if (maxTime.compareAndSet(m, micros)) {
+                    break;
+                }
+            }
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalTime() {
+            return totalTime.get();
+        }
+
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten.get();
+        }
+
+        /**
+         * Gets the approximate latency under which the given fraction (0 to 1)
+         * of the executions fall.
+         */
+        public long getPercentile(double fraction) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = histogram.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= threshold) {
+                    return Math.min(1L << i, getMaxTime());
+                }
+            }
+            return getMaxTime();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(count=" + getCount()
+                    + ", total=" + getTotalTime() + "us, p50="
+                    + getPercentile(0.5) + "us, p99=" + getPercentile(0.99)
+                    + "us, max=" + getMaxTime() + "us, read=" + getRowsRead()
+                    + ", written=" + getRowsWritten() + ", " + sql + ')';
+        }
+    }
+
+    /**
+     * A statement execution slower than the threshold.
+     */
+    public static class SlowQuery {
+
+        public final long timestamp;
+
+        public final String sql;
+
+        /** In microseconds. */
+        public final long time;
+
+        public final String parameters;
+
+        public SlowQuery(long timestamp, String sql, long time,
+                String parameters) {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.time = time;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + '(' + time + "us, " + sql
+                    + " [" + parameters + "])";
+        }
+    }
+
+    protected static Object invoke(Object target, Method method, Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps the statements created by a connection.
+     */
+    protected class ConnectionHandler implements InvocationHandler {
+
+        protected final Connection connection;
+
+        protected ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            Object res = SQLStatistics.invoke(connection, method, args);
+            String name = method.getName();
+            Class<?> itf;
+            if (res instanceof CallableStatement) {
+                itf = CallableStatement.class;
+            } else if (res instanceof PreparedStatement) {
+                itf = PreparedStatement.class;
+            } else if (res instanceof Statement) {
+                itf = Statement.class;
+            } else {
+                return res;
+            }
+            String sql = name.startsWith("prepare") ? (String) args[0] : null;
+            return Proxy.newProxyInstance(
+                    SQLStatistics.class.getClassLoader(),
+                    new Class<?>[] { itf }, new StatementHandler(
+                            (Statement) res, sql));
+        }
+    }
+
+    /**
+     * Records the executions of a statement.
+     */
+    protected class StatementHandler implements InvocationHandler {
+
+        protected final Statement statement;
+
+        protected final String sql;
+
+        protected Object[] parameters;
+
+        /** Statistics for the prepared SQL, computed on first execution. */
+        protected StatementStatistics prepared;
+
+        protected StatementStatistics current;
+
+        protected StatementHandler(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            ResourceProfile profile = ResourceProfile.current();
+            if (!enabled && profile == null) {
+                return SQLStatistics.invoke(statement, method, args);
+            }
+            if (name.startsWith("execute")) {
+                return execute(method, args, profile);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                setParameter(((Integer) args[0]).intValue(), args[1]);
+            } else if ("clearParameters".equals(name)) {
+                parameters = null;
+            }
+            Object res = SQLStatistics.invoke(statement, method, args);
+            if (res instanceof ResultSet && (current != null || profile != null)) {
+                // getResultSet after execute
+                res = wrapResultSet((ResultSet) res, current, profile);
+            }
+            return res;
+        }
+
+        protected void setParameter(int index, Object value) {
+            if (index < 1 || index > MAX_PARAMETERS) {
+                return;
+            }
+            if (parameters == null || parameters.length < index) {
+                Object[] p = new Object[index];
+                if (parameters != null) {
+                    System.arraycopy(parameters, 0, p, 0, parameters.length);
+                }
+                parameters = p;
+            }
+            parameters[index - 1] = value;
+        }
+
+        protected Object execute(Method method, Object[] args,
+                ResourceProfile profile) throws Throwable {
+            String executed = null;
+            StatementStatistics stats = null;
+            if (!enabled) {
+                // profiling only, no statement statistics
+            } else if (args != null && args.length > 0
+                    && args[0] instanceof String) {
+                executed = (String) args[0];
+                stats = getStatementStatistics(executed);
+            } else if (sql != null) {
+                executed = sql;
+                if (prepared == null) {
+                    prepared = getStatementStatistics(sql);
+                }
+                stats = prepared;
+            } else {
+                // executeBatch of a plain statement
+                executed = method.getName();
+                stats = getStatementStatistics(executed);
+            }
+            current = stats;
+            long start = System.nanoTime();
+            Object res;
+            try {
+                res = SQLStatistics.invoke(statement, method, args);
+            } finally {
+                long micros = (System.nanoTime() - start) / 1000;
+                if (stats != null) {
+                    stats.record(micros);
+                    if (micros >= slowQueryThreshold * 1000) {
+                        recordSlowQuery(executed, micros, parameters);
+                    }
+                }
+                if (profile != null) {
+                    profile.addSqlExecution(micros);
+                }
+            }
+            long written = 0;
+            if (res instanceof ResultSet) {
+                res = wrapResultSet((ResultSet) res, stats, profile);
+            } else if (res instanceof Integer) {
+                written = Math.max(0, ((Integer) res).intValue());
+            } else if (res instanceof int[]) {
+                for (int n : (int[]) res) {
+                    if (n > 0) {
+                        written += n;
+                    }
+                }
+            }
+            if (written > 0) {
+                if (stats != null) {
+                    stats.rowsWritten.addAndGet(written);
+                }
+                if (profile != null) {
+                    profile.addRowsWritten(written);
+                }
+            }
+            return res;
+        }
+    }
+
+    protected ResultSet wrapResultSet(ResultSet rs, StatementStatistics stats,
+            ResourceProfile profile) {
+        return (ResultSet) Proxy.newProxyInstance(
+                SQLStatistics.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new ResultSetHandler(rs,
+                        stats, profile));
+    }
+
+    /**
+     * Counts the rows read from a result set.
+     */
+    protected static class ResultSetHandler implements InvocationHandler {
+
+        protected final ResultSet rs;
+
+        protected final StatementStatistics stats;
+
+        protected final ResourceProfile profile;
+
+        protected ResultSetHandler(ResultSet rs, StatementStatistics stats,
+                ResourceProfile profile) {
+            this.rs = rs;
+            this.stats = stats;
+            this.profile = profile;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            Object res = SQLStatistics.invoke(rs, method, args);
+            if (res == Boolean.TRUE && "next".equals(method.getName())) {
+                if (stats != null) {
+                    stats.rowsRead.incrementAndGet();
+                }
+                if (profile != null) {
+                    profile.addRowsRead(1);
+                }
+            }
+            return res;
+        }
+    }
+
+}
@@ -72,25 +72,8 @@ public class ScalarCollectionIO implements CollectionIO {
             Serializable id = row.id;
             Serializable[] array = row.values;
             for (int i = 0; i < array.length; i++) {
-                int n = 0;
-                for (Column column : columns) {
-                    n++;
-                    String key = column.getKey();
-                    Serializable v;
-                    if (key.equals(Model.MAIN_KEY)) {
-                        v = id;
-                    } else if (key.equals(Model.COLL_TABLE_POS_KEY)) {
-                        v = Long.valueOf((long) i);
-                    } else if (key.equals(Model.COLL_TABLE_VALUE_KEY)) {
-                        v = array[i];
-                    } else {
-                        throw new RuntimeException(key);
-                    }
-                    column.setToPreparedStatement(ps, n, v);
-                    if (debugValues != null) {
-                        debugValues.add(v);
-                    }
-                }
+                setToPreparedStatement(ps, columns, id, array[i], i,
+                        debugValues);
                 if (debugValues != null) {
                     connection.logger.logSQL(loggedSql, debugValues);
                     debugValues.clear();
@@ -113,4 +96,29 @@ public class ScalarCollectionIO implements CollectionIO {
         }
     }
 
+    @Override
+    public void setToPreparedStatement(PreparedStatement ps,
+            List<Column> columns, Serializable id, Serializable value,
+            int pos, List<Serializable> debugValues) throws SQLException {
+        int n = 0;
+        for (Column column : columns) {
+            n++;
+            String key = column.getKey();
+            Serializable v;
+            if (key.equals(Model.MAIN_KEY)) {
+                v = id;
+            } else if (key.equals(Model.COLL_TABLE_POS_KEY)) {
+                v = Long.valueOf((long) pos);
+            } else if (key.equals(Model.COLL_TABLE_VALUE_KEY)) {
+                v = value;
+            } else {
+                throw new RuntimeException(key);
+            }
+            column.setToPreparedStatement(ps, n, v);
+            if (debugValues != null) {
+                debugValues.add(v);
+            }
+        }
+    }
+
 }
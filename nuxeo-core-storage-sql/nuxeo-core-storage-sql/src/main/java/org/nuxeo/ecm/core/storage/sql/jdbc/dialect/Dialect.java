@@ -1085,6 +1085,30 @@ public abstract class Dialect {
         return false;
     }
 
+    /**
+     * Checks if the dialect supports storing lists of strings in an array
+     * column of the type's table instead of a collection table.
+     *
+     * @since 5.7
+     */
+    public boolean supportsArrayColumns() {
+        return false;
+    }
+
+    /**
+     * Gets the SQL fragment matching an array column containing at least one
+     * of {@code n} values (passed as parameters).
+     *
+     * @param column the array column
+     * @param n the number of values
+     * @param positive {@code false} to match when none of the values is
+     *            contained
+     * @since 5.7
+     */
+    public String getArrayColumnMatchSql(Column column, int n, boolean positive) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Factory method for creating Array objects, suitable for passing to
      * {@link PreparedStatement#setArray}.
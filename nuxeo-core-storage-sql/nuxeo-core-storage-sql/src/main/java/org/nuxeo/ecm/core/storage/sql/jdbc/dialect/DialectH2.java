@@ -14,6 +14,7 @@
 package org.nuxeo.ecm.core.storage.sql.jdbc.dialect;
 
 import java.io.Serializable;
+import java.sql.Array;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -112,6 +113,8 @@ public class DialectH2 extends Dialect {
             return jdbcInfo("INTEGER", Types.INTEGER);
         case CLUSTERFRAGS:
             return jdbcInfo("VARCHAR", Types.VARCHAR);
+        case ARRAY_STRING:
+            return jdbcInfo("ARRAY", Types.ARRAY);
         }
         throw new AssertionError(type);
     }
@@ -158,6 +161,14 @@ public class DialectH2 extends Dialect {
         case Types.TIMESTAMP:
             setToPreparedStatementTimestamp(ps, index, value, column);
             return;
+        case Types.ARRAY:
+            Object[] elements = (Object[]) value;
+            if (elements.length == 0) {
+                ps.setNull(index, Types.ARRAY);
+            } else {
+                ps.setObject(index, elements);
+            }
+            return;
         default:
             throw new SQLException("Unhandled JDBC type: "
                     + column.getJdbcType());
@@ -182,6 +193,17 @@ public class DialectH2 extends Dialect {
             return rs.getDouble(index);
         case Types.TIMESTAMP:
             return getFromResultSetTimestamp(rs, index, column);
+        case Types.ARRAY:
+            Array array = rs.getArray(index);
+            if (array == null) {
+                return null;
+            }
+            Object[] elements = (Object[]) array.getArray();
+            String[] strings = new String[elements.length];
+            for (int i = 0; i < elements.length; i++) {
+                strings[i] = (String) elements[i];
+            }
+            return strings;
         }
         throw new SQLException("Unhandled JDBC type: " + column.getJdbcType());
     }
@@ -291,6 +313,22 @@ public class DialectH2 extends Dialect {
         return false;
     }
 
+    @Override
+    public boolean supportsArrayColumns() {
+        return true;
+    }
+
+    @Override
+    public String getArrayColumnMatchSql(Column column, int n, boolean positive) {
+        String name = column.getFullQuotedName();
+        List<String> matches = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            matches.add(String.format("NX_ARRAY_CONTAINS(%s, ?)", name));
+        }
+        String sql = StringUtils.join(matches, " OR ");
+        return positive ? "(" + sql + ")" : "NOT(" + sql + ")";
+    }
+
     @Override
     public String getSQLStatementsFilename() {
         return "nuxeovcs/h2.sql.txt";
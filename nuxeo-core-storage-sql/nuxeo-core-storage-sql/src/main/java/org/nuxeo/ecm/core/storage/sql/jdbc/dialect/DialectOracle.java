@@ -47,6 +47,7 @@ import org.nuxeo.ecm.core.storage.sql.ColumnType;
 import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.ModelFulltext;
 import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLStatistics;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Database;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Join;
@@ -528,7 +529,7 @@ public class DialectOracle extends Dialect {
         }
         init();
         try {
-            connection = ConnectionHelper.unwrap(connection);
+            connection = ConnectionHelper.unwrap(SQLStatistics.unwrap(connection));
             Object arrayDescriptor = arrayDescriptorConstructor.newInstance(
                     "NX_STRING_TABLE", connection);
             return (Array) arrayConstructor.newInstance(arrayDescriptor,
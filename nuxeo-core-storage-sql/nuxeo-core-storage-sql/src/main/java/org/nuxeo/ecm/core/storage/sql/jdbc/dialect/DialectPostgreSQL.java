@@ -148,6 +148,23 @@ public class DialectPostgreSQL extends Dialect {
         return "DEFAULT VALUES";
     }
 
+    @Override
+    public String getConnectionSchema(Connection connection)
+            throws SQLException {
+        Statement st = connection.createStatement();
+        try {
+            String sql = "SELECT current_schema()";
+            log.trace("SQL: " + sql);
+            ResultSet rs = st.executeQuery(sql);
+            rs.next();
+            String schema = rs.getString(1);
+            log.trace("SQL:   -> " + schema);
+            return schema;
+        } finally {
+            st.close();
+        }
+    }
+
     @Override
     public String getCascadeDropConstraintsString() {
         return "CASCADE";
@@ -210,6 +227,7 @@ public class DialectPostgreSQL extends Dialect {
         case CLUSTERNODE:
             return jdbcInfo("int4", Types.INTEGER);
         case CLUSTERFRAGS:
+        case ARRAY_STRING:
             return jdbcInfo("varchar[]", Types.ARRAY);
         }
         throw new AssertionError(type);
@@ -687,6 +705,21 @@ public class DialectPostgreSQL extends Dialect {
         return true;
     }
 
+    @Override
+    public boolean supportsArrayColumns() {
+        return true;
+    }
+
+    @Override
+    public String getArrayColumnMatchSql(Column column, int n, boolean positive) {
+        String name = column.getFullQuotedName();
+        List<String> params = Collections.nCopies(n, "?");
+        String sql = String.format("%s && ARRAY[%s]::varchar[]", name,
+                StringUtils.join(params, ", "));
+        return positive ? sql : String.format("(%s IS NULL OR NOT(%s))", name,
+                sql);
+    }
+
     @Override
     public boolean supportsArrays() {
         return true;
@@ -193,6 +193,23 @@ public class DialectSQLServer extends Dialect {
         return "ADD";
     }
 
+    @Override
+    public String getConnectionSchema(Connection connection)
+            throws SQLException {
+        Statement st = connection.createStatement();
+        try {
+            String sql = "SELECT SCHEMA_NAME()";
+            log.trace("SQL: " + sql);
+            ResultSet rs = st.executeQuery(sql);
+            rs.next();
+            String schema = rs.getString(1);
+            log.trace("SQL:   -> " + schema);
+            return schema;
+        } finally {
+            st.close();
+        }
+    }
+
     @Override
     public JDBCInfo getJDBCTypeAndString(ColumnType type) {
         switch (type.spec) {
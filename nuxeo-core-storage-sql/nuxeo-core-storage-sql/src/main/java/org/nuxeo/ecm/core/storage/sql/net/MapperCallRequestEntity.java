@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+/**
+ * Class defining a {@link RequestEntity} that writes a mapper method call
+ * using a {@link MapperCodec}.
+ *
+ * @since 5.7
+ */
+public class MapperCallRequestEntity implements RequestEntity {
+
+    protected final String methodName;
+
+    protected final Object[] args;
+
+    public MapperCallRequestEntity(String methodName, Object[] args) {
+        this.methodName = methodName;
+        this.args = args;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public void writeRequest(OutputStream out) throws IOException {
+        MapperCodec codec = MapperCodec.forWriting(out);
+        codec.writeCall(methodName, args);
+        codec.flush();
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public String getContentType() {
+        return MapperCodec.CONTENT_TYPE;
+    }
+
+}
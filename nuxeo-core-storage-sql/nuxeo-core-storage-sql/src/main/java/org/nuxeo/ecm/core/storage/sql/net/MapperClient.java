@@ -130,18 +130,25 @@ public class MapperClient implements InvocationHandler {
         PostMethod m = new PostMethod(postUrl);
         m.setRequestHeader(httpPrincipalHeader);
         try {
-            ObjectWriterRequestEntity writer = new ObjectWriterRequestEntity();
-            writer.add(methodName, args);
-            m.setRequestEntity(writer);
+            m.setRequestEntity(new MapperCallRequestEntity(methodName, args));
             int status = httpClient.executeMethod(m);
             if (status != HttpStatus.SC_OK) {
                 throw new ProtocolException(String.valueOf(status));
             }
-            String cs = m.getResponseCharSet();
-            if (cs != null && !cs.equals("ISO-8859-1")) {
-                throw new RuntimeException("Bad encoding: " + cs);
+            Object res;
+            Header contentType = m.getResponseHeader("Content-Type");
+            if (contentType != null
+                    && contentType.getValue().startsWith(
+                            MapperCodec.CONTENT_TYPE)) {
+                res = MapperCodec.forReading(m.getResponseBodyAsStream()).readObject();
+            } else {
+                // server using Java serialization
+                String cs = m.getResponseCharSet();
+                if (cs != null && !cs.equals("ISO-8859-1")) {
+                    throw new RuntimeException("Bad encoding: " + cs);
+                }
+                res = new ObjectInputStream(m.getResponseBodyAsStream()).readObject();
             }
-            Object res = new ObjectInputStream(m.getResponseBodyAsStream()).readObject();
             if (res instanceof Throwable) {
                 Throwable t = (Throwable) res;
                 throw new StorageException("Remote exception: " + t, t);
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.nuxeo.ecm.core.storage.sql.Row;
+import org.nuxeo.ecm.core.storage.sql.RowId;
+
+/**
+ * Compact binary encoding of the {@link MapperClient} calls and results.
+ * <p>
+ * Rows, row ids and the usual column values (strings, numbers, booleans,
+ * dates, arrays and lists of them) are written with a one-byte tag followed by
+ * their data. Names that repeat within a message, like table names and column
+ * keys, are written once and then referenced by index. Other values fall back
+ * to Java serialization.
+ * <p>
+ * An instance encodes or decodes a single message.
+ *
+ * @since 5.7
+ */
+public class MapperCodec {
+
+    public static final String CONTENT_TYPE = "application/x-nuxeo-vcs-mapper";
+
+    protected static final String UTF_8 = "UTF-8";
+
+    protected static final byte NULL = 0;
+
+    protected static final byte STRING = 1;
+
+    protected static final byte LONG = 2;
+
+    protected static final byte INTEGER = 3;
+
+    protected static final byte BOOLEAN = 4;
+
+    protected static final byte DOUBLE = 5;
+
+    protected static final byte CALENDAR = 6;
+
+    protected static final byte STRING_ARRAY = 7;
+
+    protected static final byte LONG_ARRAY = 8;
+
+    protected static final byte SERIALIZABLE_ARRAY = 9;
+
+    protected static final byte LIST = 10;
+
+    protected static final byte ROW_ID = 11;
+
+    protected static final byte ROW = 12;
+
+    protected static final byte COLLECTION_ROW = 13;
+
+    protected static final byte SERIALIZED = 14;
+
+    protected DataOutputStream out;
+
+    protected DataInputStream in;
+
+    /** Names already written, and their index. */
+    protected Map<String, Integer> writtenNames;
+
+    /** Names already read, by index. */
+    protected List<String> readNames;
+
+    public static MapperCodec forWriting(OutputStream out) {
+        MapperCodec codec = new MapperCodec();
+        codec.out = new DataOutputStream(out);
+        codec.writtenNames = new HashMap<String, Integer>();
+        return codec;
+    }
+
+    public static MapperCodec forReading(InputStream in) {
+        MapperCodec codec = new MapperCodec();
+        codec.in = new DataInputStream(in);
+        codec.readNames = new ArrayList<String>();
+        return codec;
+    }
+
+    protected MapperCodec() {
+    }
+
+    public void writeCall(String methodName, Object[] args) throws IOException {
+        writeName(methodName);
+        int n = args == null ? 0 : args.length;
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            writeObject(args[i]);
+        }
+    }
+
+    /**
+     * Reads a call written by {@link #writeCall}, the first element of the
+     * returned array is the method name.
+     */
+    public Object[] readCall() throws IOException, ClassNotFoundException {
+        String methodName = readName();
+        int n = in.readInt();
+        Object[] call = new Object[n + 1];
+        call[0] = methodName;
+        for (int i = 1; i <= n; i++) {
+            call[i] = readObject();
+        }
+        return call;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void writeObject(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value.getClass() == GregorianCalendar.class) {
+            Calendar cal = (Calendar) value;
+            out.writeByte(CALENDAR);
+            out.writeLong(cal.getTimeInMillis());
+            writeName(cal.getTimeZone().getID());
+        } else if (value.getClass() == String[].class) {
+            String[] array = (String[]) value;
+            out.writeByte(STRING_ARRAY);
+            out.writeInt(array.length);
+            for (String s : array) {
+                writeObject(s);
+            }
+        } else if (value.getClass() == Long[].class) {
+            Long[] array = (Long[]) value;
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for (Long l : array) {
+                writeObject(l);
+            }
+        } else if (value.getClass() == Serializable[].class) {
+            Serializable[] array = (Serializable[]) value;
+            out.writeByte(SERIALIZABLE_ARRAY);
+            out.writeInt(array.length);
+            for (Serializable s : array) {
+                writeObject(s);
+            }
+        } else if (value.getClass() == ArrayList.class) {
+            Collection<?> list = (Collection<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object o : list) {
+                writeObject(o);
+            }
+        } else if (value.getClass() == RowId.class) {
+            RowId rowId = (RowId) value;
+            out.writeByte(ROW_ID);
+            writeName(rowId.tableName);
+            writeObject(rowId.id);
+        } else if (value instanceof Row) {
+            writeRow((Row) value);
+        } else {
+            writeSerialized(value);
+        }
+    }
+
+    protected void writeRow(Row row) throws IOException {
+        if (row.isCollection()) {
+            out.writeByte(COLLECTION_ROW);
+            writeName(row.tableName);
+            writeObject(row.id);
+            writeObject(row.values);
+            return;
+        }
+        out.writeByte(ROW);
+        writeName(row.tableName);
+        writeObject(row.id);
+        List<String> keys = row.getKeys();
+        List<Serializable> values = row.getValues();
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            writeName(keys.get(i));
+            writeObject(values.get(i));
+        }
+    }
+
+    protected void writeSerialized(Object value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(value);
+        oos.close();
+        out.writeByte(SERIALIZED);
+        out.writeInt(baos.size());
+        baos.writeTo(out);
+    }
+
+    protected void writeString(String string) throws IOException {
+        // not writeUTF, which is limited to 64k
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected void writeName(String name) throws IOException {
+        Integer index = writtenNames.get(name);
+        if (index != null) {
+            out.writeInt(index.intValue());
+            return;
+        }
+        out.writeInt(-1);
+        out.writeUTF(name);
+        writtenNames.put(name, Integer.valueOf(writtenNames.size()));
+    }
+
+    public Object readObject() throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString();
+        case LONG:
+            return Long.valueOf(in.readLong());
+        case INTEGER:
+            return Integer.valueOf(in.readInt());
+        case BOOLEAN:
+            return Boolean.valueOf(in.readBoolean());
+        case DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case CALENDAR:
+            long millis = in.readLong();
+            Calendar cal = new GregorianCalendar(
+                    TimeZone.getTimeZone(readName()));
+            cal.setTimeInMillis(millis);
+            return cal;
+        case STRING_ARRAY:
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = (String) readObject();
+            }
+            return strings;
+        case LONG_ARRAY:
+            Long[] longs = new Long[in.readInt()];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = (Long) readObject();
+            }
+            return longs;
+        case SERIALIZABLE_ARRAY:
+            Serializable[] array = new Serializable[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (Serializable) readObject();
+            }
+            return array;
+        case LIST:
+            int size = in.readInt();
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readObject());
+            }
+            return list;
+        case ROW_ID:
+            String tableName = readName();
+            return new RowId(tableName, (Serializable) readObject());
+        case ROW:
+            return readRow();
+        case COLLECTION_ROW:
+            tableName = readName();
+            Serializable id = (Serializable) readObject();
+            return new Row(tableName, id, (Serializable[]) readObject());
+        case SERIALIZED:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            ObjectInputStream ois = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes));
+            return ois.readObject();
+        default:
+            throw new IOException("Unknown tag: " + tag);
+        }
+    }
+
+    protected Row readRow() throws IOException, ClassNotFoundException {
+        String tableName = readName();
+        Row row = new Row(tableName, (Serializable) readObject());
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = readName();
+            row.putNew(key, (Serializable) readObject());
+        }
+        return row;
+    }
+
+    protected String readString() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    protected String readName() throws IOException {
+        int index = in.readInt();
+        if (index >= 0) {
+            return readNames.get(index);
+        }
+        String name = in.readUTF();
+        readNames.add(name);
+        return name;
+    }
+
+}
@@ -15,8 +15,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -149,27 +151,33 @@ public class MapperServlet extends HttpServlet {
                 }
             }
             invoker.clientInfo.handledRequest(req);
-            // set up output stream
-            resp.setContentType("application/octet-stream");
-            // resp.setCharacterEncoding("ISO-8859-1"); // important
-            Writer writer = resp.getWriter();
-            ObjectOutputStream oos = new ObjectOutputStream(
-                    new OutputStreamToWriter(writer));
+            String contentType = req.getContentType();
+            boolean compact = contentType != null
+                    && contentType.startsWith(MapperCodec.CONTENT_TYPE);
 
             // read method and args
-            ObjectInputStream ois = new ObjectInputStream(is);
-            String methodName = (String) ois.readObject();
-            List<Object> args = new LinkedList<Object>();
-            while (true) {
-                Object object = ois.readObject();
-                if (object == MapperClient.EOF) {
-                    break;
+            String methodName;
+            Object[] args;
+            if (compact) {
+                Object[] call = MapperCodec.forReading(is).readCall();
+                methodName = (String) call[0];
+                args = Arrays.copyOfRange(call, 1, call.length);
+            } else {
+                ObjectInputStream ois = new ObjectInputStream(is);
+                methodName = (String) ois.readObject();
+                List<Object> list = new LinkedList<Object>();
+                while (true) {
+                    Object object = ois.readObject();
+                    if (object == MapperClient.EOF) {
+                        break;
+                    }
+                    list.add(object);
                 }
-                args.add(object);
+                args = list.toArray();
             }
 
             // invoke method
-            Object res = invoker.call(methodName, args.toArray());
+            Object res = invoker.call(methodName, args);
             // close?
             if (Mapper.CLOSE.equals(methodName)) {
                 // close session
@@ -183,9 +191,23 @@ public class MapperServlet extends HttpServlet {
                 res = new Identification(rid, id.mapperId);
             }
             // write result
-            oos.writeObject(res);
-            oos.flush();
-            oos.close();
+            if (compact) {
+                resp.setContentType(MapperCodec.CONTENT_TYPE);
+                OutputStream out = resp.getOutputStream();
+                MapperCodec codec = MapperCodec.forWriting(out);
+                codec.writeObject(res);
+                codec.flush();
+                out.close();
+            } else {
+                resp.setContentType("application/octet-stream");
+                // resp.setCharacterEncoding("ISO-8859-1"); // important
+                Writer writer = resp.getWriter();
+                ObjectOutputStream oos = new ObjectOutputStream(
+                        new OutputStreamToWriter(writer));
+                oos.writeObject(res);
+                oos.flush();
+                oos.close();
+            }
         } catch (Throwable e) {
             log.error(e, e);
             resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.storage.sql.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.Row;
+import org.nuxeo.ecm.core.storage.sql.RowId;
+
+public class TestMapperCodec {
+
+    protected static Object roundTrip(Object value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MapperCodec codec = MapperCodec.forWriting(out);
+        codec.writeObject(value);
+        codec.flush();
+        return MapperCodec.forReading(
+                new ByteArrayInputStream(out.toByteArray())).readObject();
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        assertNull(roundTrip(null));
+        assertEquals("abc\u00e9", roundTrip("abc\u00e9"));
+        assertEquals(Long.valueOf(123), roundTrip(Long.valueOf(123)));
+        assertEquals(Integer.valueOf(-4), roundTrip(Integer.valueOf(-4)));
+        assertEquals(Boolean.TRUE, roundTrip(Boolean.TRUE));
+        assertEquals(Double.valueOf(1.5), roundTrip(Double.valueOf(1.5)));
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("GMT+02:00"));
+        cal.setTimeInMillis(1234567890123L);
+        assertEquals(cal, roundTrip(cal));
+        assertArrayEquals(new String[] { "a", null, "b" },
+                (String[]) roundTrip(new String[] { "a", null, "b" }));
+        assertArrayEquals(new Long[] { Long.valueOf(1) },
+                (Long[]) roundTrip(new Long[] { Long.valueOf(1) }));
+        List<Object> list = new ArrayList<Object>(Arrays.asList("x",
+                Long.valueOf(2)));
+        assertEquals(list, roundTrip(list));
+        // fallback to Java serialization
+        HashMap<String, String> map = new HashMap<String, String>();
+        map.put("k", "v");
+        assertEquals(map, roundTrip(map));
+        // long strings
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            buf.append('x');
+        }
+        assertEquals(buf.toString(), roundTrip(buf.toString()));
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        Row row = new Row("hierarchy", "id1");
+        row.putNew("name", "foo");
+        row.putNew("pos", Long.valueOf(3));
+        Row row2 = new Row("hierarchy", "id2");
+        row2.putNew("name", "bar");
+        row2.putNew("pos", null);
+        Row coll = new Row("dc_subjects", "id1", new String[] { "a", "b" });
+        RowId absent = new RowId("dublincore", "id3");
+        List<Object> rows = new ArrayList<Object>(Arrays.asList(row, row2,
+                coll, absent));
+
+        @SuppressWarnings("unchecked")
+        List<Object> res = (List<Object>) roundTrip(rows);
+        assertEquals(4, res.size());
+        Row r = (Row) res.get(0);
+        assertEquals("hierarchy", r.tableName);
+        assertEquals("id1", r.id);
+        assertEquals(Arrays.asList("name", "pos"), r.getKeys());
+        assertEquals(Arrays.<Serializable> asList("foo", Long.valueOf(3)),
+                r.getValues());
+        r = (Row) res.get(1);
+        assertEquals("id2", r.id);
+        assertEquals("bar", r.get("name"));
+        assertNull(r.get("pos"));
+        r = (Row) res.get(2);
+        assertTrue(r.isCollection());
+        assertArrayEquals(new String[] { "a", "b" }, r.values);
+        RowId rowId = (RowId) res.get(3);
+        assertEquals(RowId.class, rowId.getClass());
+        assertEquals(absent, rowId);
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MapperCodec codec = MapperCodec.forWriting(out);
+        codec.writeCall("readSimpleRow",
+                new Object[] { new RowId("hierarchy", "id1") });
+        codec.writeCall("getTableSize", null);
+        codec.flush();
+        MapperCodec reader = MapperCodec.forReading(new ByteArrayInputStream(
+                out.toByteArray()));
+        Object[] call = reader.readCall();
+        assertEquals(2, call.length);
+        assertEquals("readSimpleRow", call[0]);
+        assertEquals(new RowId("hierarchy", "id1"), call[1]);
+        call = reader.readCall();
+        assertEquals(1, call.length);
+        assertEquals("getTableSize", call[0]);
+    }
+
+}
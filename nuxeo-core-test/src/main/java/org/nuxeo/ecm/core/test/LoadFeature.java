@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.test;
+
+import org.nuxeo.ecm.core.test.annotations.LoadConfig;
+import org.nuxeo.runtime.test.runner.Defaults;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.SimpleFeature;
+
+import com.google.inject.Binder;
+
+/**
+ * Provides a {@link LoadRunner} replaying concurrent sessions against the
+ * test repository, configured by {@link LoadConfig}:
+ *
+ * <pre>
+ * &#064;RunWith(FeaturesRunner.class)
+ * &#064;Features(LoadFeature.class)
+ * &#064;LoadConfig(threads = 8, operations = 500, lock = 20)
+ * public class MyLoadTest {
+ *     &#064;Inject
+ *     LoadRunner loadRunner;
+ *
+ *     &#064;Test
+ *     public void test() throws Exception {
+ *         LoadReport report = loadRunner.run();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 5.7
+ */
+@Features({ TransactionalFeature.class, CoreFeature.class })
+public class LoadFeature extends SimpleFeature {
+
+    protected LoadConfig config;
+
+    protected LoadRunner loadRunner;
+
+    @Override
+    public void initialize(FeaturesRunner runner) throws Exception {
+        config = runner.getConfig(LoadConfig.class);
+        if (config == null) {
+            config = Defaults.of(LoadConfig.class);
+        }
+    }
+
+    @Override
+    public void configure(FeaturesRunner runner, Binder binder) {
+        loadRunner = new LoadRunner(
+                runner.getFeature(CoreFeature.class).getRepository(), config);
+        binder.bind(LoadRunner.class).toInstance(loadRunner);
+    }
+
+}
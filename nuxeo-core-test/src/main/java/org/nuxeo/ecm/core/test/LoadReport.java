@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.core.test.LoadRunner.Operation;
+
+/**
+ * The result of a {@link LoadRunner} run: for each operation, the number of
+ * successes, failures, retries and deadlocks, the latency percentiles, and the
+ * cache and SQL usage.
+ * <p>
+ * The statistics are updated concurrently by the sessions of the run.
+ *
+ * @since 5.7
+ */
+public class LoadReport {
+
+    /**
+     * Statistics of one operation.
+     */
+    public static class OperationStats {
+
+        public final Operation operation;
+
+        /** Latencies of the successful operations, in microseconds. */
+        protected long[] latencies = new long[64];
+
+        protected int count;
+
+        protected int failures;
+
+        protected int retries;
+
+        protected int deadlocks;
+
+        protected long cacheHits;
+
+        protected long cacheMisses;
+
+        protected long sqlExecutions;
+
+        public OperationStats(Operation operation) {
+            this.operation = operation;
+        }
+
+        protected synchronized void addSuccess(long micros, long hits,
+                long misses, long sql) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = micros;
+            cacheHits += hits;
+            cacheMisses += misses;
+            sqlExecutions += sql;
+        }
+
+        protected synchronized void addFailure() {
+            failures++;
+        }
+
+        protected synchronized void addRetry(boolean deadlock) {
+            retries++;
+            if (deadlock) {
+                deadlocks++;
+            }
+        }
+
+        /**
+         * Gets the number of successful operations.
+         */
+        public synchronized int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the number of operations abandoned after an error.
+         */
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        public synchronized int getRetries() {
+            return retries;
+        }
+
+        /**
+         * Gets the number of retries caused by a database deadlock.
+         */
+        public synchronized int getDeadlocks() {
+            return deadlocks;
+        }
+
+        /**
+         * Gets the latency under which the given fraction of the successful
+         * operations ran, in microseconds.
+         */
+        public synchronized long getPercentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            int i = (int) Math.ceil(fraction * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, i))];
+        }
+
+        /**
+         * Gets the row cache hit ratio, or -1 if the cache was not used.
+         */
+        public synchronized double getCacheHitRatio() {
+            long total = cacheHits + cacheMisses;
+            return total == 0 ? -1 : (double) cacheHits / total;
+        }
+
+        /**
+         * Gets the mean number of SQL statements per successful operation.
+         */
+        public synchronized double getSqlPerOperation() {
+            return count == 0 ? 0 : (double) sqlExecutions / count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(
+                    "%-12s %6d ok %4d failed %4d retries %4d deadlocks,"
+                            + " p50 %6dus p95 %6dus p99 %6dus max %6dus,"
+                            + " cache hits %5.1f%%, %.1f sql/op",
+                    operation, Integer.valueOf(count),
+                    Integer.valueOf(failures), Integer.valueOf(retries),
+                    Integer.valueOf(deadlocks),
+                    Long.valueOf(getPercentile(0.5)),
+                    Long.valueOf(getPercentile(0.95)),
+                    Long.valueOf(getPercentile(0.99)),
+                    Long.valueOf(getPercentile(1)),
+                    Double.valueOf(100 * Math.max(0, getCacheHitRatio())),
+                    Double.valueOf(getSqlPerOperation()));
+        }
+    }
+
+    protected final Map<Operation, OperationStats> stats;
+
+    protected volatile long elapsed;
+
+    protected final AtomicInteger maxWorkBacklog = new AtomicInteger();
+
+    public LoadReport() {
+        Map<Operation, OperationStats> map = new EnumMap<Operation, OperationStats>(
+                Operation.class);
+        for (Operation operation : Operation.values()) {
+            map.put(operation, new OperationStats(operation));
+        }
+        stats = Collections.unmodifiableMap(map);
+    }
+
+    public OperationStats getStats(Operation operation) {
+        return stats.get(operation);
+    }
+
+    /**
+     * Gets the number of successful operations.
+     */
+    public int getCount() {
+        int n = 0;
+        for (OperationStats s : stats.values()) {
+            n += s.getCount();
+        }
+        return n;
+    }
+
+    /**
+     * Gets the number of operations abandoned after an error.
+     */
+    public int getFailures() {
+        int n = 0;
+        for (OperationStats s : stats.values()) {
+            n += s.getFailures();
+        }
+        return n;
+    }
+
+    public int getRetries() {
+        int n = 0;
+        for (OperationStats s : stats.values()) {
+            n += s.getRetries();
+        }
+        return n;
+    }
+
+    public int getDeadlocks() {
+        int n = 0;
+        for (OperationStats s : stats.values()) {
+            n += s.getDeadlocks();
+        }
+        return n;
+    }
+
+    /**
+     * Gets the duration of the run, in milliseconds.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Gets the number of successful operations per second.
+     */
+    public double getThroughput() {
+        return elapsed == 0 ? 0 : getCount() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Gets the highest number of non-completed works seen in the
+     * {@code WorkManager} queues during the run.
+     */
+    public int getMaxWorkBacklog() {
+        return maxWorkBacklog.get();
+    }
+
+    /**
+     * Records a sample of the number of non-completed works.
+     */
+    protected void sampleWorkBacklog(int backlog) {
+        for (;;) {
+            int max = maxWorkBacklog.get();
+            if (backlog <= max
+                    || maxWorkBacklog.compareAndSet(max, backlog)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(String.format(
+                "%d ops in %dms, %.0f ops/s, %d failed, %d retries, %d deadlocks, max work backlog %d",
+                Integer.valueOf(getCount()), Long.valueOf(elapsed),
+                Double.valueOf(getThroughput()),
+                Integer.valueOf(getFailures()),
+                Integer.valueOf(getRetries()),
+                Integer.valueOf(getDeadlocks()),
+                Integer.valueOf(getMaxWorkBacklog())));
+        for (OperationStats s : stats.values()) {
+            buf.append('\n');
+            buf.append(s);
+        }
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.VersioningOption;
+import org.nuxeo.ecm.core.api.profile.ResourceProfile;
+import org.nuxeo.ecm.core.test.annotations.LoadConfig;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Replays a random mix of operations from concurrent sessions, each operation
+ * in its own transaction, to reproduce the contention of a loaded server
+ * (invalidations, locks, work queues) against the test repository.
+ * <p>
+ * An operation failing because of a concurrent modification or a database
+ * deadlock is retried up to {@link LoadConfig#maxRetries} times. The cache and
+ * SQL usage of each operation is taken from its {@link ResourceProfile}, which
+ * is enabled for the duration of the run.
+ *
+ * @since 5.7
+ */
+public class LoadRunner {
+
+    private static final Log log = LogFactory.getLog(LoadRunner.class);
+
+    public enum Operation {
+        CREATE, UPDATE, QUERY, GET_CHILDREN, LOCK, VERSION
+    }
+
+    public static final String FOLDER_NAME = "load";
+
+    /** Start of the message of a lock conflict, see AbstractSession. */
+    protected static final String LOCKED_BY_OTHER_MESSAGE = "Document already locked by ";
+
+    /** Interval at which the work queues are sampled, in milliseconds. */
+    protected static final long SAMPLE_INTERVAL = 50;
+
+    protected final RepositorySettings settings;
+
+    protected final LoadConfig config;
+
+    /** One entry per unit of weight, to pick operations uniformly. */
+    protected final Operation[] mix;
+
+    protected final List<DocumentRef> docs = new ArrayList<DocumentRef>();
+
+    protected String folderId;
+
+    protected String folderPath;
+
+    public LoadRunner(RepositorySettings settings, LoadConfig config) {
+        this.settings = settings;
+        this.config = config;
+        mix = buildMix(config);
+    }
+
+    protected static Operation[] buildMix(LoadConfig config) {
+        int[] weights = { config.create(), config.update(), config.query(),
+                config.getChildren(), config.lock(), config.version() };
+        List<Operation> list = new ArrayList<Operation>();
+        for (Operation operation : Operation.values()) {
+            for (int i = 0; i < weights[operation.ordinal()]; i++) {
+                list.add(operation);
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("No operation to run");
+        }
+        return list.toArray(new Operation[list.size()]);
+    }
+
+    public LoadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Creates the documents, then runs the operations of all the sessions.
+     * Must not be called concurrently.
+     */
+    public LoadReport run() throws Exception {
+        boolean profiling = ResourceProfile.isEnabled();
+        ResourceProfile.setEnabled(true);
+        ExecutorService executor = Executors.newFixedThreadPool(config.threads());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        final LoadReport report = new LoadReport();
+        try {
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    setUp();
+                    return null;
+                }
+            }).get();
+            sampler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sampleWorkBacklog(report);
+                }
+            }, 0, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+            long t0 = System.currentTimeMillis();
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < config.threads(); i++) {
+                futures.add(executor.submit(new Worker(
+                        new Random(config.seed() + i), report)));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            report.elapsed = System.currentTimeMillis() - t0;
+        } finally {
+            sampler.shutdownNow();
+            executor.shutdownNow();
+            ResourceProfile.setEnabled(profiling);
+        }
+        log.info("Load run: " + report);
+        return report;
+    }
+
+    protected void setUp() throws ClientException {
+        CoreSession session = openSession();
+        boolean tx = TransactionHelper.startTransaction();
+        try {
+            DocumentModel folder = session.createDocumentModel("/",
+                    FOLDER_NAME, "Folder");
+            folder = session.createDocument(folder);
+            folderId = folder.getId();
+            folderPath = folder.getPathAsString();
+            synchronized (docs) {
+                docs.clear();
+                for (int i = 0; i < config.documents(); i++) {
+                    docs.add(createDocument(session, "doc" + i));
+                }
+            }
+            session.save();
+        } catch (ClientException e) {
+            if (tx) {
+                TransactionHelper.setTransactionRollbackOnly();
+            }
+            throw e;
+        } finally {
+            if (tx) {
+                TransactionHelper.commitOrRollbackTransaction();
+            }
+            settings.getRepositoryHandler().releaseSession(session);
+        }
+    }
+
+    protected CoreSession openSession() throws ClientException {
+        // not RepositorySettings.openSessionAs, which is not thread-safe
+        return settings.getRepositoryHandler().openSessionAs(config.username());
+    }
+
+    protected DocumentRef createDocument(CoreSession session, String name)
+            throws ClientException {
+        DocumentModel doc = session.createDocumentModel(folderPath, name,
+                "File");
+        doc.setPropertyValue("dc:title", name);
+        return session.createDocument(doc).getRef();
+    }
+
+    protected DocumentRef randomDocument(Random random) {
+        synchronized (docs) {
+            return docs.get(random.nextInt(docs.size()));
+        }
+    }
+
+    protected void sampleWorkBacklog(LoadReport report) {
+        WorkManager workManager = Framework.getLocalService(WorkManager.class);
+        if (workManager == null) {
+            return;
+        }
+        int backlog = 0;
+        for (String queueId : workManager.getWorkQueueIds()) {
+            backlog += workManager.getNonCompletedWorkSize(queueId);
+        }
+        report.sampleWorkBacklog(backlog);
+    }
+
+    /**
+     * Runs the operations of one session.
+     */
+    protected class Worker implements Callable<Void> {
+
+        protected final Random random;
+
+        protected final LoadReport report;
+
+        protected Worker(Random random, LoadReport report) {
+            this.random = random;
+            this.report = report;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            CoreSession session = openSession();
+            try {
+                for (int i = 0; i < config.operations(); i++) {
+                    Operation operation = mix[random.nextInt(mix.length)];
+                    execute(session, operation, random,
+                            report.getStats(operation));
+                }
+            } finally {
+                settings.getRepositoryHandler().releaseSession(session);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Executes an operation in its own transaction, retrying it on
+     * concurrency errors.
+     */
+    protected void execute(CoreSession session, Operation operation,
+            Random random, LoadReport.OperationStats stats) {
+        for (int attempt = 0;; attempt++) {
+            long t0 = System.nanoTime();
+            boolean tx = TransactionHelper.startTransaction();
+            ResourceProfile profile = ResourceProfile.current();
+            boolean ownProfile = profile == null;
+            if (ownProfile) {
+                profile = ResourceProfile.begin();
+            }
+            long hits = profile.getCacheHits();
+            long misses = profile.getCacheMisses();
+            long sql = profile.getSqlExecutions();
+            Throwable error = null;
+            try {
+                doOperation(session, operation, random);
+                session.save();
+            } catch (Exception e) {
+                error = e;
+                if (tx) {
+                    TransactionHelper.setTransactionRollbackOnly();
+                }
+            } finally {
+                if (tx) {
+                    try {
+                        TransactionHelper.commitOrRollbackTransaction();
+                    } catch (RuntimeException e) {
+                        if (error == null) {
+                            error = e;
+                        }
+                    }
+                }
+                if (ownProfile) {
+                    ResourceProfile.end();
+                }
+            }
+            if (error == null) {
+                stats.addSuccess((System.nanoTime() - t0) / 1000,
+                        profile.getCacheHits() - hits,
+                        profile.getCacheMisses() - misses,
+                        profile.getSqlExecutions() - sql);
+                return;
+            }
+            boolean deadlock = isDeadlock(error);
+            if ((deadlock || isConflict(operation, error))
+                    && attempt < config.maxRetries()) {
+                stats.addRetry(deadlock);
+                continue;
+            }
+            log.debug("Failed " + operation, error);
+            stats.addFailure();
+            return;
+        }
+    }
+
+    protected void doOperation(CoreSession session, Operation operation,
+            Random random) throws ClientException {
+        DocumentRef ref;
+        switch (operation) {
+        case CREATE:
+            ref = createDocument(session,
+                    "doc" + random.nextInt(Integer.MAX_VALUE));
+            synchronized (docs) {
+                docs.add(ref);
+            }
+            break;
+        case UPDATE:
+            ref = randomDocument(random);
+            DocumentModel doc = session.getDocument(ref);
+            doc.setPropertyValue("dc:description",
+                    "updated " + random.nextInt());
+            session.saveDocument(doc);
+            break;
+        case QUERY:
+            session.query(String.format(
+                    "SELECT * FROM Document WHERE ecm:parentId = '%s'"
+                            + " AND dc:title = 'doc%d'", folderId,
+                    Integer.valueOf(random.nextInt(config.documents()))));
+            break;
+        case GET_CHILDREN:
+            session.getChildren(new IdRef(folderId));
+            break;
+        case LOCK:
+            ref = randomDocument(random);
+            session.setLock(ref);
+            session.removeLock(ref);
+            break;
+        case VERSION:
+            ref = randomDocument(random);
+            session.checkIn(ref, VersioningOption.MINOR, "load");
+            session.checkOut(ref);
+            break;
+        }
+    }
+
+    /**
+     * Checks if an error was caused by a database deadlock or serialization
+     * failure.
+     */
+    protected static boolean isDeadlock(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("40")) {
+                    return true;
+                }
+            }
+            String message = t.getMessage();
+            if (message != null
+                    && message.toLowerCase().contains("deadlock")) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an error was caused by a concurrent modification of the
+     * document, or by a lock held by another session.
+     */
+    protected static boolean isConflict(Operation operation, Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof ConcurrentModificationException) {
+                return true;
+            }
+            if (operation == Operation.LOCK && t instanceof ClientException
+                    && isLockedByOther((ClientException) t)) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an error is the refusal of a lock set or removal because
+     * another session owns the lock.
+     *
+     * @see CoreSession#setLock
+     */
+    protected static boolean isLockedByOther(ClientException e) {
+        String message = e.getMessage();
+        return message != null
+                && message.startsWith(LOCKED_BY_OTHER_MESSAGE);
+    }
+
+}
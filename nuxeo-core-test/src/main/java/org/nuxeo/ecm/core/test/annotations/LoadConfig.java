@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.test.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.nuxeo.ecm.core.test.LoadFeature;
+
+/**
+ * Defines the load generated by the {@link LoadFeature}.
+ * <p>
+ * The operation weights are relative: each operation run by a session is
+ * picked with a probability proportional to its weight.
+ *
+ * @since 5.7
+ */
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE })
+public @interface LoadConfig {
+
+    /** Number of concurrent sessions. */
+    int threads() default 4;
+
+    /** Number of operations run by each session. */
+    int operations() default 100;
+
+    /** Number of documents created before the run. */
+    int documents() default 20;
+
+    /** Seed of the random choices, for reproducible runs. */
+    long seed() default 1234;
+
+    /** Number of times an operation is retried after a conflict or deadlock. */
+    int maxRetries() default 3;
+
+    String username() default "Administrator";
+
+    int create() default 20;
+
+    int update() default 30;
+
+    int query() default 20;
+
+    int getChildren() default 20;
+
+    int lock() default 5;
+
+    int version() default 5;
+
+}
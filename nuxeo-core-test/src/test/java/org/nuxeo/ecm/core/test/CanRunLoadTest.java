@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.test.LoadRunner.Operation;
+import org.nuxeo.ecm.core.test.annotations.LoadConfig;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(LoadFeature.class)
+@LoadConfig(threads = 3, operations = 20, documents = 10, maxRetries = 10)
+public class CanRunLoadTest {
+
+    @Inject
+    LoadRunner loadRunner;
+
+    @Test
+    public void allOperationsAreAccountedFor() throws Exception {
+        LoadReport report = loadRunner.run();
+        // conflicts and deadlocks are retried, nothing should be abandoned
+        assertEquals(0, report.getFailures());
+        assertEquals(3 * 20, report.getCount());
+        assertTrue(report.getElapsed() >= 0);
+        for (Operation operation : Operation.values()) {
+            LoadReport.OperationStats stats = report.getStats(operation);
+            assertTrue(stats.getPercentile(0.5) <= stats.getPercentile(1));
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.security;
+
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.model.Document;
+
+/**
+ * A {@link SecurityManager} able to evaluate the merged ACP of a document
+ * without building it, typically from cached decisions.
+ *
+ * @since 5.7
+ */
+public interface CachingSecurityManager extends SecurityManager {
+
+    /**
+     * Checks the merged ACP of a document for any of the given principals and
+     * permissions, as {@link ACP#getAccess(String[], String[])} does.
+     *
+     * @param doc the document
+     * @param principals the principals to check
+     * @param permissions the permissions to check
+     * @return {@link Access#UNKNOWN} if no rule applies or if there is no
+     *         merged ACP, never {@code null}
+     */
+    Access getMergedAccess(Document doc, String[] principals,
+            String[] permissions) throws SecurityException;
+
+}
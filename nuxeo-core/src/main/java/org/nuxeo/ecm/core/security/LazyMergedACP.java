@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2006-2012 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+package org.nuxeo.ecm.core.security;
+
+import java.util.Set;
+
+import org.nuxeo.ecm.core.api.ClientRuntimeException;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
+import org.nuxeo.ecm.core.api.security.UserEntry;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+import org.nuxeo.ecm.core.model.Document;
+
+/**
+ * The merged ACP of a document, only computed when first used.
+ * <p>
+ * Passed to the security policies, which most of the time don't look at it.
+ * An empty ACP stands for a missing merged ACP.
+ *
+ * @since 5.7
+ */
+public class LazyMergedACP implements ACP {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient SecurityManager securityManager;
+
+    private final transient Document doc;
+
+    private transient ACP acp;
+
+    public LazyMergedACP(SecurityManager securityManager, Document doc) {
+        this.securityManager = securityManager;
+        this.doc = doc;
+    }
+
+    protected ACP getACP() {
+        if (acp == null) {
+            try {
+                acp = securityManager.getMergedACP(doc);
+            } catch (SecurityException e) {
+                throw new ClientRuntimeException(e);
+            }
+            if (acp == null) {
+                acp = new ACPImpl();
+            }
+        }
+        return acp;
+    }
+
+    private Object writeReplace() {
+        return getACP();
+    }
+
+    @Override
+    public Access getAccess(String principal, String permission) {
+        return getACP().getAccess(principal, permission);
+    }
+
+    @Override
+    public Access getAccess(String[] principals, String[] permissions) {
+        return getACP().getAccess(principals, permissions);
+    }
+
+    @Override
+    public void setRules(UserEntry[] userEntries) {
+        getACP().setRules(userEntries);
+    }
+
+    @Override
+    public void setRules(UserEntry[] userEntries, boolean overwrite) {
+        getACP().setRules(userEntries, overwrite);
+    }
+
+    @Override
+    public void setRules(String aclName, UserEntry[] userEntries) {
+        getACP().setRules(aclName, userEntries);
+    }
+
+    @Override
+    public void setRules(String aclName, UserEntry[] userEntries,
+            boolean overwrite) {
+        getACP().setRules(aclName, userEntries, overwrite);
+    }
+
+    @Override
+    public String[] getOwners() {
+        return getACP().getOwners();
+    }
+
+    @Override
+    public void setOwners(String[] owners) {
+        getACP().setOwners(owners);
+    }
+
+    @Override
+    public void removeOwner(String owner) {
+        getACP().removeOwner(owner);
+    }
+
+    @Override
+    public void addOwner(String owner) {
+        getACP().addOwner(owner);
+    }
+
+    @Override
+    public boolean isOwner(String username) {
+        return getACP().isOwner(username);
+    }
+
+    @Override
+    public void addACL(ACL acl) {
+        getACP().addACL(acl);
+    }
+
+    @Override
+    public void addACL(int pos, ACL acl) {
+        getACP().addACL(pos, acl);
+    }
+
+    @Override
+    public void addACL(String afterMe, ACL acl) {
+        getACP().addACL(afterMe, acl);
+    }
+
+    @Override
+    public ACL removeACL(String name) {
+        return getACP().removeACL(name);
+    }
+
+    @Override
+    public ACL getACL(String name) {
+        return getACP().getACL(name);
+    }
+
+    @Override
+    public ACL[] getACLs() {
+        return getACP().getACLs();
+    }
+
+    @Override
+    public ACL getMergedACLs(String name) {
+        return getACP().getMergedACLs(name);
+    }
+
+    @Override
+    public ACL getOrCreateACL(String name) {
+        return getACP().getOrCreateACL(name);
+    }
+
+    @Override
+    public ACL getOrCreateACL() {
+        return getACP().getOrCreateACL();
+    }
+
+    @Override
+    @Deprecated
+    public String[] listUsernamesForPermission(String perm) {
+        return getACP().listUsernamesForPermission(perm);
+    }
+
+    @Override
+    @Deprecated
+    public String[] listUsernamesForAnyPermission(Set<String> perms) {
+        return getACP().listUsernamesForAnyPermission(perms);
+    }
+
+    @Override
+    public Object clone() {
+        return getACP().clone();
+    }
+
+    @Override
+    public String toString() {
+        return acp == null ? getClass().getSimpleName() + "(" + doc + ")"
+                : acp.toString();
+    }
+
+}
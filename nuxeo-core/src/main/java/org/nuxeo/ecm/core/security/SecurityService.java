@@ -153,8 +153,11 @@ public class SecurityService extends DefaultComponent {
         String[] resolvedPermissions = getPermissionsToCheck(permission);
         String[] additionalPrincipals = getPrincipalsToCheck(principal);
 
-        // get the ordered list of ACE
-        ACP acp = securityManager.getMergedACP(doc);
+        // get the ordered list of ACE, only built if needed when the
+        // security manager evaluates it itself
+        boolean caching = securityManager instanceof CachingSecurityManager;
+        ACP acp = caching ? new LazyMergedACP(securityManager, doc)
+                : securityManager.getMergedACP(doc);
 
         // check pluggable policies
         Access access = securityPolicyService.checkPermission(doc, acp,
@@ -164,6 +167,10 @@ public class SecurityService extends DefaultComponent {
             return access.toBoolean();
         }
 
+        if (caching) {
+            return ((CachingSecurityManager) securityManager).getMergedAccess(
+                    doc, additionalPrincipals, resolvedPermissions).toBoolean();
+        }
         if (acp == null) {
             return false; // no ACP on that doc - by default deny
         }